@@ -0,0 +1,162 @@
+﻿-- product cost index per warehouse, maintained when receipt documents are accepted
+
+CREATE TABLE materialflowresources_productcostindex
+(
+  id bigint NOT NULL,
+  product_id bigint NOT NULL,
+  location_id bigint NOT NULL,
+  lastpurchasecost numeric(12,5),
+  lastpurchasetime timestamp without time zone,
+  CONSTRAINT materialflowresources_productcostindex_pkey PRIMARY KEY (id),
+  CONSTRAINT productcostindex_product_location_unique UNIQUE (product_id, location_id),
+  CONSTRAINT productcostindex_product_fkey FOREIGN KEY (product_id)
+      REFERENCES basic_product (id) DEFERRABLE,
+  CONSTRAINT productcostindex_location_fkey FOREIGN KEY (location_id)
+      REFERENCES materialflow_location (id) DEFERRABLE
+);
+
+CREATE SEQUENCE materialflowresources_productcostindex_id_seq;
+ALTER TABLE materialflowresources_productcostindex ALTER COLUMN id SET DEFAULT nextval('materialflowresources_productcostindex_id_seq');
+ALTER SEQUENCE materialflowresources_productcostindex_id_seq OWNED BY materialflowresources_productcostindex.id;
+
+INSERT INTO materialflowresources_productcostindex (product_id, location_id, lastpurchasecost, lastpurchasetime)
+    SELECT totals.product_id, totals.location_id, last.price, totals.lasttime
+    FROM
+        (SELECT p.product_id, d.locationto_id AS location_id, max(d.time) AS lasttime
+        FROM materialflowresources_position p
+        JOIN materialflowresources_document d ON d.id = p.document_id
+        WHERE d.type IN ('01receipt', '02internalInbound') AND d.state = '02accepted' AND p.price IS NOT NULL
+        GROUP BY p.product_id, d.locationto_id) totals
+    JOIN LATERAL
+        (SELECT p.price
+        FROM materialflowresources_position p
+        JOIN materialflowresources_document d ON d.id = p.document_id
+        WHERE d.type IN ('01receipt', '02internalInbound') AND d.state = '02accepted' AND p.price IS NOT NULL
+            AND p.product_id = totals.product_id AND d.locationto_id = totals.location_id AND d.time = totals.lasttime
+        ORDER BY p.id DESC
+        LIMIT 1) last ON true;
+
+-- end
+
+
+-- master order progress, maintained when orders are saved
+
+CREATE TABLE masterorders_masterorderprogress
+(
+  id bigint NOT NULL,
+  masterorder_id bigint,
+  product_id bigint,
+  plannedquantity numeric(12,5) DEFAULT 0::numeric,
+  inprogressquantity numeric(12,5) DEFAULT 0::numeric,
+  donequantity numeric(12,5) DEFAULT 0::numeric,
+  CONSTRAINT masterorders_masterorderprogress_pkey PRIMARY KEY (id),
+  CONSTRAINT masterorderprogress_masterorder_product_unique UNIQUE (masterorder_id, product_id),
+  CONSTRAINT masterorderprogress_masterorder_fkey FOREIGN KEY (masterorder_id)
+      REFERENCES masterorders_masterorder (id) DEFERRABLE,
+  CONSTRAINT masterorderprogress_product_fkey FOREIGN KEY (product_id)
+      REFERENCES basic_product (id) DEFERRABLE
+);
+
+CREATE SEQUENCE masterorders_masterorderprogress_id_seq;
+ALTER TABLE masterorders_masterorderprogress ALTER COLUMN id SET DEFAULT nextval('masterorders_masterorderprogress_id_seq');
+ALTER SEQUENCE masterorders_masterorderprogress_id_seq OWNED BY masterorders_masterorderprogress.id;
+
+INSERT INTO masterorders_masterorderprogress (masterorder_id, product_id, plannedquantity, inprogressquantity, donequantity)
+    SELECT masterorder_id, product_id, SUM(COALESCE(plannedquantity, 0::numeric)),
+        SUM(CASE WHEN state IN ('03inProgress', '06interrupted') THEN COALESCE(plannedquantity, 0::numeric) ELSE 0::numeric END),
+        SUM(COALESCE(donequantity, 0::numeric))
+    FROM orders_order
+    WHERE masterorder_id IS NOT NULL AND product_id IS NOT NULL
+    GROUP BY masterorder_id, product_id;
+
+DROP VIEW IF EXISTS masterorders_masterorderpositiondto;
+DROP VIEW IF EXISTS masterorders_masterorderposition_oneproduct;
+DROP VIEW IF EXISTS masterorders_masterorderposition_manyproducts;
+
+CREATE OR REPLACE VIEW masterorders_masterorderposition_oneproduct AS SELECT (SELECT COALESCE(max(masterorders_masterorderproduct.id), 0::integer) FROM masterorders_masterorderproduct) + row_number() OVER () AS id, masterorderdefinition.name, masterorder.id::integer AS masterorderid, masterorder.product_id::integer AS productid, masterorderproduct.id::integer AS masterorderproductid, masterorder.masterordertype, masterorder.name AS masterordername, masterorder.number, masterorder.deadline, masterorder.masterorderstate AS masterorderstatus, masterorder.masterorderpositionstatus, COALESCE(masterorder.masterorderquantity, 0::numeric) AS masterorderquantity, COALESCE(progress.plannedquantity, 0::numeric) AS cumulatedmasterorderquantity, COALESCE(progress.donequantity, 0::numeric) AS producedorderquantity, COALESCE(progress.inprogressquantity, 0::numeric) AS inprogressquantity, GREATEST(COALESCE(masterorder.masterorderquantity, 0::numeric) - COALESCE(progress.donequantity, 0::numeric), 0::numeric) AS lefttorelease, masterorder.comments, product.number AS productnumber, product.name AS productname, product.unit, technology.number AS technologyname, company.name AS companyname, masterorder.active FROM masterorders_masterorder masterorder LEFT JOIN masterorders_masterorderdefinition masterorderdefinition ON masterorderdefinition.id = masterorder.masterorderdefinition_id LEFT JOIN masterorders_masterorderproduct masterorderproduct ON masterorderproduct.masterorder_id = masterorder.id LEFT JOIN basic_product product ON product.id = masterorder.product_id LEFT JOIN basic_company company ON company.id = masterorder.company_id LEFT JOIN technologies_technology technology ON technology.id = masterorder.technology_id LEFT JOIN masterorders_masterorderprogress progress ON progress.masterorder_id = masterorder.id AND progress.product_id = masterorder.product_id WHERE masterorder.masterordertype::text = '02oneProduct'::text;
+
+CREATE OR REPLACE VIEW masterorders_masterorderposition_manyproducts AS SELECT COALESCE(masterorderproduct.id, 0::integer), masterorderdefinition.name, masterorder.id::integer AS masterorderid, masterorderproduct.product_id::integer AS productid, masterorderproduct.id::integer AS masterorderproductid, masterorder.masterordertype, masterorder.name AS masterordername, masterorder.number, masterorder.deadline, masterorder.masterorderstate AS masterorderstatus, masterorderproduct.masterorderpositionstatus, COALESCE(masterorderproduct.masterorderquantity, 0::numeric) AS masterorderquantity, COALESCE(progress.plannedquantity, 0::numeric) AS cumulatedmasterorderquantity, COALESCE(progress.donequantity, 0::numeric) AS producedorderquantity, COALESCE(progress.inprogressquantity, 0::numeric) AS inprogressquantity, GREATEST(COALESCE(masterorderproduct.masterorderquantity, 0::numeric) - COALESCE(progress.donequantity, 0::numeric), 0::numeric) AS lefttorelease, masterorderproduct.comments, product.number AS productnumber, product.name AS productname, product.unit, technology.number AS technologyname, company.name AS companyname, masterorder.active FROM masterorders_masterorder masterorder LEFT JOIN masterorders_masterorderdefinition masterorderdefinition ON masterorderdefinition.id = masterorder.masterorderdefinition_id LEFT JOIN masterorders_masterorderproduct masterorderproduct ON masterorderproduct.masterorder_id = masterorder.id LEFT JOIN basic_product product ON product.id = masterorderproduct.product_id LEFT JOIN basic_company company ON company.id = masterorder.company_id LEFT JOIN technologies_technology technology ON technology.id = masterorderproduct.technology_id LEFT JOIN masterorders_masterorderprogress progress ON progress.masterorder_id = masterorderproduct.masterorder_id AND progress.product_id = masterorderproduct.product_id WHERE masterorder.masterordertype = '03manyProducts' AND masterorderproduct.id IS NOT NULL;
+
+CREATE OR REPLACE VIEW masterorders_masterorderpositiondto AS SELECT * FROM masterorders_masterorderposition_oneproduct UNION ALL SELECT * FROM masterorders_masterorderposition_manyproducts;
+
+-- end
+
+-- pallet number sequence
+
+CREATE SEQUENCE basic_palletnumber_number_seq;
+
+SELECT setval('basic_palletnumber_number_seq', COALESCE((SELECT MAX(number::bigint) FROM basic_palletnumber WHERE number ~ '^[0-9]+$'), 0) + 1, false);
+
+-- end
+
+-- product family node numbers
+
+CREATE INDEX basic_product_nodenumber_idx ON basic_product (nodenumber varchar_pattern_ops);
+-- end
+
+-- deviation reasons date indexes
+
+CREATE INDEX orders_reasontypecorrectiondatefrom_date_idx ON orders_reasontypecorrectiondatefrom (date);
+CREATE INDEX orders_reasontypecorrectiondateto_date_idx ON orders_reasontypecorrectiondateto (date);
+CREATE INDEX orders_reasontypedeviationeffectivestart_date_idx ON orders_reasontypedeviationeffectivestart (date);
+CREATE INDEX orders_reasontypedeviationeffectiveend_date_idx ON orders_reasontypedeviationeffectiveend (date);
+CREATE INDEX orders_typeofcorrectioncauses_date_idx ON orders_typeofcorrectioncauses (date);
+CREATE INDEX productionpershift_reasontypeofcorrectionplan_date_idx ON productionpershift_reasontypeofcorrectionplan (date);
+-- end
+
+-- operational tasks for orders
+
+CREATE INDEX operationaltasks_operationaltask_order_id_idx ON operationaltasks_operationaltask (order_id);
+-- end
+
+-- pps report daily progress
+
+CREATE INDEX productionpershift_progressforday_toc_id_idx ON productionpershift_progressforday (technologyoperationcomponent_id);
+CREATE INDEX productionpershift_dailyprogress_progressforday_id_idx ON productionpershift_dailyprogress (progressforday_id);
+-- end
+
+-- cost calculation batches
+
+CREATE TABLE costcalculation_costcalculationbatch
+(
+  id bigint NOT NULL,
+  "number" character varying(255),
+  state character varying(255) DEFAULT '01inProgress'::character varying,
+  startdate timestamp without time zone,
+  finishdate timestamp without time zone,
+  itemsnumber integer,
+  calculateditemsnumber integer,
+  failures text,
+  CONSTRAINT costcalculation_costcalculationbatch_pkey PRIMARY KEY (id)
+);
+
+CREATE SEQUENCE costcalculation_costcalculationbatch_id_seq;
+ALTER TABLE costcalculation_costcalculationbatch ALTER COLUMN id SET DEFAULT nextval('costcalculation_costcalculationbatch_id_seq');
+ALTER SEQUENCE costcalculation_costcalculationbatch_id_seq OWNED BY costcalculation_costcalculationbatch.id;
+
+ALTER TABLE costcalculation_costcalculation ADD COLUMN costcalculationbatch_id bigint;
+ALTER TABLE costcalculation_costcalculation
+  ADD CONSTRAINT costcalculation_costcalculationbatch_fkey FOREIGN KEY (costcalculationbatch_id)
+      REFERENCES costcalculation_costcalculationbatch (id) DEFERRABLE;
+
+CREATE SEQUENCE costcalculation_costcalculationbatch_number_seq;
+
+CREATE SEQUENCE costcalculation_costcalculation_number_seq;
+
+SELECT setval('costcalculation_costcalculation_number_seq', COALESCE((SELECT MAX(number::bigint) FROM costcalculation_costcalculation WHERE number ~ '^[0-9]+$'), 0) + 1, false);
+
+-- end
+
+-- material requirement net requirements
+ALTER TABLE materialrequirements_materialrequirement ADD COLUMN netrequirements boolean DEFAULT false;
+-- end
+
+-- factory structure version sequence
+CREATE SEQUENCE productionlines_factorystructure_version_seq;
+-- end
+
+-- operational task number sequence
+CREATE SEQUENCE operationaltasks_operationaltask_number_seq;
+
+SELECT setval('operationaltasks_operationaltask_number_seq', COALESCE((SELECT MAX(number::bigint) FROM operationaltasks_operationaltask WHERE number ~ '^[0-9]+$'), 0) + 1, false);
+-- end
@@ -346,14 +346,40 @@ CREATE OR REPLACE VIEW materialflowresources_positiondto AS SELECT position.id A
 
 DROP TABLE IF EXISTS masterorders_masterorderpositiondto;
 
-CREATE OR REPLACE VIEW masterorders_masterorderposition_oneproduct AS SELECT (SELECT COALESCE(max(masterorders_masterorderproduct.id), 0::integer) FROM masterorders_masterorderproduct) + row_number() OVER () AS id, masterorderdefinition.name, masterorder.id::integer AS masterorderid, masterorder.product_id::integer AS productid, masterorderproduct.id::integer AS masterorderproductid, masterorder.masterordertype, masterorder.name AS masterordername, masterorder.number, masterorder.deadline, masterorder.masterorderstate AS masterorderstatus, masterorder.masterorderpositionstatus, COALESCE(masterorder.masterorderquantity, 0::numeric) AS masterorderquantity, COALESCE((SELECT SUM(orders.plannedquantity)), 0::numeric) AS cumulatedmasterorderquantity, COALESCE((SELECT SUM(orders.donequantity)), 0::numeric) AS producedorderquantity, CASE WHEN (COALESCE(masterorder.masterorderquantity, 0::numeric) - COALESCE((SELECT SUM(orders.donequantity)), 0::numeric)) > 0 THEN (COALESCE(masterorder.masterorderquantity, 0::numeric) - COALESCE((SELECT SUM(orders.donequantity)), 0::numeric)) ELSE 0::numeric END AS lefttorelease, masterorder.comments, product.number AS productnumber, product.name AS productname, product.unit, technology.number AS technologyname, company.name AS companyname, masterorder.active FROM masterorders_masterorder masterorder LEFT JOIN masterorders_masterorderdefinition masterorderdefinition ON masterorderdefinition.id = masterorder.masterorderdefinition_id LEFT JOIN masterorders_masterorderproduct masterorderproduct ON masterorderproduct.masterorder_id = masterorder.id LEFT JOIN basic_product product ON product.id = masterorder.product_id LEFT JOIN basic_company company ON company.id = masterorder.company_id LEFT JOIN technologies_technology technology ON technology.id = masterorder.technology_id LEFT JOIN orders_order orders ON orders.masterorder_id = masterorder.id AND orders.product_id = masterorder.product_id WHERE masterorder.masterordertype::text = '02oneProduct'::text GROUP BY masterorderdefinition.name, masterorder.id, masterorder.product_id, masterorderproduct.id, masterorder.masterordertype, masterorder.name, masterorder.deadline, masterorder.masterorderstate, masterorder.masterorderpositionstatus, masterorder.comments, product.number, product.name, product.unit, technology.number, company.name, masterorder.active;
+CREATE OR REPLACE VIEW masterorders_masterorderposition_oneproduct AS SELECT (SELECT COALESCE(max(masterorders_masterorderproduct.id), 0::integer) FROM masterorders_masterorderproduct) + row_number() OVER () AS id, masterorderdefinition.name, masterorder.id::integer AS masterorderid, masterorder.product_id::integer AS productid, masterorderproduct.id::integer AS masterorderproductid, masterorder.masterordertype, masterorder.name AS masterordername, masterorder.number, masterorder.deadline, masterorder.masterorderstate AS masterorderstatus, masterorder.masterorderpositionstatus, COALESCE(masterorder.masterorderquantity, 0::numeric) AS masterorderquantity, COALESCE(progress.plannedquantity, 0::numeric) AS cumulatedmasterorderquantity, COALESCE(progress.donequantity, 0::numeric) AS producedorderquantity, COALESCE(progress.inprogressquantity, 0::numeric) AS inprogressquantity, GREATEST(COALESCE(masterorder.masterorderquantity, 0::numeric) - COALESCE(progress.donequantity, 0::numeric), 0::numeric) AS lefttorelease, masterorder.comments, product.number AS productnumber, product.name AS productname, product.unit, technology.number AS technologyname, company.name AS companyname, masterorder.active FROM masterorders_masterorder masterorder LEFT JOIN masterorders_masterorderdefinition masterorderdefinition ON masterorderdefinition.id = masterorder.masterorderdefinition_id LEFT JOIN masterorders_masterorderproduct masterorderproduct ON masterorderproduct.masterorder_id = masterorder.id LEFT JOIN basic_product product ON product.id = masterorder.product_id LEFT JOIN basic_company company ON company.id = masterorder.company_id LEFT JOIN technologies_technology technology ON technology.id = masterorder.technology_id LEFT JOIN masterorders_masterorderprogress progress ON progress.masterorder_id = masterorder.id AND progress.product_id = masterorder.product_id WHERE masterorder.masterordertype::text = '02oneProduct'::text;
 
-CREATE OR REPLACE VIEW masterorders_masterorderposition_manyproducts AS SELECT COALESCE(masterorderproduct.id, 0::integer), masterorderdefinition.name, masterorder.id::integer AS masterorderid, masterorderproduct.product_id::integer AS productid, masterorderproduct.id::integer AS masterorderproductid, masterorder.masterordertype, masterorder.name AS masterordername, masterorder.number, masterorder.deadline, masterorder.masterorderstate AS masterorderstatus, masterorderproduct.masterorderpositionstatus, COALESCE(masterorderproduct.masterorderquantity, 0::numeric) AS masterorderquantity, COALESCE((SELECT SUM(orders.plannedquantity)), 0::numeric) AS cumulatedmasterorderquantity, COALESCE((SELECT SUM(orders.donequantity)), 0::numeric) AS producedorderquantity, CASE WHEN (COALESCE(masterorderproduct.masterorderquantity, 0::numeric) - COALESCE((SELECT SUM(orders.donequantity)), 0::numeric)) > 0 THEN (COALESCE(masterorderproduct.masterorderquantity, 0::numeric)- COALESCE((SELECT SUM(orders.donequantity)), 0::numeric)) ELSE 0::numeric END AS lefttorelease, masterorderproduct.comments, product.number AS productnumber, product.name AS productname, product.unit, technology.number AS technologyname, company.name AS companyname, masterorder.active FROM masterorders_masterorder masterorder LEFT JOIN masterorders_masterorderdefinition masterorderdefinition ON masterorderdefinition.id = masterorder.masterorderdefinition_id LEFT JOIN masterorders_masterorderproduct masterorderproduct ON masterorderproduct.masterorder_id = masterorder.id LEFT JOIN basic_product product ON product.id = masterorderproduct.product_id LEFT JOIN basic_company company ON company.id = masterorder.company_id LEFT JOIN technologies_technology technology ON technology.id = masterorderproduct.technology_id LEFT JOIN orders_order orders ON orders.masterorder_id = masterorderproduct.masterorder_id AND orders.product_id = masterorderproduct.product_id WHERE masterorder.masterordertype = '03manyProducts' AND masterorderproduct.id IS NOT NULL GROUP BY masterorderdefinition.name, masterorder.id, masterorder.product_id, masterorderproduct.id, masterorder.masterordertype, masterorder.name, masterorder.deadline, masterorder.masterorderstate, masterorder.masterorderpositionstatus, masterorder.comments, product.number, product.name, product.unit, technology.number, company.name, masterorder.active;
+CREATE OR REPLACE VIEW masterorders_masterorderposition_manyproducts AS SELECT COALESCE(masterorderproduct.id, 0::integer), masterorderdefinition.name, masterorder.id::integer AS masterorderid, masterorderproduct.product_id::integer AS productid, masterorderproduct.id::integer AS masterorderproductid, masterorder.masterordertype, masterorder.name AS masterordername, masterorder.number, masterorder.deadline, masterorder.masterorderstate AS masterorderstatus, masterorderproduct.masterorderpositionstatus, COALESCE(masterorderproduct.masterorderquantity, 0::numeric) AS masterorderquantity, COALESCE(progress.plannedquantity, 0::numeric) AS cumulatedmasterorderquantity, COALESCE(progress.donequantity, 0::numeric) AS producedorderquantity, COALESCE(progress.inprogressquantity, 0::numeric) AS inprogressquantity, GREATEST(COALESCE(masterorderproduct.masterorderquantity, 0::numeric) - COALESCE(progress.donequantity, 0::numeric), 0::numeric) AS lefttorelease, masterorderproduct.comments, product.number AS productnumber, product.name AS productname, product.unit, technology.number AS technologyname, company.name AS companyname, masterorder.active FROM masterorders_masterorder masterorder LEFT JOIN masterorders_masterorderdefinition masterorderdefinition ON masterorderdefinition.id = masterorder.masterorderdefinition_id LEFT JOIN masterorders_masterorderproduct masterorderproduct ON masterorderproduct.masterorder_id = masterorder.id LEFT JOIN basic_product product ON product.id = masterorderproduct.product_id LEFT JOIN basic_company company ON company.id = masterorder.company_id LEFT JOIN technologies_technology technology ON technology.id = masterorderproduct.technology_id LEFT JOIN masterorders_masterorderprogress progress ON progress.masterorder_id = masterorderproduct.masterorder_id AND progress.product_id = masterorderproduct.product_id WHERE masterorder.masterordertype = '03manyProducts' AND masterorderproduct.id IS NOT NULL;
 
 CREATE OR REPLACE VIEW masterorders_masterorderpositiondto AS SELECT * FROM masterorders_masterorderposition_oneproduct UNION ALL SELECT * FROM masterorders_masterorderposition_manyproducts;
 
 -- end
 
+-- pallet number sequence
+
+CREATE SEQUENCE basic_palletnumber_number_seq;
+
+-- end
+
+-- operational task number sequence
+
+CREATE SEQUENCE operationaltasks_operationaltask_number_seq;
+
+-- end
+
+-- cost calculation number sequences
+
+CREATE SEQUENCE costcalculation_costcalculationbatch_number_seq;
+
+CREATE SEQUENCE costcalculation_costcalculation_number_seq;
+
+-- end
+
+-- factory structure version sequence
+
+CREATE SEQUENCE productionlines_factorystructure_version_seq;
+
+-- end
+
 -- production tracking number sequence
 
 CREATE SEQUENCE productioncounting_productiontracking_number_seq;
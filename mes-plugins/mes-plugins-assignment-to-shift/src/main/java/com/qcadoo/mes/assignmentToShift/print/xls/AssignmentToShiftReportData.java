@@ -0,0 +1,167 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.assignmentToShift.print.xls;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+/**
+ * Staff assignments of assignment to shift report, pivoted by day, occupation type and production line.
+ */
+public class AssignmentToShiftReportData {
+
+    private final Map<Date, List<Long>> assignmentToShiftIdsByDay;
+
+    private final ListMultimap<Long, StaffRow> staffsByAssignmentToShiftId;
+
+    public AssignmentToShiftReportData(final Map<Date, List<Long>> assignmentToShiftIdsByDay,
+            final ListMultimap<Long, StaffRow> staffsByAssignmentToShiftId) {
+        this.assignmentToShiftIdsByDay = assignmentToShiftIdsByDay;
+        this.staffsByAssignmentToShiftId = staffsByAssignmentToShiftId;
+    }
+
+    public boolean hasAssignmentsToShift(final Date day) {
+        return !getAssignmentToShiftIds(day).isEmpty();
+    }
+
+    public List<String> getWorkers(final Date day, final String occupationType, final Long productionLineId) {
+        List<String> workers = Lists.newArrayList();
+
+        for (StaffRow staff : getStaffs(day, occupationType, productionLineId)) {
+            StringBuilder worker = new StringBuilder();
+
+            worker.append(staff.getWorkerName());
+
+            if (StringUtils.isNotEmpty(staff.getDescription())) {
+                worker.append(", ");
+                worker.append(staff.getDescription());
+            }
+
+            workers.add(worker.toString());
+        }
+
+        return workers;
+    }
+
+    public List<String> getWorkersWithOtherCases(final Date day, final String occupationType, final Long productionLineId) {
+        List<String> workers = Lists.newArrayList();
+
+        for (StaffRow staff : getStaffs(day, occupationType, productionLineId)) {
+            StringBuilder worker = new StringBuilder();
+
+            worker.append(staff.getWorkerName());
+
+            if (StringUtils.isNotEmpty(staff.getDescription())) {
+                worker.append(", ");
+                worker.append(staff.getDescription());
+            }
+
+            if (StringUtils.isNotEmpty(staff.getOccupationTypeName())) {
+                worker.append(" - ");
+                worker.append(staff.getOccupationTypeName());
+            }
+
+            workers.add(worker.toString());
+        }
+
+        return workers;
+    }
+
+    private List<StaffRow> getStaffs(final Date day, final String occupationType, final Long productionLineId) {
+        List<StaffRow> staffs = Lists.newArrayList();
+
+        for (Long assignmentToShiftId : getAssignmentToShiftIds(day)) {
+            for (StaffRow staff : staffsByAssignmentToShiftId.get(assignmentToShiftId)) {
+                if (Objects.equals(occupationType, staff.getOccupationType())
+                        && Objects.equals(productionLineId, staff.getProductionLineId())) {
+                    staffs.add(staff);
+                }
+            }
+        }
+
+        return staffs;
+    }
+
+    private List<Long> getAssignmentToShiftIds(final Date day) {
+        List<Long> assignmentToShiftIds = assignmentToShiftIdsByDay.get(day);
+
+        if (assignmentToShiftIds == null) {
+            return Collections.emptyList();
+        }
+
+        return assignmentToShiftIds;
+    }
+
+    public static final class StaffRow {
+
+        private final String occupationType;
+
+        private final Long productionLineId;
+
+        private final String occupationTypeName;
+
+        private final String description;
+
+        private final String workerName;
+
+        public StaffRow(final String occupationType, final Long productionLineId, final String occupationTypeName,
+                final String description, final String name, final String surname) {
+            this.occupationType = occupationType;
+            this.productionLineId = productionLineId;
+            this.occupationTypeName = occupationTypeName;
+            this.description = description;
+            this.workerName = name + " " + surname;
+        }
+
+        public String getOccupationType() {
+            return occupationType;
+        }
+
+        public Long getProductionLineId() {
+            return productionLineId;
+        }
+
+        public String getOccupationTypeName() {
+            return occupationTypeName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getWorkerName() {
+            return workerName;
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.assignmentToShift.print.xls;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
+import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
+import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportFields;
+import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
+import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Builds data of assignment to shift report. Assignments to shift and staff assignments of the whole report range are read
+ * with two queries, current assignments are then resolved in memory for every day.
+ */
+@Service
+public class AssignmentToShiftReportDataBuilder {
+
+    private static final String L_STAFFS_QUERY = "SELECT staff.assignmenttoshift_id AS assignmentToShiftId, "
+            + "staff.occupationtype AS occupationType, staff.productionline_id AS productionLineId, "
+            + "staff.occupationtypename AS occupationTypeName, staff.description AS description, "
+            + "worker.name AS name, worker.surname AS surname "
+            + "FROM assignmenttoshift_staffassignmenttoshift staff "
+            + "JOIN assignmenttoshift_assignmenttoshift assignmenttoshift ON assignmenttoshift.id = staff.assignmenttoshift_id "
+            + "JOIN basic_staff worker ON worker.id = staff.worker_id "
+            + "WHERE staff.assignmenttoshift_id IN (:assignmentToShiftIds) "
+            + "AND ((assignmenttoshift.state = :correctedState AND staff.state = :correctedStaffState) "
+            + "OR (assignmenttoshift.state = :acceptedState AND staff.state = :acceptedStaffState)) ORDER BY staff.id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public AssignmentToShiftReportData build(final Entity assignmentToShiftReport, final List<DateTime> days) {
+        Entity shift = assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT);
+        Entity factory = assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY);
+
+        List<Entity> assignmentsToShift = getAssignmentsToShift(shift, factory, days.get(days.size() - 1).toDate());
+
+        Map<Date, List<Long>> assignmentToShiftIdsByDay = Maps.newHashMap();
+        Set<Long> assignmentToShiftIds = Sets.newHashSet();
+
+        for (DateTime day : days) {
+            Date date = day.toDate();
+
+            if (shiftsService.checkIfShiftWorkAtDate(date, shift)) {
+                List<Long> currentAssignmentToShiftIds = findCurrentAssignmentToShiftIds(date, assignmentsToShift);
+
+                assignmentToShiftIdsByDay.put(date, currentAssignmentToShiftIds);
+                assignmentToShiftIds.addAll(currentAssignmentToShiftIds);
+            }
+        }
+
+        return new AssignmentToShiftReportData(assignmentToShiftIdsByDay, getStaffs(assignmentToShiftIds));
+    }
+
+    private List<Entity> getAssignmentsToShift(final Entity shift, final Entity factory, final Date lastDay) {
+        return dataDefinitionService
+                .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
+                .find()
+                .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.SHIFT, shift))
+                .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.FACTORY, factory))
+                .add(SearchRestrictions.or(
+                        SearchRestrictions.eq(AssignmentToShiftFields.STATE, AssignmentToShiftState.ACCEPTED.getStringValue()),
+                        SearchRestrictions.eq(AssignmentToShiftFields.STATE, AssignmentToShiftState.CORRECTED.getStringValue())))
+                .add(SearchRestrictions.le(AssignmentToShiftFields.START_DATE, lastDay))
+                .addOrder(SearchOrders.desc(AssignmentToShiftFields.START_DATE)).list().getEntities();
+    }
+
+    /**
+     * For every crew (and for assignments without crew) finds assignments to shift with the latest start date, which is not
+     * after given date. Assignments to shift have to be sorted descending by start date.
+     */
+    private List<Long> findCurrentAssignmentToShiftIds(final Date date, final List<Entity> assignmentsToShift) {
+        Map<Long, Date> currentStartDates = Maps.newHashMap();
+        ListMultimap<Long, Long> currentAssignmentToShiftIds = ArrayListMultimap.create();
+
+        for (Entity assignmentToShift : assignmentsToShift) {
+            Date startDate = assignmentToShift.getDateField(AssignmentToShiftFields.START_DATE);
+
+            if (startDate.after(date)) {
+                continue;
+            }
+
+            Long crewId = getCrewId(assignmentToShift);
+
+            if (!currentStartDates.containsKey(crewId)) {
+                currentStartDates.put(crewId, startDate);
+            }
+
+            if (currentStartDates.get(crewId).compareTo(startDate) == 0) {
+                currentAssignmentToShiftIds.put(crewId, assignmentToShift.getId());
+            }
+        }
+
+        List<Long> assignmentToShiftIds = Lists.newArrayList();
+
+        for (Long crewId : Ordering.natural().nullsLast().sortedCopy(currentAssignmentToShiftIds.keySet())) {
+            assignmentToShiftIds.addAll(currentAssignmentToShiftIds.get(crewId));
+        }
+
+        return assignmentToShiftIds;
+    }
+
+    private Long getCrewId(final Entity assignmentToShift) {
+        Entity crew = assignmentToShift.getBelongsToField(AssignmentToShiftFields.CREW);
+
+        return (crew == null) ? null : crew.getId();
+    }
+
+    private ListMultimap<Long, AssignmentToShiftReportData.StaffRow> getStaffs(final Set<Long> assignmentToShiftIds) {
+        ListMultimap<Long, AssignmentToShiftReportData.StaffRow> staffs = ArrayListMultimap.create();
+
+        if (assignmentToShiftIds.isEmpty()) {
+            return staffs;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("assignmentToShiftIds", assignmentToShiftIds);
+        params.put("acceptedState", AssignmentToShiftState.ACCEPTED.getStringValue());
+        params.put("correctedState", AssignmentToShiftState.CORRECTED.getStringValue());
+        params.put("acceptedStaffState", StaffAssignmentToShiftState.ACCEPTED.getStringValue());
+        params.put("correctedStaffState", StaffAssignmentToShiftState.CORRECTED.getStringValue());
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_STAFFS_QUERY, params)) {
+            Number productionLineId = (Number) row.get("productionLineId");
+
+            staffs.put(((Number) row.get("assignmentToShiftId")).longValue(), new AssignmentToShiftReportData.StaffRow(
+                    (String) row.get("occupationType"), (productionLineId == null) ? null : productionLineId.longValue(),
+                    (String) row.get("occupationTypeName"), (String) row.get("description"), (String) row.get("name"),
+                    (String) row.get("surname")));
+        }
+
+        return staffs;
+    }
+
+}
@@ -36,7 +36,6 @@ import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportConstants;
@@ -67,6 +66,9 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
     @Autowired
     private AssignmentToShiftXlsStyleHelper assignmentToShiftXlsStyleHelper;
 
+    @Autowired
+    private AssignmentToShiftReportDataBuilder assignmentToShiftReportDataBuilder;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -152,31 +154,35 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         if (days != null) {
             int rowNum = 5;
 
+            AssignmentToShiftReportData reportData = assignmentToShiftReportDataBuilder.build(assignmentToShiftReport, days);
+
             List<Entity> occupationTypesWithoutTechnicalCode = getOccupationTypeDictionaryWithoutTechnicalCode();
             List<Entity> productionlines = assignmentToShiftXlsHelper.getProductionLines();
 
             if (!productionlines.isEmpty()) {
-                rowNum = fillColumnWithStaffForWorkOnLine(sheet, rowNum, assignmentToShiftReport, days, productionlines,
-                        getDictionaryItemWithProductionOnLine());
+                rowNum = fillColumnWithStaffForWorkOnLine(sheet, rowNum, assignmentToShiftReport, reportData, days,
+                        productionlines, getDictionaryItemWithProductionOnLine());
             }
 
             for (Entity dictionaryItem : occupationTypesWithoutTechnicalCode) {
-                rowNum = fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, dictionaryItem);
+                rowNum = fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, reportData, days,
+                        dictionaryItem);
             }
 
-            fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, getDictionaryItemWithOtherCase());
+            fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, reportData, days,
+                    getDictionaryItemWithOtherCase());
 
             sheet.autoSizeColumn(0);
         }
     }
 
     private int fillColumnWithStaffForWorkOnLine(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final List<Entity> productionLines, final Entity dictionaryItem) {
+            final AssignmentToShiftReportData reportData, final List<DateTime> days, final List<Entity> productionLines,
+            final Entity dictionaryItem) {
         if ((assignmentToShiftReport != null) && (days != null) && (productionLines != null)) {
             for (Entity productionLine : productionLines) {
                 int rowNumFromLastSection = rowNum;
-                int numberOfColumnsForWorkers = getNumberOfRowsForWorkers(assignmentToShiftReport, days, productionLine,
-                        dictionaryItem);
+                int numberOfColumnsForWorkers = getNumberOfRowsForWorkers(reportData, days, productionLine, dictionaryItem);
 
                 for (int i = 0; i < numberOfColumnsForWorkers; i++) {
                     HSSFRow row = sheet.createRow(rowNum);
@@ -208,34 +214,17 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
                 sheet.addMergedRegion(new CellRangeAddress(rowNumFromLastSection, rowNum - 1, 0, 0));
 
                 int columnNumber = 1;
-                int maxLength = 0;
 
                 for (DateTime day : days) {
-                    List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                            assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
-                            assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
+                    List<String> workers = reportData.getWorkers(day.toDate(),
+                            dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine.getId());
 
-                    if (assignmentsToShift == null || assignmentsToShift.isEmpty()) {
-                        columnNumber += 3;
-
-                        continue;
-                    }
-                    List<Entity> staffs = Lists.newArrayList();
-                    for (Entity assignmentToShift : assignmentsToShift) {
-                        List<Entity> staffsForDay = assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                                dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine);
-                        staffs.addAll(staffsForDay);
-                    }
-                    if (staffs.isEmpty()) {
+                    if (workers.isEmpty()) {
                         columnNumber += 3;
 
                         continue;
                     }
 
-                    String staffsValue = assignmentToShiftXlsHelper.getListOfWorkers(staffs);
-
-                    List<String> workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
-
                     int rowIndex = rowNumFromLastSection;
 
                     for (String worker : workers) {
@@ -243,15 +232,6 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
                         rowIndex++;
                     }
 
-                    if (workers.isEmpty()) {
-                        sheet.getRow(rowIndex).createCell(columnNumber).setCellValue(" ");
-
-                    }
-
-                    if (maxLength < staffsValue.length()) {
-                        maxLength = staffsValue.length();
-                    }
-
                     columnNumber += 3;
                 }
 
@@ -266,22 +246,13 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         return rowNum;
     }
 
-    private int getNumberOfRowsForWorkers(final Entity assignmentToShiftReport, final List<DateTime> days,
+    private int getNumberOfRowsForWorkers(final AssignmentToShiftReportData reportData, final List<DateTime> days,
             final Entity productionLine, final Entity dictionaryItem) {
         int numberOfWorkers = 0;
 
         for (DateTime day : days) {
-            List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT),
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-            List<Entity> staffs = Lists.newArrayList();
-            for (Entity assignmentToShift : assignmentsToShift) {
-                staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                        dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine));
-            }
-
-            List<String> workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
+            List<String> workers = reportData.getWorkers(day.toDate(), dictionaryItem.getStringField(DictionaryItemFields.NAME),
+                    productionLine.getId());
 
             if (workers.size() > numberOfWorkers) {
                 numberOfWorkers = workers.size();
@@ -291,29 +262,12 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         return numberOfWorkers;
     }
 
-    private int getNumberOfRowsForWorkersForOtherTypes(final Entity assignmentToShiftReport, final List<DateTime> days,
-            final Entity dictionaryItem) {
+    private int getNumberOfRowsForWorkersForOtherTypes(final AssignmentToShiftReportData reportData,
+            final List<DateTime> days, final Entity dictionaryItem) {
         int numberOfWorkers = 0;
 
         for (DateTime day : days) {
-            List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT),
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-            List<Entity> staffs = Lists.newArrayList();
-            for (Entity assignmentToShift : assignmentsToShift) {
-                staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                        dictionaryItem.getStringField(DictionaryItemFields.NAME), null));
-            }
-
-            List<String> workers = Lists.newArrayList();
-
-            if (OccupationType.OTHER_CASE.getStringValue()
-                    .equals(dictionaryItem.getStringField(DictionaryItemFields.TECHNICAL_CODE))) {
-                workers = assignmentToShiftXlsHelper.getListOfWorkerWithOtherCases(staffs);
-            } else {
-                workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
-            }
+            List<String> workers = getWorkersForOtherTypes(reportData, day, dictionaryItem);
 
             if (workers.size() > numberOfWorkers) {
                 numberOfWorkers = workers.size();
@@ -323,12 +277,23 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         return numberOfWorkers;
     }
 
+    private List<String> getWorkersForOtherTypes(final AssignmentToShiftReportData reportData, final DateTime day,
+            final Entity dictionaryItem) {
+        String occupationType = dictionaryItem.getStringField(DictionaryItemFields.NAME);
+
+        if (OccupationType.OTHER_CASE.getStringValue().equals(dictionaryItem.getStringField(DictionaryItemFields.TECHNICAL_CODE))) {
+            return reportData.getWorkersWithOtherCases(day.toDate(), occupationType, null);
+        } else {
+            return reportData.getWorkers(day.toDate(), occupationType, null);
+        }
+    }
+
     private int fillColumnWithStaffForOtherTypes(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final Entity dictionaryItem) {
+            final AssignmentToShiftReportData reportData, final List<DateTime> days, final Entity dictionaryItem) {
         if ((assignmentToShiftReport != null) && (days != null) && (dictionaryItem != null)) {
             int rowNumFromLastSection = rowNum;
 
-            int numberOfColumnsForWorkers = getNumberOfRowsForWorkersForOtherTypes(assignmentToShiftReport, days, dictionaryItem);
+            int numberOfColumnsForWorkers = getNumberOfRowsForWorkersForOtherTypes(reportData, days, dictionaryItem);
 
             for (int i = 0; i < numberOfColumnsForWorkers; i++) {
                 HSSFRow row = sheet.createRow(rowNum);
@@ -354,36 +319,14 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
             int columnNumber = 1;
 
             for (DateTime day : days) {
-                List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                        assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
-                        assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
+                List<String> workers = getWorkersForOtherTypes(reportData, day, dictionaryItem);
 
-                if (assignmentsToShift == null || assignmentsToShift.isEmpty()) {
-                    columnNumber += 3;
-
-                    continue;
-                }
-                List<Entity> staffs = Lists.newArrayList();
-                for (Entity assignmentToShift : assignmentsToShift) {
-                    staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                            dictionaryItem.getStringField(DictionaryItemFields.NAME), null));
-                }
-
-                if (staffs.isEmpty()) {
+                if (workers.isEmpty()) {
                     columnNumber += 3;
 
                     continue;
                 }
 
-                List<String> workers = Lists.newArrayList();
-
-                if (OccupationType.OTHER_CASE.getStringValue()
-                        .equals(dictionaryItem.getStringField(DictionaryItemFields.TECHNICAL_CODE))) {
-                    workers = assignmentToShiftXlsHelper.getListOfWorkerWithOtherCases(staffs);
-                } else {
-                    workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
-                }
-
                 int rowIndex = rowNumFromLastSection;
 
                 for (String worker : workers) {
@@ -391,11 +334,6 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
                     rowIndex++;
                 }
 
-                if (workers.isEmpty()) {
-                    sheet.getRow(rowIndex).createCell(columnNumber).setCellValue(" ");
-
-                }
-
                 columnNumber += 3;
             }
 
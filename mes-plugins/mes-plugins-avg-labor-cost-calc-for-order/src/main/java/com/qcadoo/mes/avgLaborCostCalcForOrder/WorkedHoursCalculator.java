@@ -0,0 +1,273 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.avgLaborCostCalcForOrder;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.assignmentToShift.constants.OccupationType;
+import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
+import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Calculates hours worked on production line by workers in given days. Shift timelines are computed once for the whole range,
+ * current assignments to shift and their staff are read with one query each, so the cost of calculation does not grow with
+ * number of days multiplied by number of shifts and workers.
+ */
+@Service
+public class WorkedHoursCalculator {
+
+    private static final String L_ASSIGNMENTS_TO_SHIFT_QUERY = "SELECT assignmenttoshift.id AS id, "
+            + "assignmenttoshift.shift_id AS shiftId, assignmenttoshift.startdate AS startDate "
+            + "FROM assignmenttoshift_assignmenttoshift assignmenttoshift WHERE assignmenttoshift.startdate <= :lastDay "
+            + "AND assignmenttoshift.startdate >= COALESCE((SELECT MAX(previous.startdate) "
+            + "FROM assignmenttoshift_assignmenttoshift previous WHERE previous.shift_id = assignmenttoshift.shift_id "
+            + "AND previous.startdate <= :firstDay), assignmenttoshift.startdate) "
+            + "ORDER BY assignmenttoshift.startdate DESC, assignmenttoshift.id";
+
+    private static final String L_STAFFS_QUERY = "SELECT staff.assignmenttoshift_id AS assignmentToShiftId, "
+            + "staff.worker_id AS workerId FROM assignmenttoshift_staffassignmenttoshift staff "
+            + "JOIN assignmenttoshift_assignmenttoshift assignmenttoshift ON assignmenttoshift.id = staff.assignmenttoshift_id "
+            + "WHERE staff.assignmenttoshift_id IN (:assignmentToShiftIds) AND staff.occupationtypeenum = :occupationType "
+            + "AND %s AND ((assignmenttoshift.state = :correctedState AND staff.state = :correctedStaffState) "
+            + "OR (assignmenttoshift.state IN (:acceptedStates) AND staff.state = :acceptedStaffState)) ORDER BY staff.id";
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns hours worked by workers assigned to given production line, in order of first occurrence of worker.
+     * 
+     * @param days
+     *            days of calculation, in ascending order
+     * @param shifts
+     *            shifts to take into account
+     * @param productionLine
+     *            production line
+     * @return worked hours per worker
+     */
+    public List<WorkerHours> calculate(final List<DateTime> days, final List<Entity> shifts, final Entity productionLine) {
+        if (days.isEmpty() || shifts.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, NavigableMap<Date, Long>> assignmentsToShiftByShift = getAssignmentsToShift(days);
+        Map<Long, BigDecimal> hoursByAssignmentToShift = Maps.newLinkedHashMap();
+
+        for (Entity shift : shifts) {
+            NavigableMap<Date, Long> assignmentsToShift = assignmentsToShiftByShift.get(shift.getId());
+
+            if (assignmentsToShift == null) {
+                continue;
+            }
+
+            List<BigDecimal> shiftTimeline = getShiftTimeline(shift, days);
+
+            for (int dayIndex = 0; dayIndex < days.size(); dayIndex++) {
+                BigDecimal hours = shiftTimeline.get(dayIndex);
+
+                if (hours == null) {
+                    continue;
+                }
+
+                Map.Entry<Date, Long> assignmentToShift = assignmentsToShift.floorEntry(days.get(dayIndex).toDate());
+
+                if (assignmentToShift == null) {
+                    continue;
+                }
+
+                Long assignmentToShiftId = assignmentToShift.getValue();
+                BigDecimal assignmentHours = hoursByAssignmentToShift.get(assignmentToShiftId);
+
+                hoursByAssignmentToShift.put(assignmentToShiftId, (assignmentHours == null) ? hours : assignmentHours.add(hours));
+            }
+        }
+
+        return getWorkersHours(hoursByAssignmentToShift, productionLine);
+    }
+
+    private Map<Long, NavigableMap<Date, Long>> getAssignmentsToShift(final List<DateTime> days) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("firstDay", days.get(0).toDate());
+        params.put("lastDay", days.get(days.size() - 1).toDate());
+
+        Map<Long, NavigableMap<Date, Long>> assignmentsToShiftByShift = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_ASSIGNMENTS_TO_SHIFT_QUERY, params)) {
+            Long shiftId = ((Number) row.get("shiftId")).longValue();
+            Date startDate = new Date(((Date) row.get("startDate")).getTime());
+
+            NavigableMap<Date, Long> assignmentsToShift = assignmentsToShiftByShift.get(shiftId);
+
+            if (assignmentsToShift == null) {
+                assignmentsToShift = Maps.newTreeMap();
+
+                assignmentsToShiftByShift.put(shiftId, assignmentsToShift);
+            }
+
+            if (!assignmentsToShift.containsKey(startDate)) {
+                assignmentsToShift.put(startDate, ((Number) row.get("id")).longValue());
+            }
+        }
+
+        return assignmentsToShiftByShift;
+    }
+
+    /**
+     * Returns worked hours of shift for each of given days, or null for days in which shift does not work.
+     */
+    private List<BigDecimal> getShiftTimeline(final Entity shift, final List<DateTime> days) {
+        Shift shiftTimetable = new Shift(shift);
+
+        List<ShiftHour> shiftHours = shiftsService.getHoursForShift(shift, days.get(0).toDate(),
+                days.get(days.size() - 1).plusDays(1).toDate());
+
+        List<BigDecimal> shiftTimeline = Lists.newArrayListWithCapacity(days.size());
+
+        for (DateTime day : days) {
+            if (shiftTimetable.worksAt(day.toLocalDate())) {
+                shiftTimeline.add(getWorkedHours(shiftHours, day.toDate(), day.plusDays(1).toDate()));
+            } else {
+                shiftTimeline.add(null);
+            }
+        }
+
+        return shiftTimeline;
+    }
+
+    private BigDecimal getWorkedHours(final List<ShiftHour> shiftHours, final Date dateFrom, final Date dateTo) {
+        BigDecimal hours = BigDecimal.ZERO;
+
+        for (ShiftHour shiftHour : shiftHours) {
+            if ((shiftHour.getDateTo().compareTo(dateFrom) <= 0) || (shiftHour.getDateFrom().compareTo(dateTo) >= 0)) {
+                continue;
+            }
+
+            Date from = shiftHour.getDateFrom().before(dateFrom) ? dateFrom : shiftHour.getDateFrom();
+            Date to = shiftHour.getDateTo().after(dateTo) ? dateTo : shiftHour.getDateTo();
+
+            hours = hours.add(new BigDecimal(new Period(new DateTime(from), new DateTime(to)).getHours()));
+        }
+
+        return hours;
+    }
+
+    private List<WorkerHours> getWorkersHours(final Map<Long, BigDecimal> hoursByAssignmentToShift, final Entity productionLine) {
+        if (hoursByAssignmentToShift.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("assignmentToShiftIds", hoursByAssignmentToShift.keySet());
+        params.put("occupationType", OccupationType.WORK_ON_LINE.getStringValue());
+        params.put("correctedState", AssignmentToShiftState.CORRECTED.getStringValue());
+        params.put("acceptedStates", Lists.newArrayList(AssignmentToShiftState.ACCEPTED.getStringValue(),
+                AssignmentToShiftState.DURING_CORRECTION.getStringValue()));
+        params.put("correctedStaffState", StaffAssignmentToShiftState.CORRECTED.getStringValue());
+        params.put("acceptedStaffState", StaffAssignmentToShiftState.ACCEPTED.getStringValue());
+
+        String productionLineCondition;
+
+        if (productionLine == null) {
+            productionLineCondition = "staff.productionline_id IS NULL";
+        } else {
+            productionLineCondition = "staff.productionline_id = :productionLineId";
+
+            params.put("productionLineId", productionLine.getId());
+        }
+
+        Map<Long, WorkerHours> workersHours = Maps.newLinkedHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(String.format(L_STAFFS_QUERY, productionLineCondition),
+                params)) {
+            Long workerId = ((Number) row.get("workerId")).longValue();
+            Long assignmentToShiftId = ((Number) row.get("assignmentToShiftId")).longValue();
+
+            WorkerHours workerHours = workersHours.get(workerId);
+
+            if (workerHours == null) {
+                workerHours = new WorkerHours(workerId, assignmentToShiftId);
+
+                workersHours.put(workerId, workerHours);
+            }
+
+            workerHours.addHours(hoursByAssignmentToShift.get(assignmentToShiftId));
+        }
+
+        return Lists.newArrayList(workersHours.values());
+    }
+
+    public static final class WorkerHours {
+
+        private final Long workerId;
+
+        private final Long assignmentToShiftId;
+
+        private BigDecimal hours = BigDecimal.ZERO;
+
+        private WorkerHours(final Long workerId, final Long assignmentToShiftId) {
+            this.workerId = workerId;
+            this.assignmentToShiftId = assignmentToShiftId;
+        }
+
+        private void addHours(final BigDecimal hours) {
+            this.hours = this.hours.add(hours);
+        }
+
+        public Long getWorkerId() {
+            return workerId;
+        }
+
+        public Long getAssignmentToShiftId() {
+            return assignmentToShiftId;
+        }
+
+        public BigDecimal getHours() {
+            return hours;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.List;
+
+public interface NumberAllocationService {
+
+    /**
+     * Allocates next free number of given table from its number sequence, named tableName_number_seq
+     *
+     * @param tableName
+     *            Table name
+     *
+     * @param digits
+     *            Minimal number of digits, number is padded with leading zeros
+     *
+     * @return number
+     *
+     */
+    String allocate(final String tableName, final int digits);
+
+    /**
+     * Allocates free numbers of given table from its number sequence, named tableName_number_seq. Numbers already present in
+     * table, e.g. entered by hand, are skipped, so numbers of block don't have to be contiguous.
+     *
+     * @param tableName
+     *            Table name
+     *
+     * @param digits
+     *            Minimal number of digits, numbers are padded with leading zeros
+     *
+     * @param quantity
+     *            Quantity
+     *
+     * @return numbers
+     *
+     */
+    List<String> allocate(final String tableName, final int digits, final int quantity);
+
+}
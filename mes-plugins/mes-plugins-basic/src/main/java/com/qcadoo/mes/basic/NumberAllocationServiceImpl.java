@@ -0,0 +1,88 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+@Service
+public class NumberAllocationServiceImpl implements NumberAllocationService {
+
+    private static final String L_NEXT_VALUES_QUERY = "SELECT nextval(CAST(:sequenceName AS regclass)) "
+            + "FROM generate_series(1, :quantity)";
+
+    private static final String L_TAKEN_NUMBERS_QUERY = "SELECT number FROM %s WHERE number IN (:numbers)";
+
+    private static final String L_SEQUENCE_SUFFIX = "_number_seq";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public String allocate(final String tableName, final int digits) {
+        return allocate(tableName, digits, 1).get(0);
+    }
+
+    @Override
+    public List<String> allocate(final String tableName, final int digits, final int quantity) {
+        List<String> numbers = Lists.newArrayListWithCapacity(Math.max(quantity, 0));
+
+        while (numbers.size() < quantity) {
+            List<String> candidates = Lists.newArrayList();
+
+            for (Long value : getNextValues(tableName, quantity - numbers.size())) {
+                candidates.add(String.format("%0" + digits + "d", value));
+            }
+
+            candidates.removeAll(getTakenNumbers(tableName, candidates));
+
+            numbers.addAll(candidates);
+        }
+
+        return numbers;
+    }
+
+    private List<Long> getNextValues(final String tableName, final int quantity) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("sequenceName", tableName + L_SEQUENCE_SUFFIX);
+        params.put("quantity", quantity);
+
+        return jdbcTemplate.queryForList(L_NEXT_VALUES_QUERY, params, Long.class);
+    }
+
+    private List<String> getTakenNumbers(final String tableName, final List<String> numbers) {
+        return jdbcTemplate.queryForList(String.format(L_TAKEN_NUMBERS_QUERY, tableName),
+                Collections.singletonMap("numbers", numbers), String.class);
+    }
+
+}
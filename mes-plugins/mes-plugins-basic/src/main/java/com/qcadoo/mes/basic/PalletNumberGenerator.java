@@ -23,38 +23,20 @@
  */
 package com.qcadoo.mes.basic;
 
-import java.util.LinkedList;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
-import com.qcadoo.mes.basic.constants.BasicConstants;
-import com.qcadoo.mes.basic.constants.PalletNumberFields;
-import com.qcadoo.view.api.ViewDefinitionState;
-import com.qcadoo.view.api.utils.NumberGeneratorService;
-import java.util.List;
-
 @Service
 public class PalletNumberGenerator {
 
-    private static final String L_FORM = "form";
+    private static final String L_PALLET_NUMBER_TABLE = "basic_palletnumber";
 
-    @Autowired
-    private NumberGeneratorService numberGeneratorService;
+    private static final int L_PALLET_NUMBER_DIGITS = 6;
 
-    /**
-     * Check if should insert number
-     *
-     * @param view
-     *            View
-     *
-     * @return true/false
-     *
-     */
-    public boolean checkIfShouldInsertNumber(final ViewDefinitionState view) {
-        return numberGeneratorService.checkIfShouldInsertNumber(view, L_FORM, PalletNumberFields.NUMBER);
-    }
+    @Autowired
+    private NumberAllocationService numberAllocationService;
 
     /**
      * Generate number
@@ -62,14 +44,11 @@ public class PalletNumberGenerator {
      * @return number
      */
     public String generate() {
-        return numberGeneratorService.generateNumber(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PALLET_NUMBER, 6);
+        return numberAllocationService.allocate(L_PALLET_NUMBER_TABLE, L_PALLET_NUMBER_DIGITS);
     }
 
     /**
-     * Lists pallet numbers
-     *
-     * @param firstNumber
-     *            First number
+     * Generate numbers
      *
      * @param quantity
      *            Quantity
@@ -77,20 +56,8 @@ public class PalletNumberGenerator {
      * @return palletNumbers
      *
      */
-    public List<String> list(final String firstNumber, final int quantity) {
-        LinkedList<String> palletNumbers = Lists.newLinkedList();
-
-        Integer highestNumber = Integer.valueOf(firstNumber);
-
-        for (int i = 0; i < quantity; i++) {
-            Integer nextNumber = highestNumber + i;
-
-            String palletNumber = String.format("%06d", nextNumber);
-
-            palletNumbers.add(palletNumber);
-        }
-
-        return palletNumbers;
+    public List<String> generate(final int quantity) {
+        return numberAllocationService.allocate(L_PALLET_NUMBER_TABLE, L_PALLET_NUMBER_DIGITS, quantity);
     }
 
 }
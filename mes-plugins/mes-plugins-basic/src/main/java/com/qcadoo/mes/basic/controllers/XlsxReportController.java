@@ -0,0 +1,119 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.XlsxReportService;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.plugin.api.PluginUtils;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+public class XlsxReportController {
+
+    private static final String L_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final String L_FILE_NAME = "fileName";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired(required = false)
+    private List<XlsxDocumentService> xlsxDocumentServices = Lists.newArrayList();
+
+    @RequestMapping(value = "/basic/savedReport/{plugin}/{model}.xlsx", method = RequestMethod.GET)
+    public void getSavedReport(@PathVariable("plugin") final String pluginIdentifier,
+            @PathVariable("model") final String modelName, @RequestParam("id") final Long id,
+            final HttpServletResponse response) throws IOException {
+        XlsxDocumentService xlsxDocumentService = getXlsxDocumentService(pluginIdentifier, modelName);
+
+        if (xlsxDocumentService == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        if (!securityService.hasCurrentUserRole(xlsxDocumentService.getAuthorizationRole())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+
+            return;
+        }
+
+        Entity entity = dataDefinitionService.get(pluginIdentifier, modelName).get(id);
+
+        if ((entity == null) || StringUtils.isBlank(entity.getStringField(L_FILE_NAME))) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File file = XlsxDocumentService.getFile(entity);
+
+        if (!file.exists()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        response.setContentType(L_CONTENT_TYPE);
+        response.setHeader("Content-disposition", "inline; filename=\"" + XlsxReportService.getDownloadFileName(entity) + "\"");
+        response.setContentLength((int) file.length());
+
+        Files.copy(file, response.getOutputStream());
+
+        response.flushBuffer();
+    }
+
+    private XlsxDocumentService getXlsxDocumentService(final String pluginIdentifier, final String modelName) {
+        for (XlsxDocumentService xlsxDocumentService : xlsxDocumentServices) {
+            if (xlsxDocumentService.getPluginIdentifier().equals(pluginIdentifier)
+                    && xlsxDocumentService.getModelName().equals(modelName) && PluginUtils.isEnabled(pluginIdentifier)) {
+                return xlsxDocumentService;
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -23,13 +23,9 @@
  */
 package com.qcadoo.mes.basic.hooks;
 
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.qcadoo.mes.basic.PalletNumberGenerator;
-import com.qcadoo.mes.basic.constants.PalletNumberFields;
 import com.qcadoo.view.api.ViewDefinitionState;
-import com.qcadoo.view.api.components.FieldComponent;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.WindowComponent;
 import com.qcadoo.view.api.ribbon.Ribbon;
@@ -47,26 +43,10 @@ public class PalletNumberDetailsHooks {
 
     public static final String L_PRINT_PALLET_NUMBER_REPORT = "printPalletNumberReport";
 
-    @Autowired
-    private PalletNumberGenerator palletNumberGenerator;
-
     public void onBeforeRender(final ViewDefinitionState view) {
-        generatePalletNumber(view);
-
         disableButtonsWhenNotSaved(view);
     }
 
-    private void generatePalletNumber(final ViewDefinitionState view) {
-        FieldComponent numberField = (FieldComponent) view.getComponentByReference(PalletNumberFields.NUMBER);
-
-        if (palletNumberGenerator.checkIfShouldInsertNumber(view)) {
-            String number = palletNumberGenerator.generate();
-
-            numberField.setFieldValue(number);
-            numberField.requestComponentUpdateState();
-        }
-    }
-
     public void disableButtonsWhenNotSaved(final ViewDefinitionState view) {
         FormComponent palletNumberForm = (FormComponent) view.getComponentByReference(L_FORM);
 
@@ -57,9 +57,7 @@ public class PalletNumberHelperHooks {
         List<Entity> palletNumbers = palletNumberHelper.getManyToManyField(PalletNumberHelperFields.PALLET_NUMBERS);
 
         if ((quantity != null) && palletNumbers.isEmpty()) {
-            String firstNumber = palletNumberGenerator.generate();
-
-            palletNumbers = palletNumbersService.createPalletNumbers(palletNumberGenerator.list(firstNumber, quantity));
+            palletNumbers = palletNumbersService.createPalletNumbers(palletNumberGenerator.generate(quantity));
 
             palletNumberHelper.setField(PalletNumberHelperFields.TEMPORARY, false);
 
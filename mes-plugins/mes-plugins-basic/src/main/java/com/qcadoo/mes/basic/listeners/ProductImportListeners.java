@@ -28,19 +28,18 @@ import com.google.common.io.Files;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.product.importing.ImportError;
 import com.qcadoo.mes.basic.product.importing.ImportStatus;
-import com.qcadoo.mes.basic.product.importing.XlsxImportService;
+import com.qcadoo.mes.basic.product.importing.StreamingXlsxImportService;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Comparator;
@@ -52,12 +51,12 @@ public class ProductImportListeners {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductImportListeners.class);
 
-    private final XlsxImportService xlsxImportService;
+    private final StreamingXlsxImportService xlsxImportService;
 
     private final TranslationService translationService;
 
     @Autowired
-    public ProductImportListeners(XlsxImportService xlsxImportService, TranslationService translationService) {
+    public ProductImportListeners(StreamingXlsxImportService xlsxImportService, TranslationService translationService) {
         this.xlsxImportService = xlsxImportService;
         this.translationService = translationService;
     }
@@ -93,10 +92,17 @@ public class ProductImportListeners {
         } else if (!Files.getFileExtension(filePath).equalsIgnoreCase("xlsx")) {
             state.addMessage(translatedErrorMessage("basic.productsImport.error.file.invalid"));
         } else {
-            try (FileInputStream fis = new FileInputStream(filePath)) {
-                final ImportStatus importStatus = xlsxImportService.importFrom(new XSSFWorkbook(fis));
+            try {
+                final ImportStatus importStatus = xlsxImportService.importFrom(new File(filePath));
                 if (importStatus.hasErrors()) {
                     // TODO Find out how to present more detailed error messages to the user
+                    if (0 < importStatus.getRowsImported()) {
+                        view.addMessage("basic.productsImport.partialSuccess.message",
+                                ComponentState.MessageType.INFO,
+                                false,
+                                String.valueOf(importStatus.getRowsImported()),
+                                String.valueOf(importStatus.getRowsProcessed()));
+                    }
                     prepareMessages(importStatus, view);
                 } else if (0 == importStatus.getRowsProcessed()) {
                     view.addMessage(translatedErrorMessage("basic.productsImport.error.file.empty"));
@@ -0,0 +1,137 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Base class for xlsx reports generated together with the pdf documents of report entities. Rows are written through a
+ * streaming workbook, so only a small window of rows is kept in memory and the sheet is not limited to the xls row count.
+ * Subclasses should therefore write rows in order and never go back to rows already written.
+ */
+public abstract class XlsxDocumentService {
+
+    public static final String EXTENSION = "xlsx";
+
+    private static final String L_FILE_NAME = "fileName";
+
+    private static final int L_ROW_ACCESS_WINDOW_SIZE = 100;
+
+    private static final int L_CHARACTER_WIDTH = 256;
+
+    public void generateDocument(final Entity entity, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(L_ROW_ACCESS_WINDOW_SIZE);
+
+        try {
+            Sheet sheet = workbook.createSheet(WorkbookUtil.createSafeSheetName(getReportTitle(locale)));
+
+            addHeader(sheet, locale, entity);
+            addSeries(sheet, entity);
+
+            try (OutputStream outputStream = new FileOutputStream(getFile(entity))) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    public static File getFile(final Entity entity) {
+        return new File(entity.getStringField(L_FILE_NAME) + "." + EXTENSION);
+    }
+
+    protected abstract void addHeader(final Sheet sheet, final Locale locale, final Entity entity);
+
+    protected abstract void addSeries(final Sheet sheet, final Entity entity);
+
+    public abstract String getReportTitle(final Locale locale);
+
+    /**
+     * @return identifier of plugin of report entity
+     */
+    public abstract String getPluginIdentifier();
+
+    /**
+     * @return name of model of report entity
+     */
+    public abstract String getModelName();
+
+    /**
+     * @return role user needs to download saved report
+     */
+    public abstract String getAuthorizationRole();
+
+    protected void addHeaderRow(final Sheet sheet, final List<String> headers) {
+        CellStyle style = createHeaderStyle(sheet.getWorkbook());
+        Row row = sheet.createRow(0);
+
+        for (int i = 0; i < headers.size(); i++) {
+            Cell cell = row.createCell(i);
+
+            cell.setCellValue(headers.get(i));
+            cell.setCellStyle(style);
+        }
+    }
+
+    /**
+     * Sets widths of the columns, given in characters. Columns can't be auto sized, because rows flushed to the disk are no
+     * longer available when the sheet is completed.
+     */
+    protected void setColumnWidths(final Sheet sheet, final int... widths) {
+        for (int i = 0; i < widths.length; i++) {
+            sheet.setColumnWidth(i, widths[i] * L_CHARACTER_WIDTH);
+        }
+    }
+
+    private CellStyle createHeaderStyle(final Workbook workbook) {
+        Font font = workbook.createFont();
+        font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+
+        CellStyle style = workbook.createCellStyle();
+        style.setFont(font);
+        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        style.setBorderBottom(CellStyle.BORDER_MEDIUM);
+
+        return style;
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print;
+
+import java.io.File;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.report.api.ReportService;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class XlsxReportService {
+
+    private static final String L_FILE_NAME = "fileName";
+
+    private static final String L_XLS = "xls";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ReportService reportService;
+
+    /**
+     * Redirects to the xlsx file generated by {@link XlsxDocumentService}. Reports generated before the xlsx documents were
+     * introduced only have the xls file, which is opened instead.
+     */
+    public void printGeneratedReport(final ViewDefinitionState view, final ComponentState state, final String pluginIdentifier,
+            final String modelName) {
+        Long entityId = getEntityId(state);
+
+        if (entityId == null) {
+            return;
+        }
+
+        Entity entity = dataDefinitionService.get(pluginIdentifier, modelName).get(entityId);
+
+        if (entity == null) {
+            state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
+        } else if (StringUtils.isBlank(entity.getStringField(L_FILE_NAME))) {
+            state.addMessage("basic.xlsxReport.documentsWereNotGenerated", MessageType.FAILURE);
+        } else if (XlsxDocumentService.getFile(entity).exists()) {
+            view.redirectTo(getSavedReportUrl(pluginIdentifier, modelName, entityId), true, false);
+        } else {
+            reportService.printGeneratedReport(view, state, new String[] { L_XLS, pluginIdentifier, modelName });
+        }
+    }
+
+    public String getSavedReportUrl(final String pluginIdentifier, final String modelName, final Long entityId) {
+        return "/basic/savedReport/" + pluginIdentifier + "/" + modelName + "." + XlsxDocumentService.EXTENSION + "?id="
+                + entityId;
+    }
+
+    public static String getDownloadFileName(final Entity entity) {
+        return new File(entity.getStringField(L_FILE_NAME)).getName() + "." + XlsxDocumentService.EXTENSION;
+    }
+
+    private Long getEntityId(final ComponentState state) {
+        if (state instanceof GridComponent) {
+            Set<Long> selectedEntitiesIds = ((GridComponent) state).getSelectedEntitiesIds();
+
+            return selectedEntitiesIds.isEmpty() ? null : selectedEntitiesIds.iterator().next();
+        }
+
+        return (Long) state.getFieldValue();
+    }
+
+}
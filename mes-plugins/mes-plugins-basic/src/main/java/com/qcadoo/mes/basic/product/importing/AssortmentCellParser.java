@@ -31,10 +31,13 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
-class AssortmentCellParser implements CellParser {
+class AssortmentCellParser implements PreloadingCellParser {
 
     private final DataDefinitionService dataDefinitionService;
 
@@ -53,6 +56,23 @@ class AssortmentCellParser implements CellParser {
                 .find()
                 .add(SearchRestrictions.eq("name", cellValue))
                 .uniqueResult();
+        accept(assortment, errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public CellParser preload() {
+        Map<String, Entity> assortmentsByName = getAssortmentDataDefinition()
+                .find()
+                .list()
+                .getEntities()
+                .stream()
+                .collect(Collectors.toMap(assortment -> assortment.getStringField("name"), Function.identity(),
+                        (first, duplicate) -> first));
+        return (cellValue, errorsAccessor, valueConsumer) ->
+                accept(assortmentsByName.get(cellValue), errorsAccessor, valueConsumer);
+    }
+
+    private void accept(Entity assortment, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer) {
         if (null != assortment) {
             valueConsumer.accept(assortment);
         } else {
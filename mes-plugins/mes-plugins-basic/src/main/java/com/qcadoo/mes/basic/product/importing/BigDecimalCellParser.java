@@ -35,7 +35,7 @@ import com.google.common.base.Optional;
 import com.qcadoo.commons.functional.Either;
 import com.qcadoo.model.api.BigDecimalUtils;
 
-class BigDecimalCellParser implements CellParser {
+class BigDecimalCellParser implements PreloadingCellParser {
 
     public static final String ERROR_CODE_INVALID_NUMERIC_FORMAT = "qcadooView.validate.field.error.invalidNumericFormat";
 
@@ -47,8 +47,18 @@ class BigDecimalCellParser implements CellParser {
 
     @Override
     public void parse(String cellValue, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer) {
+        parse(cellValue, LocaleContextHolder.getLocale(), errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public CellParser preload() {
+        // Locale is bound to the calling thread only, so it has to be resolved before rows are handed to import workers
         Locale locale = LocaleContextHolder.getLocale();
+        return (cellValue, errorsAccessor, valueConsumer) -> parse(cellValue, locale, errorsAccessor, valueConsumer);
+    }
 
+    private void parse(String cellValue, Locale locale, BindingErrorsAccessor errorsAccessor,
+            Consumer<Object> valueConsumer) {
         if (validateDecimalFormat(cellValue, locale, errorsAccessor)) {
             Either<Exception, Optional<BigDecimal>> either = BigDecimalUtils.tryParse(cellValue, locale);
 
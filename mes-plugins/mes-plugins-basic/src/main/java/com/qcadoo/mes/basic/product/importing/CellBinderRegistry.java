@@ -45,5 +45,23 @@ class CellBinderRegistry {
         return cellBinders[index];
     }
 
+    /**
+     * Returns copy of registered binders where each preloading parser is replaced by its preloaded counterpart. Result
+     * should be used for a single import only because it reflects the database state at the moment of the call.
+     */
+    CellBinder[] getPreloadedCellBinders() {
+        CellBinder[] preloadedCellBinders = new CellBinder[cellBinders.length];
+        for (int index = 0; index < cellBinders.length; index++) {
+            CellBinder cellBinder = cellBinders[index];
+            if (cellBinder.getCellParser() instanceof PreloadingCellParser) {
+                preloadedCellBinders[index] = cellBinder
+                        .withCellParser(((PreloadingCellParser) cellBinder.getCellParser()).preload());
+            } else {
+                preloadedCellBinders[index] = cellBinder;
+            }
+        }
+        return preloadedCellBinders;
+    }
+
 }
 
@@ -28,7 +28,9 @@ import com.qcadoo.model.api.Entity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.qcadoo.model.api.search.SearchRestrictions.*;
 
@@ -50,7 +52,7 @@ class DictionaryCellParsers {
         return new DictionaryParser("units");
     }
 
-    private class DictionaryParser implements CellParser {
+    private class DictionaryParser implements PreloadingCellParser {
 
         private final String dictionaryName;
 
@@ -65,9 +67,28 @@ class DictionaryCellParsers {
                     .find()
                     .add(and(eq("name", cellValue), belongsTo("dictionary", getProductCategoryDictionary())))
                     .uniqueResult();
-            if (null == categoryItem) {
+            validate(null == categoryItem ? null : categoryItem.isActive(), cellValue, errorsAccessor, valueConsumer);
+        }
+
+        @Override
+        public CellParser preload() {
+            Map<String, Boolean> activityByName = dataDefinitionService
+                    .get("qcadooModel", "dictionaryItem")
+                    .find()
+                    .add(belongsTo("dictionary", getProductCategoryDictionary()))
+                    .list()
+                    .getEntities()
+                    .stream()
+                    .collect(Collectors.toMap(item -> item.getStringField("name"), Entity::isActive, (a, b) -> a || b));
+            return (cellValue, errorsAccessor, valueConsumer) ->
+                    validate(activityByName.get(cellValue), cellValue, errorsAccessor, valueConsumer);
+        }
+
+        private void validate(Boolean active, String cellValue, BindingErrorsAccessor errorsAccessor,
+                              Consumer<Object> valueConsumer) {
+            if (null == active) {
                 errorsAccessor.addError("qcadooView.validate.field.error.invalidDictionaryItem");
-            } else if (!categoryItem.isActive()) {
+            } else if (!active) {
                 errorsAccessor.addError("basic.productsImport.error.field.inactiveDictionaryItem");
             } else {
                 valueConsumer.accept(cellValue);
@@ -31,11 +31,14 @@ import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component
-class GlobalTypeOfMaterialCellParser implements CellParser {
+class GlobalTypeOfMaterialCellParser implements PreloadingCellParser {
 
     private final TranslationService translationService;
 
@@ -60,4 +63,26 @@ class GlobalTypeOfMaterialCellParser implements CellParser {
             }
         }
     }
+
+    @Override
+    public CellParser preload() {
+        // Translations are resolved here because locale is bound to the calling thread only
+        Locale locale = LocaleContextHolder.getLocale();
+        Map<String, String> valuesByTranslation = Arrays.stream(GlobalTypeOfMaterial.values())
+                .collect(Collectors.toMap(
+                        gtom -> translationService.translate(
+                                "basic.product.globalTypeOfMaterial.value." + gtom.getStringValue(), locale),
+                        GlobalTypeOfMaterial::getStringValue,
+                        (a, b) -> a));
+        return (cellValue, errorsAccessor, valueConsumer) -> {
+            if (!StringUtils.isBlank(cellValue)) {
+                String value = valuesByTranslation.get(cellValue);
+                if (null != value) {
+                    valueConsumer.accept(value);
+                } else {
+                    errorsAccessor.addError("qcadooView.validate.field.error.invalidDictionaryItem");
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Component
+class ImportChunkPersister {
+
+    /**
+     * Validates already bound rows. It's called by import workers, each one gets its own read only transaction, so that
+     * validators which query the database can run in parallel to saving previous chunks.
+     */
+    @Transactional(readOnly = true)
+    public void validate(final List<RowProcessor> rowProcessors) {
+        rowProcessors.forEach(RowProcessor::validate);
+    }
+
+    /**
+     * Saves already bound and validated rows in a separate transaction. When any of them can't be saved the whole
+     * transaction is rolled back and the rows which failed are returned, so that the caller can retry with the remaining
+     * ones.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<RowProcessor> persist(final List<RowProcessor> rowProcessors) {
+        List<RowProcessor> failedRowProcessors = rowProcessors.stream().filter(rowProcessor -> !rowProcessor.process())
+                .collect(Collectors.toList());
+        if (!failedRowProcessors.isEmpty()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+        return failedRowProcessors;
+    }
+
+}
@@ -32,10 +32,13 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
-class ProducerCellParser implements CellParser {
+class ProducerCellParser implements PreloadingCellParser {
 
     private final DataDefinitionService dataDefinitionService;
 
@@ -54,6 +57,23 @@ class ProducerCellParser implements CellParser {
                 .find()
                 .add(SearchRestrictions.eq(CompanyFields.NUMBER, cellValue))
                 .uniqueResult();
+        accept(companyCandidate, errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public CellParser preload() {
+        Map<String, Entity> companiesByNumber = getCompanyDataDefinition()
+                .find()
+                .list()
+                .getEntities()
+                .stream()
+                .collect(Collectors.toMap(company -> company.getStringField(CompanyFields.NUMBER), Function.identity(),
+                        (first, duplicate) -> first));
+        return (cellValue, errorsAccessor, valueConsumer) ->
+                accept(companiesByNumber.get(cellValue), errorsAccessor, valueConsumer);
+    }
+
+    private void accept(Entity companyCandidate, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer) {
         if (null != companyCandidate) {
             valueConsumer.accept(companyCandidate);
         } else {
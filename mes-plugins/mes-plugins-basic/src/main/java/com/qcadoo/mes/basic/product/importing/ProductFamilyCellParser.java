@@ -28,17 +28,22 @@ import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.qcadoo.mes.basic.constants.ProductFamilyElementType.PRODUCTS_FAMILY;
 import static com.qcadoo.mes.basic.constants.ProductFields.ENTITY_TYPE;
 
 @Component
-class ProductFamilyCellParser implements CellParser {
+class ProductFamilyCellParser implements PreloadingCellParser {
 
     private final DataDefinitionService dataDefinitionService;
 
@@ -66,4 +71,36 @@ class ProductFamilyCellParser implements CellParser {
             valueConsumer.accept(familyProductCandidate);
         }
     }
+
+    @Override
+    public CellParser preload() {
+        Map<String, Entity> familiesByNumber = getProductDataDefinition()
+                .find()
+                .add(SearchRestrictions.eq(ENTITY_TYPE, PRODUCTS_FAMILY.getStringValue()))
+                .list()
+                .getEntities()
+                .stream()
+                .collect(Collectors.toMap(family -> family.getStringField(ProductFields.NUMBER), Function.identity(),
+                        (first, duplicate) -> first));
+        Set<String> otherProductNumbers = getProductDataDefinition()
+                .find()
+                .add(SearchRestrictions.ne(ENTITY_TYPE, PRODUCTS_FAMILY.getStringValue()))
+                .setProjection(SearchProjections.alias(SearchProjections.field(ProductFields.NUMBER), ProductFields.NUMBER))
+                .list()
+                .getEntities()
+                .stream()
+                .map(projection -> projection.getStringField(ProductFields.NUMBER))
+                .collect(Collectors.toSet());
+
+        return (cellValue, errorsAccessor, valueConsumer) -> {
+            Entity family = familiesByNumber.get(cellValue);
+            if (null != family) {
+                valueConsumer.accept(family);
+            } else if (otherProductNumbers.contains(cellValue)) {
+                errorsAccessor.addError("basic.productsImport.error.field.notFamily");
+            } else {
+                errorsAccessor.addError("qcadooView.validate.field.error.lookupCodeNotFound");
+            }
+        };
+    }
 }
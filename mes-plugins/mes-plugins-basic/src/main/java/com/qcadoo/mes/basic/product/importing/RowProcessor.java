@@ -23,13 +23,26 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
-import org.apache.poi.ss.usermodel.Cell;
+import java.util.List;
 
 public interface RowProcessor {
 
     boolean isEmpty();
 
-    void append(Cell cell);
+    void append(String cellValue);
 
-    void process();
+    /**
+     * Runs model validators against the bound entity without saving it, so that rows which are known to be invalid can be
+     * left out before their chunk is saved.
+     */
+    void validate();
+
+    boolean hasErrors();
+
+    /**
+     * Saves the bound entity. Returns <code>false</code> when it wasn't saved, the reasons are added to the row errors.
+     */
+    boolean process();
+
+    List<ImportError> getErrors();
 }
@@ -30,7 +30,6 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.validators.ErrorMessage;
-import org.apache.poi.ss.usermodel.Cell;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -44,12 +43,9 @@ class RowProcessorFactory {
 
     private final DataDefinitionService dataDefinitionService;
 
-    private final CellBinderRegistry cellBinderRegistry;
-
     @Autowired
-    RowProcessorFactory(DataDefinitionService dataDefinitionService, CellBinderRegistry cellBinderRegistry) {
+    RowProcessorFactory(DataDefinitionService dataDefinitionService) {
         this.dataDefinitionService = dataDefinitionService;
-        this.cellBinderRegistry = cellBinderRegistry;
     }
 
 
@@ -65,24 +61,28 @@ class RowProcessorFactory {
         return entity;
     }
 
-    RowProcessor create(final ImportStatus importStatus, int rowIndex) {
-        return new RowProcessorImpl(importStatus, createEntityWithDefaultValues(), rowIndex);
+    /**
+     * Creates processor which binds cells using given binders. Rows with binding or validation errors are never saved, so
+     * that a row can't be persisted with partially bound values.
+     */
+    RowProcessor create(int rowIndex, final CellBinder[] cellBinders) {
+        return new RowProcessorImpl(createEntityWithDefaultValues(), rowIndex, cellBinders);
     }
 
     private class RowProcessorImpl implements RowProcessor {
 
-        private final ImportStatus importStatus;
         private final Entity entity;
         private final int currentRow;
+        private final CellBinder[] cellBinders;
         private boolean finished;
         private int index;
         private boolean empty = true;
         private List<ImportError> rowErrors = new ArrayList<>();
 
-        RowProcessorImpl(ImportStatus importStatus, Entity entity, int rowIndx) {
-            this.importStatus = importStatus;
+        RowProcessorImpl(Entity entity, int rowIndx, CellBinder[] cellBinders) {
             this.entity = entity;
             this.currentRow = rowIndx;
+            this.cellBinders = cellBinders;
         }
 
         @Override
@@ -91,14 +91,14 @@ class RowProcessorFactory {
         }
 
         @Override
-        public void append(final Cell cell) {
+        public void append(final String cellValue) {
             assureNotProcessedYet();
-            if (null != cell) {
+            if (null != cellValue) {
                 empty = false;
             }
-            final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+            final CellBinder binder = cellBinders[index++];
             binder.bind(
-                    cell,
+                    cellValue,
                     entity,
                     errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode))
             );
@@ -111,23 +111,38 @@ class RowProcessorFactory {
         }
 
         @Override
-        public void process() {
+        public void validate() {
             assureNotProcessedYet();
+            if (rowErrors.isEmpty() && !getProductDataDefinition().callValidators(entity)) {
+                addEntityErrors(entity);
+            }
+        }
+
+        @Override
+        public boolean hasErrors() {
+            return !rowErrors.isEmpty();
+        }
+
+        @Override
+        public boolean process() {
             finished = true;
-            importStatus.incrementRowsProcessedCounter();
+            if (!rowErrors.isEmpty()) {
+                return false;
+            }
             final Entity savedEntity = getProductDataDefinition().save(entity);
-            populateImportStatusWithBindingErrors();
-            populateImportStatusWithEntityErrors(savedEntity);
+            addEntityErrors(savedEntity);
+            return rowErrors.isEmpty() && savedEntity.isValid();
         }
 
-        private void populateImportStatusWithBindingErrors() {
-            rowErrors.forEach(importStatus::addError);
+        @Override
+        public List<ImportError> getErrors() {
+            return rowErrors;
         }
 
-        private void populateImportStatusWithEntityErrors(Entity entity) {
+        private void addEntityErrors(Entity entity) {
             if (!entity.isValid()) {
                 for (Map.Entry<String, ErrorMessage> entry : entity.getErrors().entrySet()) {
-                    importStatus.addError(
+                    rowErrors.add(
                             new ImportError(
                                     currentRow, entry.getKey(), entry.getValue().getMessage(), entry.getValue().getVars())
                     );
@@ -0,0 +1,202 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+/**
+ * Imports products from xlsx files of any size. The sheet is read with SAX parser, rows are bound to entities by worker
+ * threads of the productsImportExecutor pool (on behalf of the importing user) using lookups preloaded once per import and
+ * validated by the same threads, while the calling thread saves
+ * previously validated chunks, each one in its own transaction. The import isn't all-or-nothing - each row which couldn't
+ * be bound or saved is reported in {@link ImportStatus} and the remaining ones are imported. Rows are counted as imported
+ * only after their chunk has been committed.
+ */
+@Service
+public class StreamingXlsxImportService {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final int MAX_PENDING_CHUNKS = 8;
+
+    private final RowProcessorFactory rowProcessorFactory;
+
+    private final CellBinderRegistry cellBinderRegistry;
+
+    private final ImportChunkPersister importChunkPersister;
+
+    private final TaskExecutor productsImportExecutor;
+
+    @Autowired
+    public StreamingXlsxImportService(RowProcessorFactory rowProcessorFactory, CellBinderRegistry cellBinderRegistry,
+                                      ImportChunkPersister importChunkPersister,
+                                      @Qualifier("productsImportExecutor") TaskExecutor productsImportExecutor) {
+        this.rowProcessorFactory = rowProcessorFactory;
+        this.cellBinderRegistry = cellBinderRegistry;
+        this.importChunkPersister = importChunkPersister;
+        this.productsImportExecutor = productsImportExecutor;
+    }
+
+    public ImportStatus importFrom(final File file) throws IOException {
+        ImportStatus importStatus = new ImportStatus();
+        CellBinder[] cellBinders = cellBinderRegistry.getPreloadedCellBinders();
+
+        Locale locale = LocaleContextHolder.getLocale();
+        XlsxSheetReader sheetReader = new XlsxSheetReader(new DataFormatter(null == locale ? Locale.getDefault() : locale));
+
+        Executor executor = withCallerContext(productsImportExecutor);
+        Queue<Future<List<RowProcessor>>> pendingChunks = new ArrayDeque<>();
+        try {
+            List<RowProcessor> chunk = Lists.newArrayListWithCapacity(CHUNK_SIZE);
+            List<String[]> chunkValues = Lists.newArrayListWithCapacity(CHUNK_SIZE);
+
+            sheetReader.read(file, (rowIndex, cellValues) -> {
+                chunk.add(rowProcessorFactory.create(rowIndex, cellBinders));
+                chunkValues.add(cellValues);
+                if (chunk.size() == CHUNK_SIZE) {
+                    pendingChunks.add(submit(executor, bindTask(Lists.newArrayList(chunk), Lists.newArrayList(chunkValues))));
+                    chunk.clear();
+                    chunkValues.clear();
+                }
+                if (pendingChunks.size() >= MAX_PENDING_CHUNKS) {
+                    persist(await(pendingChunks.poll()), importStatus);
+                }
+            });
+            if (!chunk.isEmpty()) {
+                pendingChunks.add(submit(executor, bindTask(chunk, chunkValues)));
+            }
+            while (!pendingChunks.isEmpty()) {
+                persist(await(pendingChunks.poll()), importStatus);
+            }
+        } finally {
+            pendingChunks.forEach(pendingChunk -> pendingChunk.cancel(true));
+        }
+        return importStatus;
+    }
+
+    private Future<List<RowProcessor>> submit(final Executor executor, final Callable<List<RowProcessor>> task) {
+        FutureTask<List<RowProcessor>> future = new FutureTask<>(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Workers bind and validate rows on behalf of the importing user, so security and locale contexts of the calling thread
+     * are set for each task.
+     */
+    private Executor withCallerContext(final Executor executor) {
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+
+        return command -> executor.execute(() -> {
+            SecurityContextHolder.setContext(securityContext);
+            LocaleContextHolder.setLocaleContext(localeContext);
+
+            try {
+                command.run();
+            } finally {
+                LocaleContextHolder.resetLocaleContext();
+                SecurityContextHolder.clearContext();
+            }
+        });
+    }
+
+    private Callable<List<RowProcessor>> bindTask(final List<RowProcessor> rowProcessors,
+                                                                       final List<String[]> rowsValues) {
+        return () -> {
+            for (int index = 0; index < rowProcessors.size(); index++) {
+                RowProcessor rowProcessor = rowProcessors.get(index);
+                for (String cellValue : rowsValues.get(index)) {
+                    rowProcessor.append(cellValue);
+                }
+            }
+            importChunkPersister.validate(rowProcessors);
+            return rowProcessors;
+        };
+    }
+
+    private void persist(final List<RowProcessor> rowProcessors, final ImportStatus importStatus) {
+        List<RowProcessor> rowProcessorsToSave = rowProcessors.stream().filter(rowProcessor -> !rowProcessor.hasErrors())
+                .collect(Collectors.toList());
+        while (!rowProcessorsToSave.isEmpty()) {
+            List<RowProcessor> failedRowProcessors = importChunkPersister.persist(rowProcessorsToSave);
+            if (failedRowProcessors.isEmpty()) {
+                break;
+            }
+            // The chunk was rolled back, so none of its rows were imported - retry without the ones which failed
+            rowProcessorsToSave.removeAll(failedRowProcessors);
+        }
+        Set<RowProcessor> importedRowProcessors = Sets.newHashSet(rowProcessorsToSave);
+        for (RowProcessor rowProcessor : rowProcessors) {
+            importStatus.incrementRowsProcessedCounter();
+            rowProcessor.getErrors().forEach(importStatus::addError);
+            if (importedRowProcessors.contains(rowProcessor)) {
+                importStatus.incrementRowsImportedCounter();
+            }
+        }
+    }
+
+    private List<RowProcessor> await(final Future<List<RowProcessor>> boundChunk) {
+        try {
+            return boundChunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Products import was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Products import failed", cause);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Reads first sheet of the xlsx file using SAX parser, so that only the current row is kept in memory. Reading stops at the
+ * first missing or blank row.
+ */
+class XlsxSheetReader {
+
+    interface RowHandler {
+
+        void handle(int rowIndex, String[] cellValues);
+    }
+
+    private final DataFormatter dataFormatter;
+
+    XlsxSheetReader(DataFormatter dataFormatter) {
+        this.dataFormatter = dataFormatter;
+    }
+
+    void read(final File file, final RowHandler rowHandler) throws IOException {
+        try (OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            StylesTable styles = xssfReader.getStylesTable();
+
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(styles, sharedStrings,
+                        new RowCollector(rowHandler), dataFormatter, false));
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Couldn't read spreadsheet " + file.getName(), e);
+        }
+    }
+
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowHandler rowHandler;
+
+        private int expectedRowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX;
+
+        private boolean finished;
+
+        private String[] cellValues;
+
+        RowCollector(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            if (finished || rowNum < SpreadsheetSchemaInfo.START_ROW_INDEX) {
+                cellValues = null;
+                return;
+            }
+            if (rowNum != expectedRowIndex) { // This whole row is empty
+                finished = true;
+                cellValues = null;
+                return;
+            }
+            cellValues = new String[SpreadsheetSchemaInfo.COLUMN_NUMBER];
+        }
+
+        @Override
+        public void endRow() {
+            if (null == cellValues) {
+                return;
+            }
+            boolean empty = true;
+            for (String cellValue : cellValues) {
+                if (null != cellValue) {
+                    empty = false;
+                    break;
+                }
+            }
+            if (empty) {
+                finished = true;
+            } else {
+                rowHandler.handle(expectedRowIndex++, cellValues);
+            }
+            cellValues = null;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue) {
+            if (null == cellValues || StringUtils.isBlank(formattedValue)) {
+                return;
+            }
+            int colIndex = new CellReference(cellReference).getCol();
+            if (colIndex < SpreadsheetSchemaInfo.COLUMN_NUMBER) {
+                cellValues[colIndex] = formattedValue.trim();
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // headers and footers are not a part of the schema
+        }
+    }
+
+}
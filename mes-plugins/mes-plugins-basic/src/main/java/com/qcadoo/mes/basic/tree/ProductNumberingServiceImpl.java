@@ -31,12 +31,15 @@ import static com.qcadoo.mes.basic.constants.ProductFields.PARENT;
 import static com.qcadoo.mes.basic.constants.ProductFields.PRODUCT_FAMILY_CHILDRENS;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -47,18 +50,39 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 @Service
 public class ProductNumberingServiceImpl implements ProductNumberingService {
 
+    private static final String L_DOT = ".";
+
+    private static final String L_UPDATE_DESCENDANTS_NODE_NUMBERS = "UPDATE basic_product "
+            + "SET nodenumber = :newNodeNumber || substring(nodenumber from :oldNodeNumberLength + 1) "
+            + "WHERE nodenumber LIKE :oldNodeNumberPrefix";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Override
     public Entity getRoot(final Entity product) {
         Entity parent = product.getBelongsToField(PARENT);
 
         if (parent == null) {
             return product;
-        } else {
-            return getRoot(parent);
         }
+
+        String nodeNumber = product.getStringField(NODE_NUMBER);
+
+        if (StringUtils.isNotEmpty(nodeNumber)) {
+            Entity root = getProductDD().find().add(SearchRestrictions.isNull(PARENT))
+                    .add(SearchRestrictions.eq(NODE_NUMBER, StringUtils.substringBefore(nodeNumber, L_DOT))).setMaxResults(1)
+                    .uniqueResult();
+
+            if (root != null) {
+                return root;
+            }
+        }
+
+        return getRoot(parent);
     }
 
     @Override
@@ -109,8 +133,10 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
         String entityType = product.getStringField(ENTITY_TYPE);
 
         if (product.getId() != null) {
-            if (checkIfParentHasChanged(product, parent)) {
-                if (checkIfEntityTypeHasChanged(product, entityType)) {
+            Entity existingProduct = getProductDD().get(product.getId());
+
+            if (checkIfParentHasChanged(existingProduct, parent)) {
+                if (checkIfEntityTypeHasChanged(existingProduct, entityType)) {
                     if (PRODUCTS_FAMILY.getStringValue().equals(entityType)) {
                         generateNodeNumberForProductsFamily(product, parent);
                     } else if (PARTICULAR_PRODUCT.getStringValue().equals(entityType)) {
@@ -122,13 +148,13 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
                     if (PRODUCTS_FAMILY.getStringValue().equals(entityType)) {
                         generateNodeNumberForProductsFamily(product, parent);
 
-                        updateProductFamilyChildrensNodeNumbers(product, product);
+                        moveProductFamilyChildrens(product, existingProduct.getStringField(NODE_NUMBER));
                     } else if (PARTICULAR_PRODUCT.getStringValue().equals(entityType)) {
                         generateNodeNumberForParticularProduct(product, parent);
                     }
                 }
             } else {
-                if (checkIfEntityTypeHasChanged(product, entityType)) {
+                if (checkIfEntityTypeHasChanged(existingProduct, entityType)) {
                     if (PRODUCTS_FAMILY.getStringValue().equals(entityType)) {
                         generateNodeNumberForProductsFamily(product, parent);
                     } else if (PARTICULAR_PRODUCT.getStringValue().equals(entityType)) {
@@ -143,12 +169,44 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
         List<Entity> productFamilyChildrens = product.getHasManyField(PRODUCT_FAMILY_CHILDRENS);
 
         for (Entity productFamilyChildren : productFamilyChildrens) {
+            String oldNodeNumber = productFamilyChildren.getStringField(NODE_NUMBER);
+
             generateNodeNumber(productFamilyChildren, parent, true);
 
-            updateProductFamilyChildrensNodeNumbers(productFamilyChildren, productFamilyChildren);
+            if (PRODUCTS_FAMILY.getStringValue().equals(productFamilyChildren.getStringField(ENTITY_TYPE))) {
+                moveProductFamilyChildrens(productFamilyChildren, oldNodeNumber);
+            } else {
+                updateProductFamilyChildrensNodeNumbers(productFamilyChildren, productFamilyChildren);
+            }
         }
     }
 
+    /**
+     * Node numbers are paths of ancestors' numbers, so all descendants of moved products family get new node numbers with one
+     * update, replacing the prefix of old node number of products family with the new one.
+     */
+    private void moveProductFamilyChildrens(final Entity productsFamily, final String oldNodeNumber) {
+        String newNodeNumber = productsFamily.getStringField(NODE_NUMBER);
+
+        if (StringUtils.isEmpty(oldNodeNumber) || StringUtils.isEmpty(newNodeNumber)) {
+            updateProductFamilyChildrensNodeNumbers(productsFamily, productsFamily);
+
+            return;
+        }
+
+        if (oldNodeNumber.equals(newNodeNumber)) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("newNodeNumber", newNodeNumber);
+        params.put("oldNodeNumberLength", oldNodeNumber.length());
+        params.put("oldNodeNumberPrefix", oldNodeNumber + L_DOT + "%");
+
+        jdbcTemplate.update(L_UPDATE_DESCENDANTS_NODE_NUMBERS, params);
+    }
+
     private String getNextRootNodeNumber() {
         Entity product = getProductDD().find().add(SearchRestrictions.isNull(PARENT))
                 .add(SearchRestrictions.isNotNull(NODE_NUMBER)).addOrder(SearchOrders.desc(NODE_NUMBER)).setMaxResults(1)
@@ -209,9 +267,7 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
         return getProductDD().find().add(SearchRestrictions.eq(NODE_NUMBER, nodeNumber)).setMaxResults(1).uniqueResult() != null;
     }
 
-    private boolean checkIfParentHasChanged(final Entity product, final Entity parent) {
-        Entity existingProduct = getProductDD().get(product.getId());
-
+    private boolean checkIfParentHasChanged(final Entity existingProduct, final Entity parent) {
         Entity existingParent = existingProduct.getBelongsToField(PARENT);
 
         if ((parent == null) && (existingParent == null)) {
@@ -223,9 +279,7 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
         }
     }
 
-    private boolean checkIfEntityTypeHasChanged(final Entity product, final String entityType) {
-        Entity existingProduct = getProductDD().get(product.getId());
-
+    private boolean checkIfEntityTypeHasChanged(final Entity existingProduct, final String entityType) {
         String existingEntityType = existingProduct.getStringField(ENTITY_TYPE);
 
         return !existingEntityType.equals(entityType);
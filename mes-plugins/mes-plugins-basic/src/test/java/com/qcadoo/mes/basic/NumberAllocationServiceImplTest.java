@@ -0,0 +1,158 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class NumberAllocationServiceImplTest {
+
+    private static final String L_TABLE_NAME = "basic_palletnumber";
+
+    private NumberAllocationService numberAllocationService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private long sequenceValue;
+
+    private List<String> takenNumbers;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        numberAllocationService = new NumberAllocationServiceImpl();
+
+        ReflectionTestUtils.setField(numberAllocationService, "jdbcTemplate", jdbcTemplate);
+
+        sequenceValue = 0;
+        takenNumbers = Lists.newArrayList();
+
+        stubSequence();
+        stubTakenNumbers();
+    }
+
+    @Test
+    public final void shouldFormatNumberWithLeadingZeros() {
+        // when
+        String number = numberAllocationService.allocate(L_TABLE_NAME, 6);
+
+        // then
+        assertEquals("000001", number);
+    }
+
+    @Test
+    public final void shouldSkipNumbersAlreadyTaken() {
+        // given
+        takenNumbers.add("000002");
+        takenNumbers.add("000004");
+
+        // when
+        List<String> numbers = numberAllocationService.allocate(L_TABLE_NAME, 6, 3);
+
+        // then
+        assertEquals(Lists.newArrayList("000001", "000003", "000005"), numbers);
+    }
+
+    @Test
+    public final void shouldDrawFromSequenceNamedAfterTable() {
+        // when
+        numberAllocationService.allocate(L_TABLE_NAME, 6, 2);
+
+        // then
+        verify(jdbcTemplate).queryForList(startsWith("SELECT nextval"), eq(params(L_TABLE_NAME + "_number_seq", 2)),
+                eq(Long.class));
+    }
+
+    @Test
+    public final void shouldReturnNothingForZeroQuantity() {
+        // when
+        List<String> numbers = numberAllocationService.allocate(L_TABLE_NAME, 6, 0);
+
+        // then
+        assertTrue(numbers.isEmpty());
+        verify(jdbcTemplate, never()).queryForList(startsWith("SELECT nextval"), anyMap(), eq(Long.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubSequence() {
+        given(jdbcTemplate.queryForList(startsWith("SELECT nextval"), anyMap(), eq(Long.class))).willAnswer(invocation -> {
+            int quantity = (Integer) ((Map<String, Object>) invocation.getArguments()[1]).get("quantity");
+
+            List<Long> values = Lists.newArrayList();
+
+            for (int i = 0; i < quantity; i++) {
+                values.add(++sequenceValue);
+            }
+
+            return values;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubTakenNumbers() {
+        given(jdbcTemplate.queryForList(eq("SELECT number FROM " + L_TABLE_NAME + " WHERE number IN (:numbers)"), anyMap(),
+                eq(String.class))).willAnswer(invocation -> {
+            Collection<String> numbers = (Collection<String>) ((Map<String, Object>) invocation.getArguments()[1])
+                    .get("numbers");
+
+            List<String> taken = Lists.newArrayList(numbers);
+
+            taken.retainAll(takenNumbers);
+
+            return taken;
+        });
+    }
+
+    private Map<String, Object> params(final String sequenceName, final int quantity) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("sequenceName", sequenceName);
+        params.put("quantity", quantity);
+
+        return params;
+    }
+
+}
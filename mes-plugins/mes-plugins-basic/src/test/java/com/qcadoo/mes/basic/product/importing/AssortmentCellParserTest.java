@@ -0,0 +1,136 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class AssortmentCellParserTest {
+
+    private AssortmentCellParser assortmentCellParser;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition assortmentDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    private List<String> errors;
+
+    private List<Object> values;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        assortmentCellParser = new AssortmentCellParser(dataDefinitionService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASSORTMENT)).willReturn(
+                assortmentDD);
+        given(assortmentDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+
+        errors = Lists.newArrayList();
+        values = Lists.newArrayList();
+    }
+
+    private Entity mockAssortment(final String name) {
+        Entity assortment = mock(Entity.class);
+
+        given(assortment.getStringField("name")).willReturn(name);
+
+        return assortment;
+    }
+
+    private void stubAssortments(final Entity... assortments) {
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(assortments));
+    }
+
+    @Test
+    public void shouldResolvePreloadedAssortmentByName() {
+        // given
+        Entity assortment = mockAssortment("first");
+        stubAssortments(assortment, mockAssortment("second"));
+
+        // when
+        assortmentCellParser.preload().parse("first", errors::add, values::add);
+
+        // then
+        assertEquals(Lists.newArrayList(assortment), values);
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void shouldKeepFirstAssortmentOfDuplicatedName() {
+        // given
+        Entity assortment = mockAssortment("duplicated");
+        stubAssortments(assortment, mockAssortment("duplicated"));
+
+        // when
+        CellParser cellParser = assortmentCellParser.preload();
+        cellParser.parse("duplicated", errors::add, values::add);
+
+        // then
+        assertEquals(Lists.newArrayList(assortment), values);
+    }
+
+    @Test
+    public void shouldReportUnknownAssortment() {
+        // given
+        stubAssortments(mockAssortment("first"));
+
+        // when
+        assortmentCellParser.preload().parse("unknown", errors::add, values::add);
+
+        // then
+        assertEquals(Lists.newArrayList("qcadooView.validate.field.error.lookupCodeNotFound"), errors);
+        assertEquals(0, values.size());
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class ProductFamilyCellParserTest {
+
+    private ProductFamilyCellParser productFamilyCellParser;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private SearchCriteriaBuilder familiesCriteriaBuilder, otherProductsCriteriaBuilder;
+
+    @Mock
+    private SearchResult familiesResult, otherProductsResult;
+
+    private List<String> errors;
+
+    private List<Object> values;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productFamilyCellParser = new ProductFamilyCellParser(dataDefinitionService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(productDD.find()).willReturn(familiesCriteriaBuilder, otherProductsCriteriaBuilder);
+        given(familiesCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(familiesCriteriaBuilder);
+        given(familiesCriteriaBuilder.list()).willReturn(familiesResult);
+        given(otherProductsCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(otherProductsCriteriaBuilder);
+        given(otherProductsCriteriaBuilder.setProjection(any(SearchProjection.class))).willReturn(otherProductsCriteriaBuilder);
+        given(otherProductsCriteriaBuilder.list()).willReturn(otherProductsResult);
+
+        errors = Lists.newArrayList();
+        values = Lists.newArrayList();
+    }
+
+    private Entity mockProduct(final String number) {
+        Entity product = mock(Entity.class);
+
+        given(product.getStringField(ProductFields.NUMBER)).willReturn(number);
+
+        return product;
+    }
+
+    private CellParser preload(final List<Entity> families, final List<Entity> otherProducts) {
+        given(familiesResult.getEntities()).willReturn(families);
+        given(otherProductsResult.getEntities()).willReturn(otherProducts);
+
+        return productFamilyCellParser.preload();
+    }
+
+    @Test
+    public void shouldResolvePreloadedFamilyByNumber() {
+        // given
+        Entity family = mockProduct("F1");
+        CellParser cellParser = preload(Lists.newArrayList(family, mockProduct("F1")), Lists.newArrayList(mockProduct("P1")));
+
+        // when
+        cellParser.parse("F1", errors::add, values::add);
+
+        // then
+        assertEquals(Lists.newArrayList(family), values);
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void shouldReportProductWhichIsNotFamily() {
+        // given
+        CellParser cellParser = preload(Lists.newArrayList(mockProduct("F1")), Lists.newArrayList(mockProduct("P1")));
+
+        // when
+        cellParser.parse("P1", errors::add, values::add);
+
+        // then
+        assertEquals(Lists.newArrayList("basic.productsImport.error.field.notFamily"), errors);
+        assertEquals(0, values.size());
+    }
+
+    @Test
+    public void shouldReportUnknownProduct() {
+        // given
+        CellParser cellParser = preload(Lists.newArrayList(mockProduct("F1")), Lists.newArrayList(mockProduct("P1")));
+
+        // when
+        cellParser.parse("X1", errors::add, values::add);
+
+        // then
+        assertEquals(Lists.newArrayList("qcadooView.validate.field.error.lookupCodeNotFound"), errors);
+        assertEquals(0, values.size());
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.tree;
+
+import static com.qcadoo.mes.basic.constants.ProductFields.ENTITY_TYPE;
+import static com.qcadoo.mes.basic.constants.ProductFields.NODE_NUMBER;
+import static com.qcadoo.mes.basic.constants.ProductFields.PARENT;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFamilyElementType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SearchRestrictions.class)
+public class ProductNumberingServiceImplTest {
+
+    private static final Long L_PRODUCT_ID = 1L;
+
+    private ProductNumberingService productNumberingService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private Entity product, existingProduct, parent, existingParent, root;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productNumberingService = new ProductNumberingServiceImpl();
+
+        ReflectionTestUtils.setField(productNumberingService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(productNumberingService, "jdbcTemplate", jdbcTemplate);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(productDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.addOrder(any(SearchOrder.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setMaxResults(anyInt())).willReturn(searchCriteriaBuilder);
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+    }
+
+    private void stubProductsFamily(final Entity productsFamily, final Entity parent, final String nodeNumber) {
+        given(productsFamily.getBelongsToField(PARENT)).willReturn(parent);
+        given(productsFamily.getStringField(NODE_NUMBER)).willReturn(nodeNumber);
+        given(productsFamily.getStringField(ENTITY_TYPE)).willReturn(ProductFamilyElementType.PRODUCTS_FAMILY.getStringValue());
+    }
+
+    @Test
+    public void shouldReturnProductIfItHasNoParent() {
+        // given
+        stubProductsFamily(product, null, "1");
+
+        // when
+        Entity result = productNumberingService.getRoot(product);
+
+        // then
+        assertEquals(product, result);
+
+        verify(productDD, never()).find();
+    }
+
+    @Test
+    public void shouldFindRootByFirstSegmentOfNodeNumber() {
+        // given
+        SearchCriterion rootNodeNumberCriterion = mock(SearchCriterion.class);
+
+        stubProductsFamily(product, parent, "2.1.3");
+
+        given(SearchRestrictions.eq(NODE_NUMBER, "2")).willReturn(rootNodeNumberCriterion);
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(root);
+
+        // when
+        Entity result = productNumberingService.getRoot(product);
+
+        // then
+        assertEquals(root, result);
+
+        verify(searchCriteriaBuilder).add(rootNodeNumberCriterion);
+        verify(parent, never()).getBelongsToField(PARENT);
+    }
+
+    @Test
+    public void shouldFollowParentsIfProductHasNoNodeNumber() {
+        // given
+        stubProductsFamily(product, parent, null);
+        stubProductsFamily(parent, null, "2");
+
+        // when
+        Entity result = productNumberingService.getRoot(product);
+
+        // then
+        assertEquals(parent, result);
+
+        verify(productDD, never()).find();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldMoveSubtreeOfProductsFamilyWithOnePrefixUpdate() {
+        // given
+        Entity lastRoot = mock(Entity.class);
+
+        given(product.getId()).willReturn(L_PRODUCT_ID);
+        given(productDD.get(L_PRODUCT_ID)).willReturn(existingProduct);
+
+        stubProductsFamily(existingProduct, existingParent, "1.2");
+        stubProductsFamily(product, null, "4");
+        given(lastRoot.getStringField(NODE_NUMBER)).willReturn("3");
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(lastRoot, (Entity) null);
+
+        // when
+        productNumberingService.updateNodeNumber(product);
+
+        // then
+        verify(product).setField(NODE_NUMBER, "4");
+
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate).update(anyString(), paramsCaptor.capture());
+
+        Map<String, Object> params = paramsCaptor.getValue();
+
+        assertEquals("4", params.get("newNodeNumber"));
+        assertEquals(3, params.get("oldNodeNumberLength"));
+        assertEquals("1.2.%", params.get("oldNodeNumberPrefix"));
+    }
+
+    @Test
+    public void shouldNotUpdateDescendantsIfParentDidNotChange() {
+        // given
+        given(product.getId()).willReturn(L_PRODUCT_ID);
+        given(productDD.get(L_PRODUCT_ID)).willReturn(existingProduct);
+
+        stubProductsFamily(existingProduct, existingParent, "1.2");
+        stubProductsFamily(product, existingParent, "1.2");
+
+        // when
+        productNumberingService.updateNodeNumber(product);
+
+        // then
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+    }
+
+}
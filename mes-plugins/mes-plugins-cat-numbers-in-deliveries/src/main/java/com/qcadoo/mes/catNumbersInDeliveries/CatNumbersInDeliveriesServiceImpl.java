@@ -28,11 +28,15 @@ import static com.qcadoo.mes.deliveries.constants.DeliveredProductFields.DELIVER
 import static com.qcadoo.mes.deliveries.constants.DeliveredProductFields.PRODUCT;
 import static com.qcadoo.mes.deliveries.constants.DeliveryFields.SUPPLIER;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.deliveries.DeliveriesService;
 import com.qcadoo.mes.productCatalogNumbers.ProductCatalogNumbersService;
 import com.qcadoo.model.api.Entity;
@@ -67,11 +71,19 @@ public class CatNumbersInDeliveriesServiceImpl implements CatNumbersInDeliveries
         if ((delivery.getId() != null) && hasSupplierChanged(delivery.getId(), supplier)) {
             List<Entity> deliveryProducts = delivery.getHasManyField(productsName);
 
-            if (deliveryProducts != null) {
+            if ((deliveryProducts != null) && (supplier != null)) {
+                Set<Long> productIds = Sets.newHashSet();
+
                 for (Entity deliveryPoduct : deliveryProducts) {
-                    Entity product = deliveryPoduct.getBelongsToField(PRODUCT);
+                    productIds.add(deliveryPoduct.getBelongsToField(PRODUCT).getId());
+                }
 
-                    Entity productCatalogNumber = productCatalogNumbersService.getProductCatalogNumber(product, supplier);
+                Map<Long, Entity> productCatalogNumbers = productCatalogNumbersService.getProductCatalogNumbers(productIds,
+                        Collections.singleton(supplier.getId())).row(supplier.getId());
+
+                for (Entity deliveryPoduct : deliveryProducts) {
+                    Entity productCatalogNumber = productCatalogNumbers
+                            .get(deliveryPoduct.getBelongsToField(PRODUCT).getId());
 
                     if (productCatalogNumber != null) {
                         deliveryPoduct.setField(PRODUCT_CATALOG_NUMBER, productCatalogNumber);
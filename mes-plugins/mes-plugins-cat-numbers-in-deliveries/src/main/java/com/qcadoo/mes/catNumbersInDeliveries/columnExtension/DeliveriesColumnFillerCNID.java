@@ -29,34 +29,73 @@ import static com.qcadoo.mes.productCatalogNumbers.constants.ProductCatalogNumbe
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.deliveries.DeliveriesService;
 import com.qcadoo.mes.deliveries.print.DeliveryColumnFiller;
 import com.qcadoo.mes.deliveries.print.DeliveryProduct;
 import com.qcadoo.mes.deliveries.print.OrderColumnFiller;
+import com.qcadoo.mes.productCatalogNumbers.ProductCatalogNumbersService;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Component
 public class DeliveriesColumnFillerCNID implements DeliveryColumnFiller, OrderColumnFiller {
 
+    private static final String L_ID = "id";
+
+    private static final String L_CATALOG_NUMBER = "catalogNumber";
+
     @Autowired
     private DeliveriesService deliveriesService;
 
+    @Autowired
+    private ProductCatalogNumbersService productCatalogNumbersService;
+
     @Override
     public Map<DeliveryProduct, Map<String, String>> getDeliveryProductsColumnValues(
             final List<DeliveryProduct> deliveryProducts) {
         Map<DeliveryProduct, Map<String, String>> values = new HashMap<DeliveryProduct, Map<String, String>>();
 
+        Set<Long> deliveredProductIds = Sets.newHashSet();
+        Set<Long> orderedProductIds = Sets.newHashSet();
+
+        for (DeliveryProduct deliveryProduct : deliveryProducts) {
+            if (deliveryProduct.getDeliveredProductId() != null) {
+                deliveredProductIds.add(deliveryProduct.getDeliveredProductId());
+            } else if (deliveryProduct.getOrderedProductId() != null) {
+                orderedProductIds.add(deliveryProduct.getOrderedProductId());
+            }
+        }
+
+        Map<Long, String> deliveredProductsCatalogNumbers = getCatalogNumbers(deliveriesService.getDeliveredProductDD(),
+                deliveredProductIds);
+        Map<Long, String> orderedProductsCatalogNumbers = getCatalogNumbers(deliveriesService.getOrderedProductDD(),
+                orderedProductIds);
+
         for (DeliveryProduct deliveryProduct : deliveryProducts) {
+            String catalogNumber = null;
+
+            if (deliveryProduct.getDeliveredProductId() != null) {
+                catalogNumber = deliveredProductsCatalogNumbers.get(deliveryProduct.getDeliveredProductId());
+            } else if (deliveryProduct.getOrderedProductId() != null) {
+                catalogNumber = orderedProductsCatalogNumbers.get(deliveryProduct.getOrderedProductId());
+            }
 
             if (!values.containsKey(deliveryProduct)) {
                 values.put(deliveryProduct, new HashMap<String, String>());
             }
 
-            fillCatalogNumber(values, deliveryProduct);
+            values.get(deliveryProduct).put(L_CATALOG_NUMBER, Strings.nullToEmpty(catalogNumber));
         }
 
         return values;
@@ -66,71 +105,64 @@ public class DeliveriesColumnFillerCNID implements DeliveryColumnFiller, OrderCo
     public Map<Entity, Map<String, String>> getOrderedProductsColumnValues(final List<Entity> orderedProducts) {
         Map<Entity, Map<String, String>> values = new HashMap<Entity, Map<String, String>>();
 
+        Set<Long> productCatalogNumberIds = Sets.newHashSet();
+
+        for (Entity orderedProduct : orderedProducts) {
+            Entity productCatalogNumber = getProductCatalogNumber(orderedProduct);
+
+            if (productCatalogNumber != null) {
+                productCatalogNumberIds.add(productCatalogNumber.getId());
+            }
+        }
+
+        Map<Long, String> catalogNumbers = productCatalogNumbersService.getCatalogNumbers(productCatalogNumberIds);
+
         for (Entity orderedProduct : orderedProducts) {
+            String catalogNumber = null;
+
+            Entity productCatalogNumber = getProductCatalogNumber(orderedProduct);
+
+            if (productCatalogNumber != null) {
+                catalogNumber = catalogNumbers.get(productCatalogNumber.getId());
+            }
+
             if (!values.containsKey(orderedProduct)) {
                 values.put(orderedProduct, new HashMap<String, String>());
             }
 
-            fillCatalogNumber(values, orderedProduct);
+            values.get(orderedProduct).put(L_CATALOG_NUMBER, Strings.nullToEmpty(catalogNumber));
         }
 
         return values;
     }
 
-    private void fillCatalogNumber(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        String catalogNumber = null;
+    private Entity getProductCatalogNumber(final Entity orderedProduct) {
+        if (orderedProduct == null) {
+            return null;
+        }
 
-        if (deliveryProduct.getDeliveredProductId() != null) {
-            Entity deliveredProduct = deliveriesService.getDeliveredProduct(deliveryProduct.getDeliveredProductId());
+        return orderedProduct.getBelongsToField(PRODUCT_CATALOG_NUMBER);
+    }
 
-            if (deliveredProduct == null) {
-                catalogNumber = "";
-            } else {
-                Entity productCatalogNumber = deliveredProduct.getBelongsToField(PRODUCT_CATALOG_NUMBER);
+    private Map<Long, String> getCatalogNumbers(final DataDefinition deliveryProductDD, final Set<Long> deliveryProductIds) {
+        Map<Long, String> catalogNumbers = Maps.newHashMap();
 
-                if (productCatalogNumber == null) {
-                    catalogNumber = "";
-                } else {
-                    catalogNumber = productCatalogNumber.getStringField(CATALOG_NUMBER);
-                }
-            }
-        } else if (deliveryProduct.getOrderedProductId() != null) {
-            Entity orderedProduct = deliveriesService.getOrderedProduct(deliveryProduct.getOrderedProductId());
-
-            if (orderedProduct == null) {
-                catalogNumber = "";
-            } else {
-                Entity productCatalogNumber = orderedProduct.getBelongsToField(PRODUCT_CATALOG_NUMBER);
-
-                if (productCatalogNumber == null) {
-                    catalogNumber = "";
-                } else {
-                    catalogNumber = productCatalogNumber.getStringField(CATALOG_NUMBER);
-                }
-            }
-        } else {
-            catalogNumber = "";
+        if (deliveryProductIds.isEmpty()) {
+            return catalogNumbers;
         }
 
-        values.get(deliveryProduct).put("catalogNumber", catalogNumber);
-    }
-
-    private void fillCatalogNumber(final Map<Entity, Map<String, String>> values, final Entity orderedProduct) {
-        String catalogNumber = null;
+        List<Entity> entities = deliveryProductDD.find()
+                .createAlias(PRODUCT_CATALOG_NUMBER, PRODUCT_CATALOG_NUMBER, JoinType.LEFT)
+                .add(SearchRestrictions.in(L_ID, deliveryProductIds))
+                .setProjection(SearchProjections.list().add(SearchProjections.alias(SearchProjections.id(), L_ID))
+                        .add(SearchProjections.alias(SearchProjections.field(PRODUCT_CATALOG_NUMBER + "." + CATALOG_NUMBER),
+                                CATALOG_NUMBER))).list().getEntities();
 
-        if (orderedProduct == null) {
-            catalogNumber = "";
-        } else {
-            Entity productCatalogNumber = orderedProduct.getBelongsToField(PRODUCT_CATALOG_NUMBER);
-
-            if (productCatalogNumber == null) {
-                catalogNumber = "";
-            } else {
-                catalogNumber = productCatalogNumber.getStringField(CATALOG_NUMBER);
-            }
+        for (Entity deliveryProduct : entities) {
+            catalogNumbers.put((Long) deliveryProduct.getField(L_ID), deliveryProduct.getStringField(CATALOG_NUMBER));
         }
 
-        values.get(orderedProduct).put("catalogNumber", catalogNumber);
+        return catalogNumbers;
     }
 
 }
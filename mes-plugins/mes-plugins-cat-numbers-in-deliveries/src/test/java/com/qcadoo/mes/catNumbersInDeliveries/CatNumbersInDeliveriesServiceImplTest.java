@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.catNumbersInDeliveries;
 
+import static com.qcadoo.mes.catNumbersInDeliveries.contants.OrderedProductFieldsCNID.PRODUCT_CATALOG_NUMBER;
 import static com.qcadoo.mes.deliveries.constants.DeliveryFields.ORDERED_PRODUCTS;
 import static com.qcadoo.mes.deliveries.constants.DeliveryFields.SUPPLIER;
 import static com.qcadoo.mes.deliveries.constants.OrderedProductFields.DELIVERY;
@@ -32,11 +33,11 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -49,8 +50,11 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.qcadoo.mes.deliveries.DeliveriesService;
 import com.qcadoo.mes.productCatalogNumbers.ProductCatalogNumbersService;
 import com.qcadoo.model.api.DataDefinition;
@@ -74,7 +78,8 @@ public class CatNumbersInDeliveriesServiceImplTest {
     private DataDefinition deliveryProductDD;
 
     @Mock
-    private Entity deliveryProduct, delivery, existingDelivery, supplier, existingSupplier, product, productCatalogNumber;
+    private Entity deliveryProduct, otherDeliveryProduct, delivery, existingDelivery, supplier, existingSupplier, product,
+            otherProduct, productCatalogNumber;
 
     @Mock
     private EntityList deliveryProducts;
@@ -180,7 +185,7 @@ public class CatNumbersInDeliveriesServiceImplTest {
     }
 
     @Test
-    public void shouldntUpdateProductsCatalogNumbersIfOrderedProductsArentNull() {
+    public void shouldntUpdateProductsCatalogNumbersIfSupplierIsNull() {
         // given
         Long deliveryId = 1L;
 
@@ -192,27 +197,70 @@ public class CatNumbersInDeliveriesServiceImplTest {
         deliveryProducts = mockEntityList(Lists.newArrayList(deliveryProduct));
 
         given(delivery.getHasManyField(ORDERED_PRODUCTS)).willReturn(deliveryProducts);
-        given(deliveryProduct.getDataDefinition()).willReturn(deliveryProductDD);
-        given(deliveryProduct.getBelongsToField(PRODUCT)).willReturn(product);
-        given(productCatalogNumbersService.getProductCatalogNumber(product, supplier)).willReturn(null);
 
         // when
         catNumbersInDeliveriesService.updateProductsCatalogNumbers(delivery, ORDERED_PRODUCTS);
 
         // then
+        verify(productCatalogNumbersService, never()).getProductCatalogNumbers(Mockito.anyCollectionOf(Long.class),
+                Mockito.anyCollectionOf(Long.class));
         verify(deliveryProduct, never()).setField(Mockito.anyString(), Mockito.any(Entity.class));
         verify(deliveryProductDD, never()).save(Mockito.any(Entity.class));
     }
 
-    // TODO lupo fix problem with test
-    @Ignore
     @Test
-    public void shoulUpdateProductsCatalogNumbersIfOrderedProductsArentNull() {
+    public void shouldUpdateProductsCatalogNumbersOfMatchedSupplierWithOneQuery() {
         // given
         Long deliveryId = 1L;
+        Long supplierId = 2L;
+        Long productId = 10L;
+        Long otherProductId = 20L;
 
         given(delivery.getId()).willReturn(deliveryId);
-        given(delivery.getBelongsToField(SUPPLIER)).willReturn(null);
+        given(delivery.getBelongsToField(SUPPLIER)).willReturn(supplier);
+        given(supplier.getId()).willReturn(supplierId);
+        given(deliveriesService.getDelivery(deliveryId)).willReturn(existingDelivery);
+        given(existingDelivery.getBelongsToField(SUPPLIER)).willReturn(existingSupplier);
+
+        deliveryProducts = mockEntityList(Lists.newArrayList(deliveryProduct, otherDeliveryProduct));
+
+        given(delivery.getHasManyField(ORDERED_PRODUCTS)).willReturn(deliveryProducts);
+        given(deliveryProduct.getDataDefinition()).willReturn(deliveryProductDD);
+        given(deliveryProduct.getBelongsToField(PRODUCT)).willReturn(product);
+        given(product.getId()).willReturn(productId);
+        given(otherDeliveryProduct.getDataDefinition()).willReturn(deliveryProductDD);
+        given(otherDeliveryProduct.getBelongsToField(PRODUCT)).willReturn(otherProduct);
+        given(otherProduct.getId()).willReturn(otherProductId);
+
+        Table<Long, Long, Entity> productCatalogNumbers = HashBasedTable.create();
+
+        productCatalogNumbers.put(supplierId, productId, productCatalogNumber);
+
+        given(productCatalogNumbersService.getProductCatalogNumbers(Sets.newHashSet(productId, otherProductId),
+                Collections.singleton(supplierId))).willReturn(productCatalogNumbers);
+
+        // when
+        catNumbersInDeliveriesService.updateProductsCatalogNumbers(delivery, ORDERED_PRODUCTS);
+
+        // then
+        verify(productCatalogNumbersService).getProductCatalogNumbers(Sets.newHashSet(productId, otherProductId),
+                Collections.singleton(supplierId));
+        verify(productCatalogNumbersService, never()).getProductCatalogNumber(Mockito.any(Entity.class),
+                Mockito.any(Entity.class));
+        verify(deliveryProduct).setField(PRODUCT_CATALOG_NUMBER, productCatalogNumber);
+        verify(deliveryProductDD).save(deliveryProduct);
+    }
+
+    @Test
+    public void shouldntUpdateProductCatalogNumberOfProductWithoutCatalogNumber() {
+        // given
+        Long deliveryId = 1L;
+        Long supplierId = 2L;
+        Long productId = 10L;
+
+        given(delivery.getId()).willReturn(deliveryId);
+        given(delivery.getBelongsToField(SUPPLIER)).willReturn(supplier);
+        given(supplier.getId()).willReturn(supplierId);
         given(deliveriesService.getDelivery(deliveryId)).willReturn(existingDelivery);
         given(existingDelivery.getBelongsToField(SUPPLIER)).willReturn(existingSupplier);
 
@@ -221,14 +269,17 @@ public class CatNumbersInDeliveriesServiceImplTest {
         given(delivery.getHasManyField(ORDERED_PRODUCTS)).willReturn(deliveryProducts);
         given(deliveryProduct.getDataDefinition()).willReturn(deliveryProductDD);
         given(deliveryProduct.getBelongsToField(PRODUCT)).willReturn(product);
-        given(productCatalogNumbersService.getProductCatalogNumber(product, supplier)).willReturn(productCatalogNumber);
+        given(product.getId()).willReturn(productId);
+
+        given(productCatalogNumbersService.getProductCatalogNumbers(Sets.newHashSet(productId),
+                Collections.singleton(supplierId))).willReturn(HashBasedTable.<Long, Long, Entity> create());
 
         // when
         catNumbersInDeliveriesService.updateProductsCatalogNumbers(delivery, ORDERED_PRODUCTS);
 
         // then
-        verify(deliveryProduct).setField(Mockito.anyString(), Mockito.any(Entity.class));
-        verify(deliveryProductDD).save(Mockito.any(Entity.class));
+        verify(deliveryProduct, never()).setField(Mockito.anyString(), Mockito.any(Entity.class));
+        verify(deliveryProductDD, never()).save(Mockito.any(Entity.class));
     }
 
     private static EntityList mockEntityList(final List<Entity> entities) {
@@ -23,13 +23,19 @@
  */
 package com.qcadoo.mes.cmmsMachineParts.listeners;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.cmmsMachineParts.MaintenanceEventContextService;
 import com.qcadoo.mes.cmmsMachineParts.MaintenanceEventService;
 import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
 import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventContextFields;
 import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventFields;
 import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.states.EventsBulkStateChangeResult;
+import com.qcadoo.mes.cmmsMachineParts.states.EventsBulkStateChangeService;
+import com.qcadoo.mes.cmmsMachineParts.states.MaintenanceEventStateChangeViewClient;
+import com.qcadoo.mes.cmmsMachineParts.states.PlannedEventStateChangeViewClient;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.view.api.ComponentState;
@@ -45,6 +51,7 @@ import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class EventsListListeners {
@@ -58,6 +65,18 @@ public class EventsListListeners {
     @Autowired
     private MaintenanceEventService maintenanceEventService;
 
+    @Autowired
+    private EventsBulkStateChangeService eventsBulkStateChangeService;
+
+    @Autowired
+    private PlannedEventStateChangeViewClient plannedEventStateChangeViewClient;
+
+    @Autowired
+    private MaintenanceEventStateChangeViewClient maintenanceEventStateChangeViewClient;
+
+    @Autowired
+    private TranslationService translationService;
+
     public void newEventAction(final ViewDefinitionState viewDefinitionState, final ComponentState state, final String args[]) {
         viewDefinitionState.redirectTo("../page/" + CmmsMachinePartsConstants.PLUGIN_IDENTIFIER + "/addNewEvent.html", false,
                 true);
@@ -255,4 +274,41 @@ public class EventsListListeners {
 
     }
 
+    public void changePlannedEventsState(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        Set<Long> eventIds = ((GridComponent) state).getSelectedEntitiesIds();
+        String targetState = args[0];
+
+        if (eventIds.size() < 2 || eventsBulkStateChangeService.isPlannedEventTransitionInteractive(targetState)) {
+            plannedEventStateChangeViewClient.changeState(view, state, args);
+        } else {
+            showBulkStateChangeMessages(view, state,
+                    eventsBulkStateChangeService.changePlannedEventsState(Lists.newArrayList(eventIds), targetState));
+        }
+    }
+
+    public void changeMaintenanceEventsState(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        Set<Long> eventIds = ((GridComponent) state).getSelectedEntitiesIds();
+        String targetState = args[0];
+
+        if (eventIds.size() < 2 || eventsBulkStateChangeService.isMaintenanceEventTransitionInteractive(targetState)) {
+            maintenanceEventStateChangeViewClient.changeState(view, state, args);
+        } else {
+            showBulkStateChangeMessages(view, state,
+                    eventsBulkStateChangeService.changeMaintenanceEventsState(Lists.newArrayList(eventIds), targetState));
+        }
+    }
+
+    private void showBulkStateChangeMessages(final ViewDefinitionState view, final ComponentState state,
+            final EventsBulkStateChangeResult result) {
+        if (!result.getChangedEventIds().isEmpty()) {
+            state.addMessage("cmmsMachineParts.eventsList.bulkStateChange.changed", ComponentState.MessageType.SUCCESS,
+                    String.valueOf(result.getChangedEventIds().size()));
+        }
+        result.getFailures().asMap().forEach((messageKey, numbers) -> state.addMessage(
+                "cmmsMachineParts.eventsList.bulkStateChange.failed", ComponentState.MessageType.FAILURE, false,
+                String.join(", ", numbers), translationService.translate(messageKey, view.getLocale())));
+        result.getInfos().asMap().forEach((messageKey, args) -> state.addMessage(messageKey,
+                ComponentState.MessageType.INFO, false, String.join(", ", args)));
+    }
+
 }
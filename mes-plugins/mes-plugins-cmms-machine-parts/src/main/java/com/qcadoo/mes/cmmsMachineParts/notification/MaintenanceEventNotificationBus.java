@@ -0,0 +1,155 @@
+package com.qcadoo.mes.cmmsMachineParts.notification;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.constants.QcadooSecurityConstants;
+
+/**
+ * In-process bus of maintenance events waiting for sound notification. Pending events are kept in memory and reloaded only
+ * after a maintenance event has been saved, so checking for notifications does not query the database.
+ */
+@Service
+public class MaintenanceEventNotificationBus {
+
+    private static final String L_PENDING_EVENTS_QUERY = "SELECT id, factory_id FROM cmmsmachineparts_maintenanceevent "
+            + "WHERE soundnotifications = true";
+
+    private static final String L_FACTORY = "factory";
+
+    private static final long L_USER_FACTORY_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Long L_NO_FACTORY = 0L;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    private final Map<Long, UserFactory> userFactories = new ConcurrentHashMap<>();
+
+    private volatile Map<Long, Long> pendingEvents;
+
+    /**
+     * Called whenever a maintenance event is saved. Pending events are reloaded once the current transaction commits.
+     */
+    public void maintenanceEventChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    reloadPendingEvents();
+                }
+
+            });
+        } else {
+            reloadPendingEvents();
+        }
+    }
+
+    public boolean hasPendingEvents(final Long userId) {
+        Long factoryId = getUserFactoryId(userId);
+
+        return getPendingEvents().values().stream().anyMatch(eventFactoryId -> matches(factoryId, eventFactoryId));
+    }
+
+    private Map<Long, Long> getPendingEvents() {
+        Map<Long, Long> events = pendingEvents;
+
+        if (events == null) {
+            synchronized (this) {
+                if (pendingEvents == null) {
+                    pendingEvents = loadPendingEvents();
+                }
+
+                events = pendingEvents;
+            }
+        }
+
+        return events;
+    }
+
+    private synchronized void reloadPendingEvents() {
+        pendingEvents = loadPendingEvents();
+
+        evictExpiredUserFactories();
+    }
+
+    private Map<Long, Long> loadPendingEvents() {
+        Map<Long, Long> events = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_PENDING_EVENTS_QUERY, Collections.emptyMap())) {
+            Number factoryId = (Number) row.get("factory_id");
+
+            events.put(((Number) row.get("id")).longValue(), (factoryId == null) ? L_NO_FACTORY : factoryId.longValue());
+        }
+
+        return Collections.unmodifiableMap(events);
+    }
+
+    private boolean matches(final Long userFactoryId, final Long eventFactoryId) {
+        return L_NO_FACTORY.equals(userFactoryId) || userFactoryId.equals(eventFactoryId);
+    }
+
+    private Long getUserFactoryId(final Long userId) {
+        UserFactory userFactory = userFactories.get(userId);
+
+        if ((userFactory == null) || userFactory.isExpired()) {
+            // Users who stopped asking for notifications, e.g. logged out, would stay in the map forever otherwise
+            evictExpiredUserFactories();
+
+            userFactory = new UserFactory(loadUserFactoryId(userId));
+
+            userFactories.put(userId, userFactory);
+        }
+
+        return userFactory.getFactoryId();
+    }
+
+    private void evictExpiredUserFactories() {
+        userFactories.values().removeIf(UserFactory::isExpired);
+    }
+
+    private Long loadUserFactoryId(final Long userId) {
+        Entity user = dataDefinitionService.get(QcadooSecurityConstants.PLUGIN_IDENTIFIER, QcadooSecurityConstants.MODEL_USER)
+                .get(userId);
+        Entity factory = (user == null) ? null : user.getBelongsToField(L_FACTORY);
+
+        return (factory == null) ? L_NO_FACTORY : factory.getId();
+    }
+
+    private static final class UserFactory {
+
+        private final Long factoryId;
+
+        private final long readTime;
+
+        private UserFactory(final Long factoryId) {
+            this.factoryId = factoryId;
+            this.readTime = System.currentTimeMillis();
+        }
+
+        private Long getFactoryId() {
+            return factoryId;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - readTime > L_USER_FACTORY_TTL;
+        }
+
+    }
+
+}
@@ -18,8 +18,15 @@ public class WorkerCostsRowMapper implements RowMapper<WorkerCostsDTO> {
         workerCosts.setEvent(rs.getString("number"));
         workerCosts.setType(rs.getString("type"));
         workerCosts.setWorkTime(rs.getInt("worktime"));
+        workerCosts.setWorkerTimeSum(getNullableInt(rs, "workertimesum"));
+        workerCosts.setCostSourceTimeSum(getNullableInt(rs, "costsourcetimesum"));
 
         return workerCosts;
     }
 
+    private Integer getNullableInt(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
 }
@@ -3,11 +3,15 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.sourceCost;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
@@ -19,6 +23,8 @@ import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventStateStringV
 @Service
 public class WorkerCostsXlsDataProvider {
 
+    private static final int L_FETCH_SIZE = 500;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -44,11 +50,28 @@ public class WorkerCostsXlsDataProvider {
             + allowedMaintenanceStates()
             + ")";
 
-    public List<WorkerCostsDTO> getCosts(Map<String, Object> filters) {
+    /**
+     * Passes costs to given consumer one by one, ordered by source cost, worker and event. Worker and source cost subtotals are
+     * computed by the database and set only on the first row of each group. Rows are read in chunks, but the report is an xls
+     * sheet, so it can't have more than 65536 rows.
+     */
+    @Transactional(readOnly = true)
+    public void processCosts(Map<String, Object> filters, Consumer<WorkerCostsDTO> consumer) {
         String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new WorkerCostsRowMapper());
+        WorkerCostsRowMapper rowMapper = new WorkerCostsRowMapper();
+        getStreamingJdbcTemplate().query(query, filters,
+                (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())));
     }
 
+    /**
+     * PostgreSQL driver fetches rows in chunks only if fetch size is set and the query runs in a transaction, otherwise the
+     * whole result is read into memory before the first row is processed.
+     */
+    private NamedParameterJdbcTemplate getStreamingJdbcTemplate() {
+        JdbcTemplate streamingJdbcTemplate = new JdbcTemplate(((JdbcTemplate) jdbcTemplate.getJdbcOperations()).getDataSource());
+        streamingJdbcTemplate.setFetchSize(L_FETCH_SIZE);
+        return new NamedParameterJdbcTemplate(streamingJdbcTemplate);
+    }
 
     private String prepareQuery(Map<String, Object> filters, String plannedEventQueryPart, String maintenanceEventQueryPart) {
         DateTime toDate = new DateTime((Date) filters.get("toDate"));
@@ -57,12 +80,17 @@ public class WorkerCostsXlsDataProvider {
         DateTime fromDate = new DateTime((Date) filters.get("fromDate"));
         filters.put("fromDate", fromDate.plusHours(6).toDate());
 
-        StringBuilder builder = new StringBuilder("SELECT * FROM ( " + plannedEventQueryPart + " UNION ALL "
-                + maintenanceEventQueryPart + " ) AS events");
+        StringBuilder builder = new StringBuilder("SELECT events.*,\n"
+                + "CASE WHEN ROW_NUMBER() OVER (PARTITION BY sourcecost, worker ORDER BY ordinal) = 1 "
+                + "THEN SUM(worktime) OVER (PARTITION BY sourcecost, worker) END AS workertimesum,\n"
+                + "CASE WHEN ROW_NUMBER() OVER (PARTITION BY sourcecost ORDER BY ordinal) = 1 "
+                + "THEN SUM(worktime) OVER (PARTITION BY sourcecost) END AS costsourcetimesum\n"
+                + "FROM (SELECT costs.*, ROW_NUMBER() OVER (ORDER BY sourcecost, worker, number) AS ordinal FROM ( "
+                + plannedEventQueryPart + " UNION ALL " + maintenanceEventQueryPart + " ) AS costs");
         if (filters.get(SourceCostReportFilterFields.SOURCE_COST) != null) {
             builder.append(" WHERE id = :sourceCost");
         }
-        builder.append(" ORDER BY sourcecost, worker, number");
+        builder.append(") AS events ORDER BY ordinal");
         return builder.toString();
     }
 
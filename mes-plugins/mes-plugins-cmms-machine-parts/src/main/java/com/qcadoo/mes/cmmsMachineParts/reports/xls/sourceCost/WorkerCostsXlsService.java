@@ -2,11 +2,9 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.sourceCost;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
@@ -55,35 +53,14 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
     public void buildExcelContent(final HSSFWorkbook workbook, final HSSFSheet sheet, Map<String, Object> filters,
             final Locale locale) {
         reportStyleFactory = new ReportStyleFactory(workbook);
-        List<WorkerCostsDTO> usages = workerCostsXLSDataProvider.getCosts((Map<String, Object>) filters.get("filtersMap"));
-        fillSums(usages);
+        AtomicInteger rowCounter = new AtomicInteger(5);
+        workerCostsXLSDataProvider.processCosts((Map<String, Object>) filters.get("filtersMap"),
+                workerCost -> fillUsage(workbook, sheet, workerCost, rowCounter.getAndIncrement(), locale));
         fillHeaderData(workbook, sheet, 0, locale, (Map<String, Object>) filters.get("filtersMap"));
         fillHeaderRow(workbook, sheet, 4, locale);
-        int rowCounter = 5;
-        fillUsages(workbook, sheet, usages, rowCounter, locale);
         setColumnsWidths(sheet);
     }
 
-    private void fillSums(List<WorkerCostsDTO> workerCosts) {
-        Map<String, List<WorkerCostsDTO>> groups = workerCosts.stream().collect(
-                Collectors.groupingBy(WorkerCostsDTO::getSourceCost));
-        for (Entry<String, List<WorkerCostsDTO>> group : groups.entrySet()) {
-            sumGroup(group.getValue());
-            Integer sum = group.getValue().stream().filter(g -> g.getWorkerTimeSum() != null)
-                    .mapToInt(WorkerCostsDTO::getWorkerTimeSum).sum();
-            group.getValue().get(0).setCostSourceTimeSum(sum);
-        }
-    }
-
-
-    private void sumGroup(List<WorkerCostsDTO> group) {
-        Map<String, List<WorkerCostsDTO>> groups = group.stream().collect(Collectors.groupingBy(WorkerCostsDTO::getWorker));
-        for (Entry<String, List<WorkerCostsDTO>> subGroup : groups.entrySet()) {
-            Integer sum = subGroup.getValue().stream().mapToInt(WorkerCostsDTO::getWorkTime).sum();
-            subGroup.getValue().get(0).setWorkerTimeSum(sum);
-        }
-    }
-
     private void setColumnsWidths(HSSFSheet sheet) {
         sheet.setColumnWidth(0, 5000);
         sheet.setColumnWidth(1, 4000);
@@ -173,32 +150,20 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         }
     }
 
-    private void fillUsages(final HSSFWorkbook workbook, final HSSFSheet sheet,
- final List<WorkerCostsDTO> group,
-            int rowCounter, final Locale locale) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-
-        int usagesCounter = 0;
-
-        for (WorkerCostsDTO workerCost : group) {
-                HSSFRow usageRow = sheet.createRow(rowCounter + usagesCounter);
-            HSSFCellStyle style = getLeftAlignedStyle(workbook, workerCost.getWorkerTimeSum() != null);
-            HSSFCellStyle styleRight = getRightAlignedStyle(workbook, workerCost.getWorkerTimeSum() != null);
-                addNewRow(usageRow, workerCost, locale, style, styleRight);
-            if (workerCost.getWorkerTimeSum() != null) {
-                addNewCell(usageRow, workerCost.getWorkerTimeSum(), 5, styleRight);
-                if (workerCost.getCostSourceTimeSum() != null) {
-                    addNewCell(usageRow, workerCost.getCostSourceTimeSum(), 6, styleRight);
-                } else {
-                    addNewCell(usageRow, "", 6, styleRight);
-                }
-            }
-                ++usagesCounter;
+    private void fillUsage(final HSSFWorkbook workbook, final HSSFSheet sheet, final WorkerCostsDTO workerCost,
+            int rowNumber, final Locale locale) {
+        HSSFRow usageRow = sheet.createRow(rowNumber);
+        HSSFCellStyle style = getLeftAlignedStyle(workbook, workerCost.getWorkerTimeSum() != null);
+        HSSFCellStyle styleRight = getRightAlignedStyle(workbook, workerCost.getWorkerTimeSum() != null);
+        addNewRow(usageRow, workerCost, locale, style, styleRight);
+        if (workerCost.getWorkerTimeSum() != null) {
+            addNewCell(usageRow, workerCost.getWorkerTimeSum(), 5, styleRight);
+            if (workerCost.getCostSourceTimeSum() != null) {
+                addNewCell(usageRow, workerCost.getCostSourceTimeSum(), 6, styleRight);
+            } else {
+                addNewCell(usageRow, "", 6, styleRight);
             }
-
+        }
     }
 
     private void addNewRow(HSSFRow usageRow, WorkerCostsDTO timeUsage, Locale locale, HSSFCellStyle style,
@@ -2,12 +2,7 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Date;
 
-import org.joda.time.DateTime;
-import org.joda.time.Minutes;
-import org.joda.time.Period;
-import org.joda.time.Seconds;
 import org.springframework.jdbc.core.RowMapper;
 
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
@@ -27,17 +22,11 @@ public class TimeUsageRowMapper implements RowMapper<TimeUsageDTO> {
         timeUsage.setObject(rs.getString("object"));
         timeUsage.setParts(rs.getString("parts"));
         timeUsage.setDescription(rs.getString("description"));
-        Seconds durationSeconds = Seconds.seconds(rs.getInt("duration")).plus(30);
-        Period duration = new Period(durationSeconds);
-        timeUsage.setDuration(duration.toStandardMinutes().getMinutes());
-
-        DateTime startDateTime = new DateTime(rs.getTimestamp("registeredStart"));
-        Date endDate = rs.getTimestamp("registeredEnd");
-        if (endDate != null) {
-            DateTime endDateTime = new DateTime(endDate);
-            timeUsage.setRegisteredTime(Minutes.minutesBetween(startDateTime, endDateTime.plusSeconds(30)).getMinutes());
-        } else {
-            timeUsage.setRegisteredTime(0);
+        timeUsage.setDuration(rs.getInt("durationminutes"));
+        timeUsage.setRegisteredTime(rs.getInt("registeredminutes"));
+        if (rs.getBoolean("firstingroup")) {
+            timeUsage.setDurationSum(rs.getLong("durationsum"));
+            timeUsage.setRegisteredTimeSum(rs.getLong("registeredtimesum"));
         }
         return timeUsage;
     }
@@ -2,10 +2,14 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
@@ -15,6 +19,8 @@ import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
 @Service
 public class TimeUsageXlsDataProvider {
 
+    private static final int L_FETCH_SIZE = 500;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -60,14 +66,32 @@ public class TimeUsageXlsDataProvider {
             + "LEFT JOIN basic_division division ON event.division_id=division.id\n"
             + "LEFT JOIN basic_factory factory ON event.factory_id=factory.id\n";
 
-    public List<TimeUsageDTO> getUsages(Map<String, Object> filters) {
+    /**
+     * Passes usages to given consumer one by one, ordered by worker and day. Durations are rounded to minutes and summed up per
+     * worker and day by the database; sums are set only on the first usage of each group. Usages are fetched in chunks of
+     * {@link #L_FETCH_SIZE} inside a read-only transaction; the xls sheet they are written to is still limited to 65536 rows.
+     */
+    @Transactional(readOnly = true)
+    public void processUsages(Map<String, Object> filters, Consumer<TimeUsageDTO> consumer) {
         String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new TimeUsageRowMapper());
+        TimeUsageRowMapper rowMapper = new TimeUsageRowMapper();
+        getStreamingJdbcTemplate().query(query, filters,
+                (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())));
+    }
+
+    private NamedParameterJdbcTemplate getStreamingJdbcTemplate() {
+        JdbcTemplate streamingJdbcTemplate = new JdbcTemplate(((JdbcTemplate) jdbcTemplate.getJdbcOperations()).getDataSource());
+        streamingJdbcTemplate.setFetchSize(L_FETCH_SIZE);
+        return new NamedParameterJdbcTemplate(streamingJdbcTemplate);
     }
 
     private String prepareQuery(Map<String, Object> filters, String plannedEventQueryPart, String maintenanceEventQueryPart) {
-        StringBuilder builder = new StringBuilder("SELECT * FROM ( " + plannedEventQueryPart + "UNION ALL "
-                + maintenanceEventQueryPart + " ) AS events");
+        StringBuilder builder = new StringBuilder("SELECT events.*,\n"
+                + "ROW_NUMBER() OVER (ORDER BY worker, startdate, number) AS ordinal,\n"
+                + "(COALESCE(duration, 0) + 30) / 60 AS durationminutes,\n"
+                + "CASE WHEN registeredEnd IS NULL THEN 0 ELSE TRUNC(EXTRACT(EPOCH FROM registeredEnd + INTERVAL '30 seconds' "
+                + "- COALESCE(registeredStart, now())) / 60)::integer END AS registeredminutes\n"
+                + "FROM ( " + plannedEventQueryPart + "UNION ALL " + maintenanceEventQueryPart + " ) AS events");
         if (!filters.isEmpty()) {
             List<String> whereFilters = Lists.newLinkedList();
             if (filters.containsKey(TimeUsageReportFilterFields.FROM_DATE)) {
@@ -81,6 +105,10 @@ public class TimeUsageXlsDataProvider {
             }
             builder.append(" WHERE ").append(StringUtils.collectionToDelimitedString(whereFilters, " AND "));
         }
-        return builder.toString();
+        return "SELECT usages.*,\n"
+                + "ROW_NUMBER() OVER (PARTITION BY worker, startdate ORDER BY ordinal) = 1 AS firstingroup,\n"
+                + "SUM(durationminutes) OVER (PARTITION BY worker, startdate) AS durationsum,\n"
+                + "SUM(registeredminutes) OVER (PARTITION BY worker, startdate) AS registeredtimesum\n"
+                + "FROM (" + builder.toString() + ") AS usages ORDER BY ordinal";
     }
 }
@@ -2,11 +2,9 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
@@ -20,7 +18,6 @@ import org.apache.poi.ss.usermodel.IndexedColors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
@@ -28,7 +25,6 @@ import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventType;
 import com.qcadoo.mes.cmmsMachineParts.plannedEvents.factory.EventFieldsForTypeFactory;
 import com.qcadoo.mes.cmmsMachineParts.plannedEvents.fieldsForType.FieldsForType;
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
-import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageGroupDTO;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.security.api.SecurityService;
@@ -59,31 +55,27 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
     public void buildExcelContent(final HSSFWorkbook workbook, final HSSFSheet sheet, Map<String, Object> filters,
             final Locale locale) {
         reportStyleFactory = new ReportStyleFactory(workbook);
-        List<TimeUsageDTO> usages = timeUsageXLSDataProvider.getUsages((Map<String, Object>) filters.get("filtersMap"));
-        updatePartsAndDescription(usages, locale);
         fillHeaderData(workbook, sheet, 0, locale, (Map<String, Object>) filters.get("filtersMap"));
         fillHeaderRow(workbook, sheet, 4, locale);
-        List<TimeUsageGroupDTO> timeUsageGroups = group(usages);
-        int rowCounter = 5;
-        for (TimeUsageGroupDTO timeUsageGroupDTO : timeUsageGroups) {
-            rowCounter = fillTimeUsageRows(workbook, sheet, timeUsageGroupDTO, rowCounter++, locale);
-        }
+        AtomicInteger rowCounter = new AtomicInteger(5);
+        timeUsageXLSDataProvider.processUsages((Map<String, Object>) filters.get("filtersMap"), usage -> {
+            updatePartsAndDescription(usage, locale);
+            fillTimeUsageRow(workbook, sheet, usage, rowCounter.getAndIncrement(), locale);
+        });
         setColumnsWidths(sheet);
     }
 
-    private void updatePartsAndDescription(List<TimeUsageDTO> usages, Locale locale) {
-        for (TimeUsageDTO usage : usages) {
-            if ("planned".equals(usage.getEventType())) {
-                PlannedEventType type = PlannedEventType.parseString(usage.getType());
-                FieldsForType fields = fieldsForTypeFactory.createFieldsForType(type);
-                if (fields.getHiddenTabs().contains(PlannedEventFields.MACHINE_PARTS_TAB)) {
-                    String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
-                    usage.setParts(notApplicable);
-                }
-                if (fields.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB)) {
-                    String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
-                    usage.setDescription(notApplicable);
-                }
+    private void updatePartsAndDescription(TimeUsageDTO usage, Locale locale) {
+        if ("planned".equals(usage.getEventType())) {
+            PlannedEventType type = PlannedEventType.parseString(usage.getType());
+            FieldsForType fields = fieldsForTypeFactory.createFieldsForType(type);
+            if (fields.getHiddenTabs().contains(PlannedEventFields.MACHINE_PARTS_TAB)) {
+                String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
+                usage.setParts(notApplicable);
+            }
+            if (fields.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB)) {
+                String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
+                usage.setDescription(notApplicable);
             }
         }
     }
@@ -103,26 +95,6 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         sheet.setColumnWidth(11, 5000);
     }
 
-    private List<TimeUsageGroupDTO> group(List<TimeUsageDTO> usages) {
-        List<TimeUsageGroupDTO> groups = Lists.newLinkedList();
-        Map<String, List<TimeUsageDTO>> workerMap = usages.stream().collect(Collectors.groupingBy(TimeUsageDTO::getWorker));
-        for (Entry<String, List<TimeUsageDTO>> entry : workerMap.entrySet()) {
-            Map<Date, List<TimeUsageDTO>> dateMap = entry.getValue().stream()
-                    .collect(Collectors.groupingBy(TimeUsageDTO::getStartDate));
-            for (Date date : dateMap.keySet()) {
-                TimeUsageGroupDTO timeUsageGroup = new TimeUsageGroupDTO(date, entry.getKey(), dateMap.get(date));
-                groups.add(timeUsageGroup);
-            }
-        }
-        return groups.stream().sorted((g1, g2) -> {
-            if (g1.getWorker().equals(g2.getWorker())) {
-                return g1.getDate().compareTo(g2.getDate());
-            } else {
-                return g1.getWorker().compareTo(g2.getWorker());
-            }
-        }).collect(Collectors.toList());
-    }
-
     private void fillHeaderData(final HSSFWorkbook workbook, final HSSFSheet sheet, Integer rowNum, final Locale locale,
             Map<String, Object> filters) {
         Font font = workbook.createFont();
@@ -202,32 +174,20 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         }
     }
 
-    private int fillTimeUsageRows(final HSSFWorkbook workbook, final HSSFSheet sheet, final TimeUsageGroupDTO timeUsage,
-            int rowCounter, final Locale locale) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-
-        int usagesCounter = 0;
-
-        for (TimeUsageDTO usage : timeUsage.getTimeUsages()) {
-            HSSFRow usageRow = sheet.createRow(rowCounter + usagesCounter);
-            boolean isFirst = usagesCounter == 0;
-            HSSFCellStyle style = getLeftAlignedStyle(workbook, isFirst, usage);
-            HSSFCellStyle styleRight = getRightAlignedStyle(workbook, isFirst, usage);
-            addNewRow(usageRow, usage, locale, style, styleRight);
-            if (isFirst) {
-                addNewCell(usageRow, timeUsage.getDurationSum().toString(), 10, styleRight, true);
-                addNewCell(usageRow, timeUsage.getRegisteredTimeSum().toString(), 11, styleRight, true);
-            } else {
-                addNewCell(usageRow, "", 10, styleRight, false);
-                addNewCell(usageRow, "", 11, styleRight, false);
-            }
-            ++usagesCounter;
+    private void fillTimeUsageRow(final HSSFWorkbook workbook, final HSSFSheet sheet, final TimeUsageDTO usage,
+            int rowNumber, final Locale locale) {
+        HSSFRow usageRow = sheet.createRow(rowNumber);
+        boolean isFirst = usage.getDurationSum() != null;
+        HSSFCellStyle style = getLeftAlignedStyle(workbook, isFirst, usage);
+        HSSFCellStyle styleRight = getRightAlignedStyle(workbook, isFirst, usage);
+        addNewRow(usageRow, usage, locale, style, styleRight);
+        if (isFirst) {
+            addNewCell(usageRow, usage.getDurationSum().toString(), 10, styleRight, true);
+            addNewCell(usageRow, usage.getRegisteredTimeSum().toString(), 11, styleRight, true);
+        } else {
+            addNewCell(usageRow, "", 10, styleRight, false);
+            addNewCell(usageRow, "", 11, styleRight, false);
         }
-
-        return rowCounter + usagesCounter;
     }
 
     private void addNewRow(HSSFRow usageRow, TimeUsageDTO timeUsage, Locale locale, HSSFCellStyle style,
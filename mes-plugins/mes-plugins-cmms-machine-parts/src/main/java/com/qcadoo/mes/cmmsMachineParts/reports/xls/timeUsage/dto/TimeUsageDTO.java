@@ -27,6 +27,10 @@ public class TimeUsageDTO {
 
     private Integer registeredTime;
 
+    private Long durationSum;
+
+    private Long registeredTimeSum;
+
     public String getWorker() {
         return worker;
     }
@@ -115,4 +119,20 @@ public class TimeUsageDTO {
         this.registeredTime = registeredTime;
     }
 
+    public Long getDurationSum() {
+        return durationSum;
+    }
+
+    public void setDurationSum(Long durationSum) {
+        this.durationSum = durationSum;
+    }
+
+    public Long getRegisteredTimeSum() {
+        return registeredTimeSum;
+    }
+
+    public void setRegisteredTimeSum(Long registeredTimeSum) {
+        this.registeredTimeSum = registeredTimeSum;
+    }
+
 }
@@ -0,0 +1,73 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+
+public class EventsBulkStateChangeResult {
+
+    private final List<Long> changedEventIds = Lists.newArrayList();
+
+    private final Multimap<String, String> failures = LinkedHashMultimap.create();
+
+    private final Multimap<String, String> infos = LinkedHashMultimap.create();
+
+    public void addChanged(final Long eventId) {
+        changedEventIds.add(eventId);
+    }
+
+    public void addChanged(final List<Long> eventIds) {
+        changedEventIds.addAll(eventIds);
+    }
+
+    public void addFailure(final String messageKey, final String eventNumber) {
+        failures.put(messageKey, eventNumber);
+    }
+
+    public void addInfo(final String messageKey, final String arg) {
+        infos.put(messageKey, arg);
+    }
+
+    public List<Long> getChangedEventIds() {
+        return Collections.unmodifiableList(changedEventIds);
+    }
+
+    /**
+     * @return numbers of events which state was not changed, grouped by message key describing the reason
+     */
+    public Multimap<String, String> getFailures() {
+        return Multimaps.unmodifiableMultimap(failures);
+    }
+
+    public Multimap<String, String> getInfos() {
+        return Multimaps.unmodifiableMultimap(infos);
+    }
+
+}
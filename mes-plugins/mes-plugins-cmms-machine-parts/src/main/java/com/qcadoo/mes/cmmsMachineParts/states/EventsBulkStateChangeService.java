@@ -0,0 +1,411 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
+import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventType;
+import com.qcadoo.mes.cmmsMachineParts.constants.ParameterFieldsCMP;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventType;
+import com.qcadoo.mes.cmmsMachineParts.notification.MaintenanceEventNotificationBus;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.factory.EventFieldsForTypeFactory;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.fieldsForType.FieldsForType;
+import com.qcadoo.mes.cmmsMachineParts.states.aop.MaintenanceEventStateChangeAspect;
+import com.qcadoo.mes.cmmsMachineParts.states.aop.PlannedEventStateChangeAspect;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.MaintenanceEventState;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.MaintenanceEventStateChangePhase;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventState;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventStateChangePhase;
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.mes.states.constants.StateChangeStatus;
+import com.qcadoo.mes.states.exception.AnotherChangeInProgressException;
+import com.qcadoo.mes.states.exception.StateChangeException;
+import com.qcadoo.mes.states.exception.StateTransitionNotAlloweException;
+import com.qcadoo.mes.states.service.StateChangeContextBuilder;
+import com.qcadoo.mes.states.service.StateChangeService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.security.api.SecurityService;
+
+/**
+ * Changes state of many maintenance or planned events at once. Data checked by state validators is read with one query for the
+ * whole selection and checked with the same rules as for a single event. State changes of maintenance events which pass
+ * validation are written with set based statements, planned events are saved one by one, so their hooks and model validators
+ * run. Events which transition has side effects (warehouse documents for machine parts, after review events) go through the
+ * regular state change service one by one.
+ */
+@Service
+public class EventsBulkStateChangeService {
+
+    private static final String L_ANOTHER_CHANGE_IN_PROGRESS = "states.messages.change.failure.anotherChangeInProgress";
+
+    private static final String L_TRANSITION_NOT_ALLOWED = "states.messages.change.failure.transitionNotAllowed";
+
+    private static final String L_STATE_CHANGE_FAILURE = "states.messages.change.failure";
+
+    private static final String L_TOO_LONG_WORKERS_TIME = "cmmsMachineParts.maintenanceEvent.state.tooLongWorkersTime";
+
+    private static final String L_PLANNED_EVENTS_QUERY = "SELECT event.id, event.number, event.state, event.type, event.basedon, "
+            + "event.owner_id, event.duration, event.date, event.counter, event.effectivecounter, event.sourcecost_id, "
+            + "event.solutiondescription, "
+            + "(SELECT COUNT(*) FROM jointable_plannedevent_staff WHERE plannedevent_id = event.id) AS responsibleworkers, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_plannedeventrealization WHERE plannedevent_id = event.id) AS realizations, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_actionforplannedevent WHERE plannedevent_id = event.id) AS actions, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_actionforplannedevent "
+            + "WHERE plannedevent_id = event.id AND COALESCE(state, '') = '') AS actionswithoutstate, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_actionforplannedevent "
+            + "WHERE plannedevent_id = event.id AND state = '02incorrect') AS incorrectactions, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_machinepartforevent WHERE plannedevent_id = event.id) AS machineparts, "
+            + "EXISTS (SELECT id FROM cmmsmachineparts_plannedeventstatechange "
+            + "WHERE plannedevent_id = event.id AND status IN ('01inProgress', '02paused')) AS changeinprogress "
+            + "FROM cmmsmachineparts_plannedevent event WHERE event.id IN (:ids)";
+
+    private static final String L_MAINTENANCE_EVENTS_QUERY = "SELECT event.id, event.number, event.state, event.type, "
+            + "event.solutiondescription, event.sourcecost_id, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_staffworktime WHERE maintenanceevent_id = event.id) AS staffworktimes, "
+            + "(SELECT COUNT(*) FROM cmmsmachineparts_machinepartforevent WHERE maintenanceevent_id = event.id) AS machineparts, "
+            + "(SELECT MAX(dateandtime) FROM cmmsmachineparts_maintenanceeventstatechange WHERE maintenanceevent_id = event.id "
+            + "AND status = '03successful' AND targetstate = '02inProgress') AS progressstart, "
+            + "(SELECT MAX(dateandtime) FROM cmmsmachineparts_maintenanceeventstatechange WHERE maintenanceevent_id = event.id "
+            + "AND status = '03successful' AND targetstate = '03edited') AS progressend, "
+            + "EXISTS (SELECT id FROM cmmsmachineparts_maintenanceeventstatechange "
+            + "WHERE maintenanceevent_id = event.id AND status IN ('01inProgress', '02paused')) AS changeinprogress "
+            + "FROM cmmsmachineparts_maintenanceevent event WHERE event.id IN (:ids)";
+
+    private static final String L_WORKERS_TIMES_QUERY = "SELECT worktime.maintenanceevent_id, staff.name, staff.surname, "
+            + "SUM(worktime.labortime) AS labortime FROM cmmsmachineparts_staffworktime worktime "
+            + "JOIN basic_staff staff ON staff.id = worktime.worker_id WHERE worktime.maintenanceevent_id IN (:ids) "
+            + "GROUP BY worktime.maintenanceevent_id, staff.id, staff.name, staff.surname";
+
+    private static final String L_PLANNED_EVENT_TABLE = "cmmsmachineparts_plannedevent";
+
+    private static final String L_MAINTENANCE_EVENT_TABLE = "cmmsmachineparts_maintenanceevent";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private StateChangeContextBuilder stateChangeContextBuilder;
+
+    @Autowired
+    private PlannedEventStateChangeAspect plannedEventStateChangeAspect;
+
+    @Autowired
+    private MaintenanceEventStateChangeAspect maintenanceEventStateChangeAspect;
+
+    @Autowired
+    private EventFieldsForTypeFactory eventFieldsForTypeFactory;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private MaintenanceEventNotificationBus maintenanceEventNotificationBus;
+
+    @Autowired
+    private EventsBulkStateChangeWriter eventsBulkStateChangeWriter;
+
+    @Autowired
+    private PlannedEventStateRules plannedEventStateRules;
+
+    @Autowired
+    private MaintenanceEventStateRules maintenanceEventStateRules;
+
+    /**
+     * Checks if transition to given state asks user for additional data (reason form) when performed from a view.
+     */
+    public boolean isPlannedEventTransitionInteractive(final String targetState) {
+        PlannedEventState state = PlannedEventState.parseString(targetState);
+
+        return PlannedEventState.CANCELED.equals(state) || PlannedEventState.IN_REALIZATION.equals(state);
+    }
+
+    /**
+     * Checks if transition to given state asks user for additional data (reason or planned event form) when performed from a
+     * view, or sets up the event before changing its state.
+     */
+    public boolean isMaintenanceEventTransitionInteractive(final String targetState) {
+        MaintenanceEventState state = MaintenanceEventState.parseString(targetState);
+
+        return MaintenanceEventState.REVOKED.equals(state) || MaintenanceEventState.PLANNED.equals(state)
+                || MaintenanceEventState.IN_PROGRESS.equals(state);
+    }
+
+    public EventsBulkStateChangeResult changePlannedEventsState(final List<Long> eventIds, final String targetStateString) {
+        PlannedEventState targetState = PlannedEventState.parseString(targetStateString);
+        EventsBulkStateChangeResult result = new EventsBulkStateChangeResult();
+        Map<PlannedEventType, FieldsForType> fieldsForTypes = new EnumMap<>(PlannedEventType.class);
+
+        Map<Long, String> validEvents = Maps.newLinkedHashMap();
+        Map<Long, String> eventsWithSideEffects = Maps.newLinkedHashMap();
+
+        for (Map<String, Object> event : jdbcTemplate.queryForList(L_PLANNED_EVENTS_QUERY,
+                Collections.singletonMap("ids", eventIds))) {
+            Long eventId = getLong(event, "id");
+            String number = (String) event.get("number");
+            PlannedEventState sourceState = PlannedEventState.parseString((String) event.get("state"));
+
+            if ((Boolean) event.get("changeinprogress")) {
+                result.addFailure(L_ANOTHER_CHANGE_IN_PROGRESS, number);
+            } else if (!sourceState.canChangeTo(targetState)) {
+                result.addFailure(L_TRANSITION_NOT_ALLOWED, number);
+            } else {
+                PlannedEventType type = PlannedEventType.parseString((String) event.get("type"));
+                FieldsForType fieldsForType = fieldsForTypes.computeIfAbsent(type,
+                        eventFieldsForTypeFactory::createFieldsForType);
+                Optional<String> error = validatePlannedEvent(event, fieldsForType, targetState);
+
+                if (error.isPresent()) {
+                    result.addFailure(error.get(), number);
+                } else if (PlannedEventState.REALIZED.equals(targetState)
+                        && (getLong(event, "machineparts") > 0 || (PlannedEventType.REVIEW.equals(type) && getLong(event,
+                                "incorrectactions") > 0))) {
+                    eventsWithSideEffects.put(eventId, number);
+                } else {
+                    validEvents.put(eventId, sourceState.getStringValue());
+                }
+            }
+        }
+
+        DataDefinition plannedEventDD = dataDefinitionService.get(CmmsMachinePartsConstants.PLUGIN_IDENTIFIER,
+                CmmsMachinePartsConstants.MODEL_PLANNED_EVENT);
+
+        if (!validEvents.isEmpty()) {
+            Map<String, Object> stateChangeParams = getStateChangeParams(targetState.getStringValue(),
+                    PlannedEventStateChangePhase.LAST);
+
+            for (Entity event : plannedEventDD.find().add(SearchRestrictions.in("id", Lists.newArrayList(validEvents.keySet())))
+                    .list().getEntities()) {
+                if (eventsBulkStateChangeWriter.changeState(plannedEventDD, event, L_PLANNED_EVENT_TABLE, "plannedevent",
+                        validEvents.get(event.getId()), stateChangeParams)) {
+                    result.addChanged(event.getId());
+                } else {
+                    result.addFailure(L_STATE_CHANGE_FAILURE, event.getStringField(PlannedEventFields.NUMBER));
+                }
+            }
+        }
+
+        for (Map.Entry<Long, String> event : eventsWithSideEffects.entrySet()) {
+            changeState(plannedEventStateChangeAspect, plannedEventDD, event.getKey(), event.getValue(),
+                    targetState.getStringValue(), result);
+        }
+
+        return result;
+    }
+
+    public EventsBulkStateChangeResult changeMaintenanceEventsState(final List<Long> eventIds, final String targetStateString) {
+        MaintenanceEventState targetState = MaintenanceEventState.parseString(targetStateString);
+        EventsBulkStateChangeResult result = new EventsBulkStateChangeResult();
+
+        Map<String, List<Long>> validEventIdsBySourceState = Maps.newLinkedHashMap();
+        Map<Long, String> numbers = Maps.newHashMap();
+        Map<Long, String> eventsWithSideEffects = Maps.newLinkedHashMap();
+        List<Map<String, Object>> eventsToCheckWorkersTimes = Lists.newArrayList();
+
+        for (Map<String, Object> event : jdbcTemplate.queryForList(L_MAINTENANCE_EVENTS_QUERY,
+                Collections.singletonMap("ids", eventIds))) {
+            Long eventId = getLong(event, "id");
+            String number = (String) event.get("number");
+            MaintenanceEventState sourceState = MaintenanceEventState.parseString((String) event.get("state"));
+
+            if ((Boolean) event.get("changeinprogress")) {
+                result.addFailure(L_ANOTHER_CHANGE_IN_PROGRESS, number);
+            } else if (!sourceState.canChangeTo(targetState)) {
+                result.addFailure(L_TRANSITION_NOT_ALLOWED, number);
+            } else if (MaintenanceEventState.IN_PROGRESS.equals(targetState)) {
+                eventsWithSideEffects.put(eventId, number);
+            } else {
+                Optional<String> error = validateMaintenanceEvent(event, targetState);
+
+                if (error.isPresent()) {
+                    result.addFailure(error.get(), number);
+                } else {
+                    if (MaintenanceEventState.CLOSED.equals(targetState)) {
+                        eventsToCheckWorkersTimes.add(event);
+                    }
+                    if (MaintenanceEventState.CLOSED.equals(targetState) && getLong(event, "machineparts") > 0) {
+                        eventsWithSideEffects.put(eventId, number);
+                    } else {
+                        validEventIdsBySourceState.computeIfAbsent(sourceState.getStringValue(), state -> Lists.newArrayList())
+                                .add(eventId);
+                        numbers.put(eventId, number);
+                    }
+                }
+            }
+        }
+
+        checkWorkersTimesDeviation(eventsToCheckWorkersTimes, result);
+
+        boolean anyChanged = false;
+
+        if (!validEventIdsBySourceState.isEmpty()) {
+            Map<String, Object> stateChangeParams = getStateChangeParams(targetState.getStringValue(),
+                    MaintenanceEventStateChangePhase.LAST);
+
+            for (Map.Entry<String, List<Long>> validEventIds : validEventIdsBySourceState.entrySet()) {
+                List<Long> changedEventIds = eventsBulkStateChangeWriter.changeStates(L_MAINTENANCE_EVENT_TABLE,
+                        "maintenanceevent", validEventIds.getValue(), validEventIds.getKey(), stateChangeParams,
+                        ", soundnotifications = false");
+
+                result.addChanged(changedEventIds);
+                anyChanged |= !changedEventIds.isEmpty();
+
+                for (Long eventId : validEventIds.getValue()) {
+                    if (!changedEventIds.contains(eventId)) {
+                        result.addFailure(L_STATE_CHANGE_FAILURE, numbers.get(eventId));
+                    }
+                }
+            }
+        }
+
+        if (anyChanged) {
+            maintenanceEventNotificationBus.maintenanceEventChanged();
+        }
+
+        DataDefinition maintenanceEventDD = dataDefinitionService.get(CmmsMachinePartsConstants.PLUGIN_IDENTIFIER,
+                CmmsMachinePartsConstants.MODEL_MAINTENANCE_EVENT);
+        for (Map.Entry<Long, String> event : eventsWithSideEffects.entrySet()) {
+            changeState(maintenanceEventStateChangeAspect, maintenanceEventDD, event.getKey(), event.getValue(),
+                    targetState.getStringValue(), result);
+        }
+
+        return result;
+    }
+
+    private Optional<String> validatePlannedEvent(final Map<String, Object> event, final FieldsForType fieldsForType,
+            final PlannedEventState targetState) {
+        return plannedEventStateRules.validate(PlannedEventStateRules.valuesOf(event), fieldsForType, targetState);
+    }
+
+    private Optional<String> validateMaintenanceEvent(final Map<String, Object> event, final MaintenanceEventState targetState) {
+        return maintenanceEventStateRules.validate(MaintenanceEventStateRules.valuesOf(event), targetState);
+    }
+
+    private void checkWorkersTimesDeviation(final List<Map<String, Object>> events, final EventsBulkStateChangeResult result) {
+        BigDecimal possibleDeviationPercent = parameterService.getParameter().getDecimalField(
+                ParameterFieldsCMP.POSSIBLE_WORK_TIME_DEVIATION);
+
+        if (possibleDeviationPercent == null) {
+            return;
+        }
+
+        Map<Long, Integer> progressTimes = Maps.newHashMap();
+
+        for (Map<String, Object> event : events) {
+            Date start = (Date) event.get("progressstart");
+            Date end = (Date) event.get("progressend");
+
+            if (start != null && end != null && start.before(end)
+                    && !MaintenanceEventType.PROPOSAL.getStringValue().equals(event.get("type"))) {
+                progressTimes.put(getLong(event, "id"), (int) ((end.getTime() - start.getTime()) / 1000));
+            }
+        }
+
+        if (progressTimes.isEmpty()) {
+            return;
+        }
+
+        BigDecimal percent = possibleDeviationPercent.divide(new BigDecimal(100), numberService.getMathContext());
+
+        for (Map<String, Object> workerTime : jdbcTemplate.queryForList(L_WORKERS_TIMES_QUERY,
+                Collections.singletonMap("ids", progressTimes.keySet()))) {
+            Integer progressTime = progressTimes.get(getLong(workerTime, "maintenanceevent_id"));
+            int possibleDeviation = percent.multiply(new BigDecimal(progressTime)).intValue();
+
+            if (getLong(workerTime, "labortime") - progressTime > possibleDeviation) {
+                result.addInfo(L_TOO_LONG_WORKERS_TIME, workerTime.get("name") + " " + workerTime.get("surname"));
+            }
+        }
+    }
+
+    private Map<String, Object> getStateChangeParams(final String targetState, final int phase) {
+        Entity shift = shiftsService.getShiftFromDateWithTime(new Date());
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("date", new Date());
+        params.put("targetState", targetState);
+        params.put("phase", phase);
+        params.put("worker", securityService.getCurrentUserName());
+        params.put("shiftId", (shift == null) ? null : shift.getId());
+
+        return params;
+    }
+
+    private void changeState(final StateChangeService stateChangeService, final DataDefinition eventDD, final Long eventId,
+            final String number, final String targetState, final EventsBulkStateChangeResult result) {
+        try {
+            StateChangeContext stateChangeContext = stateChangeContextBuilder.build(
+                    stateChangeService.getChangeEntityDescriber(), eventDD.get(eventId), targetState);
+            stateChangeService.changeState(stateChangeContext);
+
+            if (StateChangeStatus.SUCCESSFUL.equals(stateChangeContext.getStatus())) {
+                result.addChanged(eventId);
+            } else {
+                result.addFailure(L_STATE_CHANGE_FAILURE, number);
+            }
+        } catch (AnotherChangeInProgressException e) {
+            result.addFailure(L_ANOTHER_CHANGE_IN_PROGRESS, number);
+        } catch (StateTransitionNotAlloweException e) {
+            result.addFailure(L_TRANSITION_NOT_ALLOWED, number);
+        } catch (StateChangeException e) {
+            result.addFailure(L_STATE_CHANGE_FAILURE, number);
+        }
+    }
+
+    private Long getLong(final Map<String, Object> row, final String column) {
+        return ((Number) row.get(column)).longValue();
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Writes state changes of {@link EventsBulkStateChangeService}. Each method runs in its own transaction, so event state and its
+ * state change entries are written together.
+ */
+@Service
+public class EventsBulkStateChangeWriter {
+
+    private static final String L_STATE = "state";
+
+    private static final String L_INSERT_STATE_CHANGES = "INSERT INTO %1$sstatechange "
+            + "(dateandtime, sourcestate, targetstate, status, phase, worker, %2$s_id, shift_id, commentrequired) "
+            + "SELECT :date, :sourceState, :targetState, '03successful', :phase, :worker, id, :shiftId, false FROM %1$s "
+            + "WHERE id IN (:ids)";
+
+    private static final String L_UPDATE_STATES = "UPDATE %s SET state = :targetState, updatedate = :date, updateuser = :worker, "
+            + "entityversion = entityversion + 1%s WHERE id IN (:ids) AND state = :sourceState RETURNING id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Changes state of given events with set based statements. Events which state is no longer the source state, because it was
+     * changed in the meantime, are left untouched.
+     *
+     * @return ids of events, which state was changed
+     */
+    @Transactional
+    public List<Long> changeStates(final String eventTable, final String ownerColumn, final List<Long> eventIds,
+            final String sourceState, final Map<String, Object> stateChangeParams, final String additionalUpdates) {
+        if (eventIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, Object> params = Maps.newHashMap(stateChangeParams);
+        params.put("ids", eventIds);
+        params.put("sourceState", sourceState);
+
+        List<Long> changedEventIds = jdbcTemplate.queryForList(String.format(L_UPDATE_STATES, eventTable, additionalUpdates),
+                params, Long.class);
+
+        if (!changedEventIds.isEmpty()) {
+            params.put("ids", changedEventIds);
+
+            jdbcTemplate.update(String.format(L_INSERT_STATE_CHANGES, eventTable, ownerColumn), params);
+        }
+
+        return changedEventIds;
+    }
+
+    /**
+     * Changes state of given event by saving it through its data definition, so its hooks and validators run.
+     *
+     * @return true if event was in the source state and was saved as valid
+     */
+    @Transactional
+    public boolean changeState(final DataDefinition eventDD, final Entity event, final String eventTable,
+            final String ownerColumn, final String sourceState, final Map<String, Object> stateChangeParams) {
+        if (!sourceState.equals(event.getStringField(L_STATE))) {
+            return false;
+        }
+
+        event.setField(L_STATE, stateChangeParams.get("targetState"));
+
+        if (!eventDD.save(event).isValid()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
+            return false;
+        }
+
+        Map<String, Object> params = Maps.newHashMap(stateChangeParams);
+        params.put("ids", Collections.singletonList(event.getId()));
+        params.put("sourceState", sourceState);
+
+        jdbcTemplate.update(String.format(L_INSERT_STATE_CHANGES, eventTable, ownerColumn), params);
+
+        return true;
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventFields;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.MaintenanceEventState;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Rules checked before changing state of a maintenance event, shared by state validators of a single event and by the bulk
+ * state change. Deviation of workers times is only reported as information, so it's not a part of the rules.
+ */
+@Service
+public class MaintenanceEventStateRules {
+
+    public static final String NO_WORKERS_TIME_ENTRY = "cmmsMachineParts.maintenanceEvent.state.noWorkersTimeEntry";
+
+    public static final String FILL_REQUIRED_FIELDS = "cmmsMachineParts.plannedEvent.state.fillRequiredFields";
+
+    /**
+     * Values of a maintenance event checked by the rules.
+     */
+    public interface Values {
+
+        boolean hasStaffWorkTimes();
+
+        boolean hasSolutionDescription();
+
+        boolean hasSourceCost();
+
+    }
+
+    public static Values valuesOf(final Entity event) {
+        return new Values() {
+
+            @Override
+            public boolean hasStaffWorkTimes() {
+                return !event.getHasManyField(MaintenanceEventFields.STAFF_WORK_TIMES).isEmpty();
+            }
+
+            @Override
+            public boolean hasSolutionDescription() {
+                return !StringUtils.isEmpty(event.getStringField(MaintenanceEventFields.SOLUTION_DESCRIPTION));
+            }
+
+            @Override
+            public boolean hasSourceCost() {
+                return event.getBelongsToField(MaintenanceEventFields.SOURCE_COST) != null;
+            }
+
+        };
+    }
+
+    /**
+     * @param row
+     *            row of the bulk state change query, with count of staff work times
+     */
+    public static Values valuesOf(final Map<String, Object> row) {
+        return new Values() {
+
+            @Override
+            public boolean hasStaffWorkTimes() {
+                return ((Number) row.get("staffworktimes")).longValue() > 0;
+            }
+
+            @Override
+            public boolean hasSolutionDescription() {
+                return !StringUtils.isEmpty((String) row.get("solutiondescription"));
+            }
+
+            @Override
+            public boolean hasSourceCost() {
+                return row.get("sourcecost_id") != null;
+            }
+
+        };
+    }
+
+    /**
+     * @return first error message of a transition to given state, if any
+     */
+    public Optional<String> validate(final Values event, final MaintenanceEventState targetState) {
+        if (MaintenanceEventState.CLOSED.equals(targetState)) {
+            if (!event.hasStaffWorkTimes()) {
+                return Optional.of(NO_WORKERS_TIME_ENTRY);
+            }
+            if (!getMissingClosingFields(event).isEmpty()) {
+                return Optional.of(FILL_REQUIRED_FIELDS);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return names of fields required to close the event which are not set
+     */
+    public List<String> getMissingClosingFields(final Values event) {
+        List<String> missingFields = Lists.newArrayList();
+
+        if (!event.hasSolutionDescription()) {
+            missingFields.add(MaintenanceEventFields.SOLUTION_DESCRIPTION);
+        }
+        if (!event.hasSourceCost()) {
+            missingFields.add(MaintenanceEventFields.SOURCE_COST);
+        }
+
+        return missingFields;
+    }
+
+}
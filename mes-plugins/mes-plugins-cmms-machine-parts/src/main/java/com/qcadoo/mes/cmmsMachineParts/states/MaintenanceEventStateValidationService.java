@@ -33,7 +33,6 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
-import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Seconds;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -60,6 +59,9 @@ public class MaintenanceEventStateValidationService {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private MaintenanceEventStateRules maintenanceEventStateRules;
+
     public void validationOnInProgress(final StateChangeContext stateChangeContext) {
         Entity event = stateChangeContext.getOwner();
         checkIfPersonReceivingIsSet(event, stateChangeContext);
@@ -72,17 +74,9 @@ public class MaintenanceEventStateValidationService {
 
     public void validationOnClosed(final StateChangeContext stateChangeContext) {
         Entity event = stateChangeContext.getOwner();
-        checkIfSolutionDescriptionIsSet(event, stateChangeContext);
+        checkIfClosingFieldsAreSet(event, stateChangeContext);
         checkIfWorkerTimeIsFilled(event, stateChangeContext);
         checkWorkerTimesDeviation(event, stateChangeContext);
-        checkSourceCost(event, stateChangeContext);
-    }
-
-    private void checkSourceCost(final Entity event, StateChangeContext stateChangeContext) {
-        if (event.getBelongsToField(MaintenanceEventFields.SOURCE_COST) == null) {
-            stateChangeContext.addFieldValidationError(MaintenanceEventFields.SOURCE_COST,
-                    "cmmsMachineParts.maintenanceEvent.state.fieldRequired");
-        }
     }
 
     public void validationOnRevoked(final StateChangeContext stateChangeContext) {
@@ -100,16 +94,16 @@ public class MaintenanceEventStateValidationService {
         }
     }
 
-    private void checkIfSolutionDescriptionIsSet(Entity event, StateChangeContext stateChangeContext) {
-        if (StringUtils.isEmpty(event.getStringField(MaintenanceEventFields.SOLUTION_DESCRIPTION))) {
-            stateChangeContext.addFieldValidationError(MaintenanceEventFields.SOLUTION_DESCRIPTION,
-                    "cmmsMachineParts.maintenanceEvent.state.fieldRequired");
+    private void checkIfClosingFieldsAreSet(Entity event, StateChangeContext stateChangeContext) {
+        for (String missingField : maintenanceEventStateRules.getMissingClosingFields(MaintenanceEventStateRules
+                .valuesOf(event))) {
+            stateChangeContext.addFieldValidationError(missingField, "cmmsMachineParts.maintenanceEvent.state.fieldRequired");
         }
     }
 
     private void checkIfWorkerTimeIsFilled(Entity event, StateChangeContext stateChangeContext) {
-        if (event.getHasManyField(MaintenanceEventFields.STAFF_WORK_TIEMS).isEmpty()) {
-            stateChangeContext.addValidationError("cmmsMachineParts.maintenanceEvent.state.noWorkersTimeEntry");
+        if (!MaintenanceEventStateRules.valuesOf(event).hasStaffWorkTimes()) {
+            stateChangeContext.addValidationError(MaintenanceEventStateRules.NO_WORKERS_TIME_ENTRY);
         }
     }
 
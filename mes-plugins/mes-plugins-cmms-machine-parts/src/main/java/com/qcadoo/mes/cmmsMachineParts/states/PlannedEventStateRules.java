@@ -0,0 +1,352 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.cmmsMachineParts.constants.ActionForPlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventBasedOn;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventType;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.fieldsForType.FieldsForType;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventState;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Rules checked before changing state of a planned event. Used by state validators of a single event and by the bulk state
+ * change, which reads checked values of many events with one query.
+ */
+@Service
+public class PlannedEventStateRules {
+
+    public static final String OWNER_NOT_FOUND = "cmmsMachineParts.plannedEvent.state.ownerNotFound";
+
+    public static final String FILL_REQUIRED_FIELDS = "cmmsMachineParts.plannedEvent.state.fillRequiredFields";
+
+    public static final String ACTIONS_WITHOUT_STATE = "cmmsMachineParts.plannedEvent.state.actionsWithoutState";
+
+    /**
+     * Values of a planned event checked by the rules.
+     */
+    public interface Values {
+
+        PlannedEventType getType();
+
+        String getBasedOn();
+
+        boolean hasOwner();
+
+        boolean hasDuration();
+
+        boolean hasDate();
+
+        boolean hasCounter();
+
+        boolean hasEffectiveCounter();
+
+        boolean hasResponsibleWorkers();
+
+        boolean hasSourceCost();
+
+        boolean hasRealizations();
+
+        boolean hasSolutionDescription();
+
+        boolean hasActions();
+
+        boolean hasActionsWithoutState();
+
+    }
+
+    public static Values valuesOf(final Entity event) {
+        return new EntityValues(event);
+    }
+
+    /**
+     * @param row
+     *            row of the bulk state change query, with counts of responsible workers, realizations, actions and actions
+     *            without state
+     */
+    public static Values valuesOf(final Map<String, Object> row) {
+        return new RowValues(row);
+    }
+
+    /**
+     * @return first error message of a transition to given state, if any
+     */
+    public Optional<String> validate(final Values event, final FieldsForType fieldsForType, final PlannedEventState targetState) {
+        switch (targetState) {
+            case IN_PLAN:
+                if (!event.hasOwner()) {
+                    return Optional.of(OWNER_NOT_FOUND);
+                }
+                break;
+            case PLANNED:
+            case IN_REALIZATION:
+                if (!getMissingRequiredFields(event, fieldsForType).isEmpty()) {
+                    return Optional.of(FILL_REQUIRED_FIELDS);
+                }
+                break;
+            case IN_EDITING:
+                if (event.hasActionsWithoutState()) {
+                    return Optional.of(ACTIONS_WITHOUT_STATE);
+                }
+                break;
+            case REALIZED:
+                if (event.hasActionsWithoutState()) {
+                    return Optional.of(ACTIONS_WITHOUT_STATE);
+                }
+                if (!getMissingRealizationFields(event, fieldsForType).isEmpty()
+                        || !getMissingRequiredFields(event, fieldsForType).isEmpty()) {
+                    return Optional.of(FILL_REQUIRED_FIELDS);
+                }
+                break;
+            default:
+                break;
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return names of fields required to plan or realize the event which are not set
+     */
+    public List<String> getMissingRequiredFields(final Values event, final FieldsForType fieldsForType) {
+        List<String> missingFields = Lists.newArrayList();
+
+        if (!event.hasOwner()) {
+            missingFields.add(PlannedEventFields.OWNER);
+        }
+        if (!event.hasDuration() && !fieldsForType.getHiddenFields().contains(PlannedEventFields.DURATION)) {
+            missingFields.add(PlannedEventFields.DURATION);
+        }
+        if (PlannedEventBasedOn.DATE.getStringValue().equals(event.getBasedOn())) {
+            if (!event.hasDate()) {
+                missingFields.add(PlannedEventFields.DATE);
+            }
+        } else if (PlannedEventBasedOn.COUNTER.getStringValue().equals(event.getBasedOn())) {
+            if (!event.hasCounter()) {
+                missingFields.add(PlannedEventFields.COUNTER);
+            }
+        }
+        if (!event.hasResponsibleWorkers()) {
+            missingFields.add(PlannedEventFields.RESPONSIBLE_WORKERS);
+        }
+
+        return missingFields;
+    }
+
+    /**
+     * @return names of fields required to mark the event as realized which are not set
+     */
+    public List<String> getMissingRealizationFields(final Values event, final FieldsForType fieldsForType) {
+        List<String> missingFields = Lists.newArrayList();
+
+        if (!event.hasSourceCost()) {
+            missingFields.add(PlannedEventFields.SOURCE_COST);
+        }
+        if (!event.hasEffectiveCounter()
+                && (PlannedEventBasedOn.COUNTER.getStringValue().equals(event.getBasedOn()) || PlannedEventType.METER_READING
+                        .equals(event.getType()))) {
+            missingFields.add(PlannedEventFields.EFFECTIVE_COUNTER);
+        }
+        if (!event.hasRealizations()) {
+            missingFields.add(PlannedEventFields.REALIZATIONS);
+        }
+        if (!event.hasSolutionDescription()
+                && !fieldsForType.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB) && !event.hasActions()) {
+            missingFields.add(PlannedEventFields.SOLUTION_DESCRIPTION);
+        }
+
+        return missingFields;
+    }
+
+    private static final class EntityValues implements Values {
+
+        private final Entity event;
+
+        private EntityValues(final Entity event) {
+            this.event = event;
+        }
+
+        @Override
+        public PlannedEventType getType() {
+            return PlannedEventType.from(event);
+        }
+
+        @Override
+        public String getBasedOn() {
+            return event.getStringField(PlannedEventFields.BASED_ON);
+        }
+
+        @Override
+        public boolean hasOwner() {
+            return event.getBelongsToField(PlannedEventFields.OWNER) != null;
+        }
+
+        @Override
+        public boolean hasDuration() {
+            Integer duration = event.getIntegerField(PlannedEventFields.DURATION);
+
+            return (duration != null) && (duration != 0);
+        }
+
+        @Override
+        public boolean hasDate() {
+            return event.getDateField(PlannedEventFields.DATE) != null;
+        }
+
+        @Override
+        public boolean hasCounter() {
+            return event.getDecimalField(PlannedEventFields.COUNTER) != null;
+        }
+
+        @Override
+        public boolean hasEffectiveCounter() {
+            return event.getDecimalField(PlannedEventFields.EFFECTIVE_COUNTER) != null;
+        }
+
+        @Override
+        public boolean hasResponsibleWorkers() {
+            return !event.getHasManyField(PlannedEventFields.RESPONSIBLE_WORKERS).isEmpty();
+        }
+
+        @Override
+        public boolean hasSourceCost() {
+            return event.getBelongsToField(PlannedEventFields.SOURCE_COST) != null;
+        }
+
+        @Override
+        public boolean hasRealizations() {
+            List<Entity> realizations = event.getHasManyField(PlannedEventFields.REALIZATIONS);
+
+            return (realizations != null) && !realizations.isEmpty();
+        }
+
+        @Override
+        public boolean hasSolutionDescription() {
+            return !StringUtils.isEmpty(event.getStringField(PlannedEventFields.SOLUTION_DESCRIPTION));
+        }
+
+        @Override
+        public boolean hasActions() {
+            return !event.getHasManyField(PlannedEventFields.ACTIONS).isEmpty();
+        }
+
+        @Override
+        public boolean hasActionsWithoutState() {
+            return event.getHasManyField(PlannedEventFields.ACTIONS).stream()
+                    .anyMatch(action -> StringUtils.isEmpty(action.getStringField(ActionForPlannedEventFields.STATE)));
+        }
+
+    }
+
+    private static final class RowValues implements Values {
+
+        private final Map<String, Object> row;
+
+        private RowValues(final Map<String, Object> row) {
+            this.row = row;
+        }
+
+        @Override
+        public PlannedEventType getType() {
+            return PlannedEventType.parseString((String) row.get("type"));
+        }
+
+        @Override
+        public String getBasedOn() {
+            return (String) row.get("basedon");
+        }
+
+        @Override
+        public boolean hasOwner() {
+            return row.get("owner_id") != null;
+        }
+
+        @Override
+        public boolean hasDuration() {
+            Number duration = (Number) row.get("duration");
+
+            return (duration != null) && (duration.intValue() != 0);
+        }
+
+        @Override
+        public boolean hasDate() {
+            return row.get("date") != null;
+        }
+
+        @Override
+        public boolean hasCounter() {
+            return row.get("counter") != null;
+        }
+
+        @Override
+        public boolean hasEffectiveCounter() {
+            return row.get("effectivecounter") != null;
+        }
+
+        @Override
+        public boolean hasResponsibleWorkers() {
+            return getCount("responsibleworkers") > 0;
+        }
+
+        @Override
+        public boolean hasSourceCost() {
+            return row.get("sourcecost_id") != null;
+        }
+
+        @Override
+        public boolean hasRealizations() {
+            return getCount("realizations") > 0;
+        }
+
+        @Override
+        public boolean hasSolutionDescription() {
+            return !StringUtils.isEmpty((String) row.get("solutiondescription"));
+        }
+
+        @Override
+        public boolean hasActions() {
+            return getCount("actions") > 0;
+        }
+
+        @Override
+        public boolean hasActionsWithoutState() {
+            return getCount("actionswithoutstate") > 0;
+        }
+
+        private long getCount(final String column) {
+            return ((Number) row.get(column)).longValue();
+        }
+
+    }
+
+}
@@ -28,7 +28,6 @@ import com.qcadoo.mes.cmmsMachineParts.plannedEvents.factory.EventFieldsForTypeF
 import com.qcadoo.mes.cmmsMachineParts.plannedEvents.fieldsForType.FieldsForType;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.model.api.Entity;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -40,6 +39,9 @@ public class PlannedEventStateValidationService {
     @Autowired
     private EventFieldsForTypeFactory eventFieldsForTypeFactory;
 
+    @Autowired
+    private PlannedEventStateRules plannedEventStateRules;
+
     public void validationOnInPlan(final StateChangeContext stateChangeContext) {
         Entity event = stateChangeContext.getOwner();
         checkIfOwnerIsSet(event, stateChangeContext);
@@ -47,10 +49,10 @@ public class PlannedEventStateValidationService {
     }
 
     private void checkIfOwnerIsSet(Entity event, StateChangeContext stateChangeContext) {
-        if (event.getBelongsToField(PlannedEventFields.OWNER) == null) {
+        if (!PlannedEventStateRules.valuesOf(event).hasOwner()) {
             stateChangeContext.addFieldValidationError(PlannedEventFields.OWNER,
                     "cmmsMachineParts.plannedEvent.state.fieldRequired");
-            stateChangeContext.addValidationError("cmmsMachineParts.plannedEvent.state.ownerNotFound");
+            stateChangeContext.addValidationError(PlannedEventStateRules.OWNER_NOT_FOUND);
         }
     }
 
@@ -67,118 +69,42 @@ public class PlannedEventStateValidationService {
     public void validationOnRealized(StateChangeContext stateChangeContext) {
         Entity event = stateChangeContext.getOwner();
         checkIfActionsHaveStatus(event, stateChangeContext);
-        checkSourceCost(event, stateChangeContext);
-        checkEffectiveCounter(event, stateChangeContext);
-        checkIfRealizationExists(event, stateChangeContext);
-        checkIfSolutionDescriptionExists(event, stateChangeContext);
+        checkIfRealizationFieldsAreSet(event, stateChangeContext);
         checkIfRequiredFieldsAreSet(event, stateChangeContext);
     }
 
-    private void checkIfSolutionDescriptionExists(Entity event, StateChangeContext stateChangeContext) {
-        if (event.getStringField(PlannedEventFields.SOLUTION_DESCRIPTION) == null
-                || event.getStringField(PlannedEventFields.SOLUTION_DESCRIPTION).isEmpty()) {
-            if (solutionDescriptionIsNotHidden(event) && hasNoActions(event)) {
-                stateChangeContext.addFieldValidationError(PlannedEventFields.SOLUTION_DESCRIPTION,
-                        "cmmsMachineParts.plannedEvent.state.fieldRequired");
+    private void checkIfRealizationFieldsAreSet(Entity event, StateChangeContext stateChangeContext) {
+        List<String> missingFields = plannedEventStateRules.getMissingRealizationFields(PlannedEventStateRules.valuesOf(event),
+                getFieldsForType(event));
+        for (String missingField : missingFields) {
+            if (PlannedEventFields.SOURCE_COST.equals(missingField)
+                    || PlannedEventFields.EFFECTIVE_COUNTER.equals(missingField)) {
+                stateChangeContext.addFieldValidationError(missingField, "cmmsMachineParts.maintenanceEvent.state.fieldRequired");
+            } else {
+                stateChangeContext.addFieldValidationError(missingField, "cmmsMachineParts.plannedEvent.state.fieldRequired");
             }
         }
     }
 
-    private void checkIfRealizationExists(Entity event, StateChangeContext stateChangeContext) {
-        if (event.getHasManyField(PlannedEventFields.REALIZATIONS) == null
-                || event.getHasManyField(PlannedEventFields.REALIZATIONS).isEmpty()) {
-            stateChangeContext.addFieldValidationError(PlannedEventFields.REALIZATIONS,
-                    "cmmsMachineParts.plannedEvent.state.fieldRequired");
-        }
-    }
-
-    private void checkSourceCost(final Entity event, StateChangeContext stateChangeContext) {
-        if (event.getBelongsToField(MaintenanceEventFields.SOURCE_COST) == null) {
-            stateChangeContext.addFieldValidationError(MaintenanceEventFields.SOURCE_COST,
-                    "cmmsMachineParts.maintenanceEvent.state.fieldRequired");
-        }
-    }
-
-    private void checkEffectiveCounter(final Entity event, StateChangeContext stateChangeContext) {
-        String basedOn = event.getStringField(PlannedEventFields.BASED_ON);
-        String type = event.getStringField(PlannedEventFields.TYPE);
-        if (event.getDecimalField(PlannedEventFields.EFFECTIVE_COUNTER) == null
-                && (PlannedEventBasedOn.COUNTER.getStringValue().equals(basedOn) || PlannedEventType.METER_READING
-                        .getStringValue().equals(type))) {
-            stateChangeContext.addFieldValidationError(PlannedEventFields.EFFECTIVE_COUNTER,
-                    "cmmsMachineParts.maintenanceEvent.state.fieldRequired");
-        }
-    }
-
     private void checkIfActionsHaveStatus(final Entity event, StateChangeContext stateChangeContext) {
-        List<Entity> actionsForEvent = event.getHasManyField(PlannedEventFields.ACTIONS);
-        if (actionsForEvent.stream().anyMatch(
-                action -> StringUtils.isEmpty(action.getStringField(ActionForPlannedEventFields.STATE)))) {
-            stateChangeContext.addValidationError("cmmsMachineParts.plannedEvent.state.actionsWithoutState");
+        if (PlannedEventStateRules.valuesOf(event).hasActionsWithoutState()) {
+            stateChangeContext.addValidationError(PlannedEventStateRules.ACTIONS_WITHOUT_STATE);
         }
     }
 
     private void checkIfRequiredFieldsAreSet(Entity event, StateChangeContext stateChangeContext) {
-        boolean areSet = true;
-        if (event.getBelongsToField(PlannedEventFields.OWNER) == null) {
-            stateChangeContext.addFieldValidationError(PlannedEventFields.OWNER,
-                    "cmmsMachineParts.plannedEvent.state.fieldRequired");
-            areSet = false;
+        List<String> missingFields = plannedEventStateRules.getMissingRequiredFields(PlannedEventStateRules.valuesOf(event),
+                getFieldsForType(event));
+        for (String missingField : missingFields) {
+            stateChangeContext.addFieldValidationError(missingField, "cmmsMachineParts.plannedEvent.state.fieldRequired");
         }
-        if (event.getIntegerField(PlannedEventFields.DURATION) == null
-                || event.getIntegerField(PlannedEventFields.DURATION).equals(0)) {
-            if (durationIsNotHidden(event)) {
-                stateChangeContext.addFieldValidationError(PlannedEventFields.DURATION,
-                        "cmmsMachineParts.plannedEvent.state.fieldRequired");
-                areSet = false;
-            }
+        if (!missingFields.isEmpty()) {
+            stateChangeContext.addValidationError(PlannedEventStateRules.FILL_REQUIRED_FIELDS);
         }
-        String basedOn = event.getStringField(PlannedEventFields.BASED_ON);
-        if (basedOn.equals(PlannedEventBasedOn.DATE.getStringValue())) {
-            if (event.getDateField(PlannedEventFields.DATE) == null) {
-                stateChangeContext.addFieldValidationError(PlannedEventFields.DATE,
-                        "cmmsMachineParts.plannedEvent.state.fieldRequired");
-                areSet = false;
-            }
-        } else if (basedOn.equals(PlannedEventBasedOn.COUNTER.getStringValue())) {
-            if (event.getDecimalField(PlannedEventFields.COUNTER) == null) {
-                stateChangeContext.addFieldValidationError(PlannedEventFields.COUNTER,
-                        "cmmsMachineParts.plannedEvent.state.fieldRequired");
-                areSet = false;
-            }
-        }
-        if (event.getHasManyField(PlannedEventFields.RESPONSIBLE_WORKERS).isEmpty()) {
-            stateChangeContext.addFieldValidationError(PlannedEventFields.RESPONSIBLE_WORKERS,
-                    "cmmsMachineParts.plannedEvent.state.fieldRequired");
-            areSet = false;
-        }
-        if (!areSet) {
-            stateChangeContext.addValidationError("cmmsMachineParts.plannedEvent.state.fillRequiredFields");
-        }
-    }
-
-    private boolean durationIsNotHidden(Entity plannedEvent) {
-        return fieldIsNotHidden(plannedEvent, PlannedEventFields.DURATION);
-    }
-
-    private boolean solutionDescriptionIsNotHidden(Entity plannedEvent) {
-        return tabIsNotHidden(plannedEvent, PlannedEventFields.SOLUTION_DESCRIPTION_TAB);
-    }
-
-    private boolean hasNoActions(Entity event) {
-        return event.getHasManyField(PlannedEventFields.ACTIONS).isEmpty();
-    }
-
-    private boolean fieldIsNotHidden(Entity plannedEvent, String fieldName) {
-        PlannedEventType type = PlannedEventType.from(plannedEvent);
-        FieldsForType fieldsForType = eventFieldsForTypeFactory.createFieldsForType(type);
-        return !fieldsForType.getHiddenFields().contains(fieldName);
     }
 
-    private boolean tabIsNotHidden(Entity plannedEvent, String tabName) {
-        PlannedEventType type = PlannedEventType.from(plannedEvent);
-        FieldsForType fieldsForType = eventFieldsForTypeFactory.createFieldsForType(type);
-        return !fieldsForType.getHiddenTabs().contains(tabName);
+    private FieldsForType getFieldsForType(Entity plannedEvent) {
+        return eventFieldsForTypeFactory.createFieldsForType(PlannedEventType.from(plannedEvent));
     }
 
     public void validationOnCanceled(StateChangeContext stateChangeContext) {
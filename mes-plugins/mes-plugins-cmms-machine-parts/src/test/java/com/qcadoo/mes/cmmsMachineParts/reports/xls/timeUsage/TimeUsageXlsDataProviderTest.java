@@ -0,0 +1,126 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.cmmsMachineParts.constants.TimeUsageReportFilterFields;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
+
+public class TimeUsageXlsDataProviderTest {
+
+    private TimeUsageXlsDataProvider timeUsageXlsDataProvider;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Before
+    public void init() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        timeUsageXlsDataProvider = new TimeUsageXlsDataProvider();
+        ReflectionTestUtils.setField(timeUsageXlsDataProvider, "jdbcTemplate",
+                new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource)));
+
+        given(dataSource.getConnection()).willReturn(connection);
+        given(connection.prepareStatement(anyString())).willReturn(preparedStatement);
+        given(preparedStatement.executeQuery()).willReturn(resultSet);
+    }
+
+    @Test
+    public final void shouldFetchUsagesInChunksAndPassThemOneByOne() throws Exception {
+        // given
+        given(resultSet.next()).willReturn(true, true, false);
+        given(resultSet.getString("worker")).willReturn("Kowalski Jan", "Nowak Anna");
+        given(resultSet.getBoolean("firstingroup")).willReturn(true, false);
+        given(resultSet.getLong("durationsum")).willReturn(90L);
+
+        List<TimeUsageDTO> usages = Lists.newArrayList();
+
+        // when
+        timeUsageXlsDataProvider.processUsages(Maps.newHashMap(), usages::add);
+
+        // then
+        verify(preparedStatement).setFetchSize(500);
+        verify(connection).prepareStatement(contains("ORDER BY ordinal"));
+        assertEquals(2, usages.size());
+        assertEquals("Kowalski Jan", usages.get(0).getWorker());
+        assertEquals(Long.valueOf(90L), usages.get(0).getDurationSum());
+        assertEquals("Nowak Anna", usages.get(1).getWorker());
+        assertNull(usages.get(1).getDurationSum());
+    }
+
+    @Test
+    public final void shouldFilterUsagesBySelectedWorkers() throws Exception {
+        // given
+        given(resultSet.next()).willReturn(false);
+
+        Map<String, Object> filters = Maps.newHashMap();
+        filters.put(TimeUsageReportFilterFields.WORKERS, Lists.newArrayList(3L, 4L));
+
+        List<TimeUsageDTO> usages = Lists.newArrayList();
+
+        // when
+        timeUsageXlsDataProvider.processUsages(filters, usages::add);
+
+        // then
+        verify(connection).prepareStatement(contains("WHERE worker_id in (?, ?)"));
+        verify(preparedStatement).setObject(1, 3L);
+        verify(preparedStatement).setObject(2, 4L);
+        assertEquals(0, usages.size());
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class EventsBulkStateChangeWriterTest {
+
+    private static final String L_EVENT_TABLE = "cmmsmachineparts_maintenanceevent";
+
+    private static final String L_SOURCE_STATE = "01new";
+
+    private static final String L_TARGET_STATE = "05closed";
+
+    private EventsBulkStateChangeWriter eventsBulkStateChangeWriter;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinition eventDD;
+
+    @Mock
+    private Entity event;
+
+    @Mock
+    private Entity savedEvent;
+
+    private Map<String, Object> stateChangeParams;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        eventsBulkStateChangeWriter = new EventsBulkStateChangeWriter();
+
+        ReflectionTestUtils.setField(eventsBulkStateChangeWriter, "jdbcTemplate", jdbcTemplate);
+
+        stateChangeParams = Maps.newHashMap();
+        stateChangeParams.put("targetState", L_TARGET_STATE);
+    }
+
+    @Test
+    public final void shouldUpdateOnlyEventsStillInSourceState() {
+        // given
+        given(jdbcTemplate.queryForList(contains("AND state = :sourceState"), argThat(hasParam("sourceState", L_SOURCE_STATE)),
+                eq(Long.class))).willReturn(Lists.newArrayList(1L));
+
+        // when
+        List<Long> changedEventIds = eventsBulkStateChangeWriter.changeStates(L_EVENT_TABLE, "maintenanceevent",
+                Lists.newArrayList(1L, 2L), L_SOURCE_STATE, stateChangeParams, "");
+
+        // then
+        assertEquals(Lists.newArrayList(1L), changedEventIds);
+        verify(jdbcTemplate).update(contains("INSERT INTO " + L_EVENT_TABLE + "statechange"),
+                argThat(hasParam("ids", Lists.newArrayList(1L))));
+    }
+
+    @Test
+    public final void shouldNotWriteStateChangesWhenNoEventWasUpdated() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willReturn(Collections.<Long> emptyList());
+
+        // when
+        List<Long> changedEventIds = eventsBulkStateChangeWriter.changeStates(L_EVENT_TABLE, "maintenanceevent",
+                Lists.newArrayList(1L), L_SOURCE_STATE, stateChangeParams, "");
+
+        // then
+        assertTrue(changedEventIds.isEmpty());
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+    }
+
+    @Test
+    public final void shouldSaveEventThroughDataDefinition() {
+        // given
+        given(event.getId()).willReturn(1L);
+        given(event.getStringField("state")).willReturn(L_SOURCE_STATE);
+        given(eventDD.save(event)).willReturn(savedEvent);
+        given(savedEvent.isValid()).willReturn(true);
+
+        // when
+        boolean changed = eventsBulkStateChangeWriter.changeState(eventDD, event, L_EVENT_TABLE, "maintenanceevent",
+                L_SOURCE_STATE, stateChangeParams);
+
+        // then
+        assertTrue(changed);
+        verify(event).setField("state", L_TARGET_STATE);
+        verify(jdbcTemplate).update(contains("INSERT INTO " + L_EVENT_TABLE + "statechange"),
+                argThat(hasParam("sourceState", L_SOURCE_STATE)));
+    }
+
+    @Test
+    public final void shouldSkipEventChangedInTheMeantime() {
+        // given
+        given(event.getStringField("state")).willReturn("02planned");
+
+        // when
+        boolean changed = eventsBulkStateChangeWriter.changeState(eventDD, event, L_EVENT_TABLE, "maintenanceevent",
+                L_SOURCE_STATE, stateChangeParams);
+
+        // then
+        assertFalse(changed);
+        verify(eventDD, never()).save(event);
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+    }
+
+    private ArgumentMatcher<Map<String, Object>> hasParam(final String name, final Object value) {
+        return new ArgumentMatcher<Map<String, Object>>() {
+
+            @Override
+            public boolean matches(final Object params) {
+                return value.equals(((Map<?, ?>) params).get(name));
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,491 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.states;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.cmmsMachineParts.constants.ActionForPlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
+import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventBasedOn;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventType;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.factory.EventFieldsForTypeFactory;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.fieldsForType.FieldsForType;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.MaintenanceEventState;
+import com.qcadoo.mes.cmmsMachineParts.states.constants.PlannedEventState;
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+
+/**
+ * Checks that the bulk state change accepts and rejects the same events as state validators of a single event.
+ */
+public class EventsStateValidationAgreementTest {
+
+    private EventsBulkStateChangeService eventsBulkStateChangeService;
+
+    private PlannedEventStateValidationService plannedEventStateValidationService;
+
+    private MaintenanceEventStateValidationService maintenanceEventStateValidationService;
+
+    @Mock
+    private EventFieldsForTypeFactory eventFieldsForTypeFactory;
+
+    @Mock
+    private FieldsForType fieldsForType;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition maintenanceEventStateChangeDD;
+
+    @Mock
+    private SearchQueryBuilder searchQueryBuilder;
+
+    @Mock
+    private Entity parameter, progressDate;
+
+    private List<String> hiddenFields;
+
+    private PlannedEventData plannedEvent;
+
+    private MaintenanceEventData maintenanceEvent;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        PlannedEventStateRules plannedEventStateRules = new PlannedEventStateRules();
+        MaintenanceEventStateRules maintenanceEventStateRules = new MaintenanceEventStateRules();
+
+        eventsBulkStateChangeService = new EventsBulkStateChangeService();
+        ReflectionTestUtils.setField(eventsBulkStateChangeService, "plannedEventStateRules", plannedEventStateRules);
+        ReflectionTestUtils.setField(eventsBulkStateChangeService, "maintenanceEventStateRules", maintenanceEventStateRules);
+
+        plannedEventStateValidationService = new PlannedEventStateValidationService();
+        ReflectionTestUtils.setField(plannedEventStateValidationService, "plannedEventStateRules", plannedEventStateRules);
+        ReflectionTestUtils.setField(plannedEventStateValidationService, "eventFieldsForTypeFactory", eventFieldsForTypeFactory);
+
+        maintenanceEventStateValidationService = new MaintenanceEventStateValidationService();
+        ReflectionTestUtils.setField(maintenanceEventStateValidationService, "maintenanceEventStateRules",
+                maintenanceEventStateRules);
+        ReflectionTestUtils.setField(maintenanceEventStateValidationService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(maintenanceEventStateValidationService, "dataDefinitionService", dataDefinitionService);
+
+        hiddenFields = Lists.newArrayList();
+
+        given(eventFieldsForTypeFactory.createFieldsForType(any(PlannedEventType.class))).willReturn(fieldsForType);
+        given(fieldsForType.getHiddenFields()).willReturn(hiddenFields);
+        given(fieldsForType.getHiddenTabs()).willReturn(Collections.<String> emptyList());
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(dataDefinitionService.get(CmmsMachinePartsConstants.PLUGIN_IDENTIFIER,
+                CmmsMachinePartsConstants.MODEL_MAINTENANCE_EVENT_STATE_CHANGE)).willReturn(maintenanceEventStateChangeDD);
+        given(maintenanceEventStateChangeDD.find(anyString())).willReturn(searchQueryBuilder);
+        given(searchQueryBuilder.setLong(anyString(), anyLong())).willReturn(searchQueryBuilder);
+        given(searchQueryBuilder.setMaxResults(1)).willReturn(searchQueryBuilder);
+        given(searchQueryBuilder.uniqueResult()).willReturn(progressDate);
+
+        plannedEvent = new PlannedEventData();
+        maintenanceEvent = new MaintenanceEventData();
+    }
+
+    @Test
+    public final void shouldAgreeOnPlanningEventWithOwner() {
+        assertPlannedEventValidation(PlannedEventState.IN_PLAN, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnPlanningEventWithoutOwner() {
+        // given
+        plannedEvent.hasOwner = false;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.IN_PLAN, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnPlannedEventWithRequiredFields() {
+        assertPlannedEventValidation(PlannedEventState.PLANNED, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnPlannedEventWithoutDate() {
+        // given
+        plannedEvent.hasDate = false;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.PLANNED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnPlannedEventWithoutDurationWhenDurationIsHidden() {
+        // given
+        plannedEvent.duration = 0;
+        hiddenFields.add(PlannedEventFields.DURATION);
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.PLANNED, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnPlannedEventWithoutDuration() {
+        // given
+        plannedEvent.duration = 0;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.PLANNED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnEventInRealizationWithoutResponsibleWorkers() {
+        // given
+        plannedEvent.responsibleWorkers = 0;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.IN_REALIZATION, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnRealizedEventWithRealizationFields() {
+        assertPlannedEventValidation(PlannedEventState.REALIZED, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnRealizedEventWithoutRealizations() {
+        // given
+        plannedEvent.realizations = 0;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.REALIZED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnRealizedEventWithActionWithoutState() {
+        // given
+        plannedEvent.actionStates.add(null);
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.REALIZED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnRealizedEventWithActionsInsteadOfSolutionDescription() {
+        // given
+        plannedEvent.solutionDescription = null;
+        plannedEvent.actionStates.add("01correct");
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.REALIZED, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnRealizedMeterReadingWithoutEffectiveCounter() {
+        // given
+        plannedEvent.type = PlannedEventType.METER_READING;
+        plannedEvent.hasEffectiveCounter = false;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.REALIZED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnEditedEventWithActionWithoutState() {
+        // given
+        plannedEvent.actionStates.add("");
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.IN_EDITING, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnCanceledEventWithoutRequiredFields() {
+        // given
+        plannedEvent.hasOwner = false;
+        plannedEvent.responsibleWorkers = 0;
+
+        // when & then
+        assertPlannedEventValidation(PlannedEventState.CANCELED, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnClosedMaintenanceEventWithRequiredFields() {
+        assertMaintenanceEventValidation(MaintenanceEventState.CLOSED, true);
+    }
+
+    @Test
+    public final void shouldAgreeOnClosedMaintenanceEventWithoutStaffWorkTimes() {
+        // given
+        maintenanceEvent.staffWorkTimes = 0;
+
+        // when & then
+        assertMaintenanceEventValidation(MaintenanceEventState.CLOSED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnClosedMaintenanceEventWithoutSourceCost() {
+        // given
+        maintenanceEvent.hasSourceCost = false;
+
+        // when & then
+        assertMaintenanceEventValidation(MaintenanceEventState.CLOSED, false);
+    }
+
+    @Test
+    public final void shouldAgreeOnClosedMaintenanceEventWithoutSolutionDescription() {
+        // given
+        maintenanceEvent.solutionDescription = "";
+
+        // when & then
+        assertMaintenanceEventValidation(MaintenanceEventState.CLOSED, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertPlannedEventValidation(final PlannedEventState targetState, final boolean expectedValid) {
+        // when
+        Optional<String> bulkError = (Optional<String>) ReflectionTestUtils.invokeMethod(eventsBulkStateChangeService,
+                "validatePlannedEvent", plannedEvent.toRow(), fieldsForType, targetState);
+        boolean validAsSingleEvent = isValid(plannedEvent.toEntity(), stateChangeContext -> {
+            switch (targetState) {
+                case IN_PLAN:
+                    plannedEventStateValidationService.validationOnInPlan(stateChangeContext);
+                    break;
+                case PLANNED:
+                    plannedEventStateValidationService.validationOnPlanned(stateChangeContext);
+                    break;
+                case IN_REALIZATION:
+                    plannedEventStateValidationService.validationOnInRealization(stateChangeContext);
+                    break;
+                case IN_EDITING:
+                    plannedEventStateValidationService.validationOnInEditing(stateChangeContext);
+                    break;
+                case REALIZED:
+                    plannedEventStateValidationService.validationOnRealized(stateChangeContext);
+                    break;
+                default:
+                    plannedEventStateValidationService.validationOnCanceled(stateChangeContext);
+                    break;
+            }
+        });
+
+        // then
+        assertEquals(expectedValid, validAsSingleEvent);
+        assertEquals(validAsSingleEvent, !bulkError.isPresent());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertMaintenanceEventValidation(final MaintenanceEventState targetState, final boolean expectedValid) {
+        // when
+        Optional<String> bulkError = (Optional<String>) ReflectionTestUtils.invokeMethod(eventsBulkStateChangeService,
+                "validateMaintenanceEvent", maintenanceEvent.toRow(), targetState);
+        boolean validAsSingleEvent = isValid(maintenanceEvent.toEntity(),
+                maintenanceEventStateValidationService::validationOnClosed);
+
+        // then
+        assertEquals(expectedValid, validAsSingleEvent);
+        assertEquals(validAsSingleEvent, !bulkError.isPresent());
+    }
+
+    private boolean isValid(final Entity event, final Consumer<StateChangeContext> validation) {
+        StateChangeContext stateChangeContext = mock(StateChangeContext.class);
+        List<String> errors = Lists.newArrayList();
+        Answer<Void> addError = invocation -> {
+            errors.add(invocation.getArguments()[0].toString());
+
+            return null;
+        };
+
+        given(stateChangeContext.getOwner()).willReturn(event);
+        doAnswer(addError).when(stateChangeContext).addValidationError(anyString());
+        doAnswer(addError).when(stateChangeContext).addFieldValidationError(anyString(), anyString());
+
+        validation.accept(stateChangeContext);
+
+        return errors.isEmpty();
+    }
+
+    private static EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.isEmpty()).willReturn(entities.isEmpty());
+        given(entityList.stream()).willAnswer(invocation -> entities.stream());
+
+        return entityList;
+    }
+
+    private static List<Entity> mockEntities(final int count) {
+        List<Entity> entities = Lists.newArrayList();
+
+        for (int index = 0; index < count; index++) {
+            entities.add(mock(Entity.class));
+        }
+
+        return entities;
+    }
+
+    private static final class PlannedEventData {
+
+        private PlannedEventType type = PlannedEventType.REPAIRS;
+
+        private PlannedEventBasedOn basedOn = PlannedEventBasedOn.DATE;
+
+        private boolean hasOwner = true;
+
+        private Integer duration = 3600;
+
+        private boolean hasDate = true;
+
+        private boolean hasEffectiveCounter = true;
+
+        private int responsibleWorkers = 1;
+
+        private int realizations = 1;
+
+        private String solutionDescription = "Replaced belt";
+
+        private List<String> actionStates = Lists.newArrayList();
+
+        private Map<String, Object> toRow() {
+            Map<String, Object> row = Maps.newHashMap();
+
+            row.put("type", type.getStringValue());
+            row.put("basedon", basedOn.getStringValue());
+            row.put("owner_id", hasOwner ? 1L : null);
+            row.put("duration", duration);
+            row.put("date", hasDate ? new Date() : null);
+            row.put("counter", null);
+            row.put("effectivecounter", hasEffectiveCounter ? BigDecimal.TEN : null);
+            row.put("sourcecost_id", 1L);
+            row.put("solutiondescription", solutionDescription);
+            row.put("responsibleworkers", (long) responsibleWorkers);
+            row.put("realizations", (long) realizations);
+            row.put("actions", (long) actionStates.size());
+            row.put("actionswithoutstate", actionStates.stream().filter(state -> state == null || state.isEmpty()).count());
+
+            return row;
+        }
+
+        private Entity toEntity() {
+            Entity event = mock(Entity.class);
+            List<Entity> actions = Lists.newArrayList();
+
+            for (String actionState : actionStates) {
+                Entity action = mock(Entity.class);
+
+                given(action.getStringField(ActionForPlannedEventFields.STATE)).willReturn(actionState);
+
+                actions.add(action);
+            }
+
+            given(event.getStringField(PlannedEventFields.TYPE)).willReturn(type.getStringValue());
+            given(event.getStringField(PlannedEventFields.BASED_ON)).willReturn(basedOn.getStringValue());
+            given(event.getBelongsToField(PlannedEventFields.OWNER)).willReturn(hasOwner ? mock(Entity.class) : null);
+            given(event.getIntegerField(PlannedEventFields.DURATION)).willReturn(duration);
+            given(event.getDateField(PlannedEventFields.DATE)).willReturn(hasDate ? new Date() : null);
+            given(event.getDecimalField(PlannedEventFields.EFFECTIVE_COUNTER)).willReturn(
+                    hasEffectiveCounter ? BigDecimal.TEN : null);
+            given(event.getBelongsToField(PlannedEventFields.SOURCE_COST)).willReturn(mock(Entity.class));
+            given(event.getStringField(PlannedEventFields.SOLUTION_DESCRIPTION)).willReturn(solutionDescription);
+
+            EntityList responsibleWorkersList = mockEntityList(mockEntities(responsibleWorkers));
+            EntityList realizationsList = mockEntityList(mockEntities(realizations));
+            EntityList actionsList = mockEntityList(actions);
+
+            given(event.getHasManyField(PlannedEventFields.RESPONSIBLE_WORKERS)).willReturn(responsibleWorkersList);
+            given(event.getHasManyField(PlannedEventFields.REALIZATIONS)).willReturn(realizationsList);
+            given(event.getHasManyField(PlannedEventFields.ACTIONS)).willReturn(actionsList);
+
+            return event;
+        }
+
+    }
+
+    private static final class MaintenanceEventData {
+
+        private int staffWorkTimes = 1;
+
+        private boolean hasSourceCost = true;
+
+        private String solutionDescription = "Replaced belt";
+
+        private Map<String, Object> toRow() {
+            Map<String, Object> row = Maps.newHashMap();
+
+            row.put("staffworktimes", (long) staffWorkTimes);
+            row.put("sourcecost_id", hasSourceCost ? 1L : null);
+            row.put("solutiondescription", solutionDescription);
+
+            return row;
+        }
+
+        private Entity toEntity() {
+            Entity event = mock(Entity.class);
+
+            given(event.getId()).willReturn(1L);
+            given(event.getStringField(MaintenanceEventFields.SOLUTION_DESCRIPTION)).willReturn(solutionDescription);
+            given(event.getBelongsToField(MaintenanceEventFields.SOURCE_COST)).willReturn(
+                    hasSourceCost ? mock(Entity.class) : null);
+
+            EntityList staffWorkTimesList = mockEntityList(mockEntities(staffWorkTimes));
+
+            given(event.getHasManyField(MaintenanceEventFields.STAFF_WORK_TIMES)).willReturn(staffWorkTimesList);
+
+            return event;
+        }
+
+    }
+
+}
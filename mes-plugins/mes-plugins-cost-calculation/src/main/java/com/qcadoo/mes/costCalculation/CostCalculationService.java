@@ -25,6 +25,7 @@ package com.qcadoo.mes.costCalculation;
 
 import java.math.BigDecimal;
 
+import com.qcadoo.mes.costNormsForMaterials.ProductCostsCache;
 import com.qcadoo.model.api.Entity;
 
 public interface CostCalculationService {
@@ -39,6 +40,18 @@ public interface CostCalculationService {
      */
     Entity calculateTotalCost(final Entity entity);
 
+    /**
+     * Calculates total cost, taking products cost norms from given cache
+     * 
+     * @param entity
+     *            entity
+     * @param productCostsCache
+     *            products cost norms cache, shared by cost calculations computed at once
+     * 
+     * @return entity
+     */
+    Entity calculateTotalCost(final Entity entity, final ProductCostsCache productCostsCache);
+
     /**
      * Calculates operations and products costs
      * 
@@ -0,0 +1,170 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.batch;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lowagie.text.DocumentException;
+import com.qcadoo.mes.costCalculation.CostCalculationService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.mes.costCalculation.print.CostCalculationPdfService;
+import com.qcadoo.mes.costNormsForMaterials.ProductCostsCache;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrderType;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.file.FileService;
+
+/**
+ * Creates, calculates and prints a single cost calculation of a batch. Creation and calculation are done in separate
+ * transactions, so that the cost calculation is kept in the batch even if its calculation fails, and failure of one technology
+ * (order) doesn't roll back already calculated ones.
+ */
+@Service
+public class CostCalculationBatchItemCalculator {
+
+    private static final String L_MINIMAL_QUANTITY = "minimalQuantity";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private CostCalculationService costCalculationService;
+
+    @Autowired
+    private CostCalculationPdfService costCalculationPdfService;
+
+    @Autowired
+    private FileService fileService;
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Entity createForTechnology(final Map<String, Object> settings, final Long technologyId, final String number,
+            final Entity costCalculationBatch) {
+        Entity technology = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY).get(technologyId);
+
+        Entity costCalculation = createCostCalculation(settings, technology, number, costCalculationBatch);
+
+        if (costCalculation.getField(CostCalculationFields.QUANTITY) == null) {
+            costCalculation.setField(CostCalculationFields.QUANTITY, technology.getDecimalField(L_MINIMAL_QUANTITY));
+        }
+
+        return getCostCalculationDD().save(costCalculation);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Entity createForOrder(final Map<String, Object> settings, final Long orderId, final String number,
+            final Entity costCalculationBatch) {
+        Entity order = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).get(orderId);
+
+        Entity technology;
+
+        if (OrderType.WITH_PATTERN_TECHNOLOGY.getStringValue().equals(order.getStringField(OrderFields.ORDER_TYPE))) {
+            technology = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
+        } else {
+            technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        }
+
+        Entity costCalculation = createCostCalculation(settings, technology, number, costCalculationBatch);
+
+        costCalculation.setField(CostCalculationFields.ORDER, order);
+        costCalculation.setField(CostCalculationFields.QUANTITY, order.getDecimalField(OrderFields.PLANNED_QUANTITY));
+
+        if (order.getBelongsToField(OrderFields.PRODUCTION_LINE) != null) {
+            costCalculation.setField(CostCalculationFields.PRODUCTION_LINE, order.getBelongsToField(OrderFields.PRODUCTION_LINE));
+        }
+
+        return getCostCalculationDD().save(costCalculation);
+    }
+
+    private Entity createCostCalculation(final Map<String, Object> settings, final Entity technology, final String number,
+            final Entity costCalculationBatch) {
+        Entity costCalculation = getCostCalculationDD().create();
+
+        for (Map.Entry<String, Object> setting : settings.entrySet()) {
+            costCalculation.setField(setting.getKey(), setting.getValue());
+        }
+
+        costCalculation.setField(CostCalculationFields.NUMBER, number);
+        costCalculation.setField(CostCalculationFields.COST_CALCULATION_BATCH, costCalculationBatch);
+
+        if (technology != null) {
+            costCalculation.setField(CostCalculationFields.TECHNOLOGY, technology);
+            costCalculation.setField(CostCalculationFields.DEFAULT_TECHNOLOGY, technology);
+            costCalculation.setField(CostCalculationFields.PRODUCT, technology.getBelongsToField(TechnologyFields.PRODUCT));
+        }
+
+        return costCalculation;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Entity calculate(final Long costCalculationId, final ProductCostsCache productCostsCache, final Locale locale)
+            throws IOException, DocumentException {
+        DataDefinition costCalculationDD = getCostCalculationDD();
+
+        Entity costCalculation = costCalculationDD.get(costCalculationId);
+
+        Entity calculatedCostCalculation = costCalculationService.calculateTotalCost(costCalculation, productCostsCache);
+
+        if (!calculatedCostCalculation.isValid()) {
+            return calculatedCostCalculation;
+        }
+
+        costCalculationService.calculateSellPriceOverhead(calculatedCostCalculation);
+        costCalculationService.calculateSellPrice(calculatedCostCalculation);
+
+        calculatedCostCalculation.setField(CostCalculationFields.GENERATED, true);
+
+        calculatedCostCalculation = costCalculationDD.save(calculatedCostCalculation);
+
+        if (!calculatedCostCalculation.isValid()) {
+            return calculatedCostCalculation;
+        }
+
+        Entity costCalculationWithFileName = fileService.updateReportFileName(calculatedCostCalculation,
+                CostCalculationFields.DATE, "costCalculation.costCalculation.report.fileName");
+
+        costCalculationPdfService.generateDocument(costCalculationWithFileName, locale);
+
+        return costCalculationWithFileName;
+    }
+
+    private DataDefinition getCostCalculationDD() {
+        return dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION);
+    }
+
+}
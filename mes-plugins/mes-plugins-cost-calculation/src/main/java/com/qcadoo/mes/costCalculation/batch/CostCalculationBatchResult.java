@@ -0,0 +1,61 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.batch;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public final class CostCalculationBatchResult {
+
+    private final List<Long> costCalculationIds;
+
+    private final Map<Long, String> failures;
+
+    CostCalculationBatchResult(final List<Long> costCalculationIds, final Map<Long, String> failures) {
+        this.costCalculationIds = ImmutableList.copyOf(costCalculationIds);
+        this.failures = ImmutableMap.copyOf(failures);
+    }
+
+    /**
+     * @return ids of calculated and printed cost calculations, in order of given technologies (orders)
+     */
+    public List<Long> getCostCalculationIds() {
+        return costCalculationIds;
+    }
+
+    /**
+     * @return reasons of failures, by id of technology (order) which couldn't be calculated
+     */
+    public Map<Long, String> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+}
@@ -0,0 +1,334 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.batch;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.NumberAllocationService;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.mes.costNormsForMaterials.ProductCostsCache;
+import com.qcadoo.mes.costNormsForMaterials.ProductsCostCalculationService;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Calculates and prints cost calculations of many technologies (or orders, e.g. all orders of a master order) at once, in the
+ * background. Calculations are run concurrently on the costCalculationBatchExecutor pool and share one read-only snapshot of
+ * products cost norms. Calculated cost calculations are stored together with their PDFs, so they can be downloaded later just
+ * like the ones generated from the cost calculation details view. State of the batch and its failures are stored in
+ * costCalculationBatch. Numbers of all cost calculations of the batch are allocated at once from the
+ * costcalculation_costcalculation_number_seq sequence, so workers don't have to wait for each other.
+ */
+@Service
+public class CostCalculationBatchService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CostCalculationBatchService.class);
+
+    private static final List<String> L_SETTINGS_FIELDS = Lists.newArrayList(CostCalculationFields.PRODUCTION_LINE,
+            CostCalculationFields.QUANTITY, CostCalculationFields.DESCRIPTION, CostCalculationFields.CALCULATE_MATERIAL_COSTS_MODE,
+            CostCalculationFields.SOURCE_OF_MATERIAL_COSTS, CostCalculationFields.SOURCE_OF_OPERATION_COSTS,
+            CostCalculationFields.CALCULATE_OPERATION_COSTS_MODE, CostCalculationFields.PRODUCTION_COST_MARGIN,
+            CostCalculationFields.MATERIAL_COST_MARGIN, CostCalculationFields.ADDITIONAL_OVERHEAD,
+            CostCalculationFields.REGISTRATION_PRICE_OVERHEAD, CostCalculationFields.PROFIT, CostCalculationFields.INCLUDE_TPZ,
+            CostCalculationFields.INCLUDE_ADDITIONAL_TIME, CostCalculationFields.PRINT_COST_NORMS_OF_MATERIALS,
+            CostCalculationFields.PRINT_OPERATION_NORMS);
+
+    private static final String L_COST_CALCULATION_TABLE = "costcalculation_costcalculation";
+
+    private static final int L_COST_CALCULATION_NUMBER_DIGITS = 6;
+
+    @Autowired
+    @Qualifier("costCalculationBatchExecutor")
+    private TaskExecutor costCalculationBatchExecutor;
+
+    @Autowired
+    private CostCalculationBatchItemCalculator costCalculationBatchItemCalculator;
+
+    @Autowired
+    private CostCalculationBatchStore costCalculationBatchStore;
+
+    @Autowired
+    private ProductsCostCalculationService productsCostCalculationService;
+
+    @Autowired
+    private NumberAllocationService numberAllocationService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    /**
+     * Starts calculation of cost calculations of given technologies, each for the template's quantity or, if it's not given,
+     * for the technology's minimal quantity.
+     * 
+     * @param template
+     *            cost calculation (not necessarily saved) holding settings of the batch - production line, calculation modes,
+     *            margins and overheads
+     * @param technologyIds
+     *            ids of technologies to calculate
+     * @param locale
+     *            locale of the printed documents and failure messages
+     * 
+     * @return started cost calculation batch, its state is updated once all technologies are processed
+     */
+    public Entity calculateForTechnologies(final Entity template, final Collection<Long> technologyIds, final Locale locale) {
+        return calculate(template, technologyIds,
+                dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY),
+                locale, (settings, technologyId, number, costCalculationBatch) -> costCalculationBatchItemCalculator
+                        .createForTechnology(settings, technologyId, number, costCalculationBatch));
+    }
+
+    /**
+     * Starts calculation of cost calculations of given orders, each for the order's planned quantity and production line.
+     * 
+     * @param template
+     *            cost calculation (not necessarily saved) holding settings of the batch - calculation modes, margins and
+     *            overheads
+     * @param orderIds
+     *            ids of orders to calculate
+     * @param locale
+     *            locale of the printed documents and failure messages
+     * 
+     * @return started cost calculation batch, its state is updated once all orders are processed
+     */
+    public Entity calculateForOrders(final Entity template, final Collection<Long> orderIds, final Locale locale) {
+        return calculate(template, orderIds,
+                dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER), locale,
+                (settings, orderId, number, costCalculationBatch) -> costCalculationBatchItemCalculator.createForOrder(settings,
+                        orderId, number, costCalculationBatch));
+    }
+
+    /**
+     * Creates a template of batch settings filled in from parameters, the same way they are filled in a new cost calculation.
+     * 
+     * @return cost calculation (not saved) to be passed to calculateForTechnologies or calculateForOrders
+     */
+    public Entity createTemplate() {
+        Entity parameter = parameterService.getParameter();
+        Entity template = dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION).create();
+
+        setFromParameter(template, parameter, CostCalculationFields.SOURCE_OF_MATERIAL_COSTS, "sourceOfMaterialCostsPB");
+        setFromParameter(template, parameter, CostCalculationFields.CALCULATE_MATERIAL_COSTS_MODE,
+                "calculateMaterialCostsModePB");
+        setFromParameter(template, parameter, CostCalculationFields.SOURCE_OF_OPERATION_COSTS, "sourceOfOperationCostsPB");
+
+        setFromParameterOrZero(template, parameter, CostCalculationFields.PRODUCTION_COST_MARGIN, "productionCostMarginPB");
+        setFromParameterOrZero(template, parameter, CostCalculationFields.MATERIAL_COST_MARGIN, "materialCostMarginPB");
+        setFromParameterOrZero(template, parameter, CostCalculationFields.ADDITIONAL_OVERHEAD, "additionalOverheadPB");
+        setFromParameterOrZero(template, parameter, CostCalculationFields.REGISTRATION_PRICE_OVERHEAD,
+                "registrationPriceOverheadPB");
+        setFromParameterOrZero(template, parameter, CostCalculationFields.PROFIT, "profitPB");
+
+        return template;
+    }
+
+    private void setFromParameter(final Entity template, final Entity parameter, final String fieldName,
+            final String parameterName) {
+        String value = parameter.getStringField(parameterName);
+
+        if (value != null) {
+            template.setField(fieldName, value);
+        }
+    }
+
+    private void setFromParameterOrZero(final Entity template, final Entity parameter, final String fieldName,
+            final String parameterName) {
+        BigDecimal value = parameter.getDecimalField(parameterName);
+
+        template.setField(fieldName, (value == null) ? BigDecimal.ZERO : value);
+    }
+
+    private Entity calculate(final Entity template, final Collection<Long> sourceIds, final DataDefinition sourceDD,
+            final Locale locale, final ItemCreation itemCreation) {
+        Map<String, Object> settings = getSettings(template);
+        ProductCostsCache productCostsCache = productsCostCalculationService.createProductCostsCache();
+        Executor executor = withCallerContext(costCalculationBatchExecutor);
+
+        List<Long> ids = Lists.newArrayList(sourceIds);
+        List<CompletableFuture<Entity>> items = Lists.newArrayListWithCapacity(ids.size());
+
+        Entity costCalculationBatch = costCalculationBatchStore.start(ids.size());
+
+        if (!costCalculationBatch.isValid()) {
+            return costCalculationBatch;
+        }
+
+        List<String> numbers = numberAllocationService.allocate(L_COST_CALCULATION_TABLE, L_COST_CALCULATION_NUMBER_DIGITS,
+                ids.size());
+
+        for (int index = 0; index < ids.size(); index++) {
+            Long sourceId = ids.get(index);
+            String number = numbers.get(index);
+
+            items.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    Entity costCalculation = itemCreation.create(settings, sourceId, number, costCalculationBatch);
+
+                    if (!costCalculation.isValid()) {
+                        return costCalculation;
+                    }
+
+                    return costCalculationBatchItemCalculator.calculate(costCalculation.getId(), productCostsCache, locale);
+                } catch (Exception e) {
+                    LOG.warn("Cost calculation of " + sourceId + " failed", e);
+
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }, executor));
+        }
+
+        CompletableFuture.allOf(items.toArray(new CompletableFuture[items.size()])).handle(
+                (ignored, throwable) -> collectResult(ids, items, locale)).thenAccept(
+                result -> costCalculationBatchStore.finish(costCalculationBatch.getId(), result, sourceDD, locale)).exceptionally(
+                throwable -> {
+                    LOG.error("Finishing cost calculation batch " + costCalculationBatch.getId() + " failed", throwable);
+
+                    return null;
+                });
+
+        return costCalculationBatch;
+    }
+
+    /**
+     * Workers save and print cost calculations on behalf of the user who started the batch, so security and locale contexts
+     * of the calling thread are set for each task.
+     */
+    private Executor withCallerContext(final Executor executor) {
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+
+        return command -> executor.execute(() -> {
+            SecurityContextHolder.setContext(securityContext);
+            LocaleContextHolder.setLocaleContext(localeContext);
+
+            try {
+                command.run();
+            } finally {
+                LocaleContextHolder.resetLocaleContext();
+                SecurityContextHolder.clearContext();
+            }
+        });
+    }
+
+    private Map<String, Object> getSettings(final Entity template) {
+        Map<String, Object> settings = Maps.newHashMap();
+
+        for (String field : L_SETTINGS_FIELDS) {
+            Object value = template.getField(field);
+
+            if (value instanceof Entity) {
+                value = ((Entity) value).getId();
+            }
+
+            settings.put(field, value);
+        }
+
+        return settings;
+    }
+
+    private CostCalculationBatchResult collectResult(final List<Long> ids, final List<CompletableFuture<Entity>> items,
+            final Locale locale) {
+        List<Long> costCalculationIds = Lists.newArrayList();
+        Map<Long, String> failures = Maps.newLinkedHashMap();
+
+        for (int index = 0; index < ids.size(); index++) {
+            CompletableFuture<Entity> item = items.get(index);
+
+            Entity costCalculation;
+
+            try {
+                costCalculation = item.join();
+            } catch (CompletionException e) {
+                failures.put(ids.get(index), translationService.translate("costCalculation.messages.failure.batchItem", locale,
+                        e.getCause().getMessage()));
+
+                continue;
+            }
+
+            if (costCalculation.isValid()) {
+                costCalculationIds.add(costCalculation.getId());
+            } else {
+                failures.put(ids.get(index), getErrorMessages(costCalculation, locale));
+            }
+        }
+
+        return new CostCalculationBatchResult(costCalculationIds, failures);
+    }
+
+    private String getErrorMessages(final Entity costCalculation, final Locale locale) {
+        List<String> messages = Lists.newArrayList();
+
+        messages.addAll(costCalculation.getGlobalErrors().stream()
+                .map(error -> translationService.translate(error.getMessage(), locale, error.getVars()))
+                .collect(Collectors.toList()));
+        messages.addAll(costCalculation.getErrors().entrySet().stream()
+                .map(error -> translationService.translate("costCalculation.costCalculation." + error.getKey() + ".label", locale)
+                        + " - " + translationService.translate(error.getValue().getMessage(), locale, error.getValue().getVars()))
+                .collect(Collectors.toList()));
+
+        return messages.stream().collect(Collectors.joining("\n"));
+    }
+
+    @FunctionalInterface
+    private interface ItemCreation {
+
+        Entity create(final Map<String, Object> settings, final Long sourceId, final String number,
+                final Entity costCalculationBatch);
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.batch;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.NumberAllocationService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationBatchFields;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationBatchState;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Stores state and results of cost calculation batches. Each change is committed in its own transaction, so that the batch
+ * can be referenced by cost calculations saved by the workers and its progress is visible while it's being calculated. Batch
+ * numbers are taken from the costcalculation_costcalculationbatch_number_seq sequence.
+ */
+@Service
+public class CostCalculationBatchStore {
+
+    private static final String L_NUMBER = "number";
+
+    private static final String L_COST_CALCULATION_BATCH_TABLE = "costcalculation_costcalculationbatch";
+
+    private static final int L_COST_CALCULATION_BATCH_NUMBER_DIGITS = 6;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NumberAllocationService numberAllocationService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Entity start(final int itemsNumber) {
+        Entity costCalculationBatch = getCostCalculationBatchDD().create();
+
+        costCalculationBatch.setField(CostCalculationBatchFields.NUMBER,
+                numberAllocationService.allocate(L_COST_CALCULATION_BATCH_TABLE, L_COST_CALCULATION_BATCH_NUMBER_DIGITS));
+        costCalculationBatch.setField(CostCalculationBatchFields.STATE, CostCalculationBatchState.IN_PROGRESS.getStringValue());
+        costCalculationBatch.setField(CostCalculationBatchFields.START_DATE, new Date());
+        costCalculationBatch.setField(CostCalculationBatchFields.ITEMS_NUMBER, itemsNumber);
+
+        return getCostCalculationBatchDD().save(costCalculationBatch);
+    }
+
+    /**
+     * @param sourceDD
+     *            data definition of technologies (orders) the batch was calculated for, used to describe failures
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void finish(final Long costCalculationBatchId, final CostCalculationBatchResult result, final DataDefinition sourceDD,
+            final Locale locale) {
+        Entity costCalculationBatch = getCostCalculationBatchDD().get(costCalculationBatchId);
+
+        costCalculationBatch.setField(CostCalculationBatchFields.STATE, CostCalculationBatchState.FINISHED.getStringValue());
+        costCalculationBatch.setField(CostCalculationBatchFields.FINISH_DATE, new Date());
+        costCalculationBatch.setField(CostCalculationBatchFields.CALCULATED_ITEMS_NUMBER, result.getCostCalculationIds().size());
+        costCalculationBatch.setField(CostCalculationBatchFields.FAILURES, getFailures(result.getFailures(), sourceDD, locale));
+
+        getCostCalculationBatchDD().save(costCalculationBatch);
+    }
+
+    /**
+     * Batches are calculated only in memory of the instance which started them, so batches still in progress when the
+     * application starts were interrupted by its shutdown and will never be finished.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void interruptUnfinished() {
+        DataDefinition costCalculationBatchDD = getCostCalculationBatchDD();
+
+        List<Entity> costCalculationBatches = costCalculationBatchDD.find()
+                .add(SearchRestrictions.eq(CostCalculationBatchFields.STATE,
+                        CostCalculationBatchState.IN_PROGRESS.getStringValue())).list().getEntities();
+
+        for (Entity costCalculationBatch : costCalculationBatches) {
+            costCalculationBatch.setField(CostCalculationBatchFields.STATE,
+                    CostCalculationBatchState.INTERRUPTED.getStringValue());
+            costCalculationBatch.setField(CostCalculationBatchFields.FINISH_DATE, new Date());
+
+            costCalculationBatchDD.save(costCalculationBatch);
+        }
+    }
+
+    private String getFailures(final Map<Long, String> failures, final DataDefinition sourceDD, final Locale locale) {
+        if (failures.isEmpty()) {
+            return null;
+        }
+
+        return failures.entrySet().stream()
+                .map(failure -> translationService.translate("costCalculation.messages.failure.batchItemSource", locale,
+                        getSourceNumber(sourceDD, failure.getKey()), failure.getValue()))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String getSourceNumber(final DataDefinition sourceDD, final Long sourceId) {
+        Entity source = sourceDD.get(sourceId);
+
+        return (source == null) ? String.valueOf(sourceId) : source.getStringField(L_NUMBER);
+    }
+
+    private DataDefinition getCostCalculationBatchDD() {
+        return dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION_BATCH);
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.constants;
+
+public enum CostCalculationBatchState {
+    IN_PROGRESS("01inProgress"), FINISHED("02finished"), INTERRUPTED("03interrupted");
+
+    private String state;
+
+    private CostCalculationBatchState(final String state) {
+        this.state = state;
+    }
+
+    public String getStringValue() {
+        return state;
+    }
+
+    public static CostCalculationBatchState parseString(final String string) {
+        if ("01inProgress".equals(string)) {
+            return IN_PROGRESS;
+        } else if ("02finished".equals(string)) {
+            return FINISHED;
+        } else if ("03interrupted".equals(string)) {
+            return INTERRUPTED;
+        }
+
+        throw new IllegalStateException("Unsupported costCalculationBatch state: " + string);
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.listeners;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.costCalculation.batch.CostCalculationBatchService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationBatchFields;
+import com.qcadoo.mes.masterOrders.constants.OrderFieldsMO;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class MasterOrdersListListenersCC {
+
+    private static final String L_DOT_ID = ".id";
+
+    @Autowired
+    private CostCalculationBatchService costCalculationBatchService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    public void calculateCostsOfSelectedMasterOrders(final ViewDefinitionState view, final ComponentState state,
+            final String[] args) {
+        GridComponent masterOrdersGrid = (GridComponent) state;
+
+        if (masterOrdersGrid.getSelectedEntitiesIds().isEmpty()) {
+            return;
+        }
+
+        List<Long> orderIds = getOrderIds(masterOrdersGrid.getSelectedEntitiesIds());
+
+        if (orderIds.isEmpty()) {
+            view.addMessage("costCalculation.messages.info.masterOrdersWithoutOrders", ComponentState.MessageType.INFO);
+
+            return;
+        }
+
+        Entity costCalculationBatch = costCalculationBatchService.calculateForOrders(costCalculationBatchService.createTemplate(),
+                orderIds, LocaleContextHolder.getLocale());
+
+        if (costCalculationBatch.isValid()) {
+            view.addMessage("costCalculation.messages.info.batchStarted", ComponentState.MessageType.INFO, false,
+                    costCalculationBatch.getStringField(CostCalculationBatchFields.NUMBER));
+        } else {
+            view.addMessage("costCalculation.messages.failure.batchNotStarted", ComponentState.MessageType.FAILURE);
+        }
+    }
+
+    private List<Long> getOrderIds(final Set<Long> masterOrderIds) {
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
+                .add(SearchRestrictions.in(OrderFieldsMO.MASTER_ORDER + L_DOT_ID, masterOrderIds)).list().getEntities().stream()
+                .map(Entity::getId).collect(Collectors.toList());
+    }
+
+}
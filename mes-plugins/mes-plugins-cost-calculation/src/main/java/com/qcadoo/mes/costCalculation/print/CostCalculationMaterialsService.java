@@ -57,11 +57,13 @@ public class CostCalculationMaterialsService {
             final Map<Long, BigDecimal> neededProductQuantities, final Entity order) {
         MathContext mathContext = numberService.getMathContext();
         List<CostCalculationMaterial> list = Lists.newArrayList();
+        Map<Long, Entity> products = productQuantitiesService.getProducts(neededProductQuantities.keySet());
+        Map<Long, Entity> costNorms = productsCostCalculationService.getAppropriateCostNormsForProducts(products.values(),
+                order, costCalculation.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS));
         for (Map.Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
+            Entity product = products.get(neededProductQuantity.getKey());
 
-            Entity productEntity = productsCostCalculationService.getAppropriateCostNormForProduct(product, order,
-                    costCalculation.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS));
+            Entity productEntity = productsCostCalculationService.getCostNormForProduct(costNorms, product, order);
 
             BigDecimal productQuantity = neededProductQuantity.getValue();
 
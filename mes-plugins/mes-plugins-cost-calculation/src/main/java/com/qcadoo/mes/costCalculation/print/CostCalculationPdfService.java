@@ -832,15 +832,18 @@ public class CostCalculationPdfService extends PdfDocumentService {
         PdfPTable printCostNormsOfMaterialTable = pdfHelper.createTableWithHeader(optionTableHeader.size(), optionTableHeader,
                 false);
 
+        Map<Long, Entity> products = productQuantitiesService.getProducts(neededProductQuantities.keySet());
+        Map<Long, Entity> costNorms = productsCostCalculationService.getAppropriateCostNormsForProducts(products.values(),
+                order, costCalculation.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS));
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
+            Entity product = products.get(neededProductQuantity.getKey());
 
             printCostNormsOfMaterialTable
                     .addCell(new Phrase(product.getStringField(ProductFields.NUMBER), FontUtils.getDejavuRegular7Dark()));
             printCostNormsOfMaterialTable
                     .addCell(new Phrase(product.getStringField(ProductFields.NAME), FontUtils.getDejavuRegular7Dark()));
-            Entity entityProduct = productsCostCalculationService.getAppropriateCostNormForProduct(product, order,
-                    costCalculation.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS));
+            Entity entityProduct = productsCostCalculationService.getCostNormForProduct(costNorms, product, order);
             BigDecimal toDisplay = entityProduct.getDecimalField(costModeName.get(L_COST_MODE));
             BigDecimal quantity = product.getDecimalField(ProductFieldsCNFP.COST_FOR_NUMBER);
             String unit = product.getStringField(ProductFields.UNIT);
@@ -0,0 +1,154 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.batch;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.NumberAllocationService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationBatchFields;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationBatchState;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SearchRestrictions.class)
+public class CostCalculationBatchStoreTest {
+
+    private CostCalculationBatchStore costCalculationBatchStore;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberAllocationService numberAllocationService;
+
+    @Mock
+    private DataDefinition costCalculationBatchDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private SearchCriterion inProgressCriterion;
+
+    @Mock
+    private Entity costCalculationBatch, otherCostCalculationBatch;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        costCalculationBatchStore = new CostCalculationBatchStore();
+
+        ReflectionTestUtils.setField(costCalculationBatchStore, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(costCalculationBatchStore, "numberAllocationService", numberAllocationService);
+
+        given(dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION_BATCH)).willReturn(costCalculationBatchDD);
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+        given(SearchRestrictions.eq(CostCalculationBatchFields.STATE, CostCalculationBatchState.IN_PROGRESS.getStringValue()))
+                .willReturn(inProgressCriterion);
+
+        given(costCalculationBatchDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(inProgressCriterion)).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+    }
+
+    @Test
+    public final void shouldStartBatchWithNumberAllocatedFromSequence() {
+        // given
+        given(costCalculationBatchDD.create()).willReturn(costCalculationBatch);
+        given(costCalculationBatchDD.save(costCalculationBatch)).willReturn(costCalculationBatch);
+        given(numberAllocationService.allocate("costcalculation_costcalculationbatch", 6)).willReturn("000012");
+
+        // when
+        costCalculationBatchStore.start(3);
+
+        // then
+        verify(costCalculationBatch).setField(CostCalculationBatchFields.NUMBER, "000012");
+        verify(costCalculationBatch).setField(CostCalculationBatchFields.STATE,
+                CostCalculationBatchState.IN_PROGRESS.getStringValue());
+        verify(costCalculationBatch).setField(CostCalculationBatchFields.ITEMS_NUMBER, 3);
+        verify(costCalculationBatchDD).save(costCalculationBatch);
+    }
+
+    @Test
+    public final void shouldInterruptBatchesLeftInProgress() {
+        // given
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(costCalculationBatch, otherCostCalculationBatch));
+
+        // when
+        costCalculationBatchStore.interruptUnfinished();
+
+        // then
+        verify(costCalculationBatch).setField(CostCalculationBatchFields.STATE,
+                CostCalculationBatchState.INTERRUPTED.getStringValue());
+        verify(costCalculationBatch).setField(eq(CostCalculationBatchFields.FINISH_DATE), any(Date.class));
+        verify(costCalculationBatchDD).save(costCalculationBatch);
+        verify(otherCostCalculationBatch).setField(CostCalculationBatchFields.STATE,
+                CostCalculationBatchState.INTERRUPTED.getStringValue());
+        verify(costCalculationBatchDD).save(otherCostCalculationBatch);
+    }
+
+    @Test
+    public final void shouldNotSaveAnythingIfNoBatchIsInProgress() {
+        // given
+        given(searchResult.getEntities()).willReturn(Collections.emptyList());
+
+        // when
+        costCalculationBatchStore.interruptUnfinished();
+
+        // then
+        verify(costCalculationBatchDD, never()).save(any(Entity.class));
+    }
+
+}
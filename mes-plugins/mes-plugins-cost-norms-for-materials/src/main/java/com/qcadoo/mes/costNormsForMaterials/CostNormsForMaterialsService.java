@@ -100,9 +100,10 @@ public class CostNormsForMaterialsService {
         List<Entity> inputProducts = Lists.newArrayList();
 
         Map<Long, BigDecimal> productQuantities = getProductQuantitiesFromTechnology(technologyId);
+        Map<Long, Entity> products = productQuantitiesService.getProducts(productQuantities.keySet());
 
         for (Map.Entry<Long, BigDecimal> productQuantity : productQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
+            Entity product = products.get(productQuantity.getKey());
             BigDecimal quantity = productQuantity.getValue();
 
             Entity operationProductInComponent = dataDefinitionService
@@ -0,0 +1,79 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costNormsForMaterials;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.ProductQuantitiesService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Read-only snapshot of products cost norms, shared by many cost calculations computed at once (possibly by many threads).
+ * Each product is loaded at most once, the first time any calculation needs it, and is never modified afterwards.
+ */
+public final class ProductCostsCache {
+
+    private final ProductQuantitiesService productQuantitiesService;
+
+    private final ConcurrentMap<Long, Entity> products = new ConcurrentHashMap<Long, Entity>();
+
+    ProductCostsCache(final ProductQuantitiesService productQuantitiesService) {
+        this.productQuantitiesService = productQuantitiesService;
+    }
+
+    /**
+     * @param productIds
+     *            ids of products
+     * 
+     * @return products by id, missing ones are loaded with a single query
+     */
+    public Map<Long, Entity> getProducts(final Collection<Long> productIds) {
+        Set<Long> missingProductIds = Sets.newHashSet();
+
+        for (Long productId : productIds) {
+            if (!products.containsKey(productId)) {
+                missingProductIds.add(productId);
+            }
+        }
+
+        for (Map.Entry<Long, Entity> product : productQuantitiesService.getProducts(missingProductIds).entrySet()) {
+            products.putIfAbsent(product.getKey(), product.getValue());
+        }
+
+        Map<Long, Entity> result = Maps.newHashMapWithExpectedSize(productIds.size());
+
+        for (Long productId : productIds) {
+            result.put(productId, products.get(productId));
+        }
+
+        return result;
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costNormsForMaterials;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Map;
 
 import com.qcadoo.model.api.Entity;
@@ -32,6 +33,18 @@ public interface ProductsCostCalculationService {
 
     void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts);
 
+    /**
+     * Same as {@link #calculateTotalProductsCost(Entity, String)}, but products are taken from given cache instead of being
+     * loaded for each calculation separately.
+     */
+    void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts,
+            final ProductCostsCache productCostsCache);
+
+    /**
+     * @return new, empty cache of products cost norms, to be shared by cost calculations computed at once
+     */
+    ProductCostsCache createProductCostsCache();
+
     BigDecimal calculateProductCostForGivenQuantity(final Entity product, final BigDecimal quantity,
             final String calculateMaterialCostsMode);
 
@@ -43,4 +56,22 @@ public interface ProductsCostCalculationService {
 
     Entity getAppropriateCostNormForProduct(final Entity product, final Entity order, final String sourceOfMaterialCosts);
 
+    /**
+     * Resolves cost norms of all given products at once - products themselves for global definitions or order's material
+     * costs otherwise. Products without order's material costs are omitted.
+     *
+     * @return cost norm holders by product id
+     */
+    Map<Long, Entity> getAppropriateCostNormsForProducts(final Collection<Entity> products, final Entity order,
+            final String sourceOfMaterialCosts);
+
+    /**
+     * Picks cost norm of given product from cost norms resolved by
+     * {@link #getAppropriateCostNormsForProducts(Collection, Entity, String)}.
+     *
+     * @throws IllegalStateException
+     *             if there are no order's material costs of given product
+     */
+    Entity getCostNormForProduct(final Map<Long, Entity> costNorms, final Entity product, final Entity order);
+
 }
@@ -26,7 +26,7 @@ package com.qcadoo.mes.costNormsForMaterials;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -58,7 +58,14 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
 
     @Override
     public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts) {
-        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts);
+        calculateTotalProductsCost(entity, sourceOfMaterialCosts, null);
+    }
+
+    @Override
+    public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts,
+            final ProductCostsCache productCostsCache) {
+        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts,
+                productCostsCache);
         BigDecimal result = BigDecimal.ZERO;
         for (Entry<Entity, BigDecimal> productWithCost : listProductWithCost.entrySet()) {
             result = result.add(productWithCost.getValue(), numberService.getMathContext());
@@ -66,8 +73,13 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         entity.setField("totalMaterialCosts", numberService.setScale(result));
     }
 
+    @Override
+    public ProductCostsCache createProductCostsCache() {
+        return new ProductCostsCache(productQuantitiesService);
+    }
+
     private Map<Entity, BigDecimal> calculateListProductsCostForPlannedQuantity(final Entity entity,
-            final String sourceOfMaterialCosts) {
+            final String sourceOfMaterialCosts, final ProductCostsCache productCostsCache) {
         checkArgument(entity != null);
         BigDecimal quantity = BigDecimalUtils.convertNullToZero(entity.getDecimalField("quantity"));
 
@@ -80,9 +92,10 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         Entity order = entity.getBelongsToField("order");
 
         if ("02fromOrdersMaterialCosts".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order);
+            return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order,
+                    productCostsCache);
         } else if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode);
+            return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, productCostsCache);
         }
 
         throw new IllegalStateException("sourceOfProductCosts is neither FROM_ORDER nor GLOBAL");
@@ -105,16 +118,22 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     @Override
     public Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity technology, final BigDecimal quantity,
             final String calculateMaterialCostsMode) {
-        return getProductWithCostForPlannedQuantities(null, technology, quantity, calculateMaterialCostsMode);
+        return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, (ProductCostsCache) null);
     }
 
     public Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity entity, final Entity technology,
             final BigDecimal quantity, final String calculateMaterialCostsMode) {
-        Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(entity, technology, quantity,
+        return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, (ProductCostsCache) null);
+    }
+
+    private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity technology, final BigDecimal quantity,
+            final String calculateMaterialCostsMode, final ProductCostsCache productCostsCache) {
+        Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(technology, quantity,
                 MrpAlgorithm.ONLY_COMPONENTS);
-        Map<Entity, BigDecimal> results = new HashMap<Entity, BigDecimal>();
+        Map<Long, Entity> products = getProducts(neededProductQuantities.keySet(), productCostsCache);
+        Map<Entity, BigDecimal> results = Maps.newHashMap();
         for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
+            Entity product = products.get(productQuantity.getKey());
             BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(product, productQuantity.getValue(),
                     calculateMaterialCostsMode);
             results.put(product, thisProductsCost);
@@ -122,24 +141,39 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         return results;
     }
 
-    private Map<Long, BigDecimal> getNeededProductQuantities(final Entity entity, final Entity technology,
-            final BigDecimal quantity, final MrpAlgorithm algorithm) {
+    private Map<Long, BigDecimal> getNeededProductQuantities(final Entity technology, final BigDecimal quantity,
+            final MrpAlgorithm algorithm) {
         return productQuantitiesService.getNeededProductQuantities(technology, quantity, algorithm);
     }
 
+    private Map<Long, Entity> getProducts(final Collection<Long> productIds, final ProductCostsCache productCostsCache) {
+        if (productCostsCache == null) {
+            return productQuantitiesService.getProducts(productIds);
+        }
+        return productCostsCache.getProducts(productIds);
+    }
+
     @Override
     public Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity technology, final BigDecimal quantity,
             final String calculateMaterialCostsMode, final Entity order) {
-        Map<Long, BigDecimal> neededProductQuantities = productQuantitiesService.getNeededProductQuantities(technology, quantity,
+        return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order, null);
+    }
+
+    private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity technology, final BigDecimal quantity,
+            final String calculateMaterialCostsMode, final Entity order, final ProductCostsCache productCostsCache) {
+        Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(technology, quantity,
                 MrpAlgorithm.ONLY_COMPONENTS);
+        Map<Long, Entity> products = getProducts(neededProductQuantities.keySet(), productCostsCache);
+        Map<Long, Entity> orderMaterialCosts = orderMaterialCostsDataProvider.findAll(order.getId(),
+                neededProductQuantities.keySet());
         Map<Entity, BigDecimal> results = Maps.newHashMap();
 
         for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
-            for (Entity orderMaterialCosts : findOrderMaterialCosts(order, product).asSet()) {
-                BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(orderMaterialCosts, productQuantity.getValue(),
-                        calculateMaterialCostsMode);
-                results.put(product, thisProductsCost);
+            Entity productMaterialCosts = orderMaterialCosts.get(productQuantity.getKey());
+            if (productMaterialCosts != null) {
+                BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(productMaterialCosts,
+                        productQuantity.getValue(), calculateMaterialCostsMode);
+                results.put(products.get(productQuantity.getKey()), thisProductsCost);
             }
         }
         return results;
@@ -153,7 +187,33 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         for (Entity orderMaterialCosts : findOrderMaterialCosts(order, product).asSet()) {
             return orderMaterialCosts;
         }
-        throw new IllegalStateException("Product with id=" + product.getStringField(ProductFields.NUMBER)
+        throw createCostNormNotFoundException(product, order);
+    }
+
+    @Override
+    public Map<Long, Entity> getAppropriateCostNormsForProducts(final Collection<Entity> products, final Entity order,
+            final String sourceOfMaterialCosts) {
+        Map<Long, Entity> productsById = Maps.newHashMap();
+        for (Entity product : products) {
+            productsById.put(product.getId(), product);
+        }
+        if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
+            return productsById;
+        }
+        return orderMaterialCostsDataProvider.findAll(order.getId(), productsById.keySet());
+    }
+
+    @Override
+    public Entity getCostNormForProduct(final Map<Long, Entity> costNorms, final Entity product, final Entity order) {
+        Entity costNorm = costNorms.get(product.getId());
+        if (costNorm == null) {
+            throw createCostNormNotFoundException(product, order);
+        }
+        return costNorm;
+    }
+
+    private IllegalStateException createCostNormNotFoundException(final Entity product, final Entity order) {
+        return new IllegalStateException("Product with id=" + product.getStringField(ProductFields.NUMBER)
                 + " doesn't exists for order with id=" + order.getId());
     }
 
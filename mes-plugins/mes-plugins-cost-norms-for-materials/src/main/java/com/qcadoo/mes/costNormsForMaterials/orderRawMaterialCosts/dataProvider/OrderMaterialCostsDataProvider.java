@@ -23,7 +23,9 @@
  */
 package com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.base.Optional;
 import com.qcadoo.model.api.Entity;
@@ -66,4 +68,16 @@ public interface OrderMaterialCostsDataProvider {
      * @since 1.4
      */
     Optional<Entity> find(final Long orderId, final Long productId);
+
+    /**
+     * Find order's material costs entities that belong to given order and products, using single query
+     *
+     * @param orderId
+     *            id of an order
+     * @param productIds
+     *            ids of products
+     * @return order's material costs entities by product id, products without material costs are omitted
+     * @since 1.4
+     */
+    Map<Long, Entity> findAll(final Long orderId, final Collection<Long> productIds);
 }
@@ -24,13 +24,17 @@
 package com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider;
 
 import static com.qcadoo.model.api.search.SearchRestrictions.idEq;
+import static com.qcadoo.model.api.search.SearchRestrictions.in;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.costNormsForMaterials.constants.CostNormsForMaterialsConstants;
 import com.qcadoo.mes.costNormsForMaterials.constants.TechnologyInstOperProductInCompFields;
 import com.qcadoo.model.api.DataDefinition;
@@ -67,6 +71,22 @@ final class OrderMaterialCostsDataProviderImpl implements OrderMaterialCostsData
         return find(OrderMaterialCostsCriteria.forOrder(orderId).setProductCriteria(idEq(productId)));
     }
 
+    @Override
+    public Map<Long, Entity> findAll(final Long orderId, final Collection<Long> productIds) {
+        Map<Long, Entity> materialCostsByProductId = Maps.newHashMap();
+        if (productIds.isEmpty()) {
+            return materialCostsByProductId;
+        }
+        for (Entity materialCosts : findAll(OrderMaterialCostsCriteria.forOrder(orderId).setProductCriteria(
+                in("id", productIds)))) {
+            Long productId = materialCosts.getBelongsToField(TechnologyInstOperProductInCompFields.PRODUCT).getId();
+            if (!materialCostsByProductId.containsKey(productId)) {
+                materialCostsByProductId.put(productId, materialCosts);
+            }
+        }
+        return materialCostsByProductId;
+    }
+
     private SearchCriteriaBuilder prepareCriteria(final OrderMaterialCostsCriteria criteria) {
         SearchCriteriaBuilder scb = createCriteriaBuilder();
         scb.createCriteria(TechnologyInstOperProductInCompFields.ORDER, ORDER_ALIAS, JoinType.INNER).add(
@@ -31,11 +31,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Map;
 
 import junit.framework.Assert;
@@ -51,6 +53,8 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.costNormsForMaterials.constants.ProductsCostFields;
 import com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider.OrderMaterialCostsDataProvider;
 import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
@@ -102,6 +106,15 @@ public class ProductsCostCalculationServiceTest {
                 return Optional.fromNullable(materialCostsByProductId.get(productId));
             }
         });
+        given(orderMaterialCostsDataProvider.findAll(eq(order.getId()), anyCollectionOf(Long.class))).willAnswer(
+                new Answer<Map<Long, Entity>>() {
+
+                    @Override
+                    public Map<Long, Entity> answer(final InvocationOnMock invocation) throws Throwable {
+                        Collection<Long> productIds = (Collection<Long>) invocation.getArguments()[1];
+                        return Maps.filterKeys(materialCostsByProductId, productIds::contains);
+                    }
+                });
     }
 
     private void verifySetDecimalField(final Entity entity, final String fieldName, final BigDecimal expectedValue) {
@@ -139,6 +152,14 @@ public class ProductsCostCalculationServiceTest {
                 return productsById.get(productId);
             }
         });
+        given(productQuantitiesService.getProducts(anyCollectionOf(Long.class))).willAnswer(new Answer<Map<Long, Entity>>() {
+
+            @Override
+            public Map<Long, Entity> answer(final InvocationOnMock invocation) throws Throwable {
+                Collection<Long> productIds = (Collection<Long>) invocation.getArguments()[0];
+                return Maps.filterKeys(productsById, productIds::contains);
+            }
+        });
     }
 
     private void stubNeededProductQuantities(final Map<Long, BigDecimal> neededProductQuantities) {
@@ -296,6 +317,23 @@ public class ProductsCostCalculationServiceTest {
         assertEquals(orderMaterialCosts, results);
     }
 
+    @Test
+    public void shouldGetAppropriateCostNormsForProducts() throws Exception {
+        // given
+        String sourceOfMaterialCosts = "02fromOrdersMaterialCosts";
+        Entity firstProduct = mockEntity(201L);
+        Entity secondProduct = mockEntity(202L);
+        Entity orderMaterialCosts = mockEntity();
+        stubOrderMaterialCostsSearchResults(ImmutableMap.of(secondProduct.getId(), orderMaterialCosts));
+
+        // when
+        Map<Long, Entity> results = productsCostCalculationService.getAppropriateCostNormsForProducts(
+                Lists.newArrayList(firstProduct, secondProduct), order, sourceOfMaterialCosts);
+
+        // then
+        assertEquals(ImmutableMap.of(secondProduct.getId(), orderMaterialCosts), results);
+    }
+
     @Test
     public void shouldGetAppropriateCostNormForProductThrowException() throws Exception {
         // given
@@ -313,4 +351,33 @@ public class ProductsCostCalculationServiceTest {
 
     }
 
+    @Test
+    public void shouldGetCostNormForProduct() throws Exception {
+        // given
+        Entity product = mockEntity(202L);
+        Entity orderMaterialCosts = mockEntity();
+
+        // when
+        Entity result = productsCostCalculationService.getCostNormForProduct(
+                ImmutableMap.of(product.getId(), orderMaterialCosts), product, order);
+
+        // then
+        assertEquals(orderMaterialCosts, result);
+    }
+
+    @Test
+    public void shouldGetCostNormForProductThrowException() throws Exception {
+        // given
+        Entity product = mockEntity(202L);
+
+        // when & then
+        try {
+            productsCostCalculationService.getCostNormForProduct(ImmutableMap.<Long, Entity> of(), product, order);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+            // success
+        }
+
+    }
+
 }
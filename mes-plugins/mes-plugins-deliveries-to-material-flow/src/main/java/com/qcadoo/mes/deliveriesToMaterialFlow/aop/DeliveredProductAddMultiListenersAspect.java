@@ -46,7 +46,7 @@ public class DeliveredProductAddMultiListenersAspect {
     @Autowired
     private DeliveredProductValidationHelper deliveredProductValidaionHelper;
 
-    @Pointcut("execution(private com.qcadoo.model.api.Entity com.qcadoo.mes.deliveries.listeners.DeliveredProductAddMultiListeners.createDeliveredProduct(..))"
+    @Pointcut("execution(private com.qcadoo.model.api.Entity com.qcadoo.mes.deliveries.DeliveredProductMultiSaveService.createDeliveredProduct(..))"
             + "&& args(position, deliveredProductDD)")
     public void createDeliveredProduct(Entity position, DataDefinition deliveredProductDD) {
     }
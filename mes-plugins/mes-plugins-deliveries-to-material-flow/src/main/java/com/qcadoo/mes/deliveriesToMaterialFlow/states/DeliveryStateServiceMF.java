@@ -47,6 +47,7 @@ import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
 import com.qcadoo.mes.materialFlowResources.service.DocumentBuilder;
 import com.qcadoo.mes.materialFlowResources.service.DocumentManagementService;
+import com.qcadoo.mes.materialFlowResources.service.ReceiptDocumentBulkService;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.model.api.Entity;
@@ -60,6 +61,9 @@ public class DeliveryStateServiceMF {
     @Autowired
     private DocumentManagementService documentManagementService;
 
+    @Autowired
+    private ReceiptDocumentBulkService receiptDocumentBulkService;
+
     @Autowired
     private NumberService numberService;
 
@@ -113,7 +117,7 @@ public class DeliveryStateServiceMF {
                         isWaste(deliveredProduct));
             }
         }
-        Entity createdDocument = documentBuilder.setAccepted().build();
+        Entity createdDocument = receiptDocumentBulkService.buildAccepted(documentBuilder);
         if (!createdDocument.isValid()) {
             delivery.addGlobalError("deliveriesToMaterialFlow.deliveryStateValidator.error.document", true);
             for (ErrorMessage error : createdDocument.getGlobalErrors()) {
@@ -0,0 +1,301 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductMultiFields;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductMultiPositionFields;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
+import com.qcadoo.mes.deliveries.constants.ParameterFieldsD;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjectionList;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+@Service
+public class DeliveredProductMultiSaveService {
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    private static final String L_ADDITIONAL_CODE_ID = "additionalCodeId";
+
+    private static final String L_EXPIRATION_DATE = "expirationDate";
+
+    private static final String L_DOT_ID = ".id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private DeliveredProductsSaver deliveredProductsSaver;
+
+    /**
+     * Creates delivered products for given positions of deliveredProductMulti. Positions are checked against the delivery all
+     * together, then inserted in one batch and the delivery is saved once. If that fails on reservations, positions whose
+     * delivered products turned out invalid get their errors and the remaining ones are saved again together, so a single invalid
+     * row does not undo the others. Errors of the delivery itself are added to all positions.
+     *
+     * @return positions which could not be saved, with errors attached
+     */
+    public List<Entity> saveDeliveredProducts(final Entity deliveredProductMulti, final Entity delivery,
+            final List<Entity> positions) {
+        DataDefinition deliveredProductDD = getDeliveredProductDD();
+        DataDefinition positionDD = dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER,
+                DeliveriesConstants.MODEL_DELIVERED_PRODUCT_MULTI_POSITION);
+
+        Entity palletNumber = deliveredProductMulti.getBelongsToField(DeliveredProductMultiFields.PALLET_NUMBER);
+        Object palletType = deliveredProductMulti.getField(DeliveredProductMultiFields.PALLET_TYPE);
+        Entity storageLocation = deliveredProductMulti.getBelongsToField(DeliveredProductMultiFields.STORAGE_LOCATION);
+
+        Set<Long> productIds = positions.stream()
+                .map(position -> position.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
+
+        boolean withExpirationDate = deliveredProductDD.getField(L_EXPIRATION_DATE) != null;
+        Set<List<Object>> deliveredProductKeys = getDeliveredProductKeys(delivery, palletNumber, productIds,
+                withExpirationDate);
+        Map<List<Long>, BigDecimal> orderedQuantities = isBiggerDeliveredQuantityAllowed() ? null : getOrderedQuantities(
+                delivery, productIds);
+
+        List<Entity> acceptedPositions = Lists.newArrayList();
+        List<Entity> deliveredProducts = Lists.newArrayList();
+
+        for (Entity position : positions) {
+            if ((orderedQuantities != null) && isBiggerThanOrdered(position, orderedQuantities)) {
+                position.addError(positionDD.getField(DeliveredProductMultiPositionFields.QUANTITY),
+                        "deliveries.deliveredProduct.error.deliveredQuantity.biggerThanOrderedQuantity");
+            } else if (!deliveredProductKeys.add(getDeliveredProductKey(position, withExpirationDate))) {
+                position.addError(positionDD.getField(DeliveredProductMultiPositionFields.PRODUCT),
+                        "deliveries.deliveredProduct.error.productAlreadyExists");
+            } else {
+                acceptedPositions.add(position);
+                deliveredProducts.add(createDeliveredProduct(deliveredProductDD, position, delivery, palletNumber, palletType,
+                        storageLocation));
+            }
+        }
+
+        while (!deliveredProducts.isEmpty()) {
+            List<Entity> savedDeliveredProducts = deliveredProductsSaver.saveAll(delivery, deliveredProducts);
+
+            if (allValid(savedDeliveredProducts)) {
+                break;
+            }
+
+            List<Entity> remainingPositions = Lists.newArrayList();
+
+            deliveredProducts = Lists.newArrayList();
+
+            for (int index = 0; index < acceptedPositions.size(); index++) {
+                Entity position = acceptedPositions.get(index);
+                Entity savedDeliveredProduct = savedDeliveredProducts.get(index);
+
+                if (savedDeliveredProduct.isValid()) {
+                    remainingPositions.add(position);
+                    deliveredProducts.add(createDeliveredProduct(deliveredProductDD, position, delivery, palletNumber,
+                            palletType, storageLocation));
+                } else {
+                    copyErrors(savedDeliveredProduct, position);
+                }
+            }
+
+            acceptedPositions = remainingPositions;
+        }
+
+        return positions.stream().filter(position -> !position.isValid()).collect(Collectors.toList());
+    }
+
+    private Set<List<Object>> getDeliveredProductKeys(final Entity delivery, final Entity palletNumber,
+            final Set<Long> productIds, final boolean withExpirationDate) {
+        SearchProjectionList projection = SearchProjections
+                .list()
+                .add(SearchProjections.alias(SearchProjections.id(), "id"))
+                .add(SearchProjections.alias(SearchProjections.field(DeliveredProductFields.PRODUCT + L_DOT_ID), L_PRODUCT_ID))
+                .add(SearchProjections.alias(SearchProjections.field(DeliveredProductFields.ADDITIONAL_CODE + L_DOT_ID),
+                        L_ADDITIONAL_CODE_ID));
+
+        if (withExpirationDate) {
+            projection.add(SearchProjections.alias(SearchProjections.field(L_EXPIRATION_DATE), L_EXPIRATION_DATE));
+        }
+
+        List<Entity> rows = getDeliveredProductDD().find()
+                .createAlias(DeliveredProductFields.PRODUCT, DeliveredProductFields.PRODUCT, JoinType.INNER)
+                .createAlias(DeliveredProductFields.ADDITIONAL_CODE, DeliveredProductFields.ADDITIONAL_CODE, JoinType.LEFT)
+                .add(SearchRestrictions.belongsTo(DeliveredProductFields.DELIVERY, delivery))
+                .add(SearchRestrictions.belongsTo(DeliveredProductFields.PALLET_NUMBER, palletNumber))
+                .add(SearchRestrictions.in(DeliveredProductFields.PRODUCT + L_DOT_ID, productIds)).setProjection(projection)
+                .list().getEntities();
+
+        Set<List<Object>> deliveredProductKeys = Sets.newHashSet();
+
+        for (Entity row : rows) {
+            deliveredProductKeys.add(Arrays.asList(row.getField(L_PRODUCT_ID), row.getField(L_ADDITIONAL_CODE_ID),
+                    withExpirationDate ? getTime(row.getDateField(L_EXPIRATION_DATE)) : null));
+        }
+
+        return deliveredProductKeys;
+    }
+
+    /**
+     * Delivered products of the delivery are unique by product, pallet number, additional code and expiration date. Pallet
+     * number is common for all positions, so it's not a part of the key.
+     */
+    private List<Object> getDeliveredProductKey(final Entity position, final boolean withExpirationDate) {
+        Entity additionalCode = position.getBelongsToField(DeliveredProductMultiPositionFields.ADDITIONAL_CODE);
+
+        return Arrays.asList(position.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT).getId(),
+                (additionalCode == null) ? null : additionalCode.getId(),
+                withExpirationDate ? getTime(position.getDateField(DeliveredProductMultiPositionFields.EXPIRATION_DATE)) : null);
+    }
+
+    private Long getTime(final Date date) {
+        return (date == null) ? null : date.getTime();
+    }
+
+    private Map<List<Long>, BigDecimal> getOrderedQuantities(final Entity delivery, final Set<Long> productIds) {
+        List<Entity> rows = dataDefinitionService
+                .get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_ORDERED_PRODUCT)
+                .find()
+                .createAlias(OrderedProductFields.PRODUCT, OrderedProductFields.PRODUCT, JoinType.INNER)
+                .createAlias(OrderedProductFields.ADDITIONAL_CODE, OrderedProductFields.ADDITIONAL_CODE, JoinType.LEFT)
+                .add(SearchRestrictions.belongsTo(OrderedProductFields.DELIVERY, delivery))
+                .add(SearchRestrictions.in(OrderedProductFields.PRODUCT + L_DOT_ID, productIds))
+                .setProjection(
+                        SearchProjections
+                                .list()
+                                .add(SearchProjections.alias(SearchProjections.id(), "id"))
+                                .add(SearchProjections.alias(SearchProjections.field(OrderedProductFields.PRODUCT + L_DOT_ID),
+                                        L_PRODUCT_ID))
+                                .add(SearchProjections.alias(
+                                        SearchProjections.field(OrderedProductFields.ADDITIONAL_CODE + L_DOT_ID),
+                                        L_ADDITIONAL_CODE_ID))
+                                .add(SearchProjections.alias(SearchProjections.field(OrderedProductFields.ORDERED_QUANTITY),
+                                        OrderedProductFields.ORDERED_QUANTITY))).addOrder(SearchOrders.asc("id")).list()
+                .getEntities();
+
+        Map<List<Long>, BigDecimal> orderedQuantities = Maps.newHashMap();
+
+        for (Entity row : rows) {
+            orderedQuantities.putIfAbsent(
+                    Arrays.asList((Long) row.getField(L_PRODUCT_ID), (Long) row.getField(L_ADDITIONAL_CODE_ID)),
+                    row.getDecimalField(OrderedProductFields.ORDERED_QUANTITY));
+        }
+
+        return orderedQuantities;
+    }
+
+    private boolean isBiggerThanOrdered(final Entity position, final Map<List<Long>, BigDecimal> orderedQuantities) {
+        Entity additionalCode = position.getBelongsToField(DeliveredProductMultiPositionFields.ADDITIONAL_CODE);
+
+        List<Long> key = Arrays.asList(position.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT).getId(),
+                (additionalCode == null) ? null : additionalCode.getId());
+
+        BigDecimal orderedQuantity = orderedQuantities.get(key);
+        BigDecimal quantity = position.getDecimalField(DeliveredProductMultiPositionFields.QUANTITY);
+
+        return quantity.compareTo((orderedQuantity == null) ? BigDecimal.ZERO : orderedQuantity) > 0;
+    }
+
+    private boolean isBiggerDeliveredQuantityAllowed() {
+        return parameterService.getParameter().getBooleanField(ParameterFieldsD.DELIVERED_BIGGER_THAN_ORDERED);
+    }
+
+    private boolean allValid(final List<Entity> entities) {
+        return entities.stream().allMatch(Entity::isValid);
+    }
+
+    private Entity createDeliveredProduct(final DataDefinition deliveredProductDD, final Entity position, final Entity delivery,
+            final Entity palletNumber, final Object palletType, final Entity storageLocation) {
+        Entity deliveredProduct = createDeliveredProduct(position, deliveredProductDD);
+
+        deliveredProduct.setField(DeliveredProductFields.DELIVERY, delivery);
+        deliveredProduct.setField(DeliveredProductFields.PALLET_NUMBER, palletNumber);
+        deliveredProduct.setField(DeliveredProductFields.PALLET_TYPE, palletType);
+        deliveredProduct.setField(DeliveredProductFields.STORAGE_LOCATION, storageLocation);
+
+        return deliveredProduct;
+    }
+
+    private Entity createDeliveredProduct(final Entity position, final DataDefinition deliveredProductDD) {
+        Entity deliveredProduct = deliveredProductDD.create();
+
+        deliveredProduct.setField(DeliveredProductFields.PRODUCT,
+                position.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT));
+        deliveredProduct.setField(DeliveredProductFields.DELIVERED_QUANTITY,
+                position.getDecimalField(DeliveredProductMultiPositionFields.QUANTITY));
+        deliveredProduct.setField(DeliveredProductFields.ADDITIONAL_QUANTITY,
+                position.getDecimalField(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY));
+        deliveredProduct.setField(DeliveredProductFields.CONVERSION,
+                position.getDecimalField(DeliveredProductMultiPositionFields.CONVERSION));
+        deliveredProduct.setField(DeliveredProductFields.IS_WASTE,
+                position.getBooleanField(DeliveredProductMultiPositionFields.IS_WASTE));
+        deliveredProduct.setField(DeliveredProductFields.ADDITIONAL_UNIT,
+                position.getStringField(DeliveredProductMultiPositionFields.ADDITIONAL_UNIT));
+        deliveredProduct.setField(DeliveredProductFields.ADDITIONAL_CODE,
+                position.getBelongsToField(DeliveredProductMultiPositionFields.ADDITIONAL_CODE));
+
+        return deliveredProduct;
+    }
+
+    private void copyErrors(final Entity deliveredProduct, final Entity position) {
+        for (Map.Entry<String, ErrorMessage> entry : deliveredProduct.getErrors().entrySet()) {
+            if (position.getDataDefinition().getField(entry.getKey()) != null) {
+                position.addError(position.getDataDefinition().getField(entry.getKey()), entry.getValue().getMessage());
+            } else {
+                position.addGlobalError(entry.getValue().getMessage(), false);
+            }
+        }
+        for (ErrorMessage globalError : deliveredProduct.getGlobalErrors()) {
+            position.addGlobalError(globalError.getMessage(), false, globalError.getVars());
+        }
+    }
+
+    private DataDefinition getDeliveredProductDD() {
+        return dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERED_PRODUCT);
+    }
+
+}
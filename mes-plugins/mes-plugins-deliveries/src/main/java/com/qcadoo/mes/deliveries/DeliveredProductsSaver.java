@@ -0,0 +1,233 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+@Service
+public class DeliveredProductsSaver {
+
+    private static final String L_DELIVERY_ID = "deliveryId";
+
+    private static final String L_EXPIRATION_DATE = "expirationDate";
+
+    private static final String NEXT_IDS = "SELECT nextval('deliveries_deliveredproduct_id_seq') FROM generate_series(1, :count)";
+
+    private static final String LOCK_DELIVERY = "SELECT id FROM deliveries_delivery WHERE id = :" + L_DELIVERY_ID
+            + " FOR UPDATE";
+
+    private static final String LAST_SUCCESSION = "SELECT COALESCE(MAX(succession), 0) FROM deliveries_deliveredproduct "
+            + "WHERE delivery_id = :" + L_DELIVERY_ID;
+
+    private static final String RESERVED_PRODUCTS = "SELECT DISTINCT op.product_id AS productId, "
+            + "op.additionalcode_id AS additionalCodeId FROM deliveries_orderedproduct op "
+            + "JOIN deliveries_orderedproductreservation r ON r.orderedproduct_id = op.id WHERE op.delivery_id = :"
+            + L_DELIVERY_ID;
+
+    private static final String INSERT_DELIVERED_PRODUCT = "INSERT INTO deliveries_deliveredproduct (id, delivery_id, "
+            + "product_id, deliveredquantity, additionalquantity, conversion, iswaste, additionalunit, additionalcode_id, "
+            + "palletnumber_id, pallettype, storagelocation_id, succession%s) VALUES (:id, :deliveryId, :productId, "
+            + ":deliveredQuantity, :additionalQuantity, :conversion, :isWaste, :additionalUnit, :additionalCodeId, "
+            + ":palletNumberId, :palletType, :storageLocationId, :succession%s)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    /**
+     * Saves all given delivered products of the delivery in one transaction. Rows are inserted with a single batch, default
+     * reservations are created only for products reserved on the ordered products, then the delivery is saved once, so its hooks
+     * (storage locations, validation against reservations) see all new rows. Delivered product validators are not run here,
+     * callers have to check the rows up front.
+     * 
+     * When a reservation or the delivery turns out invalid, the errors are added to the affected delivered products (all of them
+     * for delivery errors) and the whole transaction is rolled back, so the caller can drop the invalid ones and save the rest
+     * again.
+     *
+     * @return given delivered products, in the same order, with errors attached
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<Entity> saveAll(final Entity delivery, final List<Entity> deliveredProducts) {
+        if (deliveredProducts.isEmpty()) {
+            return deliveredProducts;
+        }
+
+        Map<String, Object> deliveryParameters = Collections.singletonMap(L_DELIVERY_ID, delivery.getId());
+
+        jdbcTemplate.queryForList(LOCK_DELIVERY, deliveryParameters, Long.class);
+
+        insertDeliveredProducts(delivery, deliveredProducts, jdbcTemplate.queryForObject(LAST_SUCCESSION, deliveryParameters,
+                Integer.class));
+
+        boolean allValid = createReservations(delivery, deliveredProducts);
+
+        if (allValid) {
+            DataDefinition deliveryDD = delivery.getDataDefinition();
+            Entity savedDelivery = deliveryDD.save(deliveryDD.get(delivery.getId()));
+
+            if (!savedDelivery.isValid()) {
+                deliveredProducts.forEach(deliveredProduct -> copyErrors(savedDelivery, deliveredProduct));
+
+                allValid = false;
+            }
+        }
+
+        if (!allValid) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return deliveredProducts;
+    }
+
+    private void insertDeliveredProducts(final Entity delivery, final List<Entity> deliveredProducts, final int lastSuccession) {
+        boolean withExpirationDate = getDeliveredProductDD().getField(L_EXPIRATION_DATE) != null;
+
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS, Collections.singletonMap("count", deliveredProducts.size()),
+                Long.class);
+        List<SqlParameterSource> parameters = Lists.newArrayListWithCapacity(deliveredProducts.size());
+
+        for (int index = 0; index < deliveredProducts.size(); index++) {
+            Entity deliveredProduct = deliveredProducts.get(index);
+
+            deliveredProduct.setId(ids.get(index));
+
+            MapSqlParameterSource rowParameters = new MapSqlParameterSource("id", deliveredProduct.getId())
+                    .addValue(L_DELIVERY_ID, delivery.getId())
+                    .addValue("productId", getId(deliveredProduct, DeliveredProductFields.PRODUCT))
+                    .addValue("deliveredQuantity", deliveredProduct.getDecimalField(DeliveredProductFields.DELIVERED_QUANTITY))
+                    .addValue("additionalQuantity",
+                            deliveredProduct.getDecimalField(DeliveredProductFields.ADDITIONAL_QUANTITY))
+                    .addValue("conversion", deliveredProduct.getDecimalField(DeliveredProductFields.CONVERSION))
+                    .addValue("isWaste", deliveredProduct.getBooleanField(DeliveredProductFields.IS_WASTE))
+                    .addValue("additionalUnit", deliveredProduct.getStringField(DeliveredProductFields.ADDITIONAL_UNIT))
+                    .addValue("additionalCodeId", getId(deliveredProduct, DeliveredProductFields.ADDITIONAL_CODE))
+                    .addValue("palletNumberId", getId(deliveredProduct, DeliveredProductFields.PALLET_NUMBER))
+                    .addValue("palletType", deliveredProduct.getStringField(DeliveredProductFields.PALLET_TYPE))
+                    .addValue("storageLocationId", getId(deliveredProduct, DeliveredProductFields.STORAGE_LOCATION))
+                    .addValue("succession", lastSuccession + index + 1);
+
+            if (withExpirationDate) {
+                rowParameters.addValue(L_EXPIRATION_DATE, deliveredProduct.getDateField(L_EXPIRATION_DATE));
+            }
+
+            parameters.add(rowParameters);
+        }
+
+        jdbcTemplate.batchUpdate(
+                String.format(INSERT_DELIVERED_PRODUCT, withExpirationDate ? ", expirationdate" : "",
+                        withExpirationDate ? ", :" + L_EXPIRATION_DATE : ""),
+                parameters.toArray(new SqlParameterSource[parameters.size()]));
+    }
+
+    private boolean createReservations(final Entity delivery, final List<Entity> deliveredProducts) {
+        Set<List<Long>> reservedProducts = Sets.newHashSet();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(RESERVED_PRODUCTS,
+                Collections.singletonMap(L_DELIVERY_ID, delivery.getId()))) {
+            reservedProducts.add(Arrays.asList(getLong(row.get("productId")), getLong(row.get("additionalCodeId"))));
+        }
+
+        boolean allValid = true;
+
+        for (Entity deliveredProduct : deliveredProducts) {
+            List<Long> key = Arrays.asList(getId(deliveredProduct, DeliveredProductFields.PRODUCT),
+                    getId(deliveredProduct, DeliveredProductFields.ADDITIONAL_CODE));
+
+            if (!reservedProducts.contains(key)) {
+                continue;
+            }
+
+            reservationService.createDefaultReservationsForDeliveredProduct(deliveredProduct);
+
+            List<Entity> reservations = deliveredProduct.getHasManyField(DeliveredProductFields.RESERVATIONS);
+
+            if (reservations == null) {
+                continue;
+            }
+
+            for (Entity reservation : reservations) {
+                Entity savedReservation = reservation.getDataDefinition().save(reservation);
+
+                if (!savedReservation.isValid()) {
+                    copyErrors(savedReservation, deliveredProduct);
+
+                    allValid = false;
+                }
+            }
+        }
+
+        return allValid;
+    }
+
+    private Long getId(final Entity entity, final String belongsToFieldName) {
+        Entity belongsToEntity = entity.getBelongsToField(belongsToFieldName);
+
+        return (belongsToEntity == null) ? null : belongsToEntity.getId();
+    }
+
+    private Long getLong(final Object value) {
+        return (value == null) ? null : ((Number) value).longValue();
+    }
+
+    private void copyErrors(final Entity source, final Entity deliveredProduct) {
+        for (ErrorMessage error : source.getErrors().values()) {
+            deliveredProduct.addGlobalError(error.getMessage(), false, error.getVars());
+        }
+        for (ErrorMessage globalError : source.getGlobalErrors()) {
+            deliveredProduct.addGlobalError(globalError.getMessage(), false, globalError.getVars());
+        }
+    }
+
+    private DataDefinition getDeliveredProductDD() {
+        return dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERED_PRODUCT);
+    }
+
+}
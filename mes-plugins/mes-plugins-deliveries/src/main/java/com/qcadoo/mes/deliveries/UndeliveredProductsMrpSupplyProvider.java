@@ -0,0 +1,87 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
+import com.qcadoo.mes.technologies.mrp.MrpSupply;
+import com.qcadoo.mes.technologies.mrp.MrpSupplyProvider;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+/**
+ * Supplies quantities ordered in not yet received deliveries, reduced by already delivered quantities, to material requirements
+ * planning. Each delivery supplies its products on its delivery date. Deliveries without delivery date are left out - it's not
+ * known when they arrive, so they can't be counted on.
+ */
+@Service
+@RunIfEnabled(DeliveriesConstants.PLUGIN_IDENTIFIER)
+public class UndeliveredProductsMrpSupplyProvider implements MrpSupplyProvider {
+
+    private static final List<String> OPEN_DELIVERY_STATES = Lists.newArrayList(DeliveryStateStringValues.DRAFT,
+            DeliveryStateStringValues.PREPARED, DeliveryStateStringValues.DURING_CORRECTION, DeliveryStateStringValues.APPROVED);
+
+    private static final String UNDELIVERED_QUANTITIES_QUERY = "SELECT ordered.product_id, ordered.deliverydate, "
+            + "ordered.quantity - COALESCE(delivered.quantity, 0) AS quantity FROM (SELECT op.delivery_id, op.product_id, "
+            + "d.deliverydate, SUM(op.orderedquantity) AS quantity FROM deliveries_orderedproduct op "
+            + "JOIN deliveries_delivery d ON d.id = op.delivery_id WHERE d.active = true AND d.state IN (:states) "
+            + "AND d.deliverydate IS NOT NULL "
+            + "AND op.product_id IN (:productIds) GROUP BY op.delivery_id, op.product_id, d.deliverydate) ordered "
+            + "LEFT JOIN (SELECT dp.delivery_id, dp.product_id, SUM(dp.deliveredquantity) AS quantity "
+            + "FROM deliveries_deliveredproduct dp WHERE dp.product_id IN (:productIds) GROUP BY dp.delivery_id, dp.product_id) "
+            + "delivered ON delivered.delivery_id = ordered.delivery_id AND delivered.product_id = ordered.product_id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<MrpSupply> getSupplies(final Collection<Long> productIds) {
+        List<MrpSupply> supplies = Lists.newArrayList();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("productIds", productIds).addValue("states",
+                OPEN_DELIVERY_STATES);
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(UNDELIVERED_QUANTITIES_QUERY, parameters)) {
+            BigDecimal quantity = (BigDecimal) row.get("quantity");
+
+            if (quantity.signum() > 0) {
+                supplies.add(new MrpSupply(((Number) row.get("product_id")).longValue(), (Date) row.get("deliverydate"), quantity));
+            }
+        }
+
+        return supplies;
+    }
+
+}
@@ -29,6 +29,7 @@ import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.deliveries.DeliveredProductMultiPositionService;
+import com.qcadoo.mes.deliveries.DeliveredProductMultiSaveService;
 import com.qcadoo.mes.deliveries.constants.*;
 import com.qcadoo.mes.deliveries.helpers.DeliveredMultiProduct;
 import com.qcadoo.mes.deliveries.helpers.DeliveredMultiProductContainer;
@@ -37,7 +38,6 @@ import com.qcadoo.model.api.*;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
 import com.qcadoo.model.api.units.UnitConversionService;
-import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -48,15 +48,12 @@ import com.qcadoo.view.api.components.LookupComponent;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 @Component
 public class DeliveredProductAddMultiListeners {
@@ -76,6 +73,9 @@ public class DeliveredProductAddMultiListeners {
     @Autowired
     private DeliveredProductMultiPositionService deliveredProductMultiPositionService;
 
+    @Autowired
+    private DeliveredProductMultiSaveService deliveredProductMultiSaveService;
+
     public void createDeliveriedProducts(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         FormComponent form = (FormComponent) view.getComponentByReference("form");
         Entity deliveredProductMulti = form.getPersistedEntityWithIncludedFormValues();
@@ -109,35 +109,23 @@ public class DeliveredProductAddMultiListeners {
 
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void trySaveDeliveredProducts(final ViewDefinitionState view, final Entity deliveredProductMulti,
             final Entity delivery, final EntityList deliveredProductMultiPositions) {
+        List<Entity> positions = Lists.newArrayList(deliveredProductMultiPositions);
+        List<Entity> failedPositions = deliveredProductMultiSaveService.saveDeliveredProducts(deliveredProductMulti, delivery,
+                positions);
 
-        DataDefinition deliveredProductDD = dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER,
-                DeliveriesConstants.MODEL_DELIVERED_PRODUCT);
-        List<Entity> deliveredProducts = Lists.newArrayList(delivery.getHasManyField(DeliveryFields.DELIVERED_PRODUCTS));
+        if (!failedPositions.isEmpty()) {
+            int savedPositionsCount = positions.size() - failedPositions.size();
 
-        for (Entity position : deliveredProductMultiPositions) {
-            Entity deliveredProduct = createDeliveredProduct(position, deliveredProductDD);
-            setStorageLocationFields(deliveredProduct, deliveredProductMulti);
-            deliveredProduct.setField(DeliveredProductFields.DELIVERY, delivery);
-            deliveredProduct = deliveredProductDD.save(deliveredProduct);
-            if (!deliveredProduct.isValid()) {
-                for (Map.Entry<String, ErrorMessage> entry : deliveredProduct.getErrors().entrySet()) {
-                    if (position.getDataDefinition().getField(entry.getKey()) != null) {
-                        position.addError(position.getDataDefinition().getField(entry.getKey()), entry.getValue().getMessage());
-                    } else {
-                        position.addGlobalError(entry.getValue().getMessage(), false);
-                    }
-                }
-                deliveredProductMulti.addGlobalError("deliveries.deliveredProductMulti.error.invalid");
-                throw new IllegalStateException("Undone saved delivered product");
+            deliveredProductMulti.setField(DeliveredProductMultiFields.DELIVERED_PRODUCT_MULTI_POSITIONS, failedPositions);
+            deliveredProductMulti.addGlobalError("deliveries.deliveredProductMulti.error.invalid");
+
+            if (savedPositionsCount > 0) {
+                view.addMessage("deliveries.deliveredProductMulti.partialSuccess", MessageType.INFO,
+                        String.valueOf(savedPositionsCount));
             }
-            deliveredProducts.add(deliveredProduct);
         }
-        delivery.setField(DeliveryFields.DELIVERED_PRODUCTS, deliveredProducts);
-        delivery.getDataDefinition().save(delivery);
-
     }
 
     private boolean validate(Entity deliveredProductMulti) {
@@ -228,34 +216,6 @@ public class DeliveredProductAddMultiListeners {
         }
     }
 
-    private Entity createDeliveredProduct(Entity position, DataDefinition deliveredProductDD) {
-        Entity deliveredProduct = deliveredProductDD.create();
-        deliveredProduct.setField(DeliveredProductFields.PRODUCT,
-                position.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT));
-        deliveredProduct.setField(DeliveredProductFields.DELIVERED_QUANTITY,
-                position.getDecimalField(DeliveredProductMultiPositionFields.QUANTITY));
-        deliveredProduct.setField(DeliveredProductFields.ADDITIONAL_QUANTITY,
-                position.getDecimalField(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY));
-        deliveredProduct.setField(DeliveredProductFields.CONVERSION,
-                position.getDecimalField(DeliveredProductMultiPositionFields.CONVERSION));
-        deliveredProduct.setField(DeliveredProductFields.IS_WASTE,
-                position.getBooleanField(DeliveredProductMultiPositionFields.IS_WASTE));
-        deliveredProduct.setField(DeliveredProductFields.ADDITIONAL_UNIT,
-                position.getStringField(DeliveredProductMultiPositionFields.ADDITIONAL_UNIT));
-        deliveredProduct.setField(DeliveredProductFields.ADDITIONAL_CODE,
-                position.getBelongsToField(DeliveredProductMultiPositionFields.ADDITIONAL_CODE));
-        return deliveredProduct;
-    }
-
-    private void setStorageLocationFields(Entity deliveredProduct, Entity deliveredProductMulti) {
-        deliveredProduct.setField(DeliveredProductFields.PALLET_NUMBER,
-                deliveredProductMulti.getBelongsToField(DeliveredProductMultiFields.PALLET_NUMBER));
-        deliveredProduct.setField(DeliveredProductFields.PALLET_TYPE,
-                deliveredProductMulti.getField(DeliveredProductMultiFields.PALLET_TYPE));
-        deliveredProduct.setField(DeliveredProductFields.STORAGE_LOCATION,
-                deliveredProductMulti.getBelongsToField(DeliveredProductMultiFields.STORAGE_LOCATION));
-    }
-
     public void additionalCodeChanged(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         Entity delivery = extractDeliveryEntityFromView(view);
         AwesomeDynamicListComponent deliveredProductMultiPositions = (AwesomeDynamicListComponent) view
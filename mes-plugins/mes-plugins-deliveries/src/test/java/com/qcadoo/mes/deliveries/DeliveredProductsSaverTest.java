@@ -0,0 +1,215 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(TransactionAspectSupport.class)
+public class DeliveredProductsSaverTest {
+
+    private static final Long L_DELIVERY_ID = 1L;
+
+    private static final String L_LOCATION_ERROR = "deliveries.delivery.error.locationNotUniqueToDelivery";
+
+    private DeliveredProductsSaver deliveredProductsSaver;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private ReservationService reservationService;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private DataDefinition deliveryDD, deliveredProductDD, reservationDD;
+
+    @Mock
+    private Entity delivery, deliveryFromDB, savedDelivery, firstDeliveredProduct, secondDeliveredProduct, firstProduct,
+            secondProduct, reservation, savedReservation;
+
+    @Mock
+    private EntityList reservations;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        PowerMockito.mockStatic(TransactionAspectSupport.class);
+
+        deliveredProductsSaver = new DeliveredProductsSaver();
+
+        ReflectionTestUtils.setField(deliveredProductsSaver, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(deliveredProductsSaver, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(deliveredProductsSaver, "reservationService", reservationService);
+
+        when(TransactionAspectSupport.currentTransactionStatus()).thenReturn(transactionStatus);
+
+        when(dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERED_PRODUCT))
+                .thenReturn(deliveredProductDD);
+
+        when(delivery.getId()).thenReturn(L_DELIVERY_ID);
+        when(delivery.getDataDefinition()).thenReturn(deliveryDD);
+        when(deliveryDD.get(L_DELIVERY_ID)).thenReturn(deliveryFromDB);
+        when(deliveryDD.save(deliveryFromDB)).thenReturn(savedDelivery);
+        when(savedDelivery.isValid()).thenReturn(true);
+
+        when(firstProduct.getId()).thenReturn(11L);
+        when(secondProduct.getId()).thenReturn(12L);
+        when(firstDeliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT)).thenReturn(firstProduct);
+        when(secondDeliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT)).thenReturn(secondProduct);
+
+        when(jdbcTemplate.queryForList(contains("nextval"), anyMap(), eq(Long.class))).thenReturn(Arrays.asList(101L, 102L));
+        when(jdbcTemplate.queryForObject(contains("succession"), anyMap(), eq(Integer.class))).thenReturn(3);
+        when(jdbcTemplate.queryForList(contains("orderedproductreservation"), anyMap())).thenReturn(
+                Collections.<Map<String, Object>> emptyList());
+    }
+
+    @Test
+    public void shouldInsertDeliveredProductsInOneBatchAndSaveDeliveryOnce() {
+        // given
+        List<Entity> deliveredProducts = Lists.newArrayList(firstDeliveredProduct, secondDeliveredProduct);
+
+        // when
+        deliveredProductsSaver.saveAll(delivery, deliveredProducts);
+
+        // then
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), parametersCaptor.capture());
+        verify(jdbcTemplate).queryForList(contains("FOR UPDATE"), anyMap(), eq(Long.class));
+
+        SqlParameterSource[] parameters = parametersCaptor.getValue();
+
+        assertEquals(2, parameters.length);
+        assertEquals(101L, parameters[0].getValue("id"));
+        assertEquals(11L, parameters[0].getValue("productId"));
+        assertEquals(4, parameters[0].getValue("succession"));
+        assertEquals(102L, parameters[1].getValue("id"));
+        assertEquals(5, parameters[1].getValue("succession"));
+
+        verify(firstDeliveredProduct).setId(101L);
+        verify(secondDeliveredProduct).setId(102L);
+        verify(deliveryDD, times(1)).save(deliveryFromDB);
+        verify(reservationService, never()).createDefaultReservationsForDeliveredProduct(firstDeliveredProduct);
+        verify(transactionStatus, never()).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldAddDeliveryErrorsToAllDeliveredProductsAndRollBackWhenDeliveryViolatesReservations() {
+        // given
+        List<Entity> deliveredProducts = Lists.newArrayList(firstDeliveredProduct, secondDeliveredProduct);
+
+        Map<String, ErrorMessage> errors = Maps.newHashMap();
+        errors.put("location", new ErrorMessage(L_LOCATION_ERROR, "L01"));
+
+        when(savedDelivery.isValid()).thenReturn(false);
+        when(savedDelivery.getErrors()).thenReturn(errors);
+
+        // when
+        List<Entity> result = deliveredProductsSaver.saveAll(delivery, deliveredProducts);
+
+        // then
+        assertEquals(deliveredProducts, result);
+
+        verify(firstDeliveredProduct).addGlobalError(L_LOCATION_ERROR, false, "L01");
+        verify(secondDeliveredProduct).addGlobalError(L_LOCATION_ERROR, false, "L01");
+        verify(transactionStatus).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldCreateReservationsOnlyForReservedProductsAndRollBackWhenReservationIsInvalid() {
+        // given
+        List<Entity> deliveredProducts = Lists.newArrayList(firstDeliveredProduct, secondDeliveredProduct);
+
+        Map<String, Object> reservedProduct = Maps.newHashMap();
+        reservedProduct.put("productId", 12L);
+        reservedProduct.put("additionalCodeId", null);
+
+        when(jdbcTemplate.queryForList(contains("orderedproductreservation"), anyMap())).thenReturn(
+                Collections.singletonList(reservedProduct));
+        when(secondDeliveredProduct.getHasManyField(DeliveredProductFields.RESERVATIONS)).thenReturn(reservations);
+        when(reservations.iterator()).thenReturn(Collections.singletonList(reservation).iterator());
+        when(reservation.getDataDefinition()).thenReturn(reservationDD);
+        when(reservationDD.save(reservation)).thenReturn(savedReservation);
+        when(savedReservation.isValid()).thenReturn(false);
+        when(savedReservation.getGlobalErrors()).thenReturn(
+                Collections.singletonList(new ErrorMessage("deliveries.deliveredProductReservation.error.sumIsExceeded")));
+
+        // when
+        deliveredProductsSaver.saveAll(delivery, deliveredProducts);
+
+        // then
+        verify(reservationService, never()).createDefaultReservationsForDeliveredProduct(firstDeliveredProduct);
+        verify(reservationService).createDefaultReservationsForDeliveredProduct(secondDeliveredProduct);
+        verify(secondDeliveredProduct).addGlobalError(eq("deliveries.deliveredProductReservation.error.sumIsExceeded"),
+                eq(false));
+        verify(firstDeliveredProduct, never()).addGlobalError(anyString(), eq(false));
+        verify(deliveryDD, never()).save(deliveryFromDB);
+        verify(transactionStatus).setRollbackOnly();
+    }
+
+}
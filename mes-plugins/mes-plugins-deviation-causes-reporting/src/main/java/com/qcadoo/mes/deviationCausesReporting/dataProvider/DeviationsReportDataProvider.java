@@ -0,0 +1,185 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deviationCausesReporting.dataProvider;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.text.StrSubstitutor;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Function;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.qcadoo.mes.deviationCausesReporting.DeviationsReportCriteria;
+import com.qcadoo.mes.deviationCausesReporting.constants.DeviationType;
+import com.qcadoo.mes.deviationCausesReporting.domain.DeviationCauseHolderComparators;
+import com.qcadoo.mes.deviationCausesReporting.domain.DeviationSummary;
+import com.qcadoo.mes.deviationCausesReporting.domain.DeviationWithOccurrencesCount;
+import com.qcadoo.mes.deviationCausesReporting.domain.DeviationsReportData;
+import com.qcadoo.mes.orders.constants.deviationReasonTypes.DeviationModelDescriber;
+
+/**
+ * Provider for deviations protocol's data. Deviations of all types are fetched with a single query and both occurrences count
+ * and detailed summaries are built from the same result.
+ */
+@Service
+public class DeviationsReportDataProvider {
+
+    private static final String L_DATE_FROM = "dateFrom";
+
+    private static final String L_DATE_TO = "dateTo";
+
+    private static final String L_EXCLUDED_ORDER_STATES = "excludedOrderStates";
+
+    private static final String PARTIAL_QUERY_TPL = "SELECT ${DEVIATION_TYPE} AS deviationType, rt.id AS id, "
+            + "rt.${REASON_TYPE_COLUMN} AS deviationCause, rt.date AS date, o.number AS orderNumber, "
+            + "p.number AS productNumber, ${COMMENT_COLUMN} AS comment FROM ${REASON_TABLE} rt ${ORDER_JOIN} "
+            + "LEFT JOIN basic_product p ON p.id = o.product_id WHERE rt.date >= :" + L_DATE_FROM + " AND rt.date <= :"
+            + L_DATE_TO + " AND o.state NOT IN (:" + L_EXCLUDED_ORDER_STATES + ")";
+
+    private static final String DEVIATIONS_QUERY = prepareDeviationsQuery();
+
+    private static final String DEVIATION_CAUSES_QUERY = "SELECT item.name FROM qcadoomodel_dictionaryitem item "
+            + "JOIN qcadoomodel_dictionary dictionary ON dictionary.id = item.dictionary_id "
+            + "WHERE dictionary.name = 'reasonTypeOfChangingOrderState'";
+
+    private static final String PPS_ALIAS = "pps";
+
+    private static final String ORDER_ALIAS = "o";
+
+    private static String prepareDeviationsQuery() {
+        List<String> partialQueries = Lists.newArrayList();
+        for (DeviationType deviationType : DeviationType.values()) {
+            DeviationModelDescriber modelDescriber = deviationType.getModelDescriber();
+            Map<String, String> placeholderValues = Maps.newHashMap();
+            placeholderValues.put("DEVIATION_TYPE", String.valueOf(deviationType.ordinal()));
+            placeholderValues.put("REASON_TYPE_COLUMN", modelDescriber.getReasonTypeFieldName().toLowerCase());
+            placeholderValues.put("REASON_TABLE",
+                    (modelDescriber.getModelPlugin() + "_" + modelDescriber.getModelName()).toLowerCase());
+            placeholderValues.put("ORDER_JOIN", getOrderJoin(deviationType));
+            placeholderValues.put("COMMENT_COLUMN", getCommentColumn(deviationType));
+            partialQueries.add(new StrSubstitutor(placeholderValues, "${", "}").replace(PARTIAL_QUERY_TPL));
+        }
+        return StringUtils.join(partialQueries, " UNION ALL ") + " ORDER BY deviationType, date, id";
+    }
+
+    private static String getOrderJoin(final DeviationType deviationType) {
+        if (DeviationType.PPS_DEVIATION == deviationType) {
+            String[] pathToOrder = StringUtils.split(deviationType.getPathToOrder(), '.');
+            return String.format("JOIN productionpershift_productionpershift %s ON %s.id = rt.%s_id "
+                    + "JOIN orders_order %s ON %s.id = %s.%s_id", PPS_ALIAS, PPS_ALIAS, pathToOrder[0].toLowerCase(), ORDER_ALIAS, ORDER_ALIAS, PPS_ALIAS,
+                    pathToOrder[1].toLowerCase());
+        }
+        return String.format("JOIN orders_order %s ON %s.id = rt.%s_id", ORDER_ALIAS, ORDER_ALIAS,
+                deviationType.getPathToOrder().toLowerCase());
+    }
+
+    private static String getCommentColumn(final DeviationType deviationType) {
+        String ownerAlias = (DeviationType.PPS_DEVIATION == deviationType) ? PPS_ALIAS : ORDER_ALIAS;
+        return ownerAlias + "." + StringUtils.substringAfterLast(deviationType.getCommentPath(), ".").toLowerCase();
+    }
+
+    private static final Function<DeviationSummary, String> CAUSE_EXTRACTOR = new Function<DeviationSummary, String>() {
+
+        @Override
+        public String apply(final DeviationSummary deviationSummary) {
+            return deviationSummary.getDeviationCause();
+        }
+    };
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Get deviations protocol's data, matching given criteria.
+     * 
+     * @param criteria
+     *            restrictions for deviations to be summarized.
+     * @return occurrences count of each known deviation cause together with detailed deviation summaries, grouped by cause.
+     */
+    public DeviationsReportData getReportData(final DeviationsReportCriteria criteria) {
+        final Date dateTo = criteria.getSearchInterval().getEnd().toDate();
+        final Map<String, Long> occurrencesByCause = Maps.newLinkedHashMap();
+        final List<DeviationSummary> summaries = Lists.newArrayList();
+
+        for (String deviationCause : jdbcTemplate.queryForList(DEVIATION_CAUSES_QUERY, Maps.<String, Object> newHashMap(),
+                String.class)) {
+            occurrencesByCause.put(deviationCause, 0L);
+        }
+
+        jdbcTemplate.query(DEVIATIONS_QUERY, buildParams(criteria), new RowCallbackHandler() {
+
+            @Override
+            public void processRow(final ResultSet rs) throws SQLException {
+                String deviationCause = rs.getString("deviationCause");
+                Date date = rs.getTimestamp("date");
+
+                Long occurrences = occurrencesByCause.get(deviationCause);
+                if (occurrences != null) {
+                    occurrencesByCause.put(deviationCause, occurrences + 1);
+                }
+                if (StringUtils.isNotEmpty(deviationCause) && date.before(dateTo)) {
+                    summaries.add(new DeviationSummary(deviationCause, LocalDate.fromDateFields(date), rs.getString("orderNumber"),
+                            rs.getString("productNumber"), rs.getString("comment")));
+                }
+            }
+        });
+
+        List<DeviationWithOccurrencesCount> deviationsWithOccurrencesCount = Lists.newArrayList();
+        for (Map.Entry<String, Long> occurrences : occurrencesByCause.entrySet()) {
+            deviationsWithOccurrencesCount.add(new DeviationWithOccurrencesCount(occurrences.getKey(), occurrences.getValue()));
+        }
+
+        ImmutableList<DeviationSummary> sortedSummaries = FluentIterable.from(summaries).toSortedList(
+                DeviationCauseHolderComparators.BY_REASON_ASC);
+        Multimap<String, DeviationSummary> deviationsByCauseType = Multimaps.index(sortedSummaries, CAUSE_EXTRACTOR);
+
+        return new DeviationsReportData(FluentIterable.from(deviationsWithOccurrencesCount).toSortedList(
+                DeviationCauseHolderComparators.BY_REASON_ASC), deviationsByCauseType);
+    }
+
+    private Map<String, Object> buildParams(final DeviationsReportCriteria criteria) {
+        Interval searchInterval = criteria.getSearchInterval();
+        Map<String, Object> params = Maps.newHashMap();
+        params.put(L_DATE_FROM, searchInterval.getStart().toDate());
+        params.put(L_DATE_TO, searchInterval.getEnd().toDate());
+        params.put(L_EXCLUDED_ORDER_STATES, criteria.getExcludedOrderStates());
+        return params;
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deviationCausesReporting.domain;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multimap;
+
+/**
+ * Deviations protocol's data - occurrences count and detailed summaries, both built from a single pass over matching deviations.
+ */
+public class DeviationsReportData {
+
+    private final ImmutableList<DeviationWithOccurrencesCount> deviationsWithOccurrencesCount;
+
+    private final Multimap<String, DeviationSummary> deviationsByCauseType;
+
+    public DeviationsReportData(final ImmutableList<DeviationWithOccurrencesCount> deviationsWithOccurrencesCount,
+            final Multimap<String, DeviationSummary> deviationsByCauseType) {
+        this.deviationsWithOccurrencesCount = deviationsWithOccurrencesCount;
+        this.deviationsByCauseType = deviationsByCauseType;
+    }
+
+    /**
+     * @return pairs of deviation's cause and number of its occurrences, sorted ascending by cause.
+     */
+    public ImmutableList<DeviationWithOccurrencesCount> getDeviationsWithOccurrencesCount() {
+        return deviationsWithOccurrencesCount;
+    }
+
+    /**
+     * @return deviation summaries, grouped by its reason (cause) type. Multimap's keys will be in ascending order.
+     */
+    public Multimap<String, DeviationSummary> getDeviationsByCauseType() {
+        return deviationsByCauseType;
+    }
+
+}
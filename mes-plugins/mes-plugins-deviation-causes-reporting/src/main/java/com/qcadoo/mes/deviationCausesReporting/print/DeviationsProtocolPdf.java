@@ -56,10 +56,10 @@ import com.qcadoo.commons.functional.Fold;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.deviationCausesReporting.DeviationsReportCriteria;
-import com.qcadoo.mes.deviationCausesReporting.dataProvider.DeviationSummariesDataProvider;
-import com.qcadoo.mes.deviationCausesReporting.dataProvider.DeviationWithOccurrencesDataProvider;
+import com.qcadoo.mes.deviationCausesReporting.dataProvider.DeviationsReportDataProvider;
 import com.qcadoo.mes.deviationCausesReporting.domain.DeviationSummary;
 import com.qcadoo.mes.deviationCausesReporting.domain.DeviationWithOccurrencesCount;
+import com.qcadoo.mes.deviationCausesReporting.domain.DeviationsReportData;
 import com.qcadoo.report.api.pdf.PdfHelper;
 import com.qcadoo.report.api.pdf.ReportPdfView;
 import com.qcadoo.report.api.pdf.elements.Headers;
@@ -112,10 +112,7 @@ public class DeviationsProtocolPdf extends ReportPdfView {
     private SecurityService securityService;
 
     @Autowired
-    private DeviationWithOccurrencesDataProvider deviationWithOccurrencesDataProvider;
-
-    @Autowired
-    private DeviationSummariesDataProvider deviationSummariesDataProvider;
+    private DeviationsReportDataProvider deviationsReportDataProvider;
 
     @Override
     protected String addContent(final Document document, final Map<String, Object> model, final Locale locale,
@@ -123,11 +120,12 @@ public class DeviationsProtocolPdf extends ReportPdfView {
         addDocumentTitle(document, locale);
 
         DeviationsReportCriteria criteria = buildCriteria(model);
+        DeviationsReportData reportData = deviationsReportDataProvider.getReportData(criteria);
 
         VerticalLayout mainVerticalLayout = VerticalLayout.create();
         mainVerticalLayout.append(createHeaderTable(criteria.getSearchInterval(), locale));
-        mainVerticalLayout.merge(createShortSummarySection(criteria, locale));
-        mainVerticalLayout.merge(createDetailedSummarySection(criteria, locale));
+        mainVerticalLayout.merge(createShortSummarySection(reportData, locale));
+        mainVerticalLayout.merge(createDetailedSummarySection(reportData, locale));
 
         mainVerticalLayout.appendToDocument(document);
 
@@ -167,9 +165,8 @@ public class DeviationsProtocolPdf extends ReportPdfView {
         return headerTable;
     }
 
-    private VerticalLayout createShortSummarySection(final DeviationsReportCriteria criteria, final Locale locale) {
-        List<DeviationWithOccurrencesCount> deviations = deviationWithOccurrencesDataProvider
-                .getDeviationsWithOccurrencesCount(criteria);
+    private VerticalLayout createShortSummarySection(final DeviationsReportData reportData, final Locale locale) {
+        List<DeviationWithOccurrencesCount> deviations = reportData.getDeviationsWithOccurrencesCount();
         if (deviations.isEmpty()) {
             return VerticalLayout.empty();
         }
@@ -185,8 +182,8 @@ public class DeviationsProtocolPdf extends ReportPdfView {
         return VerticalLayout.create().append(header).append(table);
     }
 
-    private VerticalLayout createDetailedSummarySection(final DeviationsReportCriteria criteria, final Locale locale) {
-        Multimap<String, DeviationSummary> summariesByType = deviationSummariesDataProvider.getDeviationsByCauseType(criteria);
+    private VerticalLayout createDetailedSummarySection(final DeviationsReportData reportData, final Locale locale) {
+        Multimap<String, DeviationSummary> summariesByType = reportData.getDeviationsByCauseType();
         if (summariesByType.isEmpty()) {
             return VerticalLayout.empty();
         }
@@ -41,8 +41,12 @@ public final class MasterOrderPositionDtoFields {
 
     public static final String MASTER_ORDER_QUANTITY = "masterOrderQuantity";
 
+    public static final String CUMULATED_MASTER_ORDER_QUANTITY = "cumulatedMasterOrderQuantity";
+
     public static final String PRODUCED_QUANTITY = "producedOrderQuantity";
 
+    public static final String IN_PROGRESS_QUANTITY = "inProgressQuantity";
+
     public static final String COMMENTS = "comments";
 
     public static final String LEFT_TO_RELEASE = "leftToRelease";
@@ -0,0 +1,19 @@
+package com.qcadoo.mes.masterOrders.constants;
+
+public final class MasterOrderProgressFields {
+
+    private MasterOrderProgressFields() {
+
+    }
+
+    public static final String MASTER_ORDER = "masterOrder";
+
+    public static final String PRODUCT = "product";
+
+    public static final String PLANNED_QUANTITY = "plannedQuantity";
+
+    public static final String IN_PROGRESS_QUANTITY = "inProgressQuantity";
+
+    public static final String DONE_QUANTITY = "doneQuantity";
+
+}
@@ -45,12 +45,15 @@ public class MasterOrderPositionsListHooks {
 
     private static final String L_CREATE_ORDER = "createOrder";
 
+    private static final String L_GENERATE_ORDERS = "generateOrders";
+
     public void disableButton(final ViewDefinitionState view) {
         GridComponent masterOrderPositionComponent = (GridComponent) view.getComponentByReference(L_GRID);
 
         WindowComponent window = (WindowComponent) view.getComponentByReference(L_WINDOW);
         RibbonGroup ordersRibbonGroup = window.getRibbon().getGroupByName(L_ORDERS);
         RibbonActionItem createOrderRibbonActionItem = ordersRibbonGroup.getItemByName(L_CREATE_ORDER);
+        RibbonActionItem generateOrdersRibbonActionItem = ordersRibbonGroup.getItemByName(L_GENERATE_ORDERS);
 
         List<Entity> selectedEntities = masterOrderPositionComponent.getSelectedEntities();
 
@@ -58,6 +61,8 @@ public class MasterOrderPositionsListHooks {
         createOrderRibbonActionItem.setEnabled(isEnabled);
 
         createOrderRibbonActionItem.requestUpdate(true);
+        generateOrdersRibbonActionItem.setEnabled(!selectedEntities.isEmpty());
+        generateOrdersRibbonActionItem.requestUpdate(true);
         window.requestRibbonRender();
         createOrderRibbonActionItem.setMessage("masterOrders.masterOrder.masterOrdersPosition.lessEntitiesSelectedThanAllowed");
     }
@@ -26,11 +26,15 @@ package com.qcadoo.mes.masterOrders.listeners;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderPositionDtoFields;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderType;
+import com.qcadoo.mes.masterOrders.util.MasterOrderOrdersGenerationResult;
+import com.qcadoo.mes.masterOrders.util.MasterOrderOrdersGenerationService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -43,6 +47,12 @@ public class MasterOrderPositionsListListeners {
 
     private static final String L_WINDOW_ACTIVE_MENU = "window.activeMenu";
 
+    @Autowired
+    private MasterOrderOrdersGenerationService masterOrderOrdersGenerationService;
+
+    @Autowired
+    private TranslationService translationService;
+
     public void createOrder(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         GridComponent masterOrderPositionComponent = (GridComponent) view.getComponentByReference(L_GRID);
 
@@ -88,4 +98,31 @@ public class MasterOrderPositionsListListeners {
         view.redirectTo(url, false, true, parameters);
     }
 
+    public void generateOrders(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        GridComponent masterOrderPositionComponent = (GridComponent) view.getComponentByReference(L_GRID);
+
+        List<Entity> selectedEntities = masterOrderPositionComponent.getSelectedEntities();
+
+        if (selectedEntities.isEmpty()) {
+            state.addMessage("masterOrders.masterOrder.masterOrdersPosition.lessEntitiesSelectedThanAllowed",
+                    ComponentState.MessageType.INFO);
+
+            return;
+        }
+
+        MasterOrderOrdersGenerationResult result = masterOrderOrdersGenerationService.generateOrders(selectedEntities,
+                view.getLocale());
+
+        if (!result.getGeneratedOrderNumbers().isEmpty()) {
+            state.addMessage("masterOrders.masterOrderPositionsList.generateOrders.generated",
+                    ComponentState.MessageType.SUCCESS, false, String.join(", ", result.getGeneratedOrderNumbers()));
+        }
+
+        result.getFailures().asMap().forEach((messageKey, positions) -> state.addMessage(
+                "masterOrders.masterOrderPositionsList.generateOrders.failed", ComponentState.MessageType.FAILURE, false,
+                String.join(", ", positions), translationService.translate(messageKey, view.getLocale())));
+
+        masterOrderPositionComponent.performEvent(view, "refresh");
+    }
+
 }
@@ -0,0 +1,65 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.util;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Saves orders generated for master order positions. Orders are saved in chunks, each in its own transaction, so that failure
+ * of one chunk doesn't roll back orders already generated for the others.
+ */
+@Service
+public class MasterOrderOrderSaver {
+
+    @Autowired
+    private MasterOrderProgressService masterOrderProgressService;
+
+    /**
+     * Saves given orders in one transaction, writing master order progress once for the whole chunk. When any order turns out
+     * invalid, the transaction is rolled back, so the caller can drop invalid orders and save the rest again.
+     *
+     * @return saved orders, in the same order as given
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<Entity> saveAll(final List<Entity> orders) {
+        List<Entity> savedOrders = masterOrderProgressService.collectProgress(() -> orders.stream()
+                .map(order -> order.getDataDefinition().save(order)).collect(Collectors.toList()));
+
+        if (!savedOrders.stream().allMatch(Entity::isValid)) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return savedOrders;
+    }
+
+}
@@ -28,8 +28,6 @@ import static com.qcadoo.model.api.search.SearchProjections.field;
 import static com.qcadoo.model.api.search.SearchProjections.id;
 import static com.qcadoo.model.api.search.SearchProjections.list;
 import static com.qcadoo.model.api.search.SearchProjections.rowCount;
-import static com.qcadoo.model.api.search.SearchProjections.sum;
-import static com.qcadoo.model.api.search.SearchRestrictions.belongsTo;
 import static com.qcadoo.model.api.search.SearchRestrictions.eq;
 
 import java.math.BigDecimal;
@@ -39,9 +37,11 @@ import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.masterOrders.constants.MasterOrderProgressFields;
 import com.qcadoo.mes.masterOrders.constants.OrderFieldsMO;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -59,11 +59,12 @@ public class MasterOrderOrdersDataProvider {
     public static final SearchProjection ORDER_NUMBER_PROJECTION = list().add(
             alias(field(OrderFields.NUMBER), OrderFields.NUMBER)).add(alias(id(), "id"));
 
-    private static final String QUANTITIES_SUM_ALIAS = "quantity";
-
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private MasterOrderProgressService masterOrderProgressService;
+
     public long countBelongingOrders(final Entity masterOrder, final SearchCriterion additionalCriteria) {
         List<Entity> ordersCountProjection = findBelongingOrders(masterOrder, alias(rowCount(), "count"), additionalCriteria,
                 SearchOrders.desc("count"));
@@ -74,15 +75,7 @@ public class MasterOrderOrdersDataProvider {
     }
 
     public BigDecimal sumBelongingOrdersPlannedQuantities(final Entity masterOrder, final Entity product) {
-        SearchProjection quantitiesSumProjection = list().add(alias(sum(OrderFields.PLANNED_QUANTITY), QUANTITIES_SUM_ALIAS))
-                .add(rowCount());
-        SearchCriterion productCriterion = belongsTo(OrderFields.PRODUCT, product);
-        List<Entity> quantitiesSumProjectionResults = findBelongingOrders(masterOrder, quantitiesSumProjection, productCriterion,
-                SearchOrders.desc(QUANTITIES_SUM_ALIAS));
-        for (Entity entity : quantitiesSumProjectionResults) {
-            return entity.getDecimalField(QUANTITIES_SUM_ALIAS);
-        }
-        return BigDecimal.ZERO;
+        return getProgressQuantity(masterOrder, product, MasterOrderProgressFields.PLANNED_QUANTITY);
     }
 
     public Collection<String> findBelongingOrderNumbers(final Entity masterOrder, final SearchCriterion searchCriteria) {
@@ -112,14 +105,20 @@ public class MasterOrderOrdersDataProvider {
     }
 
     public BigDecimal sumBelongingOrdersDoneQuantities(final Entity masterOrder, final Entity product) {
-        SearchProjection quantitiesSumProjection = list().add(alias(sum(OrderFields.DONE_QUANTITY), QUANTITIES_SUM_ALIAS))
-                .add(rowCount());
-        SearchCriterion productCriterion = belongsTo(OrderFields.PRODUCT, product);
-        List<Entity> quantitiesSumProjectionResults = findBelongingOrders(masterOrder, quantitiesSumProjection, productCriterion,
-                SearchOrders.desc(QUANTITIES_SUM_ALIAS));
-        for (Entity entity : quantitiesSumProjectionResults) {
-            return entity.getDecimalField(QUANTITIES_SUM_ALIAS);
+        return getProgressQuantity(masterOrder, product, MasterOrderProgressFields.DONE_QUANTITY);
+    }
+
+    public BigDecimal sumBelongingOrdersInProgressQuantities(final Entity masterOrder, final Entity product) {
+        return getProgressQuantity(masterOrder, product, MasterOrderProgressFields.IN_PROGRESS_QUANTITY);
+    }
+
+    private BigDecimal getProgressQuantity(final Entity masterOrder, final Entity product, final String quantityFieldName) {
+        Entity progress = masterOrderProgressService.findProgress(masterOrder, product);
+
+        if (progress == null) {
+            return BigDecimal.ZERO;
         }
-        return BigDecimal.ZERO;
+
+        return BigDecimalUtils.convertNullToZero(progress.getDecimalField(quantityFieldName));
     }
 }
@@ -0,0 +1,59 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.util;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+
+public class MasterOrderOrdersGenerationResult {
+
+    private final List<String> generatedOrderNumbers = Lists.newArrayList();
+
+    private final Multimap<String, String> failures = LinkedHashMultimap.create();
+
+    public void addGeneratedOrderNumber(final String orderNumber) {
+        generatedOrderNumbers.add(orderNumber);
+    }
+
+    public void addFailure(final String messageKey, final String position) {
+        failures.put(messageKey, position);
+    }
+
+    public List<String> getGeneratedOrderNumbers() {
+        return Collections.unmodifiableList(generatedOrderNumbers);
+    }
+
+    /**
+     * @return master order positions for which order was not generated, grouped by message key describing the reason
+     */
+    public Multimap<String, String> getFailures() {
+        return Multimaps.unmodifiableMultimap(failures);
+    }
+
+}
@@ -0,0 +1,404 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.util;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderPositionDtoFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderProductFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderType;
+import com.qcadoo.mes.masterOrders.constants.MasterOrdersConstants;
+import com.qcadoo.mes.masterOrders.constants.OrderFieldsMO;
+import com.qcadoo.mes.masterOrders.constants.ParameterFieldsMO;
+import com.qcadoo.mes.orders.OrderService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrderType;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.plugin.api.PluginUtils;
+
+/**
+ * Generates orders for many master order positions at once. Master orders, their products, technologies and production line
+ * are resolved up front for the whole selection, and order numbers are allocated with one query per master order selection.
+ * Orders are then saved in chunks through the regular order hooks, which copy the pattern technology. A chunk containing an
+ * invalid order is rolled back and saved again without it, so a position that fails is reported and the others are kept.
+ */
+@Service
+public class MasterOrderOrdersGenerationService {
+
+    private static final String L_NOTHING_TO_RELEASE = "masterOrders.masterOrderPositionsList.generateOrders.nothingToRelease";
+
+    private static final String L_NO_TECHNOLOGY = "masterOrders.masterOrderPositionsList.generateOrders.noTechnology";
+
+    private static final String L_INVALID_ORDER = "masterOrders.masterOrderPositionsList.generateOrders.invalidOrder";
+
+    private static final String L_ID = "id";
+
+    private static final String L_PRODUCT_ALIAS = "product_alias";
+
+    private static final String L_PRODUCT_FLOW_THRU_DIVISION = "productFlowThruDivision";
+
+    private static final String L_RANGE = "range";
+
+    private static final String L_ONE_DIVISION = "01oneDivision";
+
+    private static final int L_NUMBER_DIGITS = 3;
+
+    private static final int L_CHUNK_SIZE = 50;
+
+    private static final String L_LAST_ORDER_NUMBERS = "SELECT masterorder.id AS masterorderid, "
+            + "MAX(CAST(SUBSTRING(ordersorder.number FROM CHAR_LENGTH(masterorder.number) + 2) AS INTEGER)) AS lastnumber "
+            + "FROM masterorders_masterorder masterorder "
+            + "JOIN orders_order ordersorder "
+            + "ON LEFT(ordersorder.number, CHAR_LENGTH(masterorder.number) + 1) = masterorder.number || '-' "
+            + "WHERE masterorder.id IN (:masterOrderIds) "
+            + "AND SUBSTRING(ordersorder.number FROM CHAR_LENGTH(masterorder.number) + 2) ~ '^[0-9]{1,9}$' "
+            + "GROUP BY masterorder.id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MasterOrderOrderSaver masterOrderOrderSaver;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public MasterOrderOrdersGenerationResult generateOrders(final List<Entity> masterOrderPositions, final Locale locale) {
+        MasterOrderOrdersGenerationResult result = new MasterOrderOrdersGenerationResult();
+
+        if (masterOrderPositions.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Entity> masterOrders = findByIds(getMasterOrderDD(),
+                getIds(masterOrderPositions, MasterOrderPositionDtoFields.MASTER_ORDER_ID));
+        Map<Long, Entity> masterOrderProducts = findByIds(getMasterOrderProductDD(),
+                getIds(masterOrderPositions, MasterOrderPositionDtoFields.MASTER_ORDER_PRODUCT_ID));
+        Map<Long, Entity> products = findByIds(getProductDD(),
+                getBelongsToIds(masterOrders.values(), masterOrderProducts.values(), MasterOrderFields.PRODUCT));
+        Map<Long, Entity> technologies = findByIds(getTechnologyDD(),
+                getBelongsToIds(masterOrders.values(), masterOrderProducts.values(), MasterOrderFields.TECHNOLOGY));
+        Map<Long, Entity> defaultTechnologies = findDefaultTechnologies(getIds(masterOrderPositions,
+                MasterOrderPositionDtoFields.PRODUCT_ID));
+        Entity defaultProductionLine = orderService.getDefaultProductionLine();
+        boolean sameOrderNumber = parameterService.getParameter().getBooleanField(ParameterFieldsMO.SAME_ORDER_NUMBER);
+        Map<Long, Integer> lastOrderNumbers = sameOrderNumber ? Maps.<Long, Integer> newHashMap()
+                : findLastOrderNumbers(masterOrders.keySet());
+
+        List<OrderToGenerate> ordersToGenerate = Lists.newArrayList();
+
+        for (Entity masterOrderPosition : masterOrderPositions) {
+            Entity masterOrder = masterOrders.get(getId(masterOrderPosition, MasterOrderPositionDtoFields.MASTER_ORDER_ID));
+
+            if (masterOrder == null) {
+                continue;
+            }
+
+            Entity masterOrderProduct = null;
+            Entity product;
+            Entity technology;
+
+            if (MasterOrderType.of(masterOrder) == MasterOrderType.MANY_PRODUCTS) {
+                masterOrderProduct = masterOrderProducts.get(getId(masterOrderPosition,
+                        MasterOrderPositionDtoFields.MASTER_ORDER_PRODUCT_ID));
+
+                if (masterOrderProduct == null) {
+                    continue;
+                }
+
+                product = resolve(masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT), products);
+                technology = resolve(masterOrderProduct.getBelongsToField(MasterOrderProductFields.TECHNOLOGY), technologies);
+            } else {
+                product = resolve(masterOrder.getBelongsToField(MasterOrderFields.PRODUCT), products);
+                technology = resolve(masterOrder.getBelongsToField(MasterOrderFields.TECHNOLOGY), technologies);
+            }
+
+            String position = masterOrder.getStringField(MasterOrderFields.NUMBER) + " - "
+                    + masterOrderPosition.getStringField(MasterOrderPositionDtoFields.PRODUCT_NUMBER);
+
+            BigDecimal plannedQuantity = BigDecimalUtils.convertNullToZero(
+                    masterOrderPosition.getDecimalField(MasterOrderPositionDtoFields.MASTER_ORDER_QUANTITY)).subtract(
+                    BigDecimalUtils.convertNullToZero(masterOrderPosition
+                            .getDecimalField(MasterOrderPositionDtoFields.CUMULATED_MASTER_ORDER_QUANTITY)),
+                    numberService.getMathContext());
+
+            if ((product == null) || (plannedQuantity.compareTo(BigDecimal.ZERO) <= 0)) {
+                result.addFailure(L_NOTHING_TO_RELEASE, position);
+
+                continue;
+            }
+
+            if (technology == null) {
+                technology = defaultTechnologies.get(product.getId());
+            }
+
+            if (technology == null) {
+                result.addFailure(L_NO_TECHNOLOGY, position);
+
+                continue;
+            }
+
+            OrderToGenerate order = new OrderToGenerate(position);
+
+            order.setField(OrderFields.NUMBER, generateOrderNumber(masterOrder, lastOrderNumbers, sameOrderNumber));
+            order.setField(OrderFields.NAME, orderService.makeDefaultName(product, technology, locale));
+            order.setField(OrderFields.ORDER_TYPE, OrderType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+            order.setField(OrderFields.PRODUCT, product);
+            order.setField(OrderFields.TECHNOLOGY_PROTOTYPE, technology);
+            order.setField(OrderFields.PRODUCTION_LINE, getProductionLine(technology, defaultProductionLine));
+            order.setField(OrderFields.PLANNED_QUANTITY, plannedQuantity);
+            order.setField(OrderFields.COMPANY, masterOrder.getBelongsToField(MasterOrderFields.COMPANY));
+            order.setField(OrderFields.ADDRESS, masterOrder.getBelongsToField(MasterOrderFields.ADDRESS));
+            order.setField(OrderFields.DEADLINE, masterOrder.getDateField(MasterOrderFields.DEADLINE));
+            order.setField(OrderFields.DATE_FROM, masterOrder.getDateField(MasterOrderFields.START_DATE));
+            order.setField(OrderFields.DATE_TO, masterOrder.getDateField(MasterOrderFields.FINISH_DATE));
+            order.setField(OrderFieldsMO.MASTER_ORDER, masterOrder);
+
+            if (masterOrderProduct != null) {
+                order.setField(OrderFieldsMO.MASTER_ORDER_PRODUCT, product);
+                order.setField(OrderFieldsMO.MASTER_ORDER_PRODUCT_COMPONENT, masterOrderProduct);
+            }
+
+            ordersToGenerate.add(order);
+        }
+
+        for (List<OrderToGenerate> chunk : Lists.partition(ordersToGenerate, L_CHUNK_SIZE)) {
+            saveChunk(chunk, result);
+        }
+
+        return result;
+    }
+
+    private void saveChunk(final List<OrderToGenerate> chunk, final MasterOrderOrdersGenerationResult result) {
+        DataDefinition orderDD = getOrderDD();
+        List<OrderToGenerate> ordersToSave = Lists.newArrayList(chunk);
+
+        while (!ordersToSave.isEmpty()) {
+            List<Entity> savedOrders = masterOrderOrderSaver.saveAll(ordersToSave.stream()
+                    .map(orderToGenerate -> orderToGenerate.create(orderDD)).collect(Collectors.toList()));
+
+            List<OrderToGenerate> validOrders = Lists.newArrayList();
+
+            for (int index = 0; index < ordersToSave.size(); index++) {
+                if (savedOrders.get(index).isValid()) {
+                    validOrders.add(ordersToSave.get(index));
+                } else {
+                    result.addFailure(L_INVALID_ORDER, ordersToSave.get(index).position);
+                }
+            }
+
+            if (validOrders.size() == ordersToSave.size()) {
+                savedOrders.forEach(order -> result.addGeneratedOrderNumber(order.getStringField(OrderFields.NUMBER)));
+
+                return;
+            }
+
+            ordersToSave = validOrders;
+        }
+    }
+
+    private String generateOrderNumber(final Entity masterOrder, final Map<Long, Integer> lastOrderNumbers,
+            final boolean sameOrderNumber) {
+        String masterOrderNumber = masterOrder.getStringField(MasterOrderFields.NUMBER);
+
+        if (sameOrderNumber) {
+            return masterOrderNumber;
+        }
+
+        int orderNumber = lastOrderNumbers.getOrDefault(masterOrder.getId(), 0) + 1;
+
+        lastOrderNumbers.put(masterOrder.getId(), orderNumber);
+
+        return masterOrderNumber + "-" + Strings.padStart(String.valueOf(orderNumber), L_NUMBER_DIGITS, '0');
+    }
+
+    private Map<Long, Integer> findLastOrderNumbers(final Set<Long> masterOrderIds) {
+        Map<Long, Integer> lastOrderNumbers = Maps.newHashMap();
+
+        if (masterOrderIds.isEmpty()) {
+            return lastOrderNumbers;
+        }
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_LAST_ORDER_NUMBERS,
+                Collections.singletonMap("masterOrderIds", masterOrderIds))) {
+            lastOrderNumbers.put(((Number) row.get("masterorderid")).longValue(), ((Number) row.get("lastnumber")).intValue());
+        }
+
+        return lastOrderNumbers;
+    }
+
+    private Entity resolve(final Entity entity, final Map<Long, Entity> entities) {
+        if (entity == null) {
+            return null;
+        }
+
+        return entities.getOrDefault(entity.getId(), entity);
+    }
+
+    private Set<Long> getBelongsToIds(final Collection<Entity> masterOrders, final Collection<Entity> masterOrderProducts,
+            final String fieldName) {
+        return Stream.concat(masterOrders.stream(), masterOrderProducts.stream())
+                .map(entity -> entity.getBelongsToField(fieldName)).filter(entity -> entity != null).map(Entity::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private Entity getProductionLine(final Entity technology, final Entity defaultProductionLine) {
+        if (PluginUtils.isEnabled(L_PRODUCT_FLOW_THRU_DIVISION) && L_ONE_DIVISION.equals(technology.getField(L_RANGE))
+                && (technology.getBelongsToField(OrderFields.PRODUCTION_LINE) != null)) {
+            return technology.getBelongsToField(OrderFields.PRODUCTION_LINE);
+        }
+
+        return defaultProductionLine;
+    }
+
+    private Map<Long, Entity> findDefaultTechnologies(final Set<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Entity> technologies = getTechnologyDD().find().createAlias(TechnologyFields.PRODUCT, L_PRODUCT_ALIAS)
+                .add(SearchRestrictions.in(L_PRODUCT_ALIAS + "." + L_ID, productIds))
+                .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).add(SearchRestrictions.eq("active", true)).list()
+                .getEntities();
+
+        Multimap<Long, Entity> technologiesByProduct = ArrayListMultimap.create();
+
+        for (Entity technology : technologies) {
+            technologiesByProduct.put(technology.getBelongsToField(TechnologyFields.PRODUCT).getId(), technology);
+        }
+
+        Map<Long, Entity> defaultTechnologies = Maps.newHashMap();
+
+        for (Map.Entry<Long, Collection<Entity>> productTechnologies : technologiesByProduct.asMap().entrySet()) {
+            if (productTechnologies.getValue().size() == 1) {
+                defaultTechnologies.put(productTechnologies.getKey(), productTechnologies.getValue().iterator().next());
+            }
+        }
+
+        return defaultTechnologies;
+    }
+
+    private Map<Long, Entity> findByIds(final DataDefinition dataDefinition, final Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return dataDefinition.find().add(SearchRestrictions.in(L_ID, ids)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, entity -> entity));
+    }
+
+    private Set<Long> getIds(final List<Entity> masterOrderPositions, final String idFieldName) {
+        return masterOrderPositions.stream().map(masterOrderPosition -> getId(masterOrderPosition, idFieldName))
+                .filter(id -> id != null).collect(Collectors.toSet());
+    }
+
+    private Long getId(final Entity masterOrderPosition, final String idFieldName) {
+        Integer id = masterOrderPosition.getIntegerField(idFieldName);
+
+        return (id == null) ? null : id.longValue();
+    }
+
+    private DataDefinition getMasterOrderDD() {
+        return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER);
+    }
+
+    private DataDefinition getMasterOrderProductDD() {
+        return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
+                MasterOrdersConstants.MODEL_MASTER_ORDER_PRODUCT);
+    }
+
+    private DataDefinition getOrderDD() {
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+    }
+
+    private DataDefinition getProductDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+    }
+
+    private DataDefinition getTechnologyDD() {
+        return dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY);
+    }
+
+    private static final class OrderToGenerate {
+
+        private final String position;
+
+        private final Map<String, Object> fields = Maps.newLinkedHashMap();
+
+        private OrderToGenerate(final String position) {
+            this.position = position;
+        }
+
+        private void setField(final String fieldName, final Object value) {
+            fields.put(fieldName, value);
+        }
+
+        private Entity create(final DataDefinition orderDD) {
+            Entity order = orderDD.create();
+
+            fields.forEach(order::setField);
+
+            return order;
+        }
+
+    }
+
+}
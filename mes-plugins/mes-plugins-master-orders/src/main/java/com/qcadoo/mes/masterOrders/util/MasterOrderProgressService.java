@@ -0,0 +1,234 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.util;
+
+import static com.qcadoo.model.api.search.SearchRestrictions.belongsTo;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderProgressFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrdersConstants;
+import com.qcadoo.mes.masterOrders.constants.OrderFieldsMO;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Maintains planned, in progress and done quantities of orders per master order and product. Progress is updated with the
+ * difference between the saved order and its persisted version, so master order views don't have to sum belonging orders.
+ */
+@Service
+public class MasterOrderProgressService {
+
+    private static final String L_LOCK_PROGRESS = "SELECT pg_advisory_xact_lock(hashtext('masterorderprogress'), hashtext(:key))";
+
+    private static final String L_UPDATE_PROGRESS = "UPDATE masterorders_masterorderprogress "
+            + "SET plannedquantity = plannedquantity + :plannedQuantity, "
+            + "inprogressquantity = inprogressquantity + :inProgressQuantity, donequantity = donequantity + :doneQuantity "
+            + "WHERE masterorder_id = :masterOrderId AND product_id = :productId";
+
+    private static final String L_INSERT_PROGRESS = "INSERT INTO masterorders_masterorderprogress "
+            + "(masterorder_id, product_id, plannedquantity, inprogressquantity, donequantity) "
+            + "SELECT :masterOrderId, :productId, :plannedQuantity, :inProgressQuantity, :doneQuantity "
+            + "WHERE EXISTS (SELECT 1 FROM masterorders_masterorder WHERE id = :masterOrderId)";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final ThreadLocal<Map<List<Long>, OrderProgress>> collectedProgresses = new ThreadLocal<>();
+
+    /**
+     * Runs given work, collecting progress changes of orders saved meanwhile, and writes them at the end with one update per
+     * master order and product. Used when many orders of the same master orders are saved at once.
+     */
+    public <T> T collectProgress(final Supplier<T> work) {
+        if (collectedProgresses.get() != null) {
+            return work.get();
+        }
+
+        Map<List<Long>, OrderProgress> progresses = Maps.newLinkedHashMap();
+
+        collectedProgresses.set(progresses);
+
+        T result;
+
+        try {
+            result = work.get();
+        } finally {
+            collectedProgresses.remove();
+        }
+
+        progresses.values().forEach(this::updateProgress);
+
+        return result;
+    }
+
+    public void onOrderSave(final Entity order) {
+        OrderProgress newProgress = OrderProgress.of(order);
+        OrderProgress oldProgress = OrderProgress.of((order.getId() == null) ? null : order.getDataDefinition().get(
+                order.getId()));
+
+        if (newProgress.hasSameKey(oldProgress)) {
+            updateProgress(newProgress.subtract(oldProgress));
+        } else {
+            updateProgress(oldProgress.negate());
+            updateProgress(newProgress);
+        }
+    }
+
+    public void onOrderDelete(final Entity order) {
+        updateProgress(OrderProgress.of(order).negate());
+    }
+
+    public Entity findProgress(final Entity masterOrder, final Entity product) {
+        if ((masterOrder == null) || (masterOrder.getId() == null) || (product == null)) {
+            return null;
+        }
+
+        return getMasterOrderProgressDD().find().add(belongsTo(MasterOrderProgressFields.MASTER_ORDER, masterOrder))
+                .add(belongsTo(MasterOrderProgressFields.PRODUCT, product)).setMaxResults(1).uniqueResult();
+    }
+
+    /**
+     * The progress row of given master order and product is locked for the rest of the transaction before it's written, so
+     * orders saved at once can't both insert it. Rows of deleted master orders aren't inserted.
+     */
+    private void updateProgress(final OrderProgress progress) {
+        if ((progress.masterOrderId == null) || (progress.productId == null) || progress.isZero()) {
+            return;
+        }
+
+        Map<List<Long>, OrderProgress> progresses = collectedProgresses.get();
+
+        if (progresses != null) {
+            progresses.merge(Arrays.asList(progress.masterOrderId, progress.productId), progress, OrderProgress::add);
+
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("masterOrderId", progress.masterOrderId);
+        params.put("productId", progress.productId);
+        params.put("plannedQuantity", progress.plannedQuantity);
+        params.put("inProgressQuantity", progress.inProgressQuantity);
+        params.put("doneQuantity", progress.doneQuantity);
+
+        params.put("key", progress.masterOrderId + "_" + progress.productId);
+
+        jdbcTemplate.queryForList(L_LOCK_PROGRESS, params);
+
+        if (jdbcTemplate.update(L_UPDATE_PROGRESS, params) == 0) {
+            jdbcTemplate.update(L_INSERT_PROGRESS, params);
+        }
+    }
+
+    private DataDefinition getMasterOrderProgressDD() {
+        return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
+                MasterOrdersConstants.MODEL_MASTER_ORDER_PROGRESS);
+    }
+
+    private static final class OrderProgress {
+
+        private final Long masterOrderId;
+
+        private final Long productId;
+
+        private final BigDecimal plannedQuantity;
+
+        private final BigDecimal inProgressQuantity;
+
+        private final BigDecimal doneQuantity;
+
+        private OrderProgress(final Long masterOrderId, final Long productId, final BigDecimal plannedQuantity,
+                final BigDecimal inProgressQuantity, final BigDecimal doneQuantity) {
+            this.masterOrderId = masterOrderId;
+            this.productId = productId;
+            this.plannedQuantity = plannedQuantity;
+            this.inProgressQuantity = inProgressQuantity;
+            this.doneQuantity = doneQuantity;
+        }
+
+        private static OrderProgress of(final Entity order) {
+            if (order == null) {
+                return new OrderProgress(null, null, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+            }
+
+            Entity masterOrder = order.getBelongsToField(OrderFieldsMO.MASTER_ORDER);
+            Entity product = order.getBelongsToField(OrderFields.PRODUCT);
+            BigDecimal plannedQuantity = BigDecimalUtils.convertNullToZero(order.getDecimalField(OrderFields.PLANNED_QUANTITY));
+            BigDecimal doneQuantity = BigDecimalUtils.convertNullToZero(order.getDecimalField(OrderFields.DONE_QUANTITY));
+
+            return new OrderProgress((masterOrder == null) ? null : masterOrder.getId(), (product == null) ? null
+                    : product.getId(), plannedQuantity, isInProgress(order) ? plannedQuantity : BigDecimal.ZERO, doneQuantity);
+        }
+
+        private static boolean isInProgress(final Entity order) {
+            String state = order.getStringField(OrderFields.STATE);
+
+            return OrderStateStringValues.IN_PROGRESS.equals(state) || OrderStateStringValues.INTERRUPTED.equals(state);
+        }
+
+        private boolean hasSameKey(final OrderProgress other) {
+            return Objects.equals(masterOrderId, other.masterOrderId) && Objects.equals(productId, other.productId);
+        }
+
+        private boolean isZero() {
+            return (plannedQuantity.signum() == 0) && (inProgressQuantity.signum() == 0) && (doneQuantity.signum() == 0);
+        }
+
+        private OrderProgress subtract(final OrderProgress other) {
+            return new OrderProgress(masterOrderId, productId, plannedQuantity.subtract(other.plannedQuantity),
+                    inProgressQuantity.subtract(other.inProgressQuantity), doneQuantity.subtract(other.doneQuantity));
+        }
+
+        private OrderProgress add(final OrderProgress other) {
+            return new OrderProgress(masterOrderId, productId, plannedQuantity.add(other.plannedQuantity),
+                    inProgressQuantity.add(other.inProgressQuantity), doneQuantity.add(other.doneQuantity));
+        }
+
+        private OrderProgress negate() {
+            return new OrderProgress(masterOrderId, productId, plannedQuantity.negate(), inProgressQuantity.negate(),
+                    doneQuantity.negate());
+        }
+
+    }
+
+}
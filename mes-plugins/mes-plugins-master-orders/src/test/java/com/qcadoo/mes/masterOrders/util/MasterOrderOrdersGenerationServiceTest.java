@@ -0,0 +1,286 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.util;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBooleanField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubId;
+import static com.qcadoo.testing.model.EntityTestUtils.stubStringField;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderPositionDtoFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderType;
+import com.qcadoo.mes.masterOrders.constants.MasterOrdersConstants;
+import com.qcadoo.mes.masterOrders.constants.ParameterFieldsMO;
+import com.qcadoo.mes.orders.OrderService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.model.internal.DefaultEntity;
+import com.qcadoo.plugin.api.PluginUtils;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(PluginUtils.class)
+public class MasterOrderOrdersGenerationServiceTest {
+
+    private static final Long L_MASTER_ORDER_ID = 10L;
+
+    private static final String L_INVALID_ORDER = "masterOrders.masterOrderPositionsList.generateOrders.invalidOrder";
+
+    private MasterOrderOrdersGenerationService masterOrderOrdersGenerationService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private MasterOrderOrderSaver masterOrderOrderSaver;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinition masterOrderDD, productDD, technologyDD, orderDD;
+
+    private Entity parameter, masterOrder, product, technology;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        PowerMockito.mockStatic(PluginUtils.class);
+
+        masterOrderOrdersGenerationService = new MasterOrderOrdersGenerationService();
+
+        ReflectionTestUtils.setField(masterOrderOrdersGenerationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(masterOrderOrdersGenerationService, "numberService", numberService);
+        ReflectionTestUtils.setField(masterOrderOrdersGenerationService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(masterOrderOrdersGenerationService, "orderService", orderService);
+        ReflectionTestUtils.setField(masterOrderOrdersGenerationService, "masterOrderOrderSaver", masterOrderOrderSaver);
+        ReflectionTestUtils.setField(masterOrderOrdersGenerationService, "jdbcTemplate", jdbcTemplate);
+
+        product = mockEntity(productDD);
+        stubId(product, 20L);
+
+        technology = mockEntity(technologyDD);
+        stubId(technology, 30L);
+
+        masterOrder = mockEntity(masterOrderDD);
+        stubId(masterOrder, L_MASTER_ORDER_ID);
+        stubStringField(masterOrder, MasterOrderFields.NUMBER, "MO");
+        stubStringField(masterOrder, MasterOrderFields.MASTER_ORDER_TYPE, MasterOrderType.ONE_PRODUCT.getStringValue());
+        stubBelongsToField(masterOrder, MasterOrderFields.PRODUCT, product);
+        stubBelongsToField(masterOrder, MasterOrderFields.TECHNOLOGY, technology);
+
+        parameter = mockEntity();
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(orderService.makeDefaultName(any(Entity.class), any(Entity.class), any(Locale.class))).willReturn("name");
+
+        stubFind(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER, masterOrderDD, masterOrder);
+        stubFind(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT, productDD, product);
+        stubFind(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY, technologyDD, technology);
+
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(orderDD.create()).willAnswer(invocation -> new DefaultEntity(orderDD));
+
+        given(jdbcTemplate.queryForList(contains("lastnumber"), anyMap())).willReturn(
+                Collections.<Map<String, Object>> singletonList(ImmutableMap.<String, Object> of("masterorderid",
+                        L_MASTER_ORDER_ID, "lastnumber", 7)));
+    }
+
+    private void stubFind(final String pluginIdentifier, final String modelName, final DataDefinition dataDefinition,
+            final Entity entity) {
+        SearchCriteriaBuilder searchCriteriaBuilder = PowerMockito.mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = PowerMockito.mock(SearchResult.class);
+
+        given(dataDefinitionService.get(pluginIdentifier, modelName)).willReturn(dataDefinition);
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.createAlias(anyString(), anyString())).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(entity));
+    }
+
+    private List<Entity> mockPositions(final int count) {
+        List<Entity> positions = Lists.newArrayList();
+
+        for (int index = 0; index < count; index++) {
+            Entity position = mockEntity();
+
+            given(position.getIntegerField(MasterOrderPositionDtoFields.MASTER_ORDER_ID)).willReturn(
+                    L_MASTER_ORDER_ID.intValue());
+            stubStringField(position, MasterOrderPositionDtoFields.PRODUCT_NUMBER, "P" + index);
+            stubDecimalField(position, MasterOrderPositionDtoFields.MASTER_ORDER_QUANTITY, new BigDecimal("10"));
+
+            positions.add(position);
+        }
+
+        return positions;
+    }
+
+    private void stubSaverRejecting(final String... invalidOrderNumbers) {
+        given(masterOrderOrderSaver.saveAll(anyListOf(Entity.class))).willAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<Entity> orders = (List<Entity>) invocation.getArguments()[0];
+
+            orders.stream().filter(order -> Arrays.asList(invalidOrderNumbers).contains(order.getStringField(OrderFields.NUMBER)))
+                    .forEach(Entity::setNotValid);
+
+            return orders;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<String>> captureSavedNumbers(final int count) {
+        ArgumentCaptor<List> ordersCaptor = ArgumentCaptor.forClass(List.class);
+
+        verify(masterOrderOrderSaver, times(count)).saveAll(ordersCaptor.capture());
+
+        return ordersCaptor.getAllValues().stream()
+                .map(orders -> ((List<Entity>) orders).stream().map(order -> order.getStringField(OrderFields.NUMBER))
+                        .collect(Collectors.toList())).collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldNumberOrdersAfterLastOrderOfMasterOrderAndSaveThemInOneChunk() {
+        // given
+        stubSaverRejecting();
+
+        // when
+        MasterOrderOrdersGenerationResult result = masterOrderOrdersGenerationService.generateOrders(mockPositions(2),
+                Locale.ENGLISH);
+
+        // then
+        assertEquals(Lists.newArrayList("MO-008", "MO-009"), result.getGeneratedOrderNumbers());
+        assertEquals(Collections.singletonList(Lists.newArrayList("MO-008", "MO-009")), captureSavedNumbers(1));
+        assertEquals(0, result.getFailures().size());
+
+        verify(jdbcTemplate).queryForList(contains("lastnumber"), anyMap());
+    }
+
+    @Test
+    public void shouldSaveChunkAgainWithoutInvalidOrder() {
+        // given
+        stubSaverRejecting("MO-009");
+
+        // when
+        MasterOrderOrdersGenerationResult result = masterOrderOrdersGenerationService.generateOrders(mockPositions(3),
+                Locale.ENGLISH);
+
+        // then
+        List<List<String>> savedNumbers = captureSavedNumbers(2);
+
+        assertEquals(Lists.newArrayList("MO-008", "MO-009", "MO-010"), savedNumbers.get(0));
+        assertEquals(Lists.newArrayList("MO-008", "MO-010"), savedNumbers.get(1));
+        assertEquals(Lists.newArrayList("MO-008", "MO-010"), result.getGeneratedOrderNumbers());
+        assertEquals(Lists.newArrayList("MO - P1"), Lists.newArrayList(result.getFailures().get(L_INVALID_ORDER)));
+    }
+
+    @Test
+    public void shouldSplitOrdersIntoChunks() {
+        // given
+        stubSaverRejecting();
+
+        // when
+        MasterOrderOrdersGenerationResult result = masterOrderOrdersGenerationService.generateOrders(mockPositions(51),
+                Locale.ENGLISH);
+
+        // then
+        List<List<String>> savedNumbers = captureSavedNumbers(2);
+
+        assertEquals(50, savedNumbers.get(0).size());
+        assertEquals(Lists.newArrayList("MO-058"), savedNumbers.get(1));
+        assertEquals(51, result.getGeneratedOrderNumbers().size());
+    }
+
+    @Test
+    public void shouldUseMasterOrderNumberWithoutLookingForLastOrderNumber() {
+        // given
+        stubBooleanField(parameter, ParameterFieldsMO.SAME_ORDER_NUMBER, true);
+        stubSaverRejecting();
+
+        // when
+        MasterOrderOrdersGenerationResult result = masterOrderOrdersGenerationService.generateOrders(mockPositions(1),
+                Locale.ENGLISH);
+
+        // then
+        assertEquals(Lists.newArrayList("MO"), result.getGeneratedOrderNumbers());
+
+        verify(jdbcTemplate, never()).queryForList(anyString(), anyMap());
+    }
+
+}
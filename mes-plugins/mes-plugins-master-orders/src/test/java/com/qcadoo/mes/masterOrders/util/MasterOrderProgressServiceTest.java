@@ -0,0 +1,263 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.util;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubId;
+import static com.qcadoo.testing.model.EntityTestUtils.stubStringField;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.masterOrders.constants.OrderFieldsMO;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class MasterOrderProgressServiceTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private MasterOrderProgressService masterOrderProgressService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinition orderDD;
+
+    private Entity masterOrder, otherMasterOrder, product;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        masterOrderProgressService = new MasterOrderProgressService();
+
+        ReflectionTestUtils.setField(masterOrderProgressService, "jdbcTemplate", jdbcTemplate);
+
+        masterOrder = mockEntity();
+        stubId(masterOrder, 10L);
+
+        otherMasterOrder = mockEntity();
+        stubId(otherMasterOrder, 11L);
+
+        product = mockEntity();
+        stubId(product, 20L);
+    }
+
+    private Entity mockOrder(final Long id, final Entity masterOrder, final BigDecimal plannedQuantity,
+            final BigDecimal doneQuantity, final String state) {
+        Entity order = mockEntity(orderDD);
+
+        if (id != null) {
+            stubId(order, id);
+        }
+
+        stubBelongsToField(order, OrderFieldsMO.MASTER_ORDER, masterOrder);
+        stubBelongsToField(order, OrderFields.PRODUCT, product);
+        stubDecimalField(order, OrderFields.PLANNED_QUANTITY, plannedQuantity);
+        stubDecimalField(order, OrderFields.DONE_QUANTITY, doneQuantity);
+        stubStringField(order, OrderFields.STATE, state);
+
+        return order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> captureUpdates(final int count) {
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate, times(count)).update(startsWith("UPDATE"), paramsCaptor.capture());
+
+        return (List) paramsCaptor.getAllValues();
+    }
+
+    private void assertDelta(final Map<String, Object> params, final Long masterOrderId, final String plannedQuantity,
+            final String inProgressQuantity, final String doneQuantity) {
+        assertEquals(masterOrderId, params.get("masterOrderId"));
+        assertEquals(20L, params.get("productId"));
+        assertEquals(new BigDecimal(plannedQuantity), params.get("plannedQuantity"));
+        assertEquals(new BigDecimal(inProgressQuantity), params.get("inProgressQuantity"));
+        assertEquals(new BigDecimal(doneQuantity), params.get("doneQuantity"));
+    }
+
+    @Test
+    public void shouldInsertProgressOfNewOrderIfThereIsNoRowToUpdate() {
+        // given
+        Entity order = mockOrder(null, masterOrder, new BigDecimal("10"), null, OrderStateStringValues.PENDING);
+
+        given(jdbcTemplate.update(startsWith("UPDATE"), anyMap())).willReturn(0);
+
+        // when
+        masterOrderProgressService.onOrderSave(order);
+
+        // then
+        List<Map<String, Object>> updates = captureUpdates(1);
+
+        assertDelta(updates.get(0), 10L, "10", "0", "0");
+
+        verify(jdbcTemplate).queryForList(startsWith("SELECT pg_advisory_xact_lock"), anyMap());
+        verify(jdbcTemplate).update(startsWith("INSERT"), anyMap());
+    }
+
+    @Test
+    public void shouldUpdateProgressWithDifferenceToPersistedOrder() {
+        // given
+        Entity persistedOrder = mockOrder(L_ORDER_ID, masterOrder, new BigDecimal("10"), new BigDecimal("2"),
+                OrderStateStringValues.ACCEPTED);
+        Entity order = mockOrder(L_ORDER_ID, masterOrder, new BigDecimal("15"), new BigDecimal("5"),
+                OrderStateStringValues.IN_PROGRESS);
+
+        given(orderDD.get(L_ORDER_ID)).willReturn(persistedOrder);
+        given(jdbcTemplate.update(startsWith("UPDATE"), anyMap())).willReturn(1);
+
+        // when
+        masterOrderProgressService.onOrderSave(order);
+
+        // then
+        List<Map<String, Object>> updates = captureUpdates(1);
+
+        assertDelta(updates.get(0), 10L, "5", "15", "3");
+
+        verify(jdbcTemplate, never()).update(startsWith("INSERT"), anyMap());
+    }
+
+    @Test
+    public void shouldMoveProgressIfOrderWasMovedToOtherMasterOrder() {
+        // given
+        Entity persistedOrder = mockOrder(L_ORDER_ID, masterOrder, new BigDecimal("10"), new BigDecimal("2"),
+                OrderStateStringValues.IN_PROGRESS);
+        Entity order = mockOrder(L_ORDER_ID, otherMasterOrder, new BigDecimal("10"), new BigDecimal("2"),
+                OrderStateStringValues.IN_PROGRESS);
+
+        given(orderDD.get(L_ORDER_ID)).willReturn(persistedOrder);
+        given(jdbcTemplate.update(startsWith("UPDATE"), anyMap())).willReturn(1);
+
+        // when
+        masterOrderProgressService.onOrderSave(order);
+
+        // then
+        List<Map<String, Object>> updates = captureUpdates(2);
+
+        assertDelta(updates.get(0), 10L, "-10", "-10", "-2");
+        assertDelta(updates.get(1), 11L, "10", "10", "2");
+    }
+
+    @Test
+    public void shouldNotTouchProgressIfOrderQuantitiesDidNotChange() {
+        // given
+        Entity persistedOrder = mockOrder(L_ORDER_ID, masterOrder, new BigDecimal("10"), null, OrderStateStringValues.PENDING);
+        Entity order = mockOrder(L_ORDER_ID, masterOrder, new BigDecimal("10"), null, OrderStateStringValues.ACCEPTED);
+
+        given(orderDD.get(L_ORDER_ID)).willReturn(persistedOrder);
+
+        // when
+        masterOrderProgressService.onOrderSave(order);
+
+        // then
+        verify(jdbcTemplate, never()).queryForList(anyString(), anyMap());
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+    }
+
+    @Test
+    public void shouldSubtractProgressOfDeletedOrder() {
+        // given
+        Entity order = mockOrder(L_ORDER_ID, masterOrder, new BigDecimal("10"), new BigDecimal("4"),
+                OrderStateStringValues.INTERRUPTED);
+
+        given(jdbcTemplate.update(startsWith("UPDATE"), anyMap())).willReturn(1);
+
+        // when
+        masterOrderProgressService.onOrderDelete(order);
+
+        // then
+        List<Map<String, Object>> updates = captureUpdates(1);
+
+        assertDelta(updates.get(0), 10L, "-10", "-10", "-4");
+
+        verify(jdbcTemplate, never()).update(startsWith("INSERT"), anyMap());
+    }
+
+    @Test
+    public void shouldWriteCollectedProgressOncePerMasterOrderAndProduct() {
+        // given
+        Entity firstOrder = mockOrder(null, masterOrder, new BigDecimal("10"), null, OrderStateStringValues.PENDING);
+        Entity secondOrder = mockOrder(null, masterOrder, new BigDecimal("5"), null, OrderStateStringValues.PENDING);
+        Entity otherOrder = mockOrder(null, otherMasterOrder, new BigDecimal("3"), null, OrderStateStringValues.PENDING);
+
+        given(jdbcTemplate.update(startsWith("UPDATE"), anyMap())).willReturn(1);
+
+        // when
+        masterOrderProgressService.collectProgress(() -> {
+            masterOrderProgressService.onOrderSave(firstOrder);
+            masterOrderProgressService.onOrderSave(secondOrder);
+            masterOrderProgressService.onOrderSave(otherOrder);
+
+            verify(jdbcTemplate, never()).update(anyString(), anyMap());
+
+            return null;
+        });
+
+        // then
+        List<Map<String, Object>> updates = captureUpdates(2);
+
+        assertDelta(updates.get(0), 10L, "15", "0", "0");
+        assertDelta(updates.get(1), 11L, "3", "0", "0");
+
+        verify(jdbcTemplate, times(2)).queryForList(startsWith("SELECT pg_advisory_xact_lock"), anyMap());
+    }
+
+    @Test
+    public void shouldSkipOrdersWithoutMasterOrder() {
+        // given
+        Entity order = mockOrder(null, null, new BigDecimal("10"), null, OrderStateStringValues.PENDING);
+
+        // when
+        masterOrderProgressService.onOrderSave(order);
+
+        // then
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+    }
+
+}
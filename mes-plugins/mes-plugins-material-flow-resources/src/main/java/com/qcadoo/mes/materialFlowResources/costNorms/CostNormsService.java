@@ -24,11 +24,30 @@
 package com.qcadoo.mes.materialFlowResources.costNorms;
 
 import java.util.List;
+import java.util.Map;
 
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
 import com.qcadoo.model.api.Entity;
 
 public interface CostNormsService {
 
     void updateCostNormsForProductsFromWarehouses(final List<Entity> products, final List<Entity> warehouses);
 
+    /**
+     * Reads last purchase costs of given products from the cost index and average costs of their current stock from
+     * resources.
+     *
+     * @param productIds
+     *            ids of products, empty list means all products
+     * @param warehousesIds
+     *            ids of warehouses taken into account, empty list means all warehouses
+     * @return cost norms by product id, products without any cost are omitted
+     */
+    Map<Long, CostNorm> getCostNormsForProducts(final List<Long> productIds, final List<Long> warehousesIds);
+
+    /**
+     * Adds priced positions of accepted receipt document to the cost index of its target warehouse.
+     */
+    void updateCostIndexForReceiptDocument(final Entity document);
+
 }
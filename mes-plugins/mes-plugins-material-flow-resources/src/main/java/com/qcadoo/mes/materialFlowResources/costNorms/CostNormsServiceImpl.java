@@ -23,7 +23,8 @@
  */
 package com.qcadoo.mes.materialFlowResources.costNorms;
 
-import java.util.Collection;
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -31,8 +32,13 @@ import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostIndexDao;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostNormsDao;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.ReceiptCost;
 import com.qcadoo.model.api.Entity;
 
 @Service
@@ -41,17 +47,41 @@ public class CostNormsServiceImpl implements CostNormsService {
     @Autowired
     private CostNormsDao costNormsDao;
 
+    @Autowired
+    private CostIndexDao costIndexDao;
+
     @Override
     public void updateCostNormsForProductsFromWarehouses(final List<Entity> products, final List<Entity> warehouses) {
         List<Long> productIds = products.stream().map(product -> product.getId()).collect(Collectors.toList());
         List<Long> warehousesIds = warehouses.stream().filter(warehouse -> warehouse != null).map(warehouse -> warehouse.getId())
                 .collect(Collectors.toList());
-        List<CostNorm> lastPurchases = costNormsDao.getLastPurchaseCostsForProducts(productIds, warehousesIds);
+        costNormsDao.updateCostNormsForProducts(getCostNormsForProducts(productIds, warehousesIds).values());
+    }
+
+    @Override
+    public Map<Long, CostNorm> getCostNormsForProducts(final List<Long> productIds, final List<Long> warehousesIds) {
+        List<CostNorm> lastPurchases = costIndexDao.getLastPurchaseCostsForProducts(productIds, warehousesIds);
         List<CostNorm> averageCosts = costNormsDao.getAverageCostForProducts(productIds, warehousesIds);
-        costNormsDao.updateCostNormsForProducts(mergeCostNorms(lastPurchases, averageCosts));
+        return mergeCostNorms(lastPurchases, averageCosts);
+    }
+
+    @Override
+    public void updateCostIndexForReceiptDocument(final Entity document) {
+        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
+        Map<Long, ReceiptCost> receiptCosts = Maps.newLinkedHashMap();
+
+        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+            BigDecimal price = position.getDecimalField(PositionFields.PRICE);
+            if (price == null) {
+                continue;
+            }
+            Long productId = position.getBelongsToField(PositionFields.PRODUCT).getId();
+            receiptCosts.computeIfAbsent(productId, ReceiptCost::new).setLastPurchaseCost(price);
+        }
+        costIndexDao.addReceiptCosts(warehouse.getId(), (Date) document.getField(DocumentFields.TIME), receiptCosts.values());
     }
 
-    private Collection<CostNorm> mergeCostNorms(List<CostNorm> lastPurchases, List<CostNorm> averageCosts) {
+    private Map<Long, CostNorm> mergeCostNorms(List<CostNorm> lastPurchases, List<CostNorm> averageCosts) {
         Map<Long, CostNorm> costNormMap = lastPurchases.stream().collect(
                 Collectors.toMap(CostNorm::getProductId, purchase -> purchase, (p, q) -> p));
         for (CostNorm averageCost : averageCosts) {
@@ -63,7 +93,7 @@ public class CostNormsServiceImpl implements CostNormsService {
                 costNormMap.put(averageCost.getProductId(), averageCost);
             }
         }
-        return costNormMap.values();
+        return costNormMap;
     }
 
 }
@@ -0,0 +1,43 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.costNorms.dao;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.ReceiptCost;
+
+/**
+ * Access to the cost index, which keeps last purchase cost of each product per warehouse. Index is maintained incrementally
+ * when receipt documents are accepted, so reading last purchase costs doesn't depend on the size of documents history.
+ */
+public interface CostIndexDao {
+
+    void addReceiptCosts(Long warehouseId, Date receiptTime, Collection<ReceiptCost> receiptCosts);
+
+    List<CostNorm> getLastPurchaseCostsForProducts(List<Long> productIds, List<Long> warehousesIds);
+
+}
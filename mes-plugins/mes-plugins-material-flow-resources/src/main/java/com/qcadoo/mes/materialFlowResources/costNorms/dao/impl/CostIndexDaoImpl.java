@@ -0,0 +1,129 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.costNorms.dao.impl;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostIndexDao;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.ReceiptCost;
+
+@Repository
+public class CostIndexDaoImpl implements CostIndexDao {
+
+    private static final String LOCK_INDEX_KEYS = "SELECT pg_advisory_xact_lock(hashtext('productcostindex'), hashtext(k.key)) "
+            + "FROM (SELECT DISTINCT key FROM unnest(ARRAY[:keys]) key ORDER BY key) k";
+
+    private static final String UPDATE_INDEX = "UPDATE materialflowresources_productcostindex SET "
+            + "lastpurchasecost = :lastPurchaseCost, lastpurchasetime = :receiptTime "
+            + "WHERE product_id = :productId AND location_id = :warehouseId "
+            + "AND (lastpurchasetime IS NULL OR lastpurchasetime <= :receiptTime)";
+
+    private static final String INSERT_INDEX = "INSERT INTO materialflowresources_productcostindex "
+            + "(product_id, location_id, lastpurchasecost, lastpurchasetime) "
+            + "SELECT :productId, :warehouseId, :lastPurchaseCost, :receiptTime WHERE NOT EXISTS "
+            + "(SELECT 1 FROM materialflowresources_productcostindex WHERE product_id = :productId AND location_id = :warehouseId)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Index rows of given products are locked for the rest of the transaction before they are written, so two documents
+     * received at once into the same warehouse can't both insert the first row of a product. Rows are updated with one batch
+     * and only the ones which weren't updated are inserted with another, which skips rows updated with a later receipt.
+     */
+    @Override
+    public void addReceiptCosts(final Long warehouseId, final Date receiptTime, final Collection<ReceiptCost> receiptCosts) {
+        if (receiptCosts.isEmpty()) {
+            return;
+        }
+        List<String> keys = Lists.newArrayList();
+        List<SqlParameterSource> parameters = Lists.newArrayList();
+        for (ReceiptCost receiptCost : receiptCosts) {
+            keys.add(receiptCost.getProductId() + "_" + warehouseId);
+            parameters.add(new MapSqlParameterSource("productId", receiptCost.getProductId())
+                    .addValue("warehouseId", warehouseId).addValue("receiptTime", receiptTime)
+                    .addValue("lastPurchaseCost", receiptCost.getLastPurchaseCost()));
+        }
+        jdbcTemplate.queryForList(LOCK_INDEX_KEYS, Collections.singletonMap("keys", keys));
+
+        int[] updatedRows = jdbcTemplate.batchUpdate(UPDATE_INDEX, parameters.toArray(new SqlParameterSource[parameters.size()]));
+
+        List<SqlParameterSource> insertParameters = Lists.newArrayList();
+        for (int index = 0; index < updatedRows.length; index++) {
+            if (updatedRows[index] == 0) {
+                insertParameters.add(parameters.get(index));
+            }
+        }
+        if (!insertParameters.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_INDEX, insertParameters.toArray(new SqlParameterSource[insertParameters.size()]));
+        }
+    }
+
+    @Override
+    public List<CostNorm> getLastPurchaseCostsForProducts(final List<Long> productIds, final List<Long> warehousesIds) {
+        StringBuilder queryBuilder = new StringBuilder();
+        queryBuilder.append("SELECT DISTINCT ON (i.product_id) i.product_id AS productId, ");
+        queryBuilder.append("i.lastpurchasecost AS lastPurchaseCost ");
+        queryBuilder.append("FROM materialflowresources_productcostindex i WHERE i.lastpurchasecost IS NOT NULL ");
+        appendFilters(queryBuilder, productIds, warehousesIds);
+        queryBuilder.append("ORDER BY i.product_id, i.lastpurchasetime DESC");
+
+        List<CostNorm> lastPurchases = Lists.newArrayList();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(queryBuilder.toString(),
+                parameters(productIds, warehousesIds))) {
+            CostNorm costNorm = new CostNorm();
+            costNorm.setProductId((Long) row.get("productId"));
+            costNorm.setLastPurchaseCost((BigDecimal) row.get("lastPurchaseCost"));
+            lastPurchases.add(costNorm);
+        }
+        return lastPurchases;
+    }
+
+    private void appendFilters(final StringBuilder queryBuilder, final List<Long> productIds, final List<Long> warehousesIds) {
+        if (!productIds.isEmpty()) {
+            queryBuilder.append("AND i.product_id IN (:productIds) ");
+        }
+        if (!warehousesIds.isEmpty()) {
+            queryBuilder.append("AND i.location_id IN (:warehousesIds) ");
+        }
+    }
+
+    private SqlParameterSource parameters(final List<Long> productIds, final List<Long> warehousesIds) {
+        return new MapSqlParameterSource("productIds", productIds).addValue("warehousesIds", warehousesIds);
+    }
+
+}
@@ -35,6 +35,8 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostNormsDao;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
@@ -45,45 +47,6 @@ public class CostNormsDaoImpl implements CostNormsDao {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    @Override
-    public List<CostNorm> getLastPurchaseCostsForProducts(List<Long> productIds, List<Long> warehousesIds) {
-        StringBuilder queryBuilder = new StringBuilder();
-        queryBuilder.append("SELECT DISTINCT p.product_id AS productId, p.price AS lastPurchaseCost, d.time ");
-        queryBuilder.append("FROM materialflowresources_position p ");
-        queryBuilder.append("JOIN materialflowresources_document d ON d.id = p.document_id ");
-        queryBuilder.append("JOIN  ");
-        queryBuilder.append("   (SELECT pos.product_id AS lastId, max(doc.time) AS lastTime ");
-        queryBuilder.append("       FROM materialflowresources_position pos ");
-        queryBuilder.append("       JOIN materialflowresources_document doc ");
-        queryBuilder.append("       ON doc.id = pos.document_id ");
-        queryBuilder.append("       AND doc.type IN ('01receipt', '02internalInbound') AND doc.state = '02accepted' ");
-        if (!warehousesIds.isEmpty()) {
-            queryBuilder.append("AND doc.locationto_id IN (:warehousesIds) ");
-        }
-        queryBuilder.append("   WHERE pos.price IS NOT NULL ");
-        queryBuilder.append("   GROUP BY pos.product_id) AS p2 ");
-        queryBuilder.append("ON p.product_id = p2.lastId AND d.time = p2.lastTime ");
-        if (!productIds.isEmpty()) {
-            queryBuilder.append("WHERE p.product_id IN (:productIds) ");
-        }
-        queryBuilder.append("ORDER BY p.product_id");
-        SqlParameterSource namedParameters = new MapSqlParameterSource("productIds", productIds).addValue("warehousesIds",
-                warehousesIds);
-        List<Map<String, Object>> queryForList = jdbcTemplate.queryForList(queryBuilder.toString(), namedParameters);
-        List<CostNorm> lastPurchases = Lists.newArrayList();
-        queryForList.forEach(new Consumer<Map<String, Object>>() {
-
-            @Override
-            public void accept(Map<String, Object> stringObjectMap) {
-                CostNorm costNorm = new CostNorm();
-                costNorm.setProductId((Long) stringObjectMap.get("productId"));
-                costNorm.setLastPurchaseCost((BigDecimal) stringObjectMap.get("lastPurchaseCost"));
-                lastPurchases.add(costNorm);
-            }
-        });
-        return lastPurchases;
-    }
-
     @Override
     public List<CostNorm> getAverageCostForProducts(List<Long> productIds, List<Long> warehousesIds) {
         StringBuilder queryBuilder = new StringBuilder();
@@ -115,18 +78,28 @@ public class CostNormsDaoImpl implements CostNormsDao {
 
     @Override
     public void updateCostNormsForProducts(Collection<CostNorm> costNorms) {
+        // cost norms setting the same columns share the statement, so they can be sent in one batch
+        ListMultimap<String, SqlParameterSource> parametersByQuery = ArrayListMultimap.create();
 
         for (CostNorm costNorm : costNorms) {
+            String valuesToUpdate = prepareValuesToUpdate(costNorm);
+            if (valuesToUpdate.isEmpty()) {
+                continue;
+            }
             StringBuilder queryBuilder = new StringBuilder();
             queryBuilder.append("UPDATE basic_product SET ");
-            queryBuilder.append(prepareValuesToUpdate(costNorm));
+            queryBuilder.append(valuesToUpdate);
             queryBuilder.append(" WHERE id = :productId");
             SqlParameterSource namedParameters = new MapSqlParameterSource("productId", costNorm.getProductId())
                     .addValue("lastPurchaseCost", costNorm.getLastPurchaseCost())
                     .addValue("averageCost", costNorm.getAverageCost()).addValue("nominalCost", costNorm.getNominalCost())
                     .addValue("costForNumber", costNorm.getCostForNumber());
 
-            jdbcTemplate.update(queryBuilder.toString(), namedParameters);
+            parametersByQuery.put(queryBuilder.toString(), namedParameters);
+        }
+        for (String query : parametersByQuery.keySet()) {
+            List<SqlParameterSource> parameters = parametersByQuery.get(query);
+            jdbcTemplate.batchUpdate(query, parameters.toArray(new SqlParameterSource[parameters.size()]));
         }
     }
 
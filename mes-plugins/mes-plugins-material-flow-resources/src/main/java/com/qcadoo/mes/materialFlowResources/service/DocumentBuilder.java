@@ -75,6 +75,10 @@ public class DocumentBuilder {
         return document;
     }
 
+    public List<Entity> getPositions() {
+        return positions;
+    }
+
     public DocumentBuilder receipt(final Entity locationTo) {
         document.setField(DocumentFields.LOCATION_TO, locationTo);
         document.setField(DocumentFields.TYPE, DocumentType.RECEIPT.getStringValue());
@@ -306,10 +310,8 @@ public class DocumentBuilder {
         Entity savedDocument = documentDD.save(document);
 
         if (savedDocument.isValid() && DocumentState.ACCEPTED.getStringValue()
-                .equals(savedDocument.getStringField(DocumentFields.STATE)) && buildConnectedPZDocument(savedDocument)) {
-            ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper = new ReceiptDocumentForReleaseHelper(
-                    dataDefinitionService, resourceManagementService, userService, numberGeneratorService, translationService, parameterService);
-            receiptDocumentForReleaseHelper.tryBuildConnectedPZDocument(savedDocument, false);
+                .equals(savedDocument.getStringField(DocumentFields.STATE))) {
+            tryBuildConnectedPZDocument(savedDocument);
         }
 
         if (!savedDocument.isValid()) {
@@ -331,10 +333,8 @@ public class DocumentBuilder {
         Entity savedDocument = documentDD.save(document);
 
         if (savedDocument.isValid() && DocumentState.ACCEPTED.getStringValue()
-                .equals(savedDocument.getStringField(DocumentFields.STATE)) && buildConnectedPZDocument(savedDocument)) {
-            ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper = new ReceiptDocumentForReleaseHelper(
-                    dataDefinitionService, resourceManagementService, userService, numberGeneratorService, translationService, parameterService);
-            receiptDocumentForReleaseHelper.tryBuildConnectedPZDocument(savedDocument, false);
+                .equals(savedDocument.getStringField(DocumentFields.STATE))) {
+            tryBuildConnectedPZDocument(savedDocument);
         }
 
         if (!savedDocument.isValid()) {
@@ -344,6 +344,19 @@ public class DocumentBuilder {
         return savedDocument;
     }
 
+    /**
+     * Builds receipt document connected with given accepted document, when the document asks for it.
+     *
+     * @param savedDocument accepted document
+     */
+    void tryBuildConnectedPZDocument(final Entity savedDocument) {
+        if (buildConnectedPZDocument(savedDocument)) {
+            ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper = new ReceiptDocumentForReleaseHelper(
+                    dataDefinitionService, resourceManagementService, userService, numberGeneratorService, translationService, parameterService);
+            receiptDocumentForReleaseHelper.tryBuildConnectedPZDocument(savedDocument, false);
+        }
+    }
+
     private boolean buildConnectedPZDocument(final Entity document) {
         if (document.getBooleanField(DocumentFields.CREATE_LINKED_PZ_DOCUMENT)
                 && document.getBelongsToField(DocumentFields.LINKED_PZ_DOCUMENT_LOCATION) != null) {
@@ -0,0 +1,383 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.AttributeFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
+import com.qcadoo.mes.materialFlowResources.hooks.ResourceModelValidators;
+import com.qcadoo.mes.materialFlowResources.validators.PositionValidators;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+/**
+ * Creates accepted receipt documents together with their positions, attributes and resources using batched JDBC statements
+ * instead of saving every position and resource separately.
+ */
+@Service
+public class ReceiptDocumentBulkService {
+
+    private static final String NEXT_IDS = "SELECT nextval('%s') FROM generate_series(1, :count)";
+
+    private static final String INSERT_RESOURCE = "INSERT INTO materialflowresources_resource "
+            + "(id, location_id, product_id, quantity, reservedquantity, availablequantity, price, batch, time, "
+            + "productiondate, expirationdate, iscorrected, storagelocation_id, additionalcode_id, palletnumber_id, "
+            + "typeofpallet, waste, givenunit, quantityinadditionalunit, conversion, username) "
+            + "VALUES (:id, :location_id, :product_id, :quantity, :reservedquantity, :availablequantity, :price, :batch, :time, "
+            + ":productiondate, :expirationdate, false, :storagelocation_id, :additionalcode_id, :palletnumber_id, "
+            + ":typeofpallet, :waste, :givenunit, :quantityinadditionalunit, :conversion, :username)";
+
+    private static final String INSERT_POSITION = "INSERT INTO materialflowresources_position "
+            + "(id, document_id, number, product_id, quantity, givenquantity, givenunit, conversion, price, batch, "
+            + "productiondate, expirationdate, storagelocation_id, additionalcode_id, palletnumber_id, typeofpallet, "
+            + "waste, type, state, resourcereceiptdocument) "
+            + "VALUES (:id, :document_id, :number, :product_id, :quantity, :givenquantity, :givenunit, :conversion, :price, :batch, "
+            + ":productiondate, :expirationdate, :storagelocation_id, :additionalcode_id, :palletnumber_id, :typeofpallet, "
+            + ":waste, :type, :state, :resourcereceiptdocument)";
+
+    private static final String INSERT_ATTRIBUTE_VALUE = "INSERT INTO materialflowresources_attributevalue "
+            + "(attribute_id, value, position_id, resource_id) VALUES (:attribute_id, :value, :position_id, :resource_id)";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PositionValidators positionValidators;
+
+    @Autowired
+    private ResourceModelValidators resourceModelValidators;
+
+    @Autowired
+    private ResourceManagementService resourceManagementService;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private CostNormsService costNormsService;
+
+    /**
+     * Saves document of given builder as accepted receipt. The document itself is saved through its data definition, so
+     * its hooks and fields added by other plugins are handled as usual. Resources are built the same way as by
+     * {@link DocumentBuilder#build()}, positions and resources are checked with their validators in memory, then positions,
+     * their attributes and resources are written with one batch statement each. Resource stocks, reservations and the
+     * connected receipt document are then updated through the same services the position and resource hooks use.
+     *
+     * @param documentBuilder
+     *            builder of receipt or internal inbound document
+     * @return saved document, with errors when document or any of its positions is invalid
+     */
+    @Transactional
+    public Entity buildAccepted(final DocumentBuilder documentBuilder) {
+        DocumentType documentType = documentBuilder.getDocumentType();
+
+        Preconditions.checkArgument(DocumentType.RECEIPT.equals(documentType) || DocumentType.INTERNAL_INBOUND.equals(documentType),
+                "Only inbound documents can be built in bulk.");
+
+        Entity document = documentBuilder.getDocument();
+        List<Entity> positions = documentBuilder.getPositions();
+
+        document.setField(DocumentFields.STATE, DocumentState.ACCEPTED.getStringValue());
+        document.setField(DocumentFields.POSITIONS, Lists.newArrayList());
+
+        Entity savedDocument = getDocumentDD().save(document);
+
+        if (savedDocument.isValid() && !validatePositions(savedDocument, positions)) {
+            savedDocument.setNotValid();
+        }
+
+        List<Entity> resources = savedDocument.isValid() ? buildResources(savedDocument, positions) : Collections
+                .<Entity> emptyList();
+
+        if (savedDocument.isValid() && !validateResources(savedDocument, resources)) {
+            savedDocument.setNotValid();
+        }
+
+        if (!savedDocument.isValid()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
+            return savedDocument;
+        }
+
+        if (!positions.isEmpty()) {
+            insertPositionsAndResources(savedDocument, positions, resources);
+            addResourceStocks(resources);
+            updateReservations(savedDocument, positions);
+        }
+
+        savedDocument.setField(DocumentFields.POSITIONS, positions);
+
+        costNormsService.updateCostIndexForReceiptDocument(savedDocument);
+
+        documentBuilder.tryBuildConnectedPZDocument(savedDocument);
+
+        if (!savedDocument.isValid()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return savedDocument;
+    }
+
+    private boolean validatePositions(final Entity document, final List<Entity> positions) {
+        DataDefinition positionDD = getPositionDD();
+
+        boolean isValid = true;
+
+        for (Entity position : positions) {
+            position.setField(PositionFields.DOCUMENT, document);
+
+            if (!positionValidators.checkAttributesRequirement(positionDD, position)
+                    || !positionValidators.validateDates(positionDD, position)) {
+                copyErrors(position, document);
+
+                isValid = false;
+            }
+        }
+
+        return isValid;
+    }
+
+    private List<Entity> buildResources(final Entity document, final List<Entity> positions) {
+        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
+        Object time = document.getField(DocumentFields.TIME);
+
+        List<Entity> resources = Lists.newArrayListWithCapacity(positions.size());
+
+        for (Entity position : positions) {
+            resources.add(resourceManagementService.buildResourceForReceiptPosition(document, warehouse, position, time));
+        }
+
+        return resources;
+    }
+
+    private boolean validateResources(final Entity document, final List<Entity> resources) {
+        DataDefinition resourceDD = getResourceDD();
+
+        for (Entity resource : resources) {
+            if (!resourceModelValidators.checkIfLocationIsWarehouse(resourceDD, resource)
+                    || !resourceModelValidators.checkQuantities(resourceDD, resource)) {
+                copyErrors(resource, document);
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void copyErrors(final Entity entity, final Entity document) {
+        for (ErrorMessage error : entity.getErrors().values()) {
+            document.addGlobalError(error.getMessage(), false, error.getVars());
+        }
+        for (ErrorMessage error : entity.getGlobalErrors()) {
+            document.addGlobalError(error.getMessage(), false, error.getVars());
+        }
+    }
+
+    private void insertPositionsAndResources(final Entity document, final List<Entity> positions, final List<Entity> resources) {
+        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
+        String type = document.getStringField(DocumentFields.TYPE);
+        String state = document.getStringField(DocumentFields.STATE);
+
+        List<Long> positionIds = getNextIds("materialflowresources_position_id_seq", positions.size());
+        List<Long> resourceIds = getNextIds("materialflowresources_resource_id_seq", positions.size());
+
+        List<Entity> attributes = DocumentType.RECEIPT.equals(DocumentType.of(document)) ? getAttributesForWarehouse(warehouse)
+                : Collections.<Entity> emptyList();
+
+        List<SqlParameterSource> resourceParameters = Lists.newArrayListWithCapacity(positions.size());
+        List<SqlParameterSource> positionParameters = Lists.newArrayListWithCapacity(positions.size());
+        List<SqlParameterSource> attributeValueParameters = Lists.newArrayList();
+
+        for (int index = 0; index < positions.size(); index++) {
+            Entity position = positions.get(index);
+            Entity resource = resources.get(index);
+            Long positionId = positionIds.get(index);
+            Long resourceId = resourceIds.get(index);
+
+            resourceParameters.add(getResourceParameters(resource).addValue("id", resourceId));
+
+            positionParameters.add(new MapSqlParameterSource("id", positionId).addValue("document_id", document.getId())
+                    .addValue("number", index + 1)
+                    .addValue("product_id", getId(position.getBelongsToField(PositionFields.PRODUCT)))
+                    .addValue("quantity", position.getDecimalField(PositionFields.QUANTITY))
+                    .addValue("givenquantity", position.getDecimalField(PositionFields.GIVEN_QUANTITY))
+                    .addValue("givenunit", position.getStringField(PositionFields.GIVEN_UNIT))
+                    .addValue("conversion", position.getDecimalField(PositionFields.CONVERSION))
+                    .addValue("price", position.getDecimalField(PositionFields.PRICE))
+                    .addValue("batch", position.getStringField(PositionFields.BATCH))
+                    .addValue("productiondate", position.getDateField(PositionFields.PRODUCTION_DATE))
+                    .addValue("expirationdate", position.getDateField(PositionFields.EXPIRATION_DATE))
+                    .addValue("storagelocation_id", getId(position.getBelongsToField(PositionFields.STORAGE_LOCATION)))
+                    .addValue("additionalcode_id", getId(position.getBelongsToField(PositionFields.ADDITIONAL_CODE)))
+                    .addValue("palletnumber_id", getId(position.getBelongsToField(PositionFields.PALLET_NUMBER)))
+                    .addValue("typeofpallet", position.getStringField(PositionFields.TYPE_OF_PALLET))
+                    .addValue("waste", position.getBooleanField(PositionFields.WASTE)).addValue("type", type)
+                    .addValue("state", state).addValue("resourcereceiptdocument", resourceId.toString()));
+
+            for (Entity attribute : attributes) {
+                attributeValueParameters.add(new MapSqlParameterSource("attribute_id", attribute.getId())
+                        .addValue("value", attribute.getField(AttributeFields.DEFAULT_VALUE)).addValue("position_id", positionId)
+                        .addValue("resource_id", resourceId));
+            }
+
+            position.setId(positionId);
+            position.setField(PositionFields.TYPE, type);
+            position.setField(PositionFields.STATE, state);
+            position.setField(PositionFields.RESOURCE_RECEIPT_DOCUMENT, resourceId.toString());
+
+            resource.setId(resourceId);
+        }
+
+        batchUpdate(INSERT_RESOURCE, resourceParameters);
+        batchUpdate(INSERT_POSITION, positionParameters);
+        batchUpdate(INSERT_ATTRIBUTE_VALUE, attributeValueParameters);
+    }
+
+    /**
+     * Maps resource built by {@link ResourceManagementService#buildResourceForReceiptPosition(Entity, Entity, Entity, Object)}
+     * to parameters of resource insert, filling the same defaults as resource model hooks do on create.
+     */
+    static MapSqlParameterSource getResourceParameters(final Entity resource) {
+        BigDecimal quantity = resource.getDecimalField(ResourceFields.QUANTITY);
+        BigDecimal reservedQuantity = resource.getDecimalField(ResourceFields.RESERVED_QUANTITY);
+        BigDecimal availableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+        return new MapSqlParameterSource("location_id", getId(resource.getBelongsToField(ResourceFields.LOCATION)))
+                .addValue("product_id", getId(resource.getBelongsToField(ResourceFields.PRODUCT)))
+                .addValue("quantity", quantity)
+                .addValue("reservedquantity", (reservedQuantity == null) ? BigDecimal.ZERO : reservedQuantity)
+                .addValue("availablequantity", (availableQuantity == null) ? quantity : availableQuantity)
+                .addValue("price", resource.getDecimalField(ResourceFields.PRICE))
+                .addValue("batch", resource.getStringField(ResourceFields.BATCH))
+                .addValue("time", resource.getField(ResourceFields.TIME))
+                .addValue("productiondate", resource.getField(ResourceFields.PRODUCTION_DATE))
+                .addValue("expirationdate", resource.getField(ResourceFields.EXPIRATION_DATE))
+                .addValue("storagelocation_id", getId(resource.getBelongsToField(ResourceFields.STORAGE_LOCATION)))
+                .addValue("additionalcode_id", getId(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE)))
+                .addValue("palletnumber_id", getId(resource.getBelongsToField(ResourceFields.PALLET_NUMBER)))
+                .addValue("typeofpallet", resource.getStringField(ResourceFields.TYPE_OF_PALLET))
+                .addValue("waste", resource.getBooleanField(ResourceFields.WASTE))
+                .addValue("givenunit", resource.getStringField(ResourceFields.GIVEN_UNIT))
+                .addValue("quantityinadditionalunit", resource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT))
+                .addValue("conversion", resource.getDecimalField(ResourceFields.CONVERSION))
+                .addValue("username", resource.getStringField(ResourceFields.USER_NAME));
+    }
+
+    private void addResourceStocks(final List<Entity> resources) {
+        Map<Long, Entity> products = Maps.newLinkedHashMap();
+        Map<Long, BigDecimal> quantities = Maps.newHashMap();
+        Entity warehouse = null;
+
+        for (Entity resource : resources) {
+            Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
+
+            products.putIfAbsent(product.getId(), product);
+            quantities.merge(product.getId(), resource.getDecimalField(ResourceFields.QUANTITY), BigDecimal::add);
+
+            warehouse = resource.getBelongsToField(ResourceFields.LOCATION);
+        }
+
+        for (Map.Entry<Long, Entity> product : products.entrySet()) {
+            resourceStockService.addResourceStock(product.getValue(), warehouse, quantities.get(product.getKey()));
+        }
+    }
+
+    private void updateReservations(final Entity document, final List<Entity> positions) {
+        if (!reservationsService.reservationsEnabledForDocumentPositions(document)) {
+            return;
+        }
+
+        for (Entity position : positions) {
+            reservationsService.updateReservationFromDocumentPosition(position);
+        }
+    }
+
+    private List<Long> getNextIds(final String sequence, final int count) {
+        return jdbcTemplate.queryForList(String.format(NEXT_IDS, sequence), Collections.singletonMap("count", count),
+                Long.class);
+    }
+
+    private void batchUpdate(final String query, final List<SqlParameterSource> parameters) {
+        if (!parameters.isEmpty()) {
+            jdbcTemplate.batchUpdate(query, parameters.toArray(new SqlParameterSource[parameters.size()]));
+        }
+    }
+
+    private List<Entity> getAttributesForWarehouse(final Entity warehouse) {
+        return dataDefinitionService
+                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_ATTRIBUTE).find()
+                .add(SearchRestrictions.belongsTo(AttributeFields.LOCATION, warehouse)).list().getEntities();
+    }
+
+    private static Long getId(final Entity entity) {
+        return (entity == null) ? null : entity.getId();
+    }
+
+    private DataDefinition getDocumentDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_DOCUMENT);
+    }
+
+    private DataDefinition getPositionDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION);
+    }
+
+    private DataDefinition getResourceDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+    }
+
+}
@@ -33,6 +33,23 @@ public interface ResourceManagementService {
 
     void createResourcesForReceiptDocuments(final Entity document);
 
+    /**
+     * Creates, but doesn't save, resource which receipt of given position makes in the warehouse. Attribute values and resource
+     * stock are not touched.
+     *
+     * @param document
+     *            inbound document
+     * @param warehouse
+     *            warehouse to which position is received
+     * @param position
+     *            document position
+     * @param date
+     *            time of resource
+     * @return new resource entity
+     */
+    Entity buildResourceForReceiptPosition(final Entity document, final Entity warehouse, final Entity position,
+            final Object date);
+
     void updateResourcesForReleaseDocuments(final Entity document);
 
     void moveResourcesForTransferDocument(Entity document);
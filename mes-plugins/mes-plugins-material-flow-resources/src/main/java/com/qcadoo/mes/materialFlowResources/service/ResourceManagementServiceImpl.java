@@ -29,6 +29,7 @@ import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.mes.materialFlowResources.constants.*;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -73,6 +74,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private CostNormsService costNormsService;
+
     public ResourceManagementServiceImpl() {
 
     }
@@ -93,6 +97,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
             createResource(document, warehouse, position, date);
         }
+
+        costNormsService.updateCostIndexForReceiptDocument(document);
     }
 
     private void setResourceAttributesFromPosition(final Entity resource, final Entity position) {
@@ -148,6 +154,23 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_RESOURCE);
 
+        Entity resource = buildResourceForReceiptPosition(document, warehouse, position, date);
+
+        setResourceAttributesFromPosition(resource, position);
+
+        resourceStockService.addResourceStock(resource);
+        resource = resourceDD.save(resource);
+        position.setField("resourceReceiptDocument", resource.getId().toString());
+        return resource;
+
+    }
+
+    @Override
+    public Entity buildResourceForReceiptPosition(final Entity document, final Entity warehouse, final Entity position,
+            final Object date) {
+        DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
         Entity resource = resourceDD.create();
         Entity user = document.getBelongsToField(DocumentFields.USER);
@@ -178,13 +201,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             resource.setField(ResourceFields.CONVERSION, position.getField(PositionFields.CONVERSION));
         }
 
-        setResourceAttributesFromPosition(resource, position);
-
-        resourceStockService.addResourceStock(resource);
-        resource = resourceDD.save(resource);
-        position.setField("resourceReceiptDocument", resource.getId().toString());
         return resource;
-
     }
 
     public Entity createResource(final Entity position, final Entity warehouse, final Entity resource, final BigDecimal quantity,
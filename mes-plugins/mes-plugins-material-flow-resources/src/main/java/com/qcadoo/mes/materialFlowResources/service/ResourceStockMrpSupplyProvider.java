@@ -0,0 +1,68 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.technologies.mrp.MrpSupply;
+import com.qcadoo.mes.technologies.mrp.MrpSupplyProvider;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+/**
+ * Supplies stock available in all warehouses, that is stock quantity without reserved quantity, to material requirements
+ * planning.
+ */
+@Service
+@RunIfEnabled(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER)
+public class ResourceStockMrpSupplyProvider implements MrpSupplyProvider {
+
+    private static final String AVAILABLE_QUANTITIES_QUERY = "SELECT product_id, SUM(availablequantity) AS quantity "
+            + "FROM materialflowresources_resourcestock WHERE product_id IN (:productIds) GROUP BY product_id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<MrpSupply> getSupplies(final Collection<Long> productIds) {
+        List<MrpSupply> supplies = Lists.newArrayList();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(AVAILABLE_QUANTITIES_QUERY,
+                Collections.singletonMap("productIds", productIds))) {
+            supplies.add(new MrpSupply(((Number) row.get("product_id")).longValue(), null, (BigDecimal) row.get("quantity")));
+        }
+
+        return supplies;
+    }
+
+}
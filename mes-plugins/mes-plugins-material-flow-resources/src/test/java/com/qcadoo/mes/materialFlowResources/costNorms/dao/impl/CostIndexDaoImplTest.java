@@ -0,0 +1,142 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.costNorms.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostIndexDao;
+import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.ReceiptCost;
+
+public class CostIndexDaoImplTest {
+
+    private static final Long L_WAREHOUSE_ID = 1L;
+
+    private static final Date L_RECEIPT_TIME = new Date(1000L);
+
+    private CostIndexDao costIndexDao;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        costIndexDao = new CostIndexDaoImpl();
+
+        ReflectionTestUtils.setField(costIndexDao, "jdbcTemplate", jdbcTemplate);
+    }
+
+    private ReceiptCost mockReceiptCost(final Long productId, final BigDecimal price) {
+        ReceiptCost receiptCost = new ReceiptCost(productId);
+
+        receiptCost.setLastPurchaseCost(price);
+
+        return receiptCost;
+    }
+
+    @Test
+    public void shouldInsertOnlyRowsWhichWereNotUpdated() {
+        // given
+        given(jdbcTemplate.batchUpdate(startsWith("UPDATE"), any(SqlParameterSource[].class))).willReturn(new int[] { 1, 0 });
+
+        // when
+        costIndexDao.addReceiptCosts(L_WAREHOUSE_ID, L_RECEIPT_TIME,
+                Lists.newArrayList(mockReceiptCost(10L, BigDecimal.ONE), mockReceiptCost(20L, BigDecimal.TEN)));
+
+        // then
+        ArgumentCaptor<SqlParameterSource[]> insertCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), insertCaptor.capture());
+
+        assertEquals(1, insertCaptor.getValue().length);
+        assertEquals(20L, insertCaptor.getValue()[0].getValue("productId"));
+        assertEquals(BigDecimal.TEN, insertCaptor.getValue()[0].getValue("lastPurchaseCost"));
+        assertEquals(L_RECEIPT_TIME, insertCaptor.getValue()[0].getValue("receiptTime"));
+    }
+
+    @Test
+    public void shouldNotInsertIfAllRowsWereUpdated() {
+        // given
+        given(jdbcTemplate.batchUpdate(startsWith("UPDATE"), any(SqlParameterSource[].class))).willReturn(new int[] { 1 });
+
+        // when
+        costIndexDao.addReceiptCosts(L_WAREHOUSE_ID, L_RECEIPT_TIME, Lists.newArrayList(mockReceiptCost(10L, BigDecimal.ONE)));
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT"), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void shouldLockIndexRowsBeforeWritingThem() {
+        // given
+        given(jdbcTemplate.batchUpdate(startsWith("UPDATE"), any(SqlParameterSource[].class))).willReturn(new int[] { 0 });
+
+        // when
+        costIndexDao.addReceiptCosts(L_WAREHOUSE_ID, L_RECEIPT_TIME, Lists.newArrayList(mockReceiptCost(10L, BigDecimal.ONE)));
+
+        // then
+        InOrder inOrder = inOrder(jdbcTemplate);
+
+        inOrder.verify(jdbcTemplate).queryForList(startsWith("SELECT pg_advisory_xact_lock"),
+                eq(Collections.singletonMap("keys", Lists.newArrayList("10_1"))));
+        inOrder.verify(jdbcTemplate).batchUpdate(startsWith("UPDATE"), any(SqlParameterSource[].class));
+        inOrder.verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void shouldSkipEmptyReceipt() {
+        // when
+        costIndexDao.addReceiptCosts(L_WAREHOUSE_ID, L_RECEIPT_TIME, Collections.<ReceiptCost> emptyList());
+
+        // then
+        verify(jdbcTemplate, never()).queryForList(anyString(), anyMap());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.internal.DefaultEntity;
+
+public class ReceiptDocumentBulkServiceTest {
+
+    private ResourceManagementServiceImpl resourceManagementService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition resourceDD, positionDD;
+
+    @Mock
+    private Entity document, user, warehouse, product, storageLocation, additionalCode, palletNumber;
+
+    private final Date time = new Date();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceManagementService = new ResourceManagementServiceImpl();
+
+        setField(resourceManagementService, "dataDefinitionService", dataDefinitionService);
+
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE)).willReturn(resourceDD);
+        given(resourceDD.create()).willAnswer(invocation -> new DefaultEntity(resourceDD));
+
+        given(document.getBelongsToField(DocumentFields.USER)).willReturn(user);
+        given(user.getStringField("firstName")).willReturn("Jan");
+        given(user.getStringField("lastName")).willReturn("Kowalski");
+
+        given(warehouse.getId()).willReturn(1L);
+        given(product.getId()).willReturn(2L);
+        given(storageLocation.getId()).willReturn(3L);
+        given(additionalCode.getId()).willReturn(4L);
+        given(palletNumber.getId()).willReturn(5L);
+
+        given(product.getField(ProductFields.UNIT)).willReturn("kg");
+        given(product.getStringField(ProductFields.UNIT)).willReturn("kg");
+    }
+
+    @Test
+    public final void shouldInsertResourceWithValuesOfResourceSavedByDocumentBuilder() {
+        // when
+        Entity resource = resourceManagementService.buildResourceForReceiptPosition(document, warehouse, createPosition(), time);
+        MapSqlParameterSource parameters = ReceiptDocumentBulkService.getResourceParameters(resource);
+
+        // then
+        assertSameValues(resource, parameters);
+        assertEquals("kg", parameters.getValue("givenunit"));
+        assertEquals(BigDecimal.ONE, parameters.getValue("conversion"));
+        assertEquals(new BigDecimal("10"), parameters.getValue("quantityinadditionalunit"));
+        assertEquals("Jan Kowalski", parameters.getValue("username"));
+    }
+
+    @Test
+    public final void shouldInsertResourceInAdditionalUnitWithValuesOfResourceSavedByDocumentBuilder() {
+        // given
+        given(product.getStringField(ProductFields.ADDITIONAL_UNIT)).willReturn("szt");
+
+        // when
+        Entity resource = resourceManagementService.buildResourceForReceiptPosition(document, warehouse, createPosition(), time);
+        MapSqlParameterSource parameters = ReceiptDocumentBulkService.getResourceParameters(resource);
+
+        // then
+        assertSameValues(resource, parameters);
+        assertEquals("szt", parameters.getValue("givenunit"));
+        assertEquals(new BigDecimal("2"), parameters.getValue("conversion"));
+        assertEquals(new BigDecimal("20"), parameters.getValue("quantityinadditionalunit"));
+    }
+
+    private Entity createPosition() {
+        Entity position = new DefaultEntity(positionDD);
+
+        position.setField(PositionFields.PRODUCT, product);
+        position.setField(PositionFields.QUANTITY, new BigDecimal("10"));
+        position.setField(PositionFields.GIVEN_QUANTITY, new BigDecimal("20"));
+        position.setField(PositionFields.GIVEN_UNIT, "szt");
+        position.setField(PositionFields.CONVERSION, new BigDecimal("2"));
+        position.setField(PositionFields.PRICE, new BigDecimal("3.5"));
+        position.setField(PositionFields.BATCH, "B1");
+        position.setField(PositionFields.PRODUCTION_DATE, new Date(0L));
+        position.setField(PositionFields.EXPIRATION_DATE, new Date(86400000L));
+        position.setField(PositionFields.STORAGE_LOCATION, storageLocation);
+        position.setField(PositionFields.ADDITIONAL_CODE, additionalCode);
+        position.setField(PositionFields.PALLET_NUMBER, palletNumber);
+        position.setField(PositionFields.TYPE_OF_PALLET, "01euro");
+        position.setField(PositionFields.WASTE, true);
+
+        return position;
+    }
+
+    private void assertSameValues(final Entity resource, final MapSqlParameterSource parameters) {
+        for (Map.Entry<String, Object> field : resource.getFields().entrySet()) {
+            String column = field.getKey().toLowerCase(Locale.ENGLISH);
+            Object value = field.getValue();
+
+            if (value instanceof Entity) {
+                column = column + "_id";
+                value = ((Entity) value).getId();
+            }
+
+            assertTrue("Resource field " + field.getKey() + " is not inserted", parameters.hasValue(column));
+            assertEquals("Resource field " + field.getKey(), value, parameters.getValue(column));
+        }
+    }
+
+}
@@ -45,6 +45,8 @@ import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.XlsxReportService;
 import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
 import com.qcadoo.mes.materialFlow.print.pdf.MaterialFlowPdfService;
 import com.qcadoo.mes.materialFlow.print.xls.MaterialFlowXlsService;
@@ -88,6 +90,9 @@ public class MaterialsInLocationService {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private XlsxReportService xlsxReportService;
+
     public boolean clearGeneratedOnCopy(final DataDefinition dataDefinition, final Entity entity) {
         entity.setField(FILE_NAME, null);
         entity.setField(GENERATED, false);
@@ -265,8 +270,13 @@ public class MaterialsInLocationService {
 
     public void printMaterialsInLocationDocuments(final ViewDefinitionState viewDefinitionState, final ComponentState state,
             final String[] args) {
-        reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
-                MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_MATERIALS_IN_LOCATION });
+        if (XlsxDocumentService.EXTENSION.equals(args[0])) {
+            xlsxReportService.printGeneratedReport(viewDefinitionState, state, MaterialFlowConstants.PLUGIN_IDENTIFIER,
+                    MaterialFlowConstants.MODEL_MATERIALS_IN_LOCATION);
+        } else {
+            reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
+                    MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_MATERIALS_IN_LOCATION });
+        }
     }
 
 }
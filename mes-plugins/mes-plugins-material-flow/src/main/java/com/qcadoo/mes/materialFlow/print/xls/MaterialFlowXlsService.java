@@ -23,32 +23,67 @@
  */
 package com.qcadoo.mes.materialFlow.print.xls;
 
-import static com.qcadoo.mes.basic.constants.ProductFields.NAME;
-import static com.qcadoo.mes.basic.constants.ProductFields.NUMBER;
-import static com.qcadoo.mes.basic.constants.ProductFields.UNIT;
+import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIAL_FLOW_FOR_DATE;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
 import java.util.Locale;
 import java.util.Map;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
-import com.qcadoo.mes.materialFlow.MaterialFlowService;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
-import com.qcadoo.report.api.xls.XlsHelper;
 
 @Service
-public final class MaterialFlowXlsService extends XlsDocumentService {
+public final class MaterialFlowXlsService extends XlsxDocumentService {
 
-    @Autowired
-    private MaterialFlowService materialFlowService;
+    /**
+     * Quantities of products seen in the locations of given materials in location, calculated the same way as
+     * MaterialFlowService.calculateShouldBeInLocation: the last stock correction plus transfers in, minus transfers out,
+     * not below zero, and summed up over the locations.
+     */
+    private static final String L_MATERIAL_QUANTITIES_QUERY = "WITH locations AS ("
+            + "SELECT DISTINCT location_id FROM materialflow_materialsinlocationcomponent "
+            + "WHERE materialsinlocation_id = :materialsInLocationId), "
+            + "seenproducts AS ("
+            + "SELECT transfer.locationto_id AS location_id, transfer.product_id FROM materialflow_transfer transfer "
+            + "JOIN locations ON locations.location_id = transfer.locationto_id "
+            + "UNION "
+            + "SELECT correction.location_id, correction.product_id FROM materialflow_stockcorrection correction "
+            + "JOIN locations ON locations.location_id = correction.location_id), "
+            + "lastcorrections AS ("
+            + "SELECT DISTINCT ON (correction.location_id, correction.product_id) correction.location_id, correction.product_id, "
+            + "correction.stockcorrectiondate, correction.found FROM materialflow_stockcorrection correction "
+            + "JOIN locations ON locations.location_id = correction.location_id "
+            + "ORDER BY correction.location_id, correction.product_id, correction.stockcorrectiondate DESC, correction.id DESC), "
+            + "quantities AS ("
+            + "SELECT seenproducts.product_id, GREATEST(COALESCE(lastcorrections.found, 0) "
+            + "+ COALESCE((SELECT SUM(transfer.quantity) FROM materialflow_transfer transfer "
+            + "WHERE transfer.locationto_id = seenproducts.location_id AND transfer.product_id = seenproducts.product_id "
+            + "AND transfer.time <= :forDate AND (lastcorrections.stockcorrectiondate IS NULL "
+            + "OR transfer.time > lastcorrections.stockcorrectiondate)), 0) "
+            + "- COALESCE((SELECT SUM(transfer.quantity) FROM materialflow_transfer transfer "
+            + "WHERE transfer.locationfrom_id = seenproducts.location_id AND transfer.product_id = seenproducts.product_id "
+            + "AND transfer.time <= :forDate AND (lastcorrections.stockcorrectiondate IS NULL "
+            + "OR transfer.time > lastcorrections.stockcorrectiondate)), 0), 0) AS quantity "
+            + "FROM seenproducts LEFT JOIN lastcorrections ON lastcorrections.location_id = seenproducts.location_id "
+            + "AND lastcorrections.product_id = seenproducts.product_id) "
+            + "SELECT product.number, product.name, product.unit, SUM(quantities.quantity) AS quantity "
+            + "FROM quantities JOIN basic_product product ON product.id = quantities.product_id "
+            + "GROUP BY product.id, product.number, product.name, product.unit ORDER BY product.number";
 
     @Autowired
     private TranslationService translationService;
@@ -57,41 +92,38 @@ public final class MaterialFlowXlsService extends XlsDocumentService {
     private NumberService numberService;
 
     @Autowired
-    private XlsHelper xlsHelper;
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity entity) {
-        HSSFRow header = sheet.createRow(0);
-        HSSFCell cell0 = header.createCell(0);
-        cell0.setCellValue(translationService.translate("materialFlow.materialFlow.report.columnHeader.number", locale));
-        xlsHelper.setCellStyle(sheet, cell0);
-        HSSFCell cell1 = header.createCell(1);
-        cell1.setCellValue(translationService.translate("materialFlow.materialFlow.report.columnHeader.name", locale));
-        xlsHelper.setCellStyle(sheet, cell1);
-        HSSFCell cell2 = header.createCell(2);
-        cell2.setCellValue(translationService.translate("materialFlow.materialFlow.report.columnHeader.quantity", locale));
-        xlsHelper.setCellStyle(sheet, cell2);
-        HSSFCell cell3 = header.createCell(3);
-        cell3.setCellValue(translationService.translate("materialFlow.materialFlow.report.columnHeader.unit", locale));
-        xlsHelper.setCellStyle(sheet, cell3);
+    protected void addHeader(final Sheet sheet, final Locale locale, final Entity entity) {
+        addHeaderRow(sheet, Lists.newArrayList(
+                translationService.translate("materialFlow.materialFlow.report.columnHeader.number", locale),
+                translationService.translate("materialFlow.materialFlow.report.columnHeader.name", locale),
+                translationService.translate("materialFlow.materialFlow.report.columnHeader.quantity", locale),
+                translationService.translate("materialFlow.materialFlow.report.columnHeader.unit", locale)));
+        setColumnWidths(sheet, 20, 50, 15, 10);
     }
 
     @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity materialsInLocation) {
-        Map<Entity, BigDecimal> reportData = materialFlowService.calculateMaterialQuantitiesInLocation(materialsInLocation);
-
-        int rowNum = 1;
-        for (Map.Entry<Entity, BigDecimal> data : reportData.entrySet()) {
-            HSSFRow row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(data.getKey().getStringField(NUMBER));
-            row.createCell(1).setCellValue(data.getKey().getStringField(NAME));
-            row.createCell(2).setCellValue(numberService.format(data.getValue()));
-            row.createCell(3).setCellValue(data.getKey().getStringField(UNIT));
-        }
-        sheet.autoSizeColumn((short) 0);
-        sheet.autoSizeColumn((short) 1);
-        sheet.autoSizeColumn((short) 2);
-        sheet.autoSizeColumn((short) 3);
+    protected void addSeries(final Sheet sheet, final Entity materialsInLocation) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("materialsInLocationId", materialsInLocation.getId());
+        params.put("forDate", materialsInLocation.getField(MATERIAL_FLOW_FOR_DATE));
+
+        jdbcTemplate.query(L_MATERIAL_QUANTITIES_QUERY, params, new RowCallbackHandler() {
+
+            private int rowNum = 1;
+
+            @Override
+            public void processRow(final ResultSet rs) throws SQLException {
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue(rs.getString("number"));
+                row.createCell(1).setCellValue(rs.getString("name"));
+                row.createCell(2).setCellValue(numberService.format(rs.getBigDecimal("quantity")));
+                row.createCell(3).setCellValue(rs.getString("unit"));
+            }
+
+        });
     }
 
     @Override
@@ -99,4 +131,19 @@ public final class MaterialFlowXlsService extends XlsDocumentService {
         return translationService.translate("materialFlow.materialFlow.report.title", locale);
     }
 
+    @Override
+    public String getPluginIdentifier() {
+        return MaterialFlowConstants.PLUGIN_IDENTIFIER;
+    }
+
+    @Override
+    public String getModelName() {
+        return MaterialFlowConstants.MODEL_MATERIALS_IN_LOCATION;
+    }
+
+    @Override
+    public String getAuthorizationRole() {
+        return "ROLE_MATERIAL_FLOW";
+    }
+
 }
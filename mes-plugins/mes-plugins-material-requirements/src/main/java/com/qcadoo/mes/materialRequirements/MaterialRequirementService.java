@@ -24,6 +24,8 @@
 package com.qcadoo.mes.materialRequirements;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
@@ -89,4 +91,16 @@ public interface MaterialRequirementService {
     void generateMaterialRequirementDocuments(final ComponentState state, final Entity materialRequirement) throws IOException,
             DocumentException;
 
+    /**
+     * Gets quantities of products needed for material requirement orders, netted against stock and deliveries when material
+     * requirement has net requirements set
+     * 
+     * @param materialRequirement
+     *            material requirement
+     * 
+     * @return needed quantities by product id
+     * 
+     */
+    Map<Long, BigDecimal> getNeededProductQuantities(final Entity materialRequirement);
+
 }
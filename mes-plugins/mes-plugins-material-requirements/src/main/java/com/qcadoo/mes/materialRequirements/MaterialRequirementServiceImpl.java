@@ -24,6 +24,9 @@
 package com.qcadoo.mes.materialRequirements;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -32,7 +35,9 @@ import com.lowagie.text.DocumentException;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
 import com.qcadoo.mes.materialRequirements.print.pdf.MaterialRequirementPdfService;
 import com.qcadoo.mes.materialRequirements.print.xls.MaterialRequirementXlsService;
+import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.technologies.mrp.MrpEngine;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
@@ -50,6 +55,12 @@ public class MaterialRequirementServiceImpl implements MaterialRequirementServic
     @Autowired
     private MaterialRequirementXlsService materialRequirementXlsService;
 
+    @Autowired
+    private ProductQuantitiesService productQuantitiesService;
+
+    @Autowired
+    private MrpEngine mrpEngine;
+
     @Override
     public boolean checkIfInputProductsRequiredForTypeIsSelected(final DataDefinition entityDD, final Entity entity,
             final String fieldName, final String errorMessage) {
@@ -88,4 +99,18 @@ public class MaterialRequirementServiceImpl implements MaterialRequirementServic
         materialRequirementXlsService.generateDocument(materialRequirementWithFileName, state.getLocale());
     }
 
+    @Override
+    public Map<Long, BigDecimal> getNeededProductQuantities(final Entity materialRequirement) {
+        List<Entity> orders = materialRequirement.getManyToManyField(MaterialRequirementFields.ORDERS);
+
+        if (materialRequirement.getBooleanField(MaterialRequirementFields.NET_REQUIREMENTS)) {
+            return mrpEngine.calculate(orders).getPurchaseQuantities();
+        }
+
+        MrpAlgorithm algorithm = MrpAlgorithm.parseString(materialRequirement
+                .getStringField(MaterialRequirementFields.MRP_ALGORITHM));
+
+        return productQuantitiesService.getNeededProductQuantities(orders, algorithm, true);
+    }
+
 }
@@ -39,6 +39,8 @@ public final class MaterialRequirementFields {
 
     public static final String MRP_ALGORITHM = "mrpAlgorithm";
 
+    public static final String NET_REQUIREMENTS = "netRequirements";
+
     public static final String GENERATED = "generated";
 
     public static final String FILE_NAME = "fileName";
@@ -58,6 +58,8 @@ public class MaterialRequirementDetailsHooks {
         FieldComponent numberField = (FieldComponent) view.getComponentByReference(MaterialRequirementFields.NUMBER);
         FieldComponent nameField = (FieldComponent) view.getComponentByReference(MaterialRequirementFields.NAME);
         FieldComponent mrpAlgorithmField = (FieldComponent) view.getComponentByReference(MaterialRequirementFields.MRP_ALGORITHM);
+        FieldComponent netRequirementsField = (FieldComponent) view
+                .getComponentByReference(MaterialRequirementFields.NET_REQUIREMENTS);
 
         GridComponent ordersGrid = (GridComponent) view.getComponentByReference(MaterialRequirementFields.ORDERS);
 
@@ -66,6 +68,7 @@ public class MaterialRequirementDetailsHooks {
         numberField.setEnabled(!isGenerated);
         nameField.setEnabled(!isGenerated);
         mrpAlgorithmField.setEnabled(!isGenerated);
+        netRequirementsField.setEnabled(!isGenerated);
 
         ordersGrid.setEnabled(!isGenerated);
     }
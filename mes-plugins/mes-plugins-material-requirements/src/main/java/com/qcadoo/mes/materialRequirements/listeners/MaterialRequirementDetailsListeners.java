@@ -36,6 +36,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.XlsxReportService;
 import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.mes.orders.util.OrderHelperService;
@@ -60,6 +62,9 @@ public class MaterialRequirementDetailsListeners {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private XlsxReportService xlsxReportService;
+
     @Autowired
     private MaterialRequirementService materialRequirementService;
 
@@ -67,8 +72,13 @@ public class MaterialRequirementDetailsListeners {
     private OrderHelperService orderHelperService;
 
     public void printMaterialRequirement(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
-                MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
+        if (XlsxDocumentService.EXTENSION.equals(args[0])) {
+            xlsxReportService.printGeneratedReport(view, state, MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
+                    MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT);
+        } else {
+            reportService.printGeneratedReport(view, state, new String[] { args[0],
+                    MaterialRequirementsConstants.PLUGIN_IDENTIFIER, MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
+        }
     }
 
     // TODO KRNA generic candidate
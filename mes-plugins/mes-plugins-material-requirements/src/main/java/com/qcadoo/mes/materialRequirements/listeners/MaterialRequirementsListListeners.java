@@ -26,6 +26,8 @@ package com.qcadoo.mes.materialRequirements.listeners;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.XlsxReportService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.report.api.ReportService;
 import com.qcadoo.view.api.ComponentState;
@@ -37,9 +39,17 @@ public class MaterialRequirementsListListeners {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private XlsxReportService xlsxReportService;
+
     public void printMaterialRequirement(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
-                MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
+        if (XlsxDocumentService.EXTENSION.equals(args[0])) {
+            xlsxReportService.printGeneratedReport(view, state, MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
+                    MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT);
+        } else {
+            reportService.printGeneratedReport(view, state, new String[] { args[0],
+                    MaterialRequirementsConstants.PLUGIN_IDENTIFIER, MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
+        }
     }
 
 }
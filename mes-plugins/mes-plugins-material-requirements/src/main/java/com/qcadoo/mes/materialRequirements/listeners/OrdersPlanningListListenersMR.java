@@ -31,6 +31,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.lowagie.text.DocumentException;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.XlsxReportService;
 import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.mes.orders.util.OrderReportService;
@@ -52,6 +54,9 @@ public class OrdersPlanningListListenersMR {
     @Autowired
     private OrderReportService orderReportService;
 
+    @Autowired
+    private XlsxReportService xlsxReportService;
+
     public void printMaterialRequirementForOrder(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         Entity materialRequirement = printMaterialReqForOrder(state);
 
@@ -61,6 +66,14 @@ public class OrdersPlanningListListenersMR {
 
         try {
             materialRequirementService.generateMaterialRequirementDocuments(state, materialRequirement);
+
+            if (XlsxDocumentService.EXTENSION.equals(args[0])) {
+                view.redirectTo(xlsxReportService.getSavedReportUrl(MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
+                        MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT, materialRequirement.getId()), true, false);
+
+                return;
+            }
+
             view.redirectTo(
                     "/generateSavedReport/" + MaterialRequirementsConstants.PLUGIN_IDENTIFIER + "/"
                             + MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT + "." + args[0] + "?id="
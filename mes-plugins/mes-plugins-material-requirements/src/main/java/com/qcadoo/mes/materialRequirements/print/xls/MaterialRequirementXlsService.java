@@ -27,26 +27,30 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
-import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
-import com.qcadoo.mes.technologies.ProductQuantitiesService;
-import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
+import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
-import com.qcadoo.report.api.xls.XlsHelper;
 
 @Service
-public final class MaterialRequirementXlsService extends XlsDocumentService {
+public final class MaterialRequirementXlsService extends XlsxDocumentService {
+
+    private static final String L_PRODUCTS_QUERY = "SELECT id, number, name, unit FROM basic_product WHERE id IN (:ids)";
+
+    private static final int L_PRODUCTS_PARTITION_SIZE = 1000;
 
     @Autowired
     private TranslationService translationService;
@@ -55,56 +59,54 @@ public final class MaterialRequirementXlsService extends XlsDocumentService {
     private NumberService numberService;
 
     @Autowired
-    private XlsHelper xlsHelper;
+    private MaterialRequirementService materialRequirementService;
 
     @Autowired
-    private ProductQuantitiesService productQuantitiesService;
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity materialRequirement) {
-        HSSFRow header = sheet.createRow(0);
-        HSSFCell cell0 = header.createCell(0);
-        cell0.setCellValue(translationService.translate("basic.product.number.label", locale));
-        xlsHelper.setCellStyle(sheet, cell0);
-        HSSFCell cell1 = header.createCell(1);
-        cell1.setCellValue(translationService.translate("basic.product.name.label", locale));
-        xlsHelper.setCellStyle(sheet, cell1);
-        HSSFCell cell2 = header.createCell(2);
-        cell2.setCellValue(translationService.translate("technologies.technologyOperationComponent.quantity.label", locale));
-        xlsHelper.setCellStyle(sheet, cell2);
-        HSSFCell cell3 = header.createCell(3);
-        cell3.setCellValue(translationService.translate("basic.product.unit.label", locale));
-        xlsHelper.setCellStyle(sheet, cell3);
+    protected void addHeader(final Sheet sheet, final Locale locale, final Entity materialRequirement) {
+        addHeaderRow(sheet, Lists.newArrayList(translationService.translate("basic.product.number.label", locale),
+                translationService.translate("basic.product.name.label", locale),
+                translationService.translate("technologies.technologyOperationComponent.quantity.label", locale),
+                translationService.translate("basic.product.unit.label", locale)));
+        setColumnWidths(sheet, 20, 50, 15, 10);
     }
 
     @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity materialRequirement) {
+    protected void addSeries(final Sheet sheet, final Entity materialRequirement) {
+        Map<Long, BigDecimal> neededProductQuantities = materialRequirementService.getNeededProductQuantities(materialRequirement);
+
         int rowNum = 1;
-        List<Entity> orders = materialRequirement.getManyToManyField(MaterialRequirementFields.ORDERS);
-        MrpAlgorithm algorithm = MrpAlgorithm.parseString(materialRequirement
-                .getStringField(MaterialRequirementFields.MRP_ALGORITHM));
-
-        Map<Long, BigDecimal> neededProductQuantities = productQuantitiesService.getNeededProductQuantities(orders, algorithm,
-                true);
-
-        for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
-
-            HSSFRow row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(product.getStringField(ProductFields.NUMBER));
-            row.createCell(1).setCellValue(product.getStringField(ProductFields.NAME));
-            row.createCell(2).setCellValue(numberService.setScale(neededProductQuantity.getValue()).doubleValue());
-            String unit = product.getStringField(ProductFields.UNIT);
-            if (unit == null) {
-                row.createCell(3).setCellValue("");
-            } else {
-                row.createCell(3).setCellValue(unit);
+
+        for (List<Long> productIds : Iterables.partition(neededProductQuantities.keySet(), L_PRODUCTS_PARTITION_SIZE)) {
+            Map<Long, Map<String, Object>> products = getProducts(productIds);
+
+            for (Long productId : productIds) {
+                Map<String, Object> product = products.get(productId);
+
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue((String) product.get("number"));
+                row.createCell(1).setCellValue((String) product.get("name"));
+                row.createCell(2).setCellValue(numberService.setScale(neededProductQuantities.get(productId)).doubleValue());
+                String unit = (String) product.get("unit");
+                if (unit == null) {
+                    row.createCell(3).setCellValue("");
+                } else {
+                    row.createCell(3).setCellValue(unit);
+                }
             }
         }
-        sheet.autoSizeColumn((short) 0);
-        sheet.autoSizeColumn((short) 1);
-        sheet.autoSizeColumn((short) 2);
-        sheet.autoSizeColumn((short) 3);
+    }
+
+    private Map<Long, Map<String, Object>> getProducts(final List<Long> productIds) {
+        Map<Long, Map<String, Object>> products = Maps.newHashMapWithExpectedSize(productIds.size());
+
+        for (Map<String, Object> product : jdbcTemplate.queryForList(L_PRODUCTS_QUERY, ImmutableMap.of("ids", productIds))) {
+            products.put(((Number) product.get("id")).longValue(), product);
+        }
+
+        return products;
     }
 
     @Override
@@ -112,4 +114,19 @@ public final class MaterialRequirementXlsService extends XlsDocumentService {
         return translationService.translate("materialRequirements.materialRequirement.report.title", locale);
     }
 
+    @Override
+    public String getPluginIdentifier() {
+        return MaterialRequirementsConstants.PLUGIN_IDENTIFIER;
+    }
+
+    @Override
+    public String getModelName() {
+        return MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT;
+    }
+
+    @Override
+    public String getAuthorizationRole() {
+        return "ROLE_REQUIREMENTS";
+    }
+
 }
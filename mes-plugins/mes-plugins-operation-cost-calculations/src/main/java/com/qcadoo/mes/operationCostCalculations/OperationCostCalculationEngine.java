@@ -0,0 +1,382 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.operationCostCalculations;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.costNormsForOperation.constants.CalculationOperationComponentFields;
+import com.qcadoo.mes.costNormsForOperation.constants.TechnologyOperationComponentFieldsCNFO;
+import com.qcadoo.mes.operationTimeCalculations.OperationWorkTime;
+import com.qcadoo.mes.operationTimeCalculations.dto.OperationTimes;
+import com.qcadoo.mes.operationTimeCalculations.dto.OperationTimesContainer;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Calculates operation costs of a whole calculation operation components tree in one linear pass.
+ * 
+ * The tree is flattened into an array ordered children-first, everything the single operation costs depend on (operation runs,
+ * work times, hourly rates, piecework norms) is gathered up front with one query per kind of data, and the calculated values
+ * are written back with a single batch update instead of saving each node separately.
+ */
+@Service
+public class OperationCostCalculationEngine {
+
+    private static final String L_ID = "id";
+
+    private static final String L_AVERAGE_MACHINE_HOURLY_COST_PB = "averageMachineHourlyCostPB";
+
+    private static final String L_AVERAGE_LABOR_HOURLY_COST_PB = "averageLaborHourlyCostPB";
+
+    private static final BigDecimal L_SECONDS_IN_HOUR = BigDecimal.valueOf(3600);
+
+    private static final BigDecimal L_ONE_HUNDRED = BigDecimal.valueOf(100);
+
+    private static final int L_MAX_UNSCALED_VALUE = 7;
+
+    private static final String L_UPDATE_HOURLY_COSTS = "UPDATE costnormsforoperation_calculationoperationcomponent SET "
+            + "duration = :duration, machinehourlycost = :machineHourlyCost, laborhourlycost = :laborHourlyCost, "
+            + "totalmachineoperationcost = :totalMachineOperationCost, totallaboroperationcost = :totalLaborOperationCost, "
+            + "totalmachineoperationcostwithmargin = :totalMachineOperationCostWithMargin, "
+            + "totallaboroperationcostwithmargin = :totalLaborOperationCostWithMargin, operationcost = :operationCost, "
+            + "operationmargincost = :operationMarginCost, totaloperationcost = :totalOperationCost WHERE id = :id";
+
+    private static final String L_UPDATE_PIECEWORK_COSTS = "UPDATE costnormsforoperation_calculationoperationcomponent SET "
+            + "pieces = :pieces, operationcost = :operationCost, operationmargincost = :operationMarginCost, "
+            + "totaloperationcost = :totalOperationCost WHERE id = :id";
+
+    private static final Set<String> L_VALIDATED_COST_FIELDS = Sets.newHashSet(
+            CalculationOperationComponentFields.MACHINE_HOURLY_COST, CalculationOperationComponentFields.LABOR_HOURLY_COST,
+            CalculationOperationComponentFields.TOTAL_MACHINE_OPERATION_COST,
+            CalculationOperationComponentFields.TOTAL_LABOR_OPERATION_COST,
+            CalculationOperationComponentFields.TOTAL_MACHINE_OPERATION_COST_WITH_MARGIN,
+            CalculationOperationComponentFields.TOTAL_LABOR_OPERATION_COST_WITH_MARGIN,
+            CalculationOperationComponentFields.OPERATION_COST, CalculationOperationComponentFields.OPERATION_MARGIN_COST,
+            CalculationOperationComponentFields.TOTAL_OPERATION_COST);
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Calculates hourly costs of all operations in the (sub)tree starting at given node and writes them to the nodes.
+     * 
+     * @param root
+     *            root of the calculation operation components (sub)tree
+     * @param productionCostMargin
+     *            production cost margin
+     * @param realizationTimes
+     *            operation work times, by calculation operation component id
+     * @param hourlyCostFromOperation
+     *            take hourly rates from technology operation components instead of parameters
+     * 
+     * @return summed up machine and labor costs, under the machineHourlyCost and laborHourlyCost keys
+     */
+    public Map<String, BigDecimal> calculateHourlyCosts(final EntityTreeNode root, final BigDecimal productionCostMargin,
+            final OperationTimesContainer realizationTimes, final boolean hourlyCostFromOperation) {
+        checkArgument(root != null, "given operationComponent is empty");
+
+        MathContext mathContext = numberService.getMathContext();
+        BigDecimal margin = productionCostMargin.divide(L_ONE_HUNDRED, mathContext);
+
+        List<Entity> operationComponents = flatten(root);
+        int size = operationComponents.size();
+
+        OperationWorkTime[] workTimes = new OperationWorkTime[size];
+        BigDecimal[] machineHourlyCosts = new BigDecimal[size];
+        BigDecimal[] laborHourlyCosts = new BigDecimal[size];
+
+        fillWorkTimes(operationComponents, realizationTimes, workTimes);
+        fillHourlyRates(operationComponents, hourlyCostFromOperation, machineHourlyCosts, laborHourlyCosts);
+
+        BigDecimal totalMachineCost = BigDecimal.ZERO;
+        BigDecimal totalLaborCost = BigDecimal.ZERO;
+
+        List<SqlParameterSource> batch = Lists.newArrayListWithCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            BigDecimal machineHours = BigDecimal.valueOf(workTimes[i].getMachineWorkTime()).divide(L_SECONDS_IN_HOUR,
+                    mathContext);
+            BigDecimal laborHours = BigDecimal.valueOf(workTimes[i].getLaborWorkTime()).divide(L_SECONDS_IN_HOUR, mathContext);
+
+            BigDecimal operationMachineCost = machineHours.multiply(machineHourlyCosts[i], mathContext);
+            BigDecimal operationLaborCost = laborHours.multiply(laborHourlyCosts[i], mathContext);
+            BigDecimal operationCost = operationMachineCost.add(operationLaborCost, mathContext);
+            BigDecimal operationMarginCost = operationCost.multiply(margin, mathContext);
+
+            Map<String, Object> values = Maps.newHashMap();
+
+            values.put(CalculationOperationComponentFields.DURATION, workTimes[i].getDuration());
+            values.put(CalculationOperationComponentFields.MACHINE_HOURLY_COST, numberService.setScale(machineHourlyCosts[i]));
+            values.put(CalculationOperationComponentFields.LABOR_HOURLY_COST, numberService.setScale(laborHourlyCosts[i]));
+            values.put(CalculationOperationComponentFields.TOTAL_MACHINE_OPERATION_COST,
+                    numberService.setScale(operationMachineCost));
+            values.put(CalculationOperationComponentFields.TOTAL_LABOR_OPERATION_COST, numberService.setScale(operationLaborCost));
+            values.put(CalculationOperationComponentFields.TOTAL_MACHINE_OPERATION_COST_WITH_MARGIN, numberService
+                    .setScale(operationMachineCost.add(operationMachineCost.multiply(margin, mathContext), mathContext)));
+            values.put(CalculationOperationComponentFields.TOTAL_LABOR_OPERATION_COST_WITH_MARGIN, numberService
+                    .setScale(operationLaborCost.add(operationLaborCost.multiply(margin, mathContext), mathContext)));
+
+            putOperationCosts(values, numberService.setScale(operationCost), numberService.setScale(operationMarginCost));
+
+            totalMachineCost = totalMachineCost.add(numberService.setScale(operationMachineCost), mathContext);
+            totalLaborCost = totalLaborCost.add(numberService.setScale(operationLaborCost), mathContext);
+
+            addToBatch(batch, operationComponents.get(i), values);
+        }
+
+        writeBatch(L_UPDATE_HOURLY_COSTS, batch);
+
+        Map<String, BigDecimal> costs = Maps.newHashMap();
+
+        costs.put(CalculationOperationComponentFields.MACHINE_HOURLY_COST, totalMachineCost);
+        costs.put(CalculationOperationComponentFields.LABOR_HOURLY_COST, totalLaborCost);
+
+        return costs;
+    }
+
+    /**
+     * Calculates piecework costs of all operations in the (sub)tree starting at given node and writes them to the nodes.
+     * 
+     * @param root
+     *            root of the calculation operation components (sub)tree
+     * @param productionCostMargin
+     *            production cost margin
+     * @param operationRuns
+     *            operation runs, by technology operation component id
+     * 
+     * @return summed up operation cost
+     */
+    public BigDecimal calculatePieceworkCosts(final EntityTreeNode root, final BigDecimal productionCostMargin,
+            final Map<Long, BigDecimal> operationRuns) {
+        checkArgument(root != null, "given operationComponent is empty");
+
+        MathContext mathContext = numberService.getMathContext();
+        BigDecimal margin = productionCostMargin.divide(L_ONE_HUNDRED, mathContext);
+
+        List<Entity> operationComponents = flatten(root);
+        int size = operationComponents.size();
+
+        BigDecimal[] runs = new BigDecimal[size];
+
+        for (int i = 0; i < size; i++) {
+            runs[i] = operationRuns.get(getTechnologyOperationComponentId(operationComponents.get(i)));
+        }
+
+        BigDecimal totalCost = BigDecimal.ZERO;
+
+        List<SqlParameterSource> batch = Lists.newArrayListWithCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            Entity calculationOperationComponent = operationComponents.get(i);
+
+            BigDecimal pieceworkCost = BigDecimalUtils.convertNullToZero(calculationOperationComponent
+                    .getDecimalField(CalculationOperationComponentFields.PIECEWORK_COST));
+            BigDecimal numberOfOperations = BigDecimalUtils.convertNullToOne(calculationOperationComponent
+                    .getField(CalculationOperationComponentFields.NUMBER_OF_OPERATIONS));
+
+            BigDecimal operationCost = runs[i].multiply(pieceworkCost.divide(numberOfOperations, mathContext), mathContext);
+            BigDecimal operationMarginCost = operationCost.multiply(margin);
+
+            Map<String, Object> values = Maps.newHashMap();
+
+            values.put(CalculationOperationComponentFields.PIECES, numberService.setScale(runs[i]));
+
+            putOperationCosts(values, numberService.setScale(operationCost), numberService.setScale(operationMarginCost));
+
+            totalCost = totalCost.add(numberService.setScale(operationCost), mathContext);
+
+            addToBatch(batch, calculationOperationComponent, values);
+        }
+
+        writeBatch(L_UPDATE_PIECEWORK_COSTS, batch);
+
+        return totalCost;
+    }
+
+    /**
+     * Flattens given (sub)tree without recursion, so that every node is placed after all of its descendants.
+     * 
+     * @param root
+     *            root of the (sub)tree
+     * 
+     * @return nodes ordered children-first
+     */
+    List<Entity> flatten(final EntityTreeNode root) {
+        List<Entity> nodes = Lists.newArrayList();
+        Deque<EntityTreeNode> toVisit = Queues.newArrayDeque();
+
+        toVisit.push(root);
+
+        while (!toVisit.isEmpty()) {
+            EntityTreeNode node = toVisit.pop();
+
+            nodes.add(node);
+
+            for (EntityTreeNode child : node.getChildren()) {
+                toVisit.push(child);
+            }
+        }
+
+        Collections.reverse(nodes);
+
+        return nodes;
+    }
+
+    private void fillWorkTimes(final List<Entity> operationComponents, final OperationTimesContainer realizationTimes,
+            final OperationWorkTime[] workTimes) {
+        for (int i = 0; i < workTimes.length; i++) {
+            OperationTimes operationTimes = realizationTimes.get(operationComponents.get(i).getId());
+
+            checkArgument(operationTimes != null, "missing work times of calculation operation component");
+
+            workTimes[i] = operationTimes.getTimes();
+        }
+    }
+
+    private void fillHourlyRates(final List<Entity> operationComponents, final boolean hourlyCostFromOperation,
+            final BigDecimal[] machineHourlyCosts, final BigDecimal[] laborHourlyCosts) {
+        if (hourlyCostFromOperation) {
+            Map<Long, Entity> technologyOperationComponents = getTechnologyOperationComponents(operationComponents);
+
+            for (int i = 0; i < machineHourlyCosts.length; i++) {
+                Entity technologyOperationComponent = technologyOperationComponents
+                        .get(getTechnologyOperationComponentId(operationComponents.get(i)));
+
+                machineHourlyCosts[i] = BigDecimalUtils.convertNullToZero(technologyOperationComponent
+                        .getField(TechnologyOperationComponentFieldsCNFO.MACHINE_HOURLY_COST));
+                laborHourlyCosts[i] = BigDecimalUtils.convertNullToZero(technologyOperationComponent
+                        .getField(TechnologyOperationComponentFieldsCNFO.LABOR_HOURLY_COST));
+            }
+        } else {
+            Entity parameter = parameterService.getParameter();
+
+            BigDecimal machineHourlyCost = BigDecimalUtils.convertNullToZero(parameter
+                    .getDecimalField(L_AVERAGE_MACHINE_HOURLY_COST_PB));
+            BigDecimal laborHourlyCost = BigDecimalUtils.convertNullToZero(parameter
+                    .getDecimalField(L_AVERAGE_LABOR_HOURLY_COST_PB));
+
+            for (int i = 0; i < machineHourlyCosts.length; i++) {
+                machineHourlyCosts[i] = machineHourlyCost;
+                laborHourlyCosts[i] = laborHourlyCost;
+            }
+        }
+    }
+
+    private Map<Long, Entity> getTechnologyOperationComponents(final List<Entity> operationComponents) {
+        Set<Long> technologyOperationComponentIds = Sets.newHashSet();
+
+        for (Entity operationComponent : operationComponents) {
+            technologyOperationComponentIds.add(getTechnologyOperationComponentId(operationComponent));
+        }
+
+        List<Entity> technologyOperationComponents = dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).find()
+                .add(SearchRestrictions.in(L_ID, technologyOperationComponentIds)).list().getEntities();
+
+        Map<Long, Entity> technologyOperationComponentsByIds = Maps.newHashMap();
+
+        for (Entity technologyOperationComponent : technologyOperationComponents) {
+            technologyOperationComponentsByIds.put(technologyOperationComponent.getId(), technologyOperationComponent);
+        }
+
+        return technologyOperationComponentsByIds;
+    }
+
+    private Long getTechnologyOperationComponentId(final Entity calculationOperationComponent) {
+        return calculationOperationComponent.getBelongsToField(
+                CalculationOperationComponentFields.TECHNOLOGY_OPERATION_COMPONENT).getId();
+    }
+
+    private void putOperationCosts(final Map<String, Object> values, final BigDecimal operationCost,
+            final BigDecimal operationMarginCost) {
+        values.put(CalculationOperationComponentFields.OPERATION_COST, operationCost);
+        values.put(CalculationOperationComponentFields.OPERATION_MARGIN_COST, operationMarginCost);
+        values.put(CalculationOperationComponentFields.TOTAL_OPERATION_COST,
+                numberService.setScale(operationCost.add(operationMarginCost, numberService.getMathContext())));
+    }
+
+    private void addToBatch(final List<SqlParameterSource> batch, final Entity calculationOperationComponent,
+            final Map<String, Object> values) {
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            calculationOperationComponent.setField(value.getKey(), value.getValue());
+        }
+
+        if (isStorable(values)) {
+            batch.add(new MapSqlParameterSource(values).addValue(L_ID, calculationOperationComponent.getId()));
+        }
+    }
+
+    private boolean isStorable(final Map<String, Object> values) {
+        // the same bounds the model validators used to reject when each node was saved separately
+        for (String field : L_VALIDATED_COST_FIELDS) {
+            BigDecimal value = (BigDecimal) values.get(field);
+
+            if ((value != null) && ((value.signum() < 0) || (value.precision() - value.scale() > L_MAX_UNSCALED_VALUE))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void writeBatch(final String query, final List<SqlParameterSource> batch) {
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(query, batch.toArray(new SqlParameterSource[batch.size()]));
+        }
+    }
+
+}
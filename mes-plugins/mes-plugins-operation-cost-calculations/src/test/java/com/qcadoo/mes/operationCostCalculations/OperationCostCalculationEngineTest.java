@@ -0,0 +1,126 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.operationCostCalculations;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.mes.costNormsForOperation.constants.CalculationOperationComponentFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.NumberService;
+
+public class OperationCostCalculationEngineTest {
+
+    private OperationCostCalculationEngine operationCostCalculationEngine;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private EntityTreeNode root, firstChild, secondChild, grandChild;
+
+    @Before
+    public void init() {
+        initMocks(this);
+
+        operationCostCalculationEngine = new OperationCostCalculationEngine();
+
+        setField(operationCostCalculationEngine, "numberService", numberService);
+        setField(operationCostCalculationEngine, "jdbcTemplate", jdbcTemplate);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScale(any(BigDecimal.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        grandChild = mockNode(4L, 40L, "2", Collections.<EntityTreeNode> emptyList());
+        firstChild = mockNode(2L, 20L, "3", Arrays.asList(grandChild));
+        secondChild = mockNode(3L, 30L, "5", Collections.<EntityTreeNode> emptyList());
+        root = mockNode(1L, 10L, "10", Arrays.asList(firstChild, secondChild));
+    }
+
+    private EntityTreeNode mockNode(final Long id, final Long technologyOperationComponentId, final String pieceworkCost,
+            final List<EntityTreeNode> children) {
+        EntityTreeNode node = mock(EntityTreeNode.class);
+        Entity technologyOperationComponent = mock(Entity.class);
+
+        given(node.getId()).willReturn(id);
+        given(node.getChildren()).willReturn(children);
+        given(node.getDecimalField(CalculationOperationComponentFields.PIECEWORK_COST)).willReturn(new BigDecimal(pieceworkCost));
+        given(node.getBelongsToField(CalculationOperationComponentFields.TECHNOLOGY_OPERATION_COMPONENT)).willReturn(
+                technologyOperationComponent);
+        given(technologyOperationComponent.getId()).willReturn(technologyOperationComponentId);
+
+        return node;
+    }
+
+    @Test
+    public void shouldPlaceEveryNodeAfterItsDescendants() {
+        // when
+        List<Entity> nodes = operationCostCalculationEngine.flatten(root);
+
+        // then
+        assertEquals(4, nodes.size());
+        assertEquals(root, nodes.get(3));
+        assertEquals(true, nodes.indexOf(grandChild) < nodes.indexOf(firstChild));
+    }
+
+    @Test
+    public void shouldCalculatePieceworkCostsInOnePassAndWriteThemInOneBatch() {
+        // given
+        Map<Long, BigDecimal> operationRuns = ImmutableMap.of(10L, BigDecimal.ONE, 20L, new BigDecimal(2), 30L, BigDecimal.ONE,
+                40L, new BigDecimal(4));
+
+        // when
+        BigDecimal cost = operationCostCalculationEngine.calculatePieceworkCosts(root, BigDecimal.TEN, operationRuns);
+
+        // then
+        assertEquals(0, new BigDecimal(29).compareTo(cost));
+        verify(jdbcTemplate).batchUpdate(anyString(), any(SqlParameterSource[].class));
+        verify(grandChild).setField(eq(CalculationOperationComponentFields.OPERATION_COST), eq(new BigDecimal(8)));
+    }
+
+}
@@ -0,0 +1,330 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.operationalTasksForOrders;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.NumberAllocationService;
+import com.qcadoo.mes.operationalTasks.constants.OperationalTasksConstants;
+import com.qcadoo.mes.operationalTasksForOrders.constants.OperationalTaskTypeTaskOTFO;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.plugin.api.PluginStateResolver;
+
+/**
+ * Generates operational tasks of type 'execution operation in order' for a set of orders at once. Operation dates, names and
+ * production lines of all orders are read with one query and compared with already generated tasks, so only missing tasks are
+ * inserted, tasks whose source changed are updated, and tasks of operations no longer present in order's technology as well
+ * as duplicated tasks of the same operation are removed. Inserts and updates are written with one batch statement each, so names, descriptions and production lines are
+ * filled here the same way as OperationalTaskHooksOTFO (and its override for subcontracted operations) fills them on save.
+ */
+@Service
+public class OperationalTasksGenerationService {
+
+    private static final String L_ORDER_IDS = "orderIds";
+
+    private static final String L_TECH_SUBCONTRACTING = "techSubcontracting";
+
+    private static final String L_OPERATIONAL_TASK_TABLE = "operationaltasks_operationaltask";
+
+    private static final int L_OPERATIONAL_TASK_NUMBER_DIGITS = 6;
+
+    private static final int L_NAME_MAX_LENGTH = 1024;
+
+    private static final int L_DESCRIPTION_MAX_LENGTH = 1024;
+
+    private static final String NEXT_IDS = "SELECT nextval('%s') FROM generate_series(1, :count)";
+
+    private static final String OPERATIONAL_TASK_SEQUENCE = "operationaltasks_operationaltask_id_seq";
+
+    private static final String TECH_OPER_COMP_OPERATIONAL_TASK_SEQUENCE = "operationaltasksfororders_techopercompoperationaltask_id_seq";
+
+    private static final String SOURCES_QUERY = "SELECT o.id AS orderId, toc.id AS technologyOperationComponentId, "
+            + "op.name AS name, toc.comment AS description, tc.effectivedatefrom AS startDate, tc.effectivedateto AS finishDate, "
+            + "o.productionline_id AS productionLineId, toc.issubcontracting AS subcontracting FROM orders_order o "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = o.technology_id "
+            + "JOIN technologies_operation op ON op.id = toc.operation_id "
+            + "LEFT JOIN timenormsforoperations_techopercomptimecalculation tc ON tc.id = toc.techopercomptimecalculation_id "
+            + "WHERE o.id IN (:" + L_ORDER_IDS + ")";
+
+    private static final String OPERATIONAL_TASKS_QUERY = "SELECT t.id AS id, t.order_id AS orderId, "
+            + "tocot.technologyoperationcomponent_id AS technologyOperationComponentId, t.name AS name, "
+            + "t.description AS description, t.startdate AS startDate, t.finishdate AS finishDate, "
+            + "t.productionline_id AS productionLineId FROM operationaltasks_operationaltask t "
+            + "JOIN operationaltasksfororders_techopercompoperationaltask tocot ON tocot.id = t.techopercompoperationaltask_id "
+            + "WHERE t.order_id IN (:" + L_ORDER_IDS + ") AND t.typetask = :typeTask ORDER BY t.id";
+
+    private static final String INSERT_TECH_OPER_COMP_OPERATIONAL_TASK = "INSERT INTO "
+            + "operationaltasksfororders_techopercompoperationaltask (id, technologyoperationcomponent_id) "
+            + "VALUES (:techOperCompOperationalTaskId, :technologyOperationComponentId)";
+
+    private static final String INSERT_OPERATIONAL_TASK = "INSERT INTO operationaltasks_operationaltask "
+            + "(id, number, name, description, typetask, startdate, finishdate, productionline_id, order_id, "
+            + "techopercompoperationaltask_id) VALUES (:id, :number, :name, :description, :typeTask, :startDate, :finishDate, "
+            + ":productionLineId, :orderId, :techOperCompOperationalTaskId)";
+
+    private static final String UPDATE_OPERATIONAL_TASK = "UPDATE operationaltasks_operationaltask SET name = :name, "
+            + "description = :description, startdate = :startDate, finishdate = :finishDate, "
+            + "productionline_id = :productionLineId WHERE id = :id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NumberAllocationService numberAllocationService;
+
+    @Autowired
+    private PluginStateResolver pluginStateResolver;
+
+    /**
+     * Creates or refreshes operational tasks for all technology operation components of given orders. Operations without
+     * calculated dates are skipped, the same way as saving such a task fails validation.
+     * 
+     * @param orderIds
+     *            ids of orders
+     */
+    @Transactional
+    public void generateOperationalTasks(final Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+
+        List<TaskSource> obsolete = Lists.newArrayList();
+
+        Map<String, TaskSource> sources = getSources(orderIds);
+        Map<String, TaskSource> operationalTasks = getOperationalTasks(orderIds, obsolete);
+
+        List<TaskSource> missing = Lists.newArrayList();
+        List<SqlParameterSource> updateParameters = Lists.newArrayList();
+
+        for (Map.Entry<String, TaskSource> source : sources.entrySet()) {
+            TaskSource operationalTask = operationalTasks.remove(source.getKey());
+
+            if (operationalTask == null) {
+                missing.add(source.getValue());
+            } else if (!source.getValue().hasSameValues(operationalTask)) {
+                updateParameters.add(source.getValue().toParameters().addValue("id", operationalTask.getId()));
+            }
+        }
+
+        insertOperationalTasks(missing);
+        batchUpdate(UPDATE_OPERATIONAL_TASK, updateParameters);
+        obsolete.addAll(operationalTasks.values());
+
+        deleteOperationalTasks(obsolete);
+    }
+
+    private Map<String, TaskSource> getSources(final Collection<Long> orderIds) {
+        Map<String, TaskSource> sources = Maps.newLinkedHashMap();
+
+        boolean clearSubcontracted = pluginStateResolver.isEnabled(L_TECH_SUBCONTRACTING);
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(SOURCES_QUERY,
+                Collections.singletonMap(L_ORDER_IDS, orderIds))) {
+            TaskSource source = TaskSource.fromSource(row, clearSubcontracted);
+
+            if (source.hasValidDates()) {
+                sources.put(source.getKey(), source);
+            }
+        }
+
+        return sources;
+    }
+
+    private Map<String, TaskSource> getOperationalTasks(final Collection<Long> orderIds, final List<TaskSource> duplicates) {
+        Map<String, TaskSource> operationalTasks = Maps.newLinkedHashMap();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_ORDER_IDS, orderIds).addValue("typeTask",
+                OperationalTaskTypeTaskOTFO.EXECUTION_OPERATION_IN_ORDER.getStringValue());
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(OPERATIONAL_TASKS_QUERY, parameters)) {
+            TaskSource operationalTask = TaskSource.fromOperationalTask(row);
+
+            if (operationalTasks.containsKey(operationalTask.getKey())) {
+                duplicates.add(operationalTask);
+            } else {
+                operationalTasks.put(operationalTask.getKey(), operationalTask);
+            }
+        }
+
+        return operationalTasks;
+    }
+
+    private void insertOperationalTasks(final List<TaskSource> sources) {
+        if (sources.isEmpty()) {
+            return;
+        }
+
+        List<Long> operationalTaskIds = getNextIds(OPERATIONAL_TASK_SEQUENCE, sources.size());
+        List<Long> techOperCompOperationalTaskIds = getNextIds(TECH_OPER_COMP_OPERATIONAL_TASK_SEQUENCE, sources.size());
+        List<String> numbers = numberAllocationService.allocate(L_OPERATIONAL_TASK_TABLE, L_OPERATIONAL_TASK_NUMBER_DIGITS,
+                sources.size());
+
+        List<SqlParameterSource> techOperCompOperationalTaskParameters = Lists.newArrayList();
+        List<SqlParameterSource> operationalTaskParameters = Lists.newArrayList();
+
+        for (int index = 0; index < sources.size(); index++) {
+            TaskSource source = sources.get(index);
+            Long operationalTaskId = operationalTaskIds.get(index);
+            Long techOperCompOperationalTaskId = techOperCompOperationalTaskIds.get(index);
+
+            techOperCompOperationalTaskParameters.add(new MapSqlParameterSource("techOperCompOperationalTaskId",
+                    techOperCompOperationalTaskId).addValue("technologyOperationComponentId",
+                    source.getTechnologyOperationComponentId()));
+
+            operationalTaskParameters.add(source.toParameters().addValue("id", operationalTaskId)
+                    .addValue("number", numbers.get(index))
+                    .addValue("typeTask", OperationalTaskTypeTaskOTFO.EXECUTION_OPERATION_IN_ORDER.getStringValue())
+                    .addValue("orderId", source.getOrderId())
+                    .addValue("techOperCompOperationalTaskId", techOperCompOperationalTaskId));
+        }
+
+        batchUpdate(INSERT_TECH_OPER_COMP_OPERATIONAL_TASK, techOperCompOperationalTaskParameters);
+        batchUpdate(INSERT_OPERATIONAL_TASK, operationalTaskParameters);
+    }
+
+    private void deleteOperationalTasks(final Collection<TaskSource> operationalTasks) {
+        if (operationalTasks.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = Lists.newArrayList();
+
+        for (TaskSource operationalTask : operationalTasks) {
+            ids.add(operationalTask.getId());
+        }
+
+        dataDefinitionService.get(OperationalTasksConstants.PLUGIN_IDENTIFIER, OperationalTasksConstants.MODEL_OPERATIONAL_TASK)
+                .delete(ids.toArray(new Long[ids.size()]));
+    }
+
+    private List<Long> getNextIds(final String sequence, final int count) {
+        return jdbcTemplate.queryForList(String.format(NEXT_IDS, sequence), Collections.singletonMap("count", count),
+                Long.class);
+    }
+
+    private void batchUpdate(final String query, final List<SqlParameterSource> parameters) {
+        if (!parameters.isEmpty()) {
+            jdbcTemplate.batchUpdate(query, parameters.toArray(new SqlParameterSource[parameters.size()]));
+        }
+    }
+
+    private static final class TaskSource {
+
+        private final Long id;
+
+        private final Long orderId;
+
+        private final Long technologyOperationComponentId;
+
+        private final String name;
+
+        private final String description;
+
+        private final Date startDate;
+
+        private final Date finishDate;
+
+        private final Long productionLineId;
+
+        private TaskSource(final Map<String, Object> row, final boolean cleared) {
+            this.id = toLong(row.get("id"));
+            this.orderId = toLong(row.get("orderId"));
+            this.technologyOperationComponentId = toLong(row.get("technologyOperationComponentId"));
+            this.name = cleared ? null : StringUtils.left((String) row.get("name"), L_NAME_MAX_LENGTH);
+            this.description = cleared ? null : StringUtils.left((String) row.get("description"), L_DESCRIPTION_MAX_LENGTH);
+            this.startDate = (Date) row.get("startDate");
+            this.finishDate = (Date) row.get("finishDate");
+            this.productionLineId = cleared ? null : toLong(row.get("productionLineId"));
+        }
+
+        private static TaskSource fromSource(final Map<String, Object> row, final boolean clearSubcontracted) {
+            return new TaskSource(row, clearSubcontracted && Boolean.TRUE.equals(row.get("subcontracting")));
+        }
+
+        private static TaskSource fromOperationalTask(final Map<String, Object> row) {
+            return new TaskSource(row, false);
+        }
+
+        private static Long toLong(final Object value) {
+            return (value == null) ? null : ((Number) value).longValue();
+        }
+
+        private static Long toTime(final Date date) {
+            return (date == null) ? null : date.getTime();
+        }
+
+        private String getKey() {
+            return orderId + "_" + technologyOperationComponentId;
+        }
+
+        private boolean hasValidDates() {
+            return (startDate != null) && (finishDate != null) && !finishDate.before(startDate);
+        }
+
+        private boolean hasSameValues(final TaskSource other) {
+            return Objects.equals(name, other.name) && Objects.equals(description, other.description)
+                    && Objects.equals(toTime(startDate), toTime(other.startDate))
+                    && Objects.equals(toTime(finishDate), toTime(other.finishDate))
+                    && Objects.equals(productionLineId, other.productionLineId);
+        }
+
+        private MapSqlParameterSource toParameters() {
+            return new MapSqlParameterSource("name", name).addValue("description", description)
+                    .addValue("startDate", startDate).addValue("finishDate", finishDate)
+                    .addValue("productionLineId", productionLineId);
+        }
+
+        private Long getId() {
+            return id;
+        }
+
+        private Long getOrderId() {
+            return orderId;
+        }
+
+        private Long getTechnologyOperationComponentId() {
+            return technologyOperationComponentId;
+        }
+
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.operationalTasksForOrders.listeners;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.operationalTasksForOrders.OperationalTasksGenerationService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class OrdersPlanningListListenersOTFO {
+
+    @Autowired
+    private OperationalTasksGenerationService operationalTasksGenerationService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    public void createOperationalTasksForSelectedOrders(final ViewDefinitionState view, final ComponentState state,
+            final String[] args) {
+        GridComponent ordersGrid = (GridComponent) state;
+
+        Set<Long> selectedOrderIds = ordersGrid.getSelectedEntitiesIds();
+
+        if (selectedOrderIds.isEmpty()) {
+            return;
+        }
+
+        List<Entity> orders = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
+                .add(SearchRestrictions.in("id", selectedOrderIds)).add(SearchRestrictions.isNotNull(OrderFields.TECHNOLOGY))
+                .list().getEntities();
+
+        List<Long> orderIds = Lists.newArrayList();
+
+        for (Entity order : orders) {
+            orderIds.add(order.getId());
+        }
+
+        if (orderIds.isEmpty()) {
+            view.addMessage("orders.ordersPlanningList.info.operationalTasksNotCreated", MessageType.INFO);
+
+            return;
+        }
+
+        operationalTasksGenerationService.generateOperationalTasks(orderIds);
+
+        view.addMessage("orders.ordersPlanningList.info.operationalTasksCreated", MessageType.SUCCESS, false,
+                String.valueOf(orderIds.size()));
+    }
+
+}
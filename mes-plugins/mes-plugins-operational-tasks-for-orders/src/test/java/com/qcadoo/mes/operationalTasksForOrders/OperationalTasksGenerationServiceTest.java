@@ -0,0 +1,243 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.operationalTasksForOrders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.NumberAllocationService;
+import com.qcadoo.mes.operationalTasks.constants.OperationalTasksConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.plugin.api.PluginStateResolver;
+
+public class OperationalTasksGenerationServiceTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private static final Long L_TECHNOLOGY_OPERATION_COMPONENT_ID = 2L;
+
+    private static final Long L_PRODUCTION_LINE_ID = 3L;
+
+    private static final Date L_START_DATE = new Date(1000L);
+
+    private static final Date L_FINISH_DATE = new Date(2000L);
+
+    private OperationalTasksGenerationService operationalTasksGenerationService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberAllocationService numberAllocationService;
+
+    @Mock
+    private DataDefinition operationalTaskDD;
+
+    @Mock
+    private PluginStateResolver pluginStateResolver;
+
+    private List<Map<String, Object>> sources;
+
+    private List<Map<String, Object>> operationalTasks;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        operationalTasksGenerationService = new OperationalTasksGenerationService();
+
+        ReflectionTestUtils.setField(operationalTasksGenerationService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(operationalTasksGenerationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(operationalTasksGenerationService, "numberAllocationService", numberAllocationService);
+        ReflectionTestUtils.setField(operationalTasksGenerationService, "pluginStateResolver", pluginStateResolver);
+
+        sources = Lists.newArrayList();
+        operationalTasks = Lists.newArrayList();
+
+        given(jdbcTemplate.queryForList(startsWith("SELECT o.id"), anyMap())).willReturn(sources);
+        given(jdbcTemplate.queryForList(startsWith("SELECT t.id"), any(SqlParameterSource.class))).willReturn(operationalTasks);
+        given(jdbcTemplate.queryForList(contains("nextval"), anyMap(), eq(Long.class))).willReturn(Lists.newArrayList(10L),
+                Lists.newArrayList(20L));
+        given(dataDefinitionService.get(OperationalTasksConstants.PLUGIN_IDENTIFIER,
+                OperationalTasksConstants.MODEL_OPERATIONAL_TASK)).willReturn(operationalTaskDD);
+        given(numberAllocationService.allocate("operationaltasks_operationaltask", 6, 1)).willReturn(
+                Lists.newArrayList("000007"));
+    }
+
+    private Map<String, Object> mockRow(final Long id, final String name, final String description, final boolean subcontracting) {
+        Map<String, Object> row = Maps.newHashMap();
+
+        row.put("id", id);
+        row.put("orderId", L_ORDER_ID);
+        row.put("technologyOperationComponentId", L_TECHNOLOGY_OPERATION_COMPONENT_ID);
+        row.put("name", name);
+        row.put("description", description);
+        row.put("startDate", L_START_DATE);
+        row.put("finishDate", L_FINISH_DATE);
+        row.put("productionLineId", L_PRODUCTION_LINE_ID);
+        row.put("subcontracting", subcontracting);
+
+        return row;
+    }
+
+    private SqlParameterSource getInsertedOperationalTask() {
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO operationaltasks_operationaltask "),
+                parametersCaptor.capture());
+
+        assertEquals(1, parametersCaptor.getValue().length);
+
+        return parametersCaptor.getValue()[0];
+    }
+
+    @Test
+    public void shouldInsertMissingTaskWithAllocatedNumberAndTruncatedDescription() {
+        // given
+        sources.add(mockRow(null, "operation", StringUtils.repeat('x', 2000), false));
+
+        // when
+        operationalTasksGenerationService.generateOperationalTasks(Collections.singletonList(L_ORDER_ID));
+
+        // then
+        SqlParameterSource operationalTask = getInsertedOperationalTask();
+
+        assertEquals(10L, operationalTask.getValue("id"));
+        assertEquals("000007", operationalTask.getValue("number"));
+        assertEquals("operation", operationalTask.getValue("name"));
+        assertEquals(1024, ((String) operationalTask.getValue("description")).length());
+        assertEquals(L_PRODUCTION_LINE_ID, operationalTask.getValue("productionLineId"));
+        assertEquals(20L, operationalTask.getValue("techOperCompOperationalTaskId"));
+    }
+
+    @Test
+    public void shouldClearSubcontractedTaskIfTechSubcontractingIsEnabled() {
+        // given
+        sources.add(mockRow(null, "operation", "comment", true));
+
+        given(pluginStateResolver.isEnabled("techSubcontracting")).willReturn(true);
+
+        // when
+        operationalTasksGenerationService.generateOperationalTasks(Collections.singletonList(L_ORDER_ID));
+
+        // then
+        SqlParameterSource operationalTask = getInsertedOperationalTask();
+
+        assertNull(operationalTask.getValue("name"));
+        assertNull(operationalTask.getValue("description"));
+        assertNull(operationalTask.getValue("productionLineId"));
+    }
+
+    @Test
+    public void shouldKeepSubcontractedTaskIfTechSubcontractingIsDisabled() {
+        // given
+        sources.add(mockRow(null, "operation", "comment", true));
+
+        given(pluginStateResolver.isEnabled("techSubcontracting")).willReturn(false);
+
+        // when
+        operationalTasksGenerationService.generateOperationalTasks(Collections.singletonList(L_ORDER_ID));
+
+        // then
+        SqlParameterSource operationalTask = getInsertedOperationalTask();
+
+        assertEquals("operation", operationalTask.getValue("name"));
+        assertEquals(L_PRODUCTION_LINE_ID, operationalTask.getValue("productionLineId"));
+    }
+
+    @Test
+    public void shouldNotWriteTaskWhichIsAlreadyGenerated() {
+        // given
+        sources.add(mockRow(null, "operation", "comment", false));
+        operationalTasks.add(mockRow(5L, "operation", "comment", false));
+
+        // when
+        operationalTasksGenerationService.generateOperationalTasks(Collections.singletonList(L_ORDER_ID));
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+        verify(numberAllocationService, never()).allocate(anyString(), eq(6), eq(1));
+    }
+
+    @Test
+    public void shouldDeleteDuplicatedTasksOfTheSameOperation() {
+        // given
+        sources.add(mockRow(null, "operation", "comment", false));
+        operationalTasks.add(mockRow(5L, "operation", "comment", false));
+        operationalTasks.add(mockRow(6L, "operation", "comment", false));
+        operationalTasks.add(mockRow(7L, "operation", "comment", false));
+
+        // when
+        operationalTasksGenerationService.generateOperationalTasks(Collections.singletonList(L_ORDER_ID));
+
+        // then
+        verify(operationalTaskDD).delete(6L, 7L);
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void shouldNotDeleteAnythingIfThereAreNoObsoleteTasks() {
+        // given
+        sources.add(mockRow(null, "operation", "comment", false));
+        operationalTasks.add(mockRow(5L, "operation", "comment", false));
+
+        // when
+        operationalTasksGenerationService.generateOperationalTasks(Collections.singletonList(L_ORDER_ID));
+
+        // then
+        verify(operationalTaskDD, never()).delete(Matchers.<Long> anyVararg());
+    }
+
+}
@@ -23,6 +23,10 @@
  */
 package com.qcadoo.mes.productCatalogNumbers;
 
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.collect.Table;
 import com.qcadoo.model.api.Entity;
 
 public interface ProductCatalogNumbersService {
@@ -40,4 +44,27 @@ public interface ProductCatalogNumbersService {
      */
     Entity getProductCatalogNumber(final Entity product, final Entity supplier);
 
+    /**
+     * Gets product catalog numbers for all pairs of given products and suppliers with one query
+     * 
+     * @param productIds
+     *            ids of products
+     * 
+     * @param supplierIds
+     *            ids of suppliers
+     * 
+     * @return product catalog numbers by supplier id (row) and product id (column)
+     */
+    Table<Long, Long, Entity> getProductCatalogNumbers(final Collection<Long> productIds, final Collection<Long> supplierIds);
+
+    /**
+     * Gets catalog numbers of given product catalog numbers with one query
+     * 
+     * @param productCatalogNumberIds
+     *            ids of product catalog numbers
+     * 
+     * @return catalog numbers by product catalog number id
+     */
+    Map<Long, String> getCatalogNumbers(final Collection<Long> productCatalogNumberIds);
+
 }
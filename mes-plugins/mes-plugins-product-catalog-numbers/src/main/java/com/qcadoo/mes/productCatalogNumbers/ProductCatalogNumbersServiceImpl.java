@@ -23,20 +23,34 @@
  */
 package com.qcadoo.mes.productCatalogNumbers;
 
+import static com.qcadoo.mes.productCatalogNumbers.constants.ProductCatalogNumberFields.CATALOG_NUMBER;
 import static com.qcadoo.mes.productCatalogNumbers.constants.ProductCatalogNumberFields.COMPANY;
 import static com.qcadoo.mes.productCatalogNumbers.constants.ProductCatalogNumberFields.PRODUCT;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.qcadoo.mes.productCatalogNumbers.constants.ProductCatalogNumbersConstants;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class ProductCatalogNumbersServiceImpl implements ProductCatalogNumbersService {
 
+    private static final String L_ID = "id";
+
+    private static final String L_DOT_ID = ".id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -49,4 +63,54 @@ public class ProductCatalogNumbersServiceImpl implements ProductCatalogNumbersSe
                 .setMaxResults(1).uniqueResult();
     }
 
+    @Override
+    public Table<Long, Long, Entity> getProductCatalogNumbers(final Collection<Long> productIds,
+            final Collection<Long> supplierIds) {
+        Table<Long, Long, Entity> productCatalogNumbers = HashBasedTable.create();
+
+        if (productIds.isEmpty() || supplierIds.isEmpty()) {
+            return productCatalogNumbers;
+        }
+
+        List<Entity> entities = getProductCatalogNumberDD().find().createAlias(PRODUCT, PRODUCT).createAlias(COMPANY, COMPANY)
+                .add(SearchRestrictions.in(PRODUCT + L_DOT_ID, productIds))
+                .add(SearchRestrictions.in(COMPANY + L_DOT_ID, supplierIds)).list().getEntities();
+
+        for (Entity productCatalogNumber : entities) {
+            Long supplierId = productCatalogNumber.getBelongsToField(COMPANY).getId();
+            Long productId = productCatalogNumber.getBelongsToField(PRODUCT).getId();
+
+            if (!productCatalogNumbers.contains(supplierId, productId)) {
+                productCatalogNumbers.put(supplierId, productId, productCatalogNumber);
+            }
+        }
+
+        return productCatalogNumbers;
+    }
+
+    @Override
+    public Map<Long, String> getCatalogNumbers(final Collection<Long> productCatalogNumberIds) {
+        Map<Long, String> catalogNumbers = Maps.newHashMap();
+
+        if (productCatalogNumberIds.isEmpty()) {
+            return catalogNumbers;
+        }
+
+        List<Entity> entities = getProductCatalogNumberDD().find().add(SearchRestrictions.in(L_ID, productCatalogNumberIds))
+                .setProjection(SearchProjections.list().add(SearchProjections.alias(SearchProjections.id(), L_ID))
+                        .add(SearchProjections.alias(SearchProjections.field(CATALOG_NUMBER), CATALOG_NUMBER)))
+                .list().getEntities();
+
+        for (Entity productCatalogNumber : entities) {
+            catalogNumbers.put((Long) productCatalogNumber.getField(L_ID), productCatalogNumber.getStringField(CATALOG_NUMBER));
+        }
+
+        return catalogNumbers;
+    }
+
+    private DataDefinition getProductCatalogNumberDD() {
+        return dataDefinitionService.get(ProductCatalogNumbersConstants.PLUGIN_IDENTIFIER,
+                ProductCatalogNumbersConstants.MODEL_PRODUCT_CATALOG_NUMBERS);
+    }
+
 }
@@ -37,7 +37,7 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.NumberAllocationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionCounting.ProductionTrackingService;
@@ -58,6 +58,10 @@ import com.qcadoo.view.api.utils.NumberGeneratorService;
 @Service
 public class ProductionTrackingHooks {
 
+    private static final String L_PRODUCTION_TRACKING_TABLE = "productioncounting_productiontracking";
+
+    private static final int L_PRODUCTION_TRACKING_NUMBER_DIGITS = 6;
+
     @Autowired
     private NumberGeneratorService numberGeneratorService;
 
@@ -82,6 +86,9 @@ public class ProductionTrackingHooks {
     @Autowired
     private ProductionTrackingService productionTrackingService;
 
+    @Autowired
+    private NumberAllocationService numberAllocationService;
+
     public void onCreate(final DataDefinition productionTrackingDD, final Entity productionTracking) {
         setInitialState(productionTracking);
     }
@@ -197,8 +204,7 @@ public class ProductionTrackingHooks {
 
     private void setNumberFromSequence(final Entity productionTracking) {
 
-        String number = jdbcTemplate.queryForObject("select generate_productiontracking_number()", Maps.newHashMap(),
-                String.class);
+        String number = numberAllocationService.allocate(L_PRODUCTION_TRACKING_TABLE, L_PRODUCTION_TRACKING_NUMBER_DIGITS);
         productionTracking.setField(ProductionTrackingFields.NUMBER, number);
     }
 
@@ -33,20 +33,17 @@ import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.CompanyFields;
 import com.qcadoo.mes.basic.constants.DivisionFields;
-import com.qcadoo.mes.basic.constants.FactoryFields;
 import com.qcadoo.mes.basic.constants.ParameterFields;
 import com.qcadoo.mes.basic.constants.SubassemblyFields;
 import com.qcadoo.mes.basic.constants.WorkstationFields;
-import com.qcadoo.mes.productionLines.constants.DivisionFieldsPL;
 import com.qcadoo.mes.productionLines.constants.FactoryStructureElementFields;
 import com.qcadoo.mes.productionLines.constants.FactoryStructureElementType;
-import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
+import com.qcadoo.mes.productionLines.factoryStructure.FactoryStructureProvider.FactoryStructureNode;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityTree;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 
 @Service
@@ -58,6 +55,9 @@ public class FactoryStructureGenerationService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private FactoryStructureProvider factoryStructureProvider;
+
     public EntityTree generateFactoryStructureForWorkstation(final Entity workstationEntity) {
         Entity workstation = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_WORKSTATION)
                 .get(workstationEntity.getId());
@@ -93,88 +93,41 @@ public class FactoryStructureGenerationService {
     }
 
     public EntityTree generateFactoryStructureForEntity(final Entity entity, final String belongsToField) {
+        return generateFactoryStructureForEntity(entity, belongsToField, true);
+    }
+
+    public EntityTree generateFactoryStructureForEntity(final Entity entity, final String belongsToField,
+            final boolean useCache) {
+        DataDefinition elementDD = getFactoryStructureElementDD();
         List<Entity> factoryStructureList = Lists.newArrayList();
-        Entity root = addRoot(factoryStructureList, entity, belongsToField);
-        generateFactoryStructure(factoryStructureList, root, entity, belongsToField);
+        Entity root = addRoot(factoryStructureList, elementDD, entity, belongsToField);
+        for (FactoryStructureNode factoryStructure : factoryStructureProvider.getFactoryStructures(useCache)) {
+            addNode(factoryStructureList, elementDD, factoryStructure, root, entity, belongsToField);
+        }
         return EntityTreeUtilsService.getDetachedEntityTree(factoryStructureList);
     }
 
-    private void generateFactoryStructure(List<Entity> tree, final Entity root, final Entity belongsToEntity,
-            final String belongsToField) {
-        List<Entity> factories = getFactories();
-        for (Entity factory : factories) {
-            if (!factory.isActive()) {
-                continue;
-            }
-            Entity factoryNode = createNode(belongsToEntity, belongsToField, factory.getStringField(FactoryFields.NUMBER),
-                    factory.getStringField(FactoryFields.NAME), FactoryStructureElementType.FACTORY, factory.getId());
-            addChild(tree, factoryNode, root);
-
-            List<Entity> divisions = getDivisionsForFactory(factory);
-            for (Entity division : divisions) {
-                if (!division.isActive()) {
-                    continue;
-                }
-                Entity divisionNode = createNode(belongsToEntity, belongsToField, division.getStringField(DivisionFields.NUMBER),
-                        division.getStringField(DivisionFields.NAME), FactoryStructureElementType.DIVISION, division.getId());
-                addChild(tree, divisionNode, factoryNode);
-
-                List<Entity> productionLines = getProductionLinesForDivision(division);
-
-                for (Entity productionLine : productionLines) {
-                    if (!productionLine.isActive()) {
-                        continue;
-                    }
-                    Entity productionLineNode = createNode(belongsToEntity, belongsToField,
-                            productionLine.getStringField(ProductionLineFields.NUMBER),
-                            productionLine.getStringField(ProductionLineFields.NAME), FactoryStructureElementType.PRODUCTION_LINE,
-                            productionLine.getId());
-                    addChild(tree, productionLineNode, divisionNode);
-
-                    List<Entity> workstations = getWorkstationsForProductionLineAndDivision(productionLine, division);
-
-                    for (Entity workstation : workstations) {
-                        if (!workstation.isActive()) {
-                            continue;
-                        }
-                        Entity workstationNode = createNode(belongsToEntity, belongsToField,
-                                workstation.getStringField(WorkstationFields.NUMBER),
-                                workstation.getStringField(WorkstationFields.NAME), FactoryStructureElementType.WORKSTATION,
-                                workstation.getId());
-                        if (areEntitiesEqual(workstation, belongsToEntity)) {
-                            workstationNode.setField(FactoryStructureElementFields.CURRENT, true);
-                        }
-
-                        addChild(tree, workstationNode, productionLineNode);
-
-                        List<Entity> subassemblies = getSubassembliesForWorkstation(workstation);
-                        for (Entity subassembly : subassemblies) {
-                            if (!subassembly.isActive()) {
-                                continue;
-                            }
-                            Entity subassemblyNode = createNode(belongsToEntity, belongsToField,
-                                    subassembly.getStringField(SubassemblyFields.NUMBER),
-                                    subassembly.getStringField(SubassemblyFields.NAME), FactoryStructureElementType.SUBASSEMBLY,
-                                    subassembly.getId());
-                            if (areEntitiesEqual(subassembly, belongsToEntity)) {
-                                subassemblyNode.setField(FactoryStructureElementFields.CURRENT, true);
-                            }
-
-                            addChild(tree, subassemblyNode, workstationNode);
-
-                        }
-
-                    }
-                }
-            }
+    private void addNode(final List<Entity> tree, final DataDefinition elementDD, final FactoryStructureNode node,
+            final Entity parent, final Entity belongsToEntity, final String belongsToField) {
+        Entity element = createNode(elementDD, belongsToEntity, belongsToField, node.getNumber(), node.getName(),
+                node.getEntityType(), node.getEntityId());
+        if (isCurrent(node, belongsToEntity)) {
+            element.setField(FactoryStructureElementFields.CURRENT, true);
+        }
+
+        addChild(tree, element, parent);
+
+        for (FactoryStructureNode child : node.getChildren()) {
+            addNode(tree, elementDD, child, element, belongsToEntity, belongsToField);
         }
     }
 
-    private Entity addRoot(List<Entity> tree, final Entity belongsToEntity, final String belongsToField) {
+    private Entity addRoot(List<Entity> tree, final DataDefinition elementDD, final Entity belongsToEntity,
+            final String belongsToField) {
 
         Entity company = parameterService.getParameter().getBelongsToField(ParameterFields.COMPANY);
 
-        Entity root = createNode(belongsToEntity, belongsToField, company.getStringField(CompanyFields.NUMBER),
+        Entity root = createNode(elementDD, belongsToEntity, belongsToField, company.getStringField(CompanyFields.NUMBER),
                 company.getStringField(CompanyFields.NAME), FactoryStructureElementType.COMPANY, company.getId());
 
         addChild(tree, root, null);
@@ -189,11 +142,8 @@ public class FactoryStructureGenerationService {
         tree.add(child);
     }
 
-    private Entity createNode(final Entity belongsToEntity, final String belongsToField, final String number, final String name,
-            final FactoryStructureElementType entityType, final Long entityId) {
-
-        DataDefinition elementDD = dataDefinitionService.get(ProductionLinesConstants.PLUGIN_IDENTIFIER,
-                ProductionLinesConstants.MODEL_FACTORY_STRUCTURE_ELEMENT);
+    private Entity createNode(final DataDefinition elementDD, final Entity belongsToEntity, final String belongsToField,
+            final String number, final String name, final FactoryStructureElementType entityType, final Long entityId) {
         Entity node = elementDD.create();
 
         node.setField(belongsToField, belongsToEntity);
@@ -205,32 +155,22 @@ public class FactoryStructureGenerationService {
         return node;
     }
 
-    private List<Entity> getFactories() {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_FACTORY).find().list()
-                .getEntities();
-    }
-
-    private List<Entity> getDivisionsForFactory(final Entity factory) {
-        return factory.getHasManyField(FactoryFields.DIVISIONS);
-    }
-
-    private List<Entity> getProductionLinesForDivision(final Entity division) {
-        return division.getManyToManyField(DivisionFieldsPL.PRODUCTION_LINES);
-    }
-
-    private List<Entity> getWorkstationsForProductionLineAndDivision(final Entity productionLine, final Entity division) {
-        return productionLine.getHasManyField(ProductionLineFields.WORKSTATIONS).find()
-                .add(SearchRestrictions.belongsTo(WorkstationFields.DIVISION, division)).list().getEntities();
-    }
-
-    private List<Entity> getSubassembliesForWorkstation(final Entity workstation) {
-        return workstation.getHasManyField(WorkstationFields.SUBASSEMBLIES);
+    private DataDefinition getFactoryStructureElementDD() {
+        return dataDefinitionService.get(ProductionLinesConstants.PLUGIN_IDENTIFIER,
+                ProductionLinesConstants.MODEL_FACTORY_STRUCTURE_ELEMENT);
     }
 
-    private boolean areEntitiesEqual(final Entity firstEntity, final Entity secondEntity) {
-        return firstEntity.getDataDefinition().getName().equals(secondEntity.getDataDefinition().getName())
-                && firstEntity.getDataDefinition().getPluginIdentifier()
-                        .equals(secondEntity.getDataDefinition().getPluginIdentifier())
-                && firstEntity.getId().equals(secondEntity.getId());
+    private boolean isCurrent(final FactoryStructureNode node, final Entity belongsToEntity) {
+        String modelName;
+        if (FactoryStructureElementType.WORKSTATION.equals(node.getEntityType())) {
+            modelName = BasicConstants.MODEL_WORKSTATION;
+        } else if (FactoryStructureElementType.SUBASSEMBLY.equals(node.getEntityType())) {
+            modelName = BasicConstants.MODEL_SUBASSEMBLY;
+        } else {
+            return false;
+        }
+        DataDefinition belongsToEntityDD = belongsToEntity.getDataDefinition();
+        return BasicConstants.PLUGIN_IDENTIFIER.equals(belongsToEntityDD.getPluginIdentifier())
+                && modelName.equals(belongsToEntityDD.getName()) && node.getEntityId().equals(belongsToEntity.getId());
     }
 }
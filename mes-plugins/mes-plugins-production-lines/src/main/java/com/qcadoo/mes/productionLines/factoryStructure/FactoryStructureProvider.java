@@ -0,0 +1,328 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionLines.factoryStructure;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.productionLines.constants.FactoryStructureElementType;
+
+/**
+ * Loads structure of active factories (factory, division, production line, workstation, subassembly) with three joined
+ * projections and assembles it in memory. Structures are cached per factory together with the version of factory structure,
+ * kept in a database sequence which is increased after any element of factory structure is saved or deleted, so caches of all
+ * application nodes are dropped on the next use after the change commits.
+ */
+@Service
+public class FactoryStructureProvider {
+
+    private static final String L_FACTORIES_QUERY = "SELECT factory.id AS id, factory.number AS number, factory.name AS name "
+            + "FROM basic_factory factory WHERE factory.active = true ORDER BY factory.id";
+
+    private static final String L_DIVISIONS_QUERY = "SELECT division.factory_id AS factoryId, division.id AS divisionId, "
+            + "division.number AS divisionNumber, division.name AS divisionName, productionline.id AS productionLineId, "
+            + "productionline.number AS productionLineNumber, productionline.name AS productionLineName "
+            + "FROM basic_division division "
+            + "LEFT JOIN jointable_division_productionline divisionproductionline ON divisionproductionline.division_id = division.id "
+            + "LEFT JOIN productionlines_productionline productionline "
+            + "ON productionline.id = divisionproductionline.productionline_id AND productionline.active = true "
+            + "WHERE division.active = true AND division.factory_id IN (:factoryIds) ORDER BY division.id, productionline.id";
+
+    private static final String L_WORKSTATIONS_QUERY = "SELECT workstation.division_id AS divisionId, "
+            + "workstation.productionline_id AS productionLineId, workstation.id AS workstationId, "
+            + "workstation.number AS workstationNumber, workstation.name AS workstationName, subassembly.id AS subassemblyId, "
+            + "subassembly.number AS subassemblyNumber, subassembly.name AS subassemblyName "
+            + "FROM basic_workstation workstation JOIN basic_division division ON division.id = workstation.division_id "
+            + "LEFT JOIN basic_subassembly subassembly ON subassembly.workstation_id = workstation.id AND subassembly.active = true "
+            + "WHERE workstation.active = true AND workstation.productionline_id IS NOT NULL "
+            + "AND division.factory_id IN (:factoryIds) ORDER BY workstation.id, subassembly.id";
+
+    private static final String L_VERSION_QUERY = "SELECT CASE WHEN is_called THEN last_value ELSE 0 END "
+            + "FROM productionlines_factorystructure_version_seq";
+
+    private static final String L_INCREASE_VERSION_QUERY = "SELECT nextval('productionlines_factorystructure_version_seq')";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private volatile FactoryStructureCache cache;
+
+    /**
+     * Returns structures of active factories.
+     * 
+     * @param useCache
+     *            if true, structures cached since the last change of factory structure are used
+     * @return structures of active factories
+     */
+    public List<FactoryStructureNode> getFactoryStructures(final boolean useCache) {
+        if (!useCache) {
+            return loadStructures(loadFactories());
+        }
+
+        long version = getVersion();
+
+        FactoryStructureCache currentCache = cache;
+
+        if ((currentCache == null) || (currentCache.version != version)) {
+            currentCache = new FactoryStructureCache(version, loadFactories());
+
+            cache = currentCache;
+        }
+
+        List<FactoryStructureNode> factoryNodes = currentCache.factories;
+        Map<Long, FactoryStructureNode> factoryStructures = currentCache.structures;
+
+        List<FactoryStructureNode> notCachedFactoryNodes = Lists.newArrayList();
+
+        for (FactoryStructureNode factoryNode : factoryNodes) {
+            if (!factoryStructures.containsKey(factoryNode.getEntityId())) {
+                notCachedFactoryNodes.add(factoryNode);
+            }
+        }
+
+        if (!notCachedFactoryNodes.isEmpty()) {
+            for (FactoryStructureNode factoryNode : loadStructures(notCachedFactoryNodes)) {
+                factoryStructures.putIfAbsent(factoryNode.getEntityId(), factoryNode);
+            }
+        }
+
+        List<FactoryStructureNode> structures = Lists.newArrayListWithCapacity(factoryNodes.size());
+
+        for (FactoryStructureNode factoryNode : factoryNodes) {
+            FactoryStructureNode structure = factoryStructures.get(factoryNode.getEntityId());
+
+            structures.add((structure == null) ? factoryNode : structure);
+        }
+
+        return structures;
+    }
+
+    /**
+     * Called whenever an element of factory structure is saved or deleted. Version of factory structure is increased after the
+     * current transaction completes, so structures loaded before the change is visible (or loaded with changes rolled back) are
+     * never used again. Structures are only kept in the cache of the version read before their load, so a load which ends
+     * after the change does not store stale structures.
+     */
+    public void factoryStructureChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    increaseVersion();
+                }
+
+            });
+        } else {
+            increaseVersion();
+        }
+    }
+
+    private long getVersion() {
+        return jdbcTemplate.queryForObject(L_VERSION_QUERY, Collections.emptyMap(), Long.class);
+    }
+
+    private void increaseVersion() {
+        jdbcTemplate.queryForObject(L_INCREASE_VERSION_QUERY, Collections.emptyMap(), Long.class);
+    }
+
+    private List<FactoryStructureNode> loadFactories() {
+        List<FactoryStructureNode> factoryNodes = Lists.newArrayList();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_FACTORIES_QUERY, Collections.emptyMap())) {
+            factoryNodes.add(new FactoryStructureNode(FactoryStructureElementType.FACTORY, getId(row, "id"),
+                    (String) row.get("number"), (String) row.get("name")));
+        }
+
+        return Collections.unmodifiableList(factoryNodes);
+    }
+
+    private List<FactoryStructureNode> loadStructures(final List<FactoryStructureNode> factoryNodes) {
+        if (factoryNodes.isEmpty()) {
+            return factoryNodes;
+        }
+
+        Map<Long, FactoryStructureNode> factoriesById = Maps.newHashMap();
+
+        for (FactoryStructureNode factoryNode : factoryNodes) {
+            factoriesById.put(factoryNode.getEntityId(), factoryNode.copy());
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("factoryIds", factoriesById.keySet());
+
+        Map<Long, FactoryStructureNode> divisionsById = Maps.newHashMap();
+        Map<String, FactoryStructureNode> productionLinesByKey = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_DIVISIONS_QUERY, params)) {
+            Long divisionId = getId(row, "divisionId");
+
+            FactoryStructureNode divisionNode = divisionsById.get(divisionId);
+
+            if (divisionNode == null) {
+                divisionNode = new FactoryStructureNode(FactoryStructureElementType.DIVISION, divisionId,
+                        (String) row.get("divisionNumber"), (String) row.get("divisionName"));
+
+                divisionsById.put(divisionId, divisionNode);
+                factoriesById.get(getId(row, "factoryId")).addChild(divisionNode);
+            }
+
+            Long productionLineId = getId(row, "productionLineId");
+
+            if (productionLineId != null) {
+                FactoryStructureNode productionLineNode = new FactoryStructureNode(FactoryStructureElementType.PRODUCTION_LINE,
+                        productionLineId, (String) row.get("productionLineNumber"), (String) row.get("productionLineName"));
+
+                productionLinesByKey.put(getProductionLineKey(divisionId, productionLineId), productionLineNode);
+                divisionNode.addChild(productionLineNode);
+            }
+        }
+
+        Set<Long> addedWorkstationIds = Sets.newHashSet();
+        FactoryStructureNode workstationNode = null;
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_WORKSTATIONS_QUERY, params)) {
+            FactoryStructureNode productionLineNode = productionLinesByKey.get(getProductionLineKey(getId(row, "divisionId"),
+                    getId(row, "productionLineId")));
+
+            if (productionLineNode == null) {
+                continue;
+            }
+
+            Long workstationId = getId(row, "workstationId");
+
+            if (addedWorkstationIds.add(workstationId)) {
+                workstationNode = new FactoryStructureNode(FactoryStructureElementType.WORKSTATION, workstationId,
+                        (String) row.get("workstationNumber"), (String) row.get("workstationName"));
+
+                productionLineNode.addChild(workstationNode);
+            }
+
+            Long subassemblyId = getId(row, "subassemblyId");
+
+            if (subassemblyId != null) {
+                workstationNode.addChild(new FactoryStructureNode(FactoryStructureElementType.SUBASSEMBLY, subassemblyId,
+                        (String) row.get("subassemblyNumber"), (String) row.get("subassemblyName")));
+            }
+        }
+
+        List<FactoryStructureNode> structures = Lists.newArrayListWithCapacity(factoryNodes.size());
+
+        for (FactoryStructureNode factoryNode : factoryNodes) {
+            structures.add(factoriesById.get(factoryNode.getEntityId()));
+        }
+
+        return structures;
+    }
+
+    private String getProductionLineKey(final Long divisionId, final Long productionLineId) {
+        return divisionId + "_" + productionLineId;
+    }
+
+    private Long getId(final Map<String, Object> row, final String column) {
+        Number id = (Number) row.get(column);
+
+        return (id == null) ? null : id.longValue();
+    }
+
+    private static final class FactoryStructureCache {
+
+        private final long version;
+
+        private final List<FactoryStructureNode> factories;
+
+        private final ConcurrentMap<Long, FactoryStructureNode> structures = new ConcurrentHashMap<>();
+
+        private FactoryStructureCache(final long version, final List<FactoryStructureNode> factories) {
+            this.version = version;
+            this.factories = factories;
+        }
+
+    }
+
+    public static final class FactoryStructureNode {
+
+        private final FactoryStructureElementType entityType;
+
+        private final Long entityId;
+
+        private final String number;
+
+        private final String name;
+
+        private final List<FactoryStructureNode> children = Lists.newArrayList();
+
+        private FactoryStructureNode(final FactoryStructureElementType entityType, final Long entityId, final String number,
+                final String name) {
+            this.entityType = entityType;
+            this.entityId = entityId;
+            this.number = number;
+            this.name = name;
+        }
+
+        private FactoryStructureNode copy() {
+            return new FactoryStructureNode(entityType, entityId, number, name);
+        }
+
+        private void addChild(final FactoryStructureNode child) {
+            children.add(child);
+        }
+
+        public FactoryStructureElementType getEntityType() {
+            return entityType;
+        }
+
+        public Long getEntityId() {
+            return entityId;
+        }
+
+        public String getNumber() {
+            return number;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<FactoryStructureNode> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+    }
+
+}
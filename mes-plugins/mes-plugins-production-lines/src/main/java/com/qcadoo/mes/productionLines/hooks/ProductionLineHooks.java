@@ -23,19 +23,30 @@
  */
 package com.qcadoo.mes.productionLines.hooks;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionLines.factoryStructure.FactoryStructureProvider;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
 @Service
 public class ProductionLineHooks {
 
+    @Autowired
+    private FactoryStructureProvider factoryStructureProvider;
+
+    public void onSave(final DataDefinition dataDefinition, final Entity productionLine) {
+        factoryStructureProvider.factoryStructureChanged();
+    }
+
     public boolean onDelete(final DataDefinition dataDefinition, final Entity productionLine) {
         boolean canDelete = productionLine.getManyToManyField(ProductionLineFields.DIVISIONS).isEmpty();
         if (!canDelete) {
             productionLine.addGlobalError("productionLines.productionLine.onDelete.hasDivisions");
+        } else {
+            factoryStructureProvider.factoryStructureChanged();
         }
         return canDelete;
     }
@@ -0,0 +1,172 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionLines.factoryStructure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.productionLines.factoryStructure.FactoryStructureProvider.FactoryStructureNode;
+
+public class FactoryStructureProviderTest {
+
+    private static final String L_VERSION_QUERY = "SELECT CASE WHEN is_called";
+
+    private static final String L_INCREASE_VERSION_QUERY = "SELECT nextval";
+
+    private static final String L_FACTORIES_QUERY = "SELECT factory.id";
+
+    private FactoryStructureProvider factoryStructureProvider;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        factoryStructureProvider = new FactoryStructureProvider();
+
+        ReflectionTestUtils.setField(factoryStructureProvider, "jdbcTemplate", jdbcTemplate);
+
+        Map<String, Object> factoryRow = Maps.newHashMap();
+
+        factoryRow.put("id", 1L);
+        factoryRow.put("number", "F1");
+        factoryRow.put("name", "Factory");
+
+        List<Map<String, Object>> factoryRows = Lists.newArrayList();
+
+        factoryRows.add(factoryRow);
+
+        given(jdbcTemplate.queryForList(startsWith(L_FACTORIES_QUERY), anyMap())).willReturn(factoryRows);
+        given(jdbcTemplate.queryForList(startsWith("SELECT division"), anyMap())).willReturn(
+                Collections.<Map<String, Object>> emptyList());
+        given(jdbcTemplate.queryForList(startsWith("SELECT workstation"), anyMap())).willReturn(
+                Collections.<Map<String, Object>> emptyList());
+    }
+
+    private void stubVersions(final Long version, final Long... nextVersions) {
+        given(jdbcTemplate.queryForObject(startsWith(L_VERSION_QUERY), anyMap(), eq(Long.class))).willReturn(version,
+                nextVersions);
+    }
+
+    @Test
+    public void shouldUseCachedStructuresIfVersionDidNotChange() {
+        // given
+        stubVersions(1L, 1L);
+
+        // when
+        List<FactoryStructureNode> firstStructures = factoryStructureProvider.getFactoryStructures(true);
+        List<FactoryStructureNode> secondStructures = factoryStructureProvider.getFactoryStructures(true);
+
+        // then
+        assertEquals(1, firstStructures.size());
+        assertSame(firstStructures.get(0), secondStructures.get(0));
+
+        verify(jdbcTemplate, times(1)).queryForList(startsWith(L_FACTORIES_QUERY), anyMap());
+        verify(jdbcTemplate, times(1)).queryForList(startsWith("SELECT division"), anyMap());
+    }
+
+    @Test
+    public void shouldReloadStructuresAfterVersionBump() {
+        // given
+        stubVersions(1L, 2L);
+
+        // when
+        List<FactoryStructureNode> firstStructures = factoryStructureProvider.getFactoryStructures(true);
+        List<FactoryStructureNode> secondStructures = factoryStructureProvider.getFactoryStructures(true);
+
+        // then
+        assertEquals(Long.valueOf(1L), secondStructures.get(0).getEntityId());
+        assertNotSame(firstStructures.get(0), secondStructures.get(0));
+
+        verify(jdbcTemplate, times(2)).queryForList(startsWith(L_FACTORIES_QUERY), anyMap());
+        verify(jdbcTemplate, times(2)).queryForList(startsWith("SELECT division"), anyMap());
+    }
+
+    @Test
+    public void shouldNotUseCacheIfNotRequested() {
+        // when
+        factoryStructureProvider.getFactoryStructures(false);
+
+        // then
+        verify(jdbcTemplate, never()).queryForObject(startsWith(L_VERSION_QUERY), anyMap(), eq(Long.class));
+        verify(jdbcTemplate).queryForList(startsWith(L_FACTORIES_QUERY), anyMap());
+    }
+
+    @Test
+    public void shouldIncreaseVersionImmediatelyOutsideOfTransaction() {
+        // when
+        factoryStructureProvider.factoryStructureChanged();
+
+        // then
+        verify(jdbcTemplate).queryForObject(startsWith(L_INCREASE_VERSION_QUERY), anyMap(), eq(Long.class));
+    }
+
+    @Test
+    public void shouldIncreaseVersionAfterTransactionCompletes() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            // when
+            factoryStructureProvider.factoryStructureChanged();
+
+            // then
+            verify(jdbcTemplate, never()).queryForObject(startsWith(L_INCREASE_VERSION_QUERY), anyMap(), eq(Long.class));
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+
+            verify(jdbcTemplate).queryForObject(startsWith(L_INCREASE_VERSION_QUERY), anyMap(), eq(Long.class));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+}
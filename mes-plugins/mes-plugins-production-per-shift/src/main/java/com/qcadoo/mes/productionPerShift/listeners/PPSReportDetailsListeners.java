@@ -32,7 +32,8 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.PageSize;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.XlsxReportService;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.report.print.PPSReportXlsService;
@@ -59,9 +60,17 @@ public class PPSReportDetailsListeners {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private XlsxReportService xlsxReportService;
+
     public void printReport(final ViewDefinitionState viewDefinitionState, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
-                ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PPS_REPORT });
+        if (XlsxDocumentService.EXTENSION.equals(args[0])) {
+            xlsxReportService.printGeneratedReport(viewDefinitionState, state, ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                    ProductionPerShiftConstants.MODEL_PPS_REPORT);
+        } else {
+            reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
+                    ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PPS_REPORT });
+        }
     }
 
     @Transactional
@@ -105,7 +114,7 @@ public class PPSReportDetailsListeners {
         Entity reportWithFileName = fileService.updateReportFileName(goodFoodReport, PPSReportFields.CREATE_DATE, localePrefix);
 
         try {
-            ppsReportXlsService.generateDocument(reportWithFileName, locale, PageSize.A3);
+            ppsReportXlsService.generateDocument(reportWithFileName, locale);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving goodFood report");
@@ -31,14 +31,19 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.ShiftsService;
@@ -49,18 +54,14 @@ import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsSearchService;
 import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsService;
 import com.qcadoo.mes.lineChangeoverNormsForOrders.LineChangeoverNormsForOrdersService;
 import com.qcadoo.mes.orders.constants.OrderFields;
-import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
-import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.report.print.utils.DailyProgressQuantities;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
-import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.constants.UnitConversionItemFields;
 import com.qcadoo.security.api.UserService;
 
@@ -79,6 +80,17 @@ public class PPSReportXlsHelper {
 
     private static final Integer ONE = 1;
 
+    private static final String L_DAILY_PROGRESS_QUERY = "SELECT o.id AS order_id, pfd.actualdateofday, dp.shift_id, "
+            + "dp.quantity, pfd.corrected, EXISTS (SELECT 1 FROM productionpershift_progressforday correctedpfd "
+            + "WHERE correctedpfd.technologyoperationcomponent_id = toc.id AND correctedpfd.corrected = true) AS hascorrections "
+            + "FROM orders_order o "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = o.technology_id "
+            + "AND toc.parent_id IS NULL "
+            + "JOIN productionpershift_progressforday pfd ON pfd.technologyoperationcomponent_id = toc.id "
+            + "JOIN productionpershift_dailyprogress dp ON dp.progressforday_id = pfd.id "
+            + "WHERE o.id IN (:orderIds) AND pfd.actualdateofday BETWEEN :dateFrom AND :dateTo "
+            + "ORDER BY o.id, pfd.actualdateofday, dp.shift_id, pfd.id, dp.id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -100,6 +112,9 @@ public class PPSReportXlsHelper {
     @Autowired
     private ShiftsService shiftsService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public List<Entity> getProductionPerShiftForReport(final Entity goodFoodReport) {
         DateTime dateFrom = new DateTime(goodFoodReport.getDateField(PPSReportFields.DATE_FROM));
 
@@ -192,39 +207,28 @@ public class PPSReportXlsHelper {
         return Days.daysBetween(dateFrom.toDateMidnight(), dateTo.toDateMidnight()).getDays();
     }
 
-    public Entity getDailyProgress(final Entity productionPerShift, final Date day, final Entity shift) {
-        Entity order = getOrder(productionPerShift);
-        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-        Entity toc = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
-
-        DataDefinition progressForDayDD = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
-                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY);
-
-        List<Entity> correctedProgressForDay = progressForDayDD.find()
-                .add(SearchRestrictions.belongsTo(ProgressForDayFields.TECHNOLOGY_OPERATION_COMPONENT, toc))
-                .add(SearchRestrictions.eq(ProgressForDayFields.CORRECTED, true)).list().getEntities();
-        Entity progressForDay;
-
-        if (correctedProgressForDay.isEmpty()) {
-            progressForDay = progressForDayDD.find()
-                    .add(SearchRestrictions.belongsTo(ProgressForDayFields.TECHNOLOGY_OPERATION_COMPONENT, toc))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.ACTUAL_DATE_OF_DAY, day))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.CORRECTED, false)).setMaxResults(1).uniqueResult();
-        } else {
-            progressForDay = progressForDayDD.find()
-                    .add(SearchRestrictions.belongsTo(ProgressForDayFields.TECHNOLOGY_OPERATION_COMPONENT, toc))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.ACTUAL_DATE_OF_DAY, day))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.CORRECTED, true)).setMaxResults(1).uniqueResult();
+    /**
+     * Reads quantities of planned and corrected daily progress of given orders in the report date range with one query.
+     * {@link DailyProgressQuantities} keeps the ones shown in production per shift details.
+     */
+    public DailyProgressQuantities getDailyProgressQuantities(final Entity report, final List<Entity> productionPerShifts) {
+        DailyProgressQuantities dailyProgressQuantities = new DailyProgressQuantities();
+
+        if (productionPerShifts.isEmpty()) {
+            return dailyProgressQuantities;
         }
 
-        if (progressForDay == null) {
-            return null;
-        } else {
-            Entity dailyProgress = progressForDay.getHasManyField(ProgressForDayFields.DAILY_PROGRESS).find()
-                    .add(SearchRestrictions.belongsTo(DailyProgressFields.SHIFT, shift)).setMaxResults(1).uniqueResult();
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("orderIds", productionPerShifts.stream().map(pps -> getOrder(pps).getId()).collect(Collectors.toSet()));
+        params.put("dateFrom", report.getDateField(PPSReportFields.DATE_FROM));
+        params.put("dateTo", report.getDateField(PPSReportFields.DATE_TO));
 
-            return dailyProgress;
-        }
+        jdbcTemplate.query(L_DAILY_PROGRESS_QUERY, params,
+                (RowCallbackHandler) rs -> dailyProgressQuantities.add(rs.getLong("order_id"),
+                        new LocalDate(rs.getDate("actualdateofday")), rs.getLong("shift_id"), rs.getBigDecimal("quantity"),
+                        rs.getBoolean("corrected"), rs.getBoolean("hascorrections")));
+
+        return dailyProgressQuantities;
     }
 
     // TODO add in GF double pallets
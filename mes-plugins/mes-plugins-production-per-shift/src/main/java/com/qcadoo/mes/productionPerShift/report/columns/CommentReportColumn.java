@@ -1,8 +1,8 @@
 package com.qcadoo.mes.productionPerShift.report.columns;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -57,7 +57,7 @@ public class CommentReportColumn extends AbstractReportColumn {
     }
 
     @Override
-    public void setWhiteDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         if (!checkDescriptionLength(cell)) {
             cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyle));
         } else {
@@ -66,7 +66,7 @@ public class CommentReportColumn extends AbstractReportColumn {
     }
 
     @Override
-    public void setGreyDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         if (!checkDescriptionLength(cell)) {
             cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyle));
         } else {
@@ -79,10 +79,10 @@ public class CommentReportColumn extends AbstractReportColumn {
         return 25 * 256;
     }
 
-    private boolean checkDescriptionLength(final HSSFCell commentCell) {
+    private boolean checkDescriptionLength(final Cell commentCell) {
         boolean checkSmall;
 
-        HSSFRow row = commentCell.getRow();
+        Row row = commentCell.getRow();
         int orderDescriptionLength = commentCell.getStringCellValue().length();
 
         if (orderDescriptionLength <= 34) {
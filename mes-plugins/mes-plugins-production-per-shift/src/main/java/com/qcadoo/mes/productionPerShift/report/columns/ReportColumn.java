@@ -2,7 +2,7 @@ package com.qcadoo.mes.productionPerShift.report.columns;
 
 import java.util.Locale;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.ss.usermodel.Cell;
 
 import com.qcadoo.mes.productionPerShift.report.print.PPSReportXlsStyleContainer;
 import com.qcadoo.model.api.Entity;
@@ -23,13 +23,13 @@ public interface ReportColumn {
 
     int getColumnWidth();
 
-    void setGreyDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer);
+    void setGreyDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer);
 
-    void setGreyDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer);
+    void setGreyDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer);
 
-    void setWhiteDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer);
+    void setWhiteDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer);
 
-    void setWhiteDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer);
+    void setWhiteDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer);
 
-    void setHeaderStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer);
+    void setHeaderStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer);
 }
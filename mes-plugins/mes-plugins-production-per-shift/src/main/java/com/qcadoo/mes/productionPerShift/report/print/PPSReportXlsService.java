@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.productionPerShift.report.print;
 
+import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
@@ -33,11 +34,11 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
@@ -51,23 +52,24 @@ import com.google.common.collect.Maps;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.print.XlsxDocumentService;
 import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
-import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportConstants;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.report.PPSReportXlsHelper;
 import com.qcadoo.mes.productionPerShift.report.columns.ReportColumn;
+import com.qcadoo.mes.productionPerShift.report.print.utils.DailyProgressQuantities;
 import com.qcadoo.mes.productionPerShift.report.print.utils.DayShiftHolder;
 import com.qcadoo.mes.productionPerShift.report.print.utils.EntityProductionPerShiftsComparator;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
 
 @Service
-public class PPSReportXlsService extends XlsDocumentService {
+public class PPSReportXlsService extends XlsxDocumentService {
 
     private DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", LocaleContextHolder.getLocale());
 
@@ -94,25 +96,25 @@ public class PPSReportXlsService extends XlsDocumentService {
     }
 
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity report) {
+    protected void addHeader(final Sheet sheet, final Locale locale, final Entity report) {
         PPSReportXlsStyleContainer styleContainer = new PPSReportXlsStyleContainer(sheet);
         createHeaderForAuthor(sheet, locale, styleContainer);
 
-        HSSFRow headerMainLine = sheet.createRow(3);
-        HSSFRow headerProduction = sheet.createRow(4);
+        Row headerMainLine = sheet.createRow(3);
+        Row headerProduction = sheet.createRow(4);
         List<ReportColumn> columns = ppsReportColumnHelper.getReportColumns();
         createHeaderLineForProduction(sheet, locale, headerMainLine, headerProduction, styleContainer, columns);
         createHeaderLineForDaysWithShifts(sheet, locale, headerMainLine, headerProduction, report, styleContainer, columns);
     }
 
-    private void createHeaderForAuthor(final HSSFSheet sheet, final Locale locale,
+    private void createHeaderForAuthor(final Sheet sheet, final Locale locale,
             final PPSReportXlsStyleContainer styleContainer) {
-        HSSFRow headerAuthorLine = sheet.createRow(0);
+        Row headerAuthorLine = sheet.createRow(0);
 
-        HSSFCell updateDateCell = headerAuthorLine.createCell(0);
+        Cell updateDateCell = headerAuthorLine.createCell(0);
         updateDateCell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_UPDATE_DATE, locale));
 
-        HSSFCell authorCell = headerAuthorLine.createCell(2);
+        Cell authorCell = headerAuthorLine.createCell(2);
         authorCell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_AUTHOR, locale));
 
         sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 1));
@@ -122,8 +124,8 @@ public class PPSReportXlsService extends XlsDocumentService {
         ppsReportXlsStyleHelper.setGreyDataStyle(authorCell, styleContainer);
     }
 
-    private void createHeaderLineForProduction(final HSSFSheet sheet, final Locale locale, final HSSFRow headerMainLine,
-            final HSSFRow headerProduction, final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
+    private void createHeaderLineForProduction(final Sheet sheet, final Locale locale, final Row headerMainLine,
+            final Row headerProduction, final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
 
         CreationHelper helper = sheet.getWorkbook().getCreationHelper();
         helper.createDataFormat();
@@ -133,7 +135,7 @@ public class PPSReportXlsService extends XlsDocumentService {
         int columnNumber = 0;
 
         for (ReportColumn column : columns) {
-            HSSFCell cell = headerProduction.createCell(columnNumber);
+            Cell cell = headerProduction.createCell(columnNumber);
             cell.setCellValue(column.getHeader(locale));
             column.setHeaderStyle(cell, styleContainer);
 
@@ -145,14 +147,14 @@ public class PPSReportXlsService extends XlsDocumentService {
         mergeHeaderCells(sheet, columns.size());
     }
 
-    private void appendHeaderMainLine(final HSSFSheet sheet, final Locale locale, final HSSFRow headerMainLine,
+    private void appendHeaderMainLine(final Sheet sheet, final Locale locale, final Row headerMainLine,
             PPSReportXlsStyleContainer styleContainer) {
-        HSSFCell cell = headerMainLine.createCell(0);
+        Cell cell = headerMainLine.createCell(0);
         cell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_PLANNED_PRODUCTION, locale));
         ppsReportXlsStyleHelper.setHeaderStyle1(cell, styleContainer);
     }
 
-    private void mergeHeaderCells(final HSSFSheet sheet, int numberOfColumns) {
+    private void mergeHeaderCells(final Sheet sheet, int numberOfColumns) {
         sheet.addMergedRegion(new CellRangeAddress(3, 3, 0, numberOfColumns - 1));
         sheet.addMergedRegion(new CellRangeAddress(3, 3, numberOfColumns, 24));
 
@@ -161,16 +163,16 @@ public class PPSReportXlsService extends XlsDocumentService {
         }
     }
 
-    private void createHeaderLineForDaysWithShifts(final HSSFSheet sheet, final Locale locale, final HSSFRow headerMainLine,
-            final HSSFRow headerProductionLine, final Entity report, final PPSReportXlsStyleContainer styleContainer,
+    private void createHeaderLineForDaysWithShifts(final Sheet sheet, final Locale locale, final Row headerMainLine,
+            final Row headerProductionLine, final Entity report, final PPSReportXlsStyleContainer styleContainer,
             List<ReportColumn> columns) {
 
         List<Entity> shifts = ppsReportXlsHelper.getShifts();
         List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(report);
         int columnNumber = columns.size();
 
-        HSSFCell cell = headerMainLine.createCell(columnNumber);
-        HSSFCell merge = headerMainLine.createCell(columnNumber + 1);
+        Cell cell = headerMainLine.createCell(columnNumber);
+        Cell merge = headerMainLine.createCell(columnNumber + 1);
         cell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_PRODUCTION_PER_SHIFT, locale));
 
         merge.setCellValue("");
@@ -178,10 +180,10 @@ public class PPSReportXlsService extends XlsDocumentService {
         ppsReportXlsStyleHelper.setHeaderStyle1(cell, styleContainer);
         ppsReportXlsStyleHelper.setHeaderStyle1(merge, styleContainer);
 
-        HSSFRow headerShifts = sheet.createRow(5);
+        Row headerShifts = sheet.createRow(5);
 
         for (DateTime day : days) {
-            HSSFCell cellDay = headerProductionLine.createCell(columnNumber);
+            Cell cellDay = headerProductionLine.createCell(columnNumber);
             cellDay.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_DAY, locale,
 
                     dateFormat.format(new Date(day.getMillis()))));
@@ -192,7 +194,7 @@ public class PPSReportXlsService extends XlsDocumentService {
             for (Entity shift : shifts) {
                 columnNumber++;
 
-                HSSFCell cellColumnNumber = headerShifts.createCell(shiftColumnNumber);
+                Cell cellColumnNumber = headerShifts.createCell(shiftColumnNumber);
                 cellColumnNumber.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_SHIFT_NUMBER, locale,
                         shift.getStringField(ShiftFields.NAME)));
 
@@ -204,9 +206,9 @@ public class PPSReportXlsService extends XlsDocumentService {
     }
 
     @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity report) {
+    protected void addSeries(final Sheet sheet, final Entity report) {
         sheet.getPrintSetup().setLandscape(true);
-        sheet.getPrintSetup().setPaperSize(HSSFPrintSetup.A3_PAPERSIZE);
+        sheet.getPrintSetup().setPaperSize(PrintSetup.A3_PAPERSIZE);
         sheet.getPrintSetup().setHResolution((short) 1);
         PPSReportXlsStyleContainer styleContainer = new PPSReportXlsStyleContainer(sheet);
 
@@ -215,14 +217,14 @@ public class PPSReportXlsService extends XlsDocumentService {
         addSeriesOfProductionLine(sheet, report, styleContainer, columns);
     }
 
-    private void addSeriesOfReportAuthorAndDate(final HSSFSheet sheet, final Entity report,
+    private void addSeriesOfReportAuthorAndDate(final Sheet sheet, final Entity report,
             final PPSReportXlsStyleContainer styleContainer) {
-        HSSFRow row = sheet.createRow(1);
+        Row row = sheet.createRow(1);
 
-        HSSFCell updateDateCell = row.createCell(0);
+        Cell updateDateCell = row.createCell(0);
         updateDateCell.setCellValue(updateFormat.format(report.getDateField(PPSReportFields.UPDATE_DATE)));
 
-        HSSFCell authorCell = row.createCell(2);
+        Cell authorCell = row.createCell(2);
         authorCell.setCellValue(ppsReportXlsHelper.getDocumentAuthor(report.getStringField(PPSReportFields.CREATE_USER)));
 
         sheet.addMergedRegion(new CellRangeAddress(1, 1, 0, 1));
@@ -231,11 +233,12 @@ public class PPSReportXlsService extends XlsDocumentService {
         ppsReportXlsStyleHelper.setHeaderStyle2(authorCell, styleContainer);
     }
 
-    private void addSeriesOfProductionLine(final HSSFSheet sheet, final Entity report,
+    private void addSeriesOfProductionLine(final Sheet sheet, final Entity report,
             final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
 
         List<Entity> productionPerShifts = ppsReportXlsHelper.getProductionPerShiftForReport(report);
         List<Entity> shifts = ppsReportXlsHelper.getShifts();
+        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(report);
         Shift shiftFirst = new Shift(shifts.get(0));
         List<TimeRange> ranges = shiftFirst.findWorkTimeAt(new LocalDate(report.getDateField(PPSReportFields.DATE_FROM)));
         LocalTime startTime = ranges.get(0).getFrom();
@@ -246,6 +249,9 @@ public class PPSReportXlsService extends XlsDocumentService {
 
         Collections.sort(productionPerShifts, new EntityProductionPerShiftsComparator());
 
+        DailyProgressQuantities dailyProgressQuantities = ppsReportXlsHelper.getDailyProgressQuantities(report,
+                productionPerShifts);
+
         String oldProductionLineNumber = "";
         String newProductionLineNumber;
 
@@ -265,10 +271,10 @@ public class PPSReportXlsService extends XlsDocumentService {
                 greyBg = !greyBg;
             }
             if (changeover != null && isChangeOverOnThisPrint(order, report, startTime)) {
-                HSSFRow row = sheet.createRow(rowNum++);
+                Row row = sheet.createRow(rowNum++);
                 int colIndex = 0;
                 for (ReportColumn column : columns) {
-                    HSSFCell cell = row.createCell(colIndex);
+                    Cell cell = row.createCell(colIndex);
 
                     if (isFirstRow) {
                         cell.setCellValue(column.getFirstRowChangeoverValue(productionPerShift));
@@ -278,12 +284,12 @@ public class PPSReportXlsService extends XlsDocumentService {
                     colIndex++;
                 }
                 isFirstRow = false;
-                addSeriesForChangeOver(sheet, report, row, changeover, order, styleContainer, columns);
+                addSeriesForChangeOver(row, changeover, order, shifts, days, styleContainer, columns);
             }
-            HSSFRow row = sheet.createRow(rowNum++);
+            Row row = sheet.createRow(rowNum++);
             int colIndex = 0;
             for (ReportColumn column : columns) {
-                HSSFCell cell = row.createCell(colIndex);
+                Cell cell = row.createCell(colIndex);
                 if (isFirstRow) {
                     cell.setCellValue(column.getFirstRowValue(productionPerShift));
                 } else {
@@ -307,12 +313,12 @@ public class PPSReportXlsService extends XlsDocumentService {
                 colIndex++;
             }
 
-            addSeriesOfDailyProgress(sheet, report, row, productionPerShift, greyBg, styleContainer, columns);
+            addSeriesOfDailyProgress(row, order, shifts, days, dailyProgressQuantities, greyBg, styleContainer, columns);
 
             oldProductionLineNumber = newProductionLineNumber;
         }
 
-        setColumnWidths(sheet, columns);
+        setColumnWidths(sheet, columns, days.size() * shifts.size());
     }
 
     private boolean isChangeOverOnThisPrint(final Entity order, final Entity report, final LocalTime startTime) {
@@ -322,25 +328,21 @@ public class PPSReportXlsService extends XlsDocumentService {
         return startOrderDate.after(date.toDate());
     }
 
-    private void addSeriesOfDailyProgress(final HSSFSheet sheet, final Entity entity, final HSSFRow row,
-            final Entity productionPerShift, final boolean rowNumberIsEven, PPSReportXlsStyleContainer styleContainer,
-            List<ReportColumn> columns) {
-
-        List<Entity> shifts = ppsReportXlsHelper.getShifts();
-        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
+    private void addSeriesOfDailyProgress(final Row row, final Entity order, final List<Entity> shifts,
+            final List<DateTime> days, final DailyProgressQuantities dailyProgressQuantities, final boolean rowNumberIsEven,
+            PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
 
         int columnNumber = columns.size();
 
         for (DateTime day : days) {
             for (Entity shift : shifts) {
-                HSSFCell cellDailyProgress = row.createCell(columnNumber);
-                Entity dailyProgress = ppsReportXlsHelper.getDailyProgress(productionPerShift, day.toDate(), shift);
+                Cell cellDailyProgress = row.createCell(columnNumber);
+                BigDecimal quantity = dailyProgressQuantities.get(order.getId(), day.toLocalDate(), shift.getId());
 
-                if (dailyProgress == null) {
+                if (quantity == null) {
                     cellDailyProgress.setCellValue("");
                 } else {
-                    cellDailyProgress.setCellValue(numberService
-                            .formatWithMinimumFractionDigits(dailyProgress.getDecimalField(DailyProgressFields.QUANTITY), 0));
+                    cellDailyProgress.setCellValue(numberService.formatWithMinimumFractionDigits(quantity, 0));
                 }
 
                 if (rowNumberIsEven) {
@@ -350,17 +352,13 @@ public class PPSReportXlsService extends XlsDocumentService {
                 }
 
                 columnNumber++;
-
-                sheet.autoSizeColumn((short) columnNumber);
             }
         }
     }
 
-    private void addSeriesForChangeOver(final HSSFSheet sheet, final Entity entity, final HSSFRow row, final Entity changeover,
-            final Entity order, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
+    private void addSeriesForChangeOver(final Row row, final Entity changeover, final Entity order, final List<Entity> shifts,
+            final List<DateTime> days, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
         Map<Integer, DayShiftHolder> mapCells = Maps.newHashMap();
-        List<Entity> shifts = ppsReportXlsHelper.getShifts();
-        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
         Date startDateOrder = order.getDateField(OrderFields.START_DATE);
         Shift shiftFirst = new Shift(shifts.get(0));
         List<TimeRange> ranges = shiftFirst.findWorkTimeAt(days.get(0).toLocalDate());
@@ -373,17 +371,16 @@ public class PPSReportXlsService extends XlsDocumentService {
         if (new DateTime(startDateOrder).minusSeconds(1).toDate().before(firstStartShitTime.toDate())) {
             for (DateTime day : days) {
                 for (Entity shift : shifts) {
-                    HSSFCell cellDailyProgress = row.createCell(columnNumber);
+                    Cell cellDailyProgress = row.createCell(columnNumber);
                     cellDailyProgress.setCellValue("");
                     ppsReportXlsStyleHelper.setChangeoverDataStyle(cellDailyProgress, styleContainer);
                     columnNumber++;
-                    sheet.autoSizeColumn((short) columnNumber);
                 }
             }
         } else {
             for (DateTime day : days) {
                 for (Entity shift : shifts) {
-                    HSSFCell cell = row.createCell(columnNumber);
+                    Cell cell = row.createCell(columnNumber);
                     cell.setCellValue("");
                     DayShiftHolder holder = new DayShiftHolder(shift, day, cell);
                     ppsReportXlsStyleHelper.setChangeoverDataStyle(cell, styleContainer);
@@ -391,8 +388,6 @@ public class PPSReportXlsService extends XlsDocumentService {
                     mapCells.put(columnNumber, holder);
 
                     columnNumber++;
-
-                    sheet.autoSizeColumn((short) columnNumber);
                 }
             }
             columnNumber = columns.size();
@@ -400,7 +395,7 @@ public class PPSReportXlsService extends XlsDocumentService {
                 for (Entity shift : shifts) {
                     Optional<DateTime> maybeShiftStart = getShiftStartDate(day, shift);
                     Optional<DateTime> maybeShiftEnd = getShiftEndDate(day, shift);
-                    HSSFCell cell = mapCells.get(columnNumber).getCell();
+                    Cell cell = mapCells.get(columnNumber).getCell();
                     if (!maybeShiftStart.isPresent() || !maybeShiftEnd.isPresent()) {
                         cell.setCellValue("");
                         columnNumber++;
@@ -427,7 +422,7 @@ public class PPSReportXlsService extends XlsDocumentService {
                             if (currentIndex >= columns.size()) {
 
                                 while (durationToMark > 0) {
-                                    HSSFCell cellBefore = mapCells.get(currentIndex).getCell();
+                                    Cell cellBefore = mapCells.get(currentIndex).getCell();
                                     Optional<DateTime> maybeStart = getShiftStartDate(day, shift);
                                     Optional<DateTime> maybeEnd = getShiftEndDate(day, shift);
                                     if (!maybeStart.isPresent() || !maybeEnd.isPresent()) {
@@ -500,7 +495,7 @@ public class PPSReportXlsService extends XlsDocumentService {
         return Optional.of(startShitTime);
     }
 
-    private void setColumnWidths(final HSSFSheet sheet, List<ReportColumn> columns) {
+    private void setColumnWidths(final Sheet sheet, List<ReportColumn> columns, final int numberOfShiftColumns) {
 
         int index = 0;
         for (ReportColumn column : columns) {
@@ -508,9 +503,24 @@ public class PPSReportXlsService extends XlsDocumentService {
             index++;
         }
 
-        for (int columnNumber = columns.size(); columnNumber < columns.size() + 21; columnNumber++) {
+        for (int columnNumber = columns.size(); columnNumber < columns.size() + numberOfShiftColumns; columnNumber++) {
             sheet.setColumnWidth(columnNumber, 6 * 256);
         }
     }
 
+    @Override
+    public String getPluginIdentifier() {
+        return ProductionPerShiftConstants.PLUGIN_IDENTIFIER;
+    }
+
+    @Override
+    public String getModelName() {
+        return ProductionPerShiftConstants.MODEL_PPS_REPORT;
+    }
+
+    @Override
+    public String getAuthorizationRole() {
+        return "ROLE_PLANNING";
+    }
+
 }
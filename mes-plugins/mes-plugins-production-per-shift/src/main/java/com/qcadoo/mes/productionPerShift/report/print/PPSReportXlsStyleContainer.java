@@ -4,9 +4,10 @@ import java.util.Map;
 
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Sheet;
 
 import com.google.common.collect.Maps;
 
@@ -39,7 +40,7 @@ public class PPSReportXlsStyleContainer {
 
     public static final String I_HeaderStyle2Red = "headerStyle2Red";
 
-    private Map<String, HSSFCellStyle> styles = Maps.newHashMap();
+    private Map<String, CellStyle> styles = Maps.newHashMap();
 
     private Font fontNormal;
 
@@ -49,11 +50,11 @@ public class PPSReportXlsStyleContainer {
 
     private Font fontSmallRed;
 
-    public PPSReportXlsStyleContainer(HSSFSheet sheet) {
+    public PPSReportXlsStyleContainer(Sheet sheet) {
         initStyle(sheet);
     }
 
-    private void initStyle(final HSSFSheet sheet) {
+    private void initStyle(final Sheet sheet) {
         this.fontNormal = sheet.getWorkbook().createFont();
         fontNormal.setFontName(HSSFFont.FONT_ARIAL);
         fontNormal.setBoldweight(Font.BOLDWEIGHT_BOLD);
@@ -94,8 +95,8 @@ public class PPSReportXlsStyleContainer {
         headerStyle2Red(sheet);
     }
 
-    private void headerStyle2Red(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void headerStyle2Red(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
         style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
         style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
@@ -109,8 +110,8 @@ public class PPSReportXlsStyleContainer {
 
     }
 
-    private void headerStyle2(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void headerStyle2(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
         style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
         style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
@@ -123,8 +124,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_HeaderStyle2, style);
     }
 
-    private void headerStyle1(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void headerStyle1(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
         style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
         style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
@@ -139,8 +140,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_HeaderStyle1, style);
     }
 
-    private void greyDataStyleRed(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void greyDataStyleRed(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
         style.setBorderRight(HSSFCellStyle.BORDER_THIN);
@@ -154,8 +155,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_GreyDataStyleRed, style);
     }
 
-    private void whiteDataStyleRed(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void whiteDataStyleRed(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
         style.setBorderRight(HSSFCellStyle.BORDER_THIN);
@@ -168,8 +169,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_WhiteDataStyleRed, style);
     }
 
-    private void changeoverDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void changeoverDataStyle(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
 
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
@@ -190,8 +191,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_ChangeoverDataStyle, style);
     }
 
-    private void whiteDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void whiteDataStyle(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
@@ -205,8 +206,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_WhiteDataStyle, style);
     }
 
-    private void greyDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void greyDataStyle(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
         style.setBorderRight(HSSFCellStyle.BORDER_THIN);
@@ -221,8 +222,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_GreyDataStyle, style);
     }
 
-    private void greyDataStyleEnd(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void greyDataStyleEnd(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
         style.setBorderRight(HSSFCellStyle.BORDER_THIN);
@@ -238,8 +239,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_GreyDataStyleEnd, style);
     }
 
-    private void whiteDataStyleEnd(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void whiteDataStyleEnd(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
@@ -255,8 +256,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_WhiteDataStyleEnd, style);
     }
 
-    private void greyDataStyleSmall(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void greyDataStyleSmall(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
@@ -272,8 +273,8 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_GreyDataStyleSmall, style);
     }
 
-    private void initWhiteDataStyleSmall(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
+    private void initWhiteDataStyleSmall(Sheet sheet) {
+        CellStyle style = sheet.getWorkbook().createCellStyle();
 
         style.setBorderTop(HSSFCellStyle.BORDER_THIN);
         style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
@@ -287,11 +288,11 @@ public class PPSReportXlsStyleContainer {
         styles.put(I_WhiteDataStyleSmall, style);
     }
 
-    public Map<String, HSSFCellStyle> getStyles() {
+    public Map<String, CellStyle> getStyles() {
         return styles;
     }
 
-    public void setStyles(Map<String, HSSFCellStyle> styles) {
+    public void setStyles(Map<String, CellStyle> styles) {
         this.styles = styles;
     }
 }
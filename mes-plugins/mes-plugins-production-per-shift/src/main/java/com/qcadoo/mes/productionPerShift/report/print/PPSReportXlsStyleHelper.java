@@ -23,63 +23,63 @@
  */
 package com.qcadoo.mes.productionPerShift.report.print;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Font;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PPSReportXlsStyleHelper {
 
-    public void setWhiteDataStyleSmall(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleSmall(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleSmall));
     }
 
-    public void setGreyDataStyleSmall(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleSmall(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleSmall));
     }
 
-    public void setWhiteDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleEnd));
     }
 
-    public void setGreyDataStyleEnd(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleEnd(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleEnd));
     }
 
-    public void setWhiteDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyle));
     }
 
-    public void setGreyDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyle));
     }
 
-    public void setChangeoverDataStyle(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setChangeoverDataStyle(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_ChangeoverDataStyle));
     }
 
-    public void setWhiteDataStyleRed(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setWhiteDataStyleRed(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_WhiteDataStyleRed));
     }
 
-    public void setGreyDataStyleRed(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setGreyDataStyleRed(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_GreyDataStyleRed));
     }
 
-    public void setHeaderStyle1(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle1(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle1));
     }
 
-    public void setHeaderStyle2(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle2(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle2));
     }
 
-    public void setHeaderStyle2Red(final HSSFCell cell, final PPSReportXlsStyleContainer styleContainer) {
+    public void setHeaderStyle2Red(final Cell cell, final PPSReportXlsStyleContainer styleContainer) {
         cell.setCellStyle(styleContainer.getStyles().get(PPSReportXlsStyleContainer.I_HeaderStyle2Red));
     }
 
@@ -0,0 +1,73 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.report.print.utils;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+
+/**
+ * Daily progress quantities of orders, by day and shift. Only the first quantity given for the same order, day and shift is
+ * kept.
+ */
+public class DailyProgressQuantities {
+
+    private final Map<Long, Table<LocalDate, Long, BigDecimal>> quantitiesByOrder = Maps.newHashMap();
+
+    public void add(final Long orderId, final LocalDate day, final Long shiftId, final BigDecimal quantity) {
+        Table<LocalDate, Long, BigDecimal> quantities = quantitiesByOrder.computeIfAbsent(orderId,
+                id -> HashBasedTable.create());
+
+        if (!quantities.contains(day, shiftId)) {
+            quantities.put(day, shiftId, quantity);
+        }
+    }
+
+    /**
+     * Adds quantity of planned or corrected daily progress. As for the production per shift details, corrected progress is used
+     * for orders which have any correction, planned progress otherwise.
+     */
+    public void add(final Long orderId, final LocalDate day, final Long shiftId, final BigDecimal quantity,
+            final boolean corrected, final boolean orderHasCorrections) {
+        if (corrected == orderHasCorrections) {
+            add(orderId, day, shiftId, quantity);
+        }
+    }
+
+    public BigDecimal get(final Long orderId, final LocalDate day, final Long shiftId) {
+        Table<LocalDate, Long, BigDecimal> quantities = quantitiesByOrder.get(orderId);
+
+        if (quantities == null) {
+            return null;
+        }
+
+        return quantities.get(day, shiftId);
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.report.print.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DailyProgressQuantitiesTest {
+
+    private static final Long ORDER_ID = 1L;
+
+    private static final Long SHIFT_ID = 2L;
+
+    private static final LocalDate DAY = new LocalDate(2016, 3, 1);
+
+    private DailyProgressQuantities dailyProgressQuantities;
+
+    @Before
+    public void init() {
+        dailyProgressQuantities = new DailyProgressQuantities();
+    }
+
+    @Test
+    public final void shouldReturnQuantityForOrderDayAndShift() {
+        // given
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.TEN);
+        dailyProgressQuantities.add(ORDER_ID, DAY.plusDays(1), SHIFT_ID, BigDecimal.ONE);
+
+        // when & then
+        assertEquals(BigDecimal.TEN, dailyProgressQuantities.get(ORDER_ID, DAY, SHIFT_ID));
+        assertEquals(BigDecimal.ONE, dailyProgressQuantities.get(ORDER_ID, DAY.plusDays(1), SHIFT_ID));
+    }
+
+    @Test
+    public final void shouldKeepFirstQuantityForOrderDayAndShift() {
+        // given
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.TEN);
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.ONE);
+
+        // when & then
+        assertEquals(BigDecimal.TEN, dailyProgressQuantities.get(ORDER_ID, DAY, SHIFT_ID));
+    }
+
+    @Test
+    public final void shouldUseCorrectedQuantityForOrderWithCorrections() {
+        // given
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.TEN, false, true);
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.ONE, true, true);
+        dailyProgressQuantities.add(ORDER_ID, DAY.plusDays(1), SHIFT_ID, BigDecimal.TEN, false, true);
+
+        // when & then
+        assertEquals(BigDecimal.ONE, dailyProgressQuantities.get(ORDER_ID, DAY, SHIFT_ID));
+        assertNull(dailyProgressQuantities.get(ORDER_ID, DAY.plusDays(1), SHIFT_ID));
+    }
+
+    @Test
+    public final void shouldUsePlannedQuantityForOrderWithoutCorrections() {
+        // given
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.TEN, false, false);
+
+        // when & then
+        assertEquals(BigDecimal.TEN, dailyProgressQuantities.get(ORDER_ID, DAY, SHIFT_ID));
+    }
+
+    @Test
+    public final void shouldReturnNullIfThereIsNoQuantity() {
+        // given
+        dailyProgressQuantities.add(ORDER_ID, DAY, SHIFT_ID, BigDecimal.TEN);
+
+        // when & then
+        assertNull(dailyProgressQuantities.get(ORDER_ID, DAY.plusDays(1), SHIFT_ID));
+        assertNull(dailyProgressQuantities.get(ORDER_ID, DAY, SHIFT_ID + 1));
+        assertNull(dailyProgressQuantities.get(ORDER_ID + 1, DAY, SHIFT_ID));
+    }
+
+}
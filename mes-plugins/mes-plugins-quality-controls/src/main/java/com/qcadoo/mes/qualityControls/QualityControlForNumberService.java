@@ -66,6 +66,14 @@ public class QualityControlForNumberService {
     }
 
     public String generateNumber(final String plugin, final String model, final int digitsNumber, final String qualityControlType) {
+        return formatNumber(getNextNumberValue(plugin, model, qualityControlType), digitsNumber);
+    }
+
+    /**
+     * Returns value of next number for quality controls of given type. Following numbers can be obtained by incrementing it,
+     * so many quality controls can be numbered using single query.
+     */
+    public long getNextNumberValue(final String plugin, final String model, final String qualityControlType) {
         long longValue = 0;
         SearchResult searchResult = dataDefinitionService.get(plugin, model).find()
                 .add(eq("qualityControlType", qualityControlType)).addOrder(SearchOrders.desc("id")).setMaxResults(1).list();
@@ -76,6 +84,10 @@ public class QualityControlForNumberService {
             Entity entity = entityList.get(0);
             longValue = entity.getId() + 1;
         }
-        return String.format("%0" + digitsNumber + "d", longValue);
+        return longValue;
+    }
+
+    public String formatNumber(final long value, final int digitsNumber) {
+        return String.format("%0" + digitsNumber + "d", value);
     }
 }
@@ -25,13 +25,21 @@ package com.qcadoo.mes.qualityControls;
 
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -143,6 +151,9 @@ public final class QualityControlService {
     @Autowired
     private QualityControlForNumberService qualityControlForNumber;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public void setTechnology(final ViewDefinitionState view) {
         Entity order = ((LookupComponent) view.getComponentByReference("order")).getEntity();
         if (order == null) {
@@ -341,6 +352,11 @@ public final class QualityControlService {
 
     public void generateQualityControl(final ViewDefinitionState viewDefinitionState, final ComponentState state,
             final String[] args) {
+        if (state instanceof GridComponent && ((GridComponent) state).getSelectedEntitiesIds().size() > 1) {
+            generateQualityControlForOrders(viewDefinitionState, (GridComponent) state);
+            return;
+        }
+
         if (state.getFieldValue() == null) {
             if (state instanceof FormComponent) {
                 state.addMessage("qcadooView.form.entityWithoutIdentifier", MessageType.FAILURE);
@@ -363,10 +379,10 @@ public final class QualityControlService {
             } else {
                 if (isQualityControlForOrderExists(order)) {
                     state.addMessage("qualityControls.qualityControls.generated.failure", MessageType.FAILURE);
-                } else {
-                    generateQualityControlForGivenType(qualityControlType, technology, order);
-
+                } else if (saveQualityControls(createQualityControlsForOrder(qualityControlType, technology, order)) > 0) {
                     state.addMessage("qualityControls.qualityControls.generated.success", MessageType.SUCCESS);
+                } else {
+                    state.addMessage("qualityControls.qualityControls.generated.invalid", MessageType.FAILURE);
                 }
                 state.performEvent(viewDefinitionState, "refresh", new String[0]);
             }
@@ -374,6 +390,63 @@ public final class QualityControlService {
 
     }
 
+    private void generateQualityControlForOrders(final ViewDefinitionState viewDefinitionState, final GridComponent grid) {
+        int generatedQualityControls = generateQualityControls(Lists.newArrayList(grid.getSelectedEntitiesIds()));
+
+        if (generatedQualityControls > 0) {
+            grid.addMessage("qualityControls.qualityControls.generated.success", MessageType.SUCCESS);
+        } else {
+            grid.addMessage("qualityControls.qualityControls.generated.failure", MessageType.FAILURE);
+        }
+        grid.performEvent(viewDefinitionState, "refresh", new String[0]);
+    }
+
+    /**
+     * Generates quality controls for all given orders, which technology has quality control type set and which don't have any
+     * quality control yet. Orders, existing controls and numbers are read once for the whole set.
+     * 
+     * @param orderIds
+     *            ids of orders
+     * @return number of generated quality controls, which passed validation and were saved
+     */
+    @Transactional
+    public int generateQualityControls(final List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> ordersWithQualityControls = getOrdersWithQualityControls(orderIds);
+
+        List<Entity> qualityControls = Lists.newArrayList();
+
+        for (Entity order : getOrders(orderIds)) {
+            Entity technology = order.getBelongsToField(TECHNOLOGY_LITERAL);
+
+            if (technology == null || ordersWithQualityControls.contains(order.getId())) {
+                continue;
+            }
+
+            String qualityControlType = technology.getStringField(QUALITY_CONTROL_TYPE_LITERAL);
+
+            if (qualityControlType != null) {
+                qualityControls.addAll(createQualityControlsForOrder(qualityControlType, technology, order));
+            }
+        }
+
+        return saveQualityControls(qualityControls);
+    }
+
+    private Set<Long> getOrdersWithQualityControls(final List<Long> orderIds) {
+        String query = "SELECT DISTINCT order_id FROM qualitycontrols_qualitycontrol WHERE order_id IN (:orderIds)";
+
+        return Sets.newHashSet(jdbcTemplate.queryForList(query, Collections.singletonMap("orderIds", orderIds), Long.class));
+    }
+
+    private List<Entity> getOrders(final List<Long> orderIds) {
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
+                .add(SearchRestrictions.in("id", orderIds)).list().getEntities();
+    }
+
     private boolean isQualityControlForOrderExists(final Entity order) {
         DataDefinition dataDefinition = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
                 QualityControlsConstants.MODEL_QUALITY_CONTROL);
@@ -660,13 +733,19 @@ public final class QualityControlService {
         return parameter.getBooleanField("autoGenerateQualityControl");
     }
 
-    private void generateQualityControlForGivenType(final String qualityControlType, final Entity technology, final Entity order) {
+    private List<Entity> createQualityControlsForOrder(final String qualityControlType, final Entity technology,
+            final Entity order) {
+        DataDefinition qualityControlDD = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
+                QualityControlsConstants.MODEL_QUALITY_CONTROL);
+        String qualityControlInstruction = (String) technology.getField("qualityControlInstruction");
+
+        List<Entity> qualityControls = Lists.newArrayList();
 
         if (TYPE_01FOR_BATCH.equals(qualityControlType)) {
             List<Entity> genealogies = getGenealogiesForOrder(order.getId());
 
             for (Entity genealogy : genealogies) {
-                createAndSaveControlForSingleBatch(order, genealogy);
+                qualityControls.add(createControlForSingleBatch(qualityControlDD, order, genealogy, genealogies.size()));
             }
 
         } else if (TYPE_02FOR_UNIT.equals(qualityControlType)) {
@@ -678,14 +757,8 @@ public final class QualityControlService {
                     : doneQuantity.divide(sampling, numberService.getMathContext());
 
             for (int i = 0; i <= numberOfControls.intValue(); i++) {
-                DataDefinition qualityForUnitDataDefinition = dataDefinitionService.get(
-                        QualityControlsConstants.PLUGIN_IDENTIFIER, QualityControlsConstants.MODEL_QUALITY_CONTROL);
-
-                Entity forUnit = qualityForUnitDataDefinition.create();
+                Entity forUnit = qualityControlDD.create();
                 forUnit.setField(ORDER_LITERAL, order);
-                forUnit.setField(NUMBER_LITERAL, qualityControlForNumber.generateNumber(
-                        QualityControlsConstants.PLUGIN_IDENTIFIER, QualityControlsConstants.MODEL_QUALITY_CONTROL,
-                        DIGITS_NUMBER, QUALITY_CONTROLS_FOR_UNIT_LITERAL));
                 forUnit.setField(CLOSED_LITERAL, false);
                 forUnit.setField(QUALITY_CONTROL_TYPE_LITERAL, QUALITY_CONTROLS_FOR_UNIT_LITERAL);
                 forUnit.setField(TAKEN_FOR_CONTROL_QUANTITY_LITERAL, BigDecimal.ONE);
@@ -701,73 +774,60 @@ public final class QualityControlService {
                     forUnit.setField(CONTROLLED_QUANTITY_LITERAL, numberOfRemainders);
 
                     if (numberOfRemainders.compareTo(BigDecimal.ZERO) < 1) {
-                        return;
+                        break;
                     }
                 }
-                setControlInstruction(order, forUnit);
-                qualityForUnitDataDefinition.save(forUnit);
+                qualityControls.add(forUnit);
             }
         } else if (TYPE_03FOR_ORDER.equals(qualityControlType)) {
-            createAndSaveControlForSingleOrder(order);
+            qualityControls.add(createControlForSingleOrder(qualityControlDD, order));
         } else if (TYPE_04FOR_OPERATION.equals(qualityControlType)) {
             EntityTree tree = technology.getTreeField(OPERATION_COMPONENTS_LITERAL);
             for (Entity entity : tree) {
                 if (entity.getField(FIELD_QUALITY_CONTROL_REQUIRED) != null
                         && entity.getBooleanField(FIELD_QUALITY_CONTROL_REQUIRED)) {
 
-                    createAndSaveControlForOperation(order, entity);
+                    qualityControls.add(createControlForOperation(qualityControlDD, order, entity));
                 }
 
             }
         }
-    }
 
-    private void createAndSaveControlForOperation(final Entity order, final Entity entity) {
-        DataDefinition qualityForOperationDataDefinition = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
-                QualityControlsConstants.MODEL_QUALITY_CONTROL);
+        for (Entity qualityControl : qualityControls) {
+            setControlInstruction(qualityControlInstruction, qualityControl);
+        }
 
-        Entity forOperation = qualityForOperationDataDefinition.create();
+        return qualityControls;
+    }
+
+    private Entity createControlForOperation(final DataDefinition qualityControlDD, final Entity order, final Entity entity) {
+        Entity forOperation = qualityControlDD.create();
         forOperation.setField(ORDER_LITERAL, order);
-        forOperation.setField(NUMBER_LITERAL, qualityControlForNumber.generateNumber(QualityControlsConstants.PLUGIN_IDENTIFIER,
-                QualityControlsConstants.MODEL_QUALITY_CONTROL, DIGITS_NUMBER, "qualityControlForOperation"));
         forOperation.setField(OPERATION_LITERAL, entity.getBelongsToField(OPERATION_LITERAL));
         forOperation.setField(CLOSED_LITERAL, false);
         forOperation.setField(QUALITY_CONTROL_TYPE_LITERAL, QUALITY_CONTROLS_FOR_OPERATION_LITERAL);
 
-        setControlInstruction(order, forOperation);
-
-        qualityForOperationDataDefinition.save(forOperation);
+        return forOperation;
     }
 
-    private void createAndSaveControlForSingleOrder(final Entity order) {
-        DataDefinition qualityForOrderDataDefinition = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
-                QualityControlsConstants.MODEL_QUALITY_CONTROL);
-
-        Entity forOrder = qualityForOrderDataDefinition.create();
+    private Entity createControlForSingleOrder(final DataDefinition qualityControlDD, final Entity order) {
+        Entity forOrder = qualityControlDD.create();
         forOrder.setField(ORDER_LITERAL, order);
-        forOrder.setField(NUMBER_LITERAL, qualityControlForNumber.generateNumber(QualityControlsConstants.PLUGIN_IDENTIFIER,
-                QualityControlsConstants.MODEL_QUALITY_CONTROL, DIGITS_NUMBER, QUALITY_CONTROLS_FOR_ORDER_LITERAL));
         forOrder.setField(CLOSED_LITERAL, false);
         forOrder.setField(QUALITY_CONTROL_TYPE_LITERAL, QUALITY_CONTROLS_FOR_ORDER_LITERAL);
 
-        setControlInstruction(order, forOrder);
-
-        qualityForOrderDataDefinition.save(forOrder);
+        return forOrder;
     }
 
-    private void createAndSaveControlForSingleBatch(final Entity order, final Entity genealogy) {
-        DataDefinition qualityForBatchDataDefinition = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
-                QualityControlsConstants.MODEL_QUALITY_CONTROL);
-
-        Entity forBatch = qualityForBatchDataDefinition.create();
+    private Entity createControlForSingleBatch(final DataDefinition qualityControlDD, final Entity order, final Entity genealogy,
+            final int numberOfGenealogies) {
+        Entity forBatch = qualityControlDD.create();
         forBatch.setField(ORDER_LITERAL, order);
-        forBatch.setField(NUMBER_LITERAL, qualityControlForNumber.generateNumber(QualityControlsConstants.PLUGIN_IDENTIFIER,
-                QualityControlsConstants.MODEL_QUALITY_CONTROL, DIGITS_NUMBER, QUALITY_CONTROLS_FOR_BATCH_LITERAL));
         forBatch.setField("batchNr", genealogy.getField("batch"));
         forBatch.setField(CLOSED_LITERAL, false);
         forBatch.setField(QUALITY_CONTROL_TYPE_LITERAL, QUALITY_CONTROLS_FOR_BATCH_LITERAL);
 
-        if (getGenealogiesForOrder(order.getId()).size() == 1) {
+        if (numberOfGenealogies == 1) {
             BigDecimal doneQuantity = order.getDecimalField(DONE_QUANTITY_LITERAL);
             BigDecimal plannedQuantity = order.getDecimalField(PLANNED_QUANTITY_LITERAL);
 
@@ -786,20 +846,43 @@ public final class QualityControlService {
         forBatch.setField(REJECTED_QUANTITY_LITERAL, BigDecimal.ZERO);
         forBatch.setField(ACCEPTED_DEFECTS_QUANTITY_LITERAL, BigDecimal.ZERO);
 
-        setControlInstruction(order, forBatch);
-
-        qualityForBatchDataDefinition.save(forBatch);
+        return forBatch;
     }
 
-    private void setControlInstruction(final Entity order, final Entity qualityControl) {
-        String qualityControlInstruction = (String) order.getBelongsToField(TECHNOLOGY_LITERAL).getField(
-                "qualityControlInstruction");
-
+    private void setControlInstruction(final String qualityControlInstruction, final Entity qualityControl) {
         if (qualityControlInstruction != null) {
             qualityControl.setField(CONTROL_INSTRUCTION_LITERAL, qualityControlInstruction);
         }
     }
 
+    private int saveQualityControls(final List<Entity> qualityControls) {
+        DataDefinition qualityControlDD = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
+                QualityControlsConstants.MODEL_QUALITY_CONTROL);
+        Map<String, Long> nextNumberValues = Maps.newHashMap();
+        int savedQualityControls = 0;
+
+        for (Entity qualityControl : qualityControls) {
+            String qualityControlType = qualityControl.getStringField(QUALITY_CONTROL_TYPE_LITERAL);
+            Long nextNumberValue = nextNumberValues.get(qualityControlType);
+
+            if (nextNumberValue == null) {
+                nextNumberValue = qualityControlForNumber.getNextNumberValue(QualityControlsConstants.PLUGIN_IDENTIFIER,
+                        QualityControlsConstants.MODEL_QUALITY_CONTROL, qualityControlType);
+            }
+
+            qualityControl.setField(NUMBER_LITERAL, qualityControlForNumber.formatNumber(nextNumberValue, DIGITS_NUMBER));
+
+            if (qualityControlDD.save(qualityControl).isValid()) {
+                nextNumberValues.put(qualityControlType, nextNumberValue + 1);
+                savedQualityControls++;
+            } else {
+                nextNumberValues.put(qualityControlType, nextNumberValue);
+            }
+        }
+
+        return savedQualityControls;
+    }
+
     private List<Entity> getGenealogiesForOrder(final Long id) {
         DataDefinition genealogyDD = dataDefinitionService.get("genealogies", "genealogy");
 
@@ -38,10 +38,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.Element;
@@ -49,7 +52,11 @@ import com.lowagie.text.Paragraph;
 import com.lowagie.text.Phrase;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.qualityControls.constants.QualityControlsConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -143,9 +150,10 @@ public class QualityControlsReportService {
     }
 
     public final Map<Entity, List<Entity>> getQualityOrdersForProduct(final List<Entity> orders) {
+        Map<Long, Entity> products = getProductsByQualityControlId(orders);
         Map<Entity, List<Entity>> productOrders = new HashMap<Entity, List<Entity>>();
         for (Entity entity : orders) {
-            Entity product = entity.getBelongsToField(MODEL_ORDER).getBelongsToField("product");
+            Entity product = products.get(entity.getId());
             List<Entity> ordersList = new ArrayList<Entity>();
             if (productOrders.containsKey(product)) {
                 ordersList = productOrders.get(product);
@@ -157,9 +165,10 @@ public class QualityControlsReportService {
     }
 
     public final Map<Entity, List<BigDecimal>> getQualityOrdersQuantitiesForProduct(final List<Entity> orders) {
+        Map<Long, Entity> products = getProductsByQualityControlId(orders);
         Map<Entity, List<BigDecimal>> quantities = new HashMap<Entity, List<BigDecimal>>();
         for (Entity entity : orders) {
-            Entity product = entity.getBelongsToField(MODEL_ORDER).getBelongsToField("product");
+            Entity product = products.get(entity.getId());
             List<BigDecimal> quantitiesList = new ArrayList<BigDecimal>();
             if (quantities.containsKey(product)) {
                 quantitiesList = quantities.get(product);
@@ -182,9 +191,12 @@ public class QualityControlsReportService {
     }
 
     public final Map<Entity, List<BigDecimal>> getQualityOrdersResultsQuantitiesForProduct(final List<Entity> orders) {
+        Map<Long, Entity> ordersByQualityControlId = getOrdersByQualityControlId(orders);
+        Map<Long, Entity> products = getProductsByQualityControlId(orders, ordersByQualityControlId);
         Map<Entity, List<BigDecimal>> quantities = new HashMap<Entity, List<BigDecimal>>();
         for (Entity entity : orders) {
-            Entity product = entity.getBelongsToField(MODEL_ORDER).getBelongsToField("product");
+            Entity order = ordersByQualityControlId.get(entity.getId());
+            Entity product = products.get(entity.getId());
             List<BigDecimal> quantitiesList = new ArrayList<BigDecimal>();
             if (quantities.containsKey(product)) {
                 quantitiesList = quantities.get(product);
@@ -196,15 +208,15 @@ public class QualityControlsReportService {
                 } else if (CONTROL_RESULT_TYPE_OBJECTION.equals(entity.getField(FIELD_CONTROL_RESULT))) {
                     quantitiesList.set(3, quantitiesList.get(3).add(BigDecimal.ONE, numberService.getMathContext()));
                 }
-                if (entity.getBelongsToField(MODEL_ORDER).getField(DONE_QUANTITY) == null) {
+                if (order.getField(DONE_QUANTITY) == null) {
                     quantitiesList.set(
                             4,
-                            quantitiesList.get(4).add(entity.getBelongsToField(MODEL_ORDER).getDecimalField(PLANNED_QUANTITY),
+                            quantitiesList.get(4).add(order.getDecimalField(PLANNED_QUANTITY),
                                     numberService.getMathContext()));
                 } else {
                     quantitiesList.set(
                             4,
-                            quantitiesList.get(4).add(entity.getBelongsToField(MODEL_ORDER).getDecimalField(DONE_QUANTITY),
+                            quantitiesList.get(4).add(order.getDecimalField(DONE_QUANTITY),
                                     numberService.getMathContext()));
                 }
             } else {
@@ -223,14 +235,14 @@ public class QualityControlsReportService {
                     quantitiesList.add(2, BigDecimal.ZERO);
                     quantitiesList.add(3, BigDecimal.ONE);
                 }
-                if (entity.getBelongsToField(MODEL_ORDER).getDecimalField(DONE_QUANTITY) == null) {
-                    if (entity.getBelongsToField(MODEL_ORDER).getDecimalField(PLANNED_QUANTITY) == null) {
+                if (order.getDecimalField(DONE_QUANTITY) == null) {
+                    if (order.getDecimalField(PLANNED_QUANTITY) == null) {
                         quantitiesList.add(4, BigDecimal.ZERO);
                     } else {
-                        quantitiesList.add(4, entity.getBelongsToField(MODEL_ORDER).getDecimalField(PLANNED_QUANTITY));
+                        quantitiesList.add(4, order.getDecimalField(PLANNED_QUANTITY));
                     }
                 } else {
-                    quantitiesList.add(4, entity.getBelongsToField(MODEL_ORDER).getDecimalField(DONE_QUANTITY));
+                    quantitiesList.add(4, order.getDecimalField(DONE_QUANTITY));
                 }
             }
             quantities.put(product, quantitiesList);
@@ -239,9 +251,10 @@ public class QualityControlsReportService {
     }
 
     public final Map<Entity, List<Entity>> getQualityOrdersForOperation(final List<Entity> orders) {
+        Map<Long, Entity> operations = getOperationsByQualityControlId(orders);
         Map<Entity, List<Entity>> operationOrders = new HashMap<Entity, List<Entity>>();
         for (Entity entity : orders) {
-            Entity operation = entity.getBelongsToField(MODEL_OPERATION);
+            Entity operation = operations.get(entity.getId());
             List<Entity> ordersList = new ArrayList<Entity>();
             if (operationOrders.containsKey(operation)) {
                 ordersList = operationOrders.get(operation);
@@ -253,9 +266,10 @@ public class QualityControlsReportService {
     }
 
     public final Map<Entity, List<BigDecimal>> getQualityOrdersResultsQuantitiesForOperation(final List<Entity> orders) {
+        Map<Long, Entity> operations = getOperationsByQualityControlId(orders);
         Map<Entity, List<BigDecimal>> quantities = new HashMap<Entity, List<BigDecimal>>();
         for (Entity entity : orders) {
-            Entity operation = entity.getBelongsToField(MODEL_OPERATION);
+            Entity operation = operations.get(entity.getId());
             List<BigDecimal> quantitiesList = new ArrayList<BigDecimal>();
             if (quantities.containsKey(operation)) {
                 quantitiesList = quantities.get(operation);
@@ -290,6 +304,69 @@ public class QualityControlsReportService {
         return quantities;
     }
 
+    private Map<Long, Entity> getOrdersByQualityControlId(final List<Entity> qualityControls) {
+        return getBelongsToEntitiesByQualityControlId(qualityControls, MODEL_ORDER,
+                dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, MODEL_ORDER));
+    }
+
+    private Map<Long, Entity> getProductsByQualityControlId(final List<Entity> qualityControls) {
+        return getProductsByQualityControlId(qualityControls, getOrdersByQualityControlId(qualityControls));
+    }
+
+    private Map<Long, Entity> getProductsByQualityControlId(final List<Entity> qualityControls,
+            final Map<Long, Entity> ordersByQualityControlId) {
+        Set<Long> productIds = Sets.newHashSet();
+        for (Entity order : ordersByQualityControlId.values()) {
+            productIds.add(order.getBelongsToField(OrderFields.PRODUCT).getId());
+        }
+        Map<Long, Entity> productsById = getEntitiesById(
+                dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT), productIds);
+
+        Map<Long, Entity> products = Maps.newHashMap();
+        for (Entity qualityControl : qualityControls) {
+            Entity order = ordersByQualityControlId.get(qualityControl.getId());
+            products.put(qualityControl.getId(), productsById.get(order.getBelongsToField(OrderFields.PRODUCT).getId()));
+        }
+        return products;
+    }
+
+    private Map<Long, Entity> getOperationsByQualityControlId(final List<Entity> qualityControls) {
+        return getBelongsToEntitiesByQualityControlId(qualityControls, MODEL_OPERATION, dataDefinitionService.get(
+                TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT));
+    }
+
+    private Map<Long, Entity> getBelongsToEntitiesByQualityControlId(final List<Entity> qualityControls, final String fieldName,
+            final DataDefinition dataDefinition) {
+        Set<Long> ids = Sets.newHashSet();
+        for (Entity qualityControl : qualityControls) {
+            Entity belongsToEntity = qualityControl.getBelongsToField(fieldName);
+            if (belongsToEntity != null) {
+                ids.add(belongsToEntity.getId());
+            }
+        }
+        Map<Long, Entity> entitiesById = getEntitiesById(dataDefinition, ids);
+
+        Map<Long, Entity> entities = Maps.newHashMap();
+        for (Entity qualityControl : qualityControls) {
+            Entity belongsToEntity = qualityControl.getBelongsToField(fieldName);
+            if (belongsToEntity != null) {
+                entities.put(qualityControl.getId(), entitiesById.get(belongsToEntity.getId()));
+            }
+        }
+        return entities;
+    }
+
+    private Map<Long, Entity> getEntitiesById(final DataDefinition dataDefinition, final Set<Long> ids) {
+        Map<Long, Entity> entitiesById = Maps.newHashMap();
+        if (ids.isEmpty()) {
+            return entitiesById;
+        }
+        for (Entity entity : dataDefinition.find().add(SearchRestrictions.in("id", ids)).list().getEntities()) {
+            entitiesById.put(entity.getId(), entity);
+        }
+        return entitiesById;
+    }
+
     @SuppressWarnings("unchecked")
     public final List<Entity> getOrderSeries(final Map<String, Object> model, final String type) {
         DataDefinition dataDef = dataDefinitionService.get(QualityControlsConstants.PLUGIN_IDENTIFIER,
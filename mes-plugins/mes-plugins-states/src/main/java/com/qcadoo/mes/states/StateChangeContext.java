@@ -41,6 +41,16 @@ public interface StateChangeContext extends MessagesHolder {
      */
     boolean save();
 
+    /**
+     * Persist given message as belonging to inner state change entity, without saving the whole state change entity. Messages
+     * of already persisted state change entity are inserted together by the next save of this context, or just before the
+     * current transaction commits.
+     *
+     * @param message
+     * @return false if occur any validation errors, true if valid.
+     */
+    boolean saveMessage(final Entity message);
+
     /**
      * Set inner state change entity's field
      * 
@@ -27,17 +27,22 @@ import static com.qcadoo.mes.states.constants.StateChangeStatus.FAILURE;
 
 import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.exception.StateChangeException;
 import com.qcadoo.mes.states.messages.MessageService;
+import com.qcadoo.mes.states.messages.constants.MessageFields;
 import com.qcadoo.mes.states.messages.constants.StateMessageType;
 import com.qcadoo.mes.states.messages.util.ValidationMessageHelper;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.types.HasManyType;
 
 public final class StateChangeContextImpl implements StateChangeContext {
 
@@ -51,18 +56,37 @@ public final class StateChangeContextImpl implements StateChangeContext {
 
     private boolean ownerValid = true;
 
+    private boolean changed;
+
+    private List<Entity> messages;
+
+    private final List<Entity> unsavedMessages = Lists.newArrayList();
+
+    private boolean saveOnCommitRegistered;
+
     public StateChangeContextImpl(final Entity stateChangeEntity, final StateChangeEntityDescriber describer,
             final MessageService messageService) {
+        Preconditions.checkNotNull(stateChangeEntity);
         Preconditions.checkNotNull(describer);
         Preconditions.checkNotNull(messageService);
         this.describer = describer;
         this.messageService = messageService;
-        setStateChangeEntity(stateChangeEntity);
+        if (stateChangeEntity.getId() != null && stateChangeEntity.isValid()) {
+            // already persisted entity will be saved together with the first change made through this context
+            this.entity = stateChangeEntity;
+            this.changed = true;
+        } else {
+            setStateChangeEntity(stateChangeEntity);
+        }
     }
 
     @Override
     @Transactional
     public boolean save() {
+        saveMessages();
+        if (!changed && entity.getId() != null) {
+            return true;
+        }
         try {
             return setStateChangeEntity(entity.getDataDefinition().save(entity));
         } catch (Exception e) {
@@ -70,9 +94,73 @@ public final class StateChangeContextImpl implements StateChangeContext {
         }
     }
 
+    @Override
+    @Transactional
+    public boolean saveMessage(final Entity message) {
+        if (entity.getId() == null) {
+            final List<Entity> allMessages = getAllMessages();
+            allMessages.add(message);
+            setField(describer.getMessagesFieldName(), allMessages);
+            messages = null;
+            return save();
+        }
+        if (StringUtils.isEmpty(message.getStringField(MessageFields.TYPE))
+                || StringUtils.isEmpty(message.getStringField(MessageFields.TRANSLATION_KEY))) {
+            return false;
+        }
+        message.setField(getMessagesJoinFieldName(), entity);
+        getMessages().add(message);
+        unsavedMessages.add(message);
+        registerSaveOnCommit();
+        return true;
+    }
+
+    private void registerSaveOnCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            save();
+            return;
+        }
+        if (saveOnCommitRegistered) {
+            return;
+        }
+        saveOnCommitRegistered = true;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void beforeCommit(final boolean readOnly) {
+                save();
+            }
+
+            @Override
+            public void afterCompletion(final int status) {
+                saveOnCommitRegistered = false;
+            }
+
+        });
+    }
+
+    private void saveMessages() {
+        if (unsavedMessages.isEmpty() || entity.getId() == null) {
+            return;
+        }
+        try {
+            messageService.saveMessages(entity, getMessagesJoinFieldName(), Lists.newArrayList(unsavedMessages));
+            unsavedMessages.clear();
+        } catch (Exception e) {
+            throw new StateChangeException(e);
+        }
+    }
+
+    private String getMessagesJoinFieldName() {
+        final HasManyType messagesFieldType = (HasManyType) describer.getDataDefinition()
+                .getField(describer.getMessagesFieldName()).getType();
+        return messagesFieldType.getJoinFieldName();
+    }
+
     @Override
     public void setField(final String fieldName, final Object fieldValue) {
         entity.setField(fieldName, fieldValue);
+        changed = true;
     }
 
     @Override
@@ -116,6 +204,7 @@ public final class StateChangeContextImpl implements StateChangeContext {
             final Entity savedStateChange = describer.getDataDefinition().save(stateChange);
             if (savedStateChange.isValid()) {
                 this.entity = savedStateChange;
+                this.changed = false;
                 return true;
             }
         }
@@ -183,8 +272,15 @@ public final class StateChangeContextImpl implements StateChangeContext {
 
     @Override
     public List<Entity> getAllMessages() {
-        final EntityList messagesAsEntityList = entity.getHasManyField(describer.getMessagesFieldName());
-        return Lists.newArrayList(messagesAsEntityList);
+        return Lists.newArrayList(getMessages());
+    }
+
+    private List<Entity> getMessages() {
+        if (messages == null) {
+            final EntityList messagesAsEntityList = entity.getHasManyField(describer.getMessagesFieldName());
+            messages = Lists.newArrayList(messagesAsEntityList);
+        }
+        return messages;
     }
 
     @Override
@@ -208,7 +304,7 @@ public final class StateChangeContextImpl implements StateChangeContext {
             final Entity savedOwner = owner.getDataDefinition().save(owner);
             isValid = isEntityValid(savedOwner);
             if (isValid) {
-                entity.setField(describer.getOwnerFieldName(), savedOwner);
+                setField(describer.getOwnerFieldName(), savedOwner);
             }
         }
         ownerValid = isValid;
@@ -23,6 +23,8 @@
  */
 package com.qcadoo.mes.states.messages;
 
+import java.util.List;
+
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.messages.constants.StateMessageType;
 import com.qcadoo.model.api.Entity;
@@ -56,6 +58,17 @@ public interface MessageService {
      */
     boolean messageAlreadyExists(final Entity message);
 
+    /**
+     * Persist given messages as belonging to given state change entity with a single insert
+     * 
+     * @param stateChangeEntity
+     *            already persisted state change entity
+     * @param joinFieldName
+     *            name of message's field joining it with state change entity
+     * @param messages
+     */
+    void saveMessages(final Entity stateChangeEntity, final String joinFieldName, final List<Entity> messages);
+
     /**
      * Add message to state change entity
      * 
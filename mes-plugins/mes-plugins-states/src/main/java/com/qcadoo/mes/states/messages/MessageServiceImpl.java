@@ -29,11 +29,14 @@ import static com.qcadoo.mes.states.messages.constants.StateMessageType.FAILURE;
 import static com.qcadoo.mes.states.messages.constants.StateMessageType.VALIDATION_ERROR;
 
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.messages.constants.MessageFields;
@@ -49,9 +52,18 @@ import com.qcadoo.model.api.search.SearchResult;
 @Service
 public class MessageServiceImpl implements MessageService {
 
+    private static final String L_INSERT_MESSAGES = "INSERT INTO states_message "
+            + "(type, translationkey, translationargs, correspondfieldname, autoclose, %s_id) VALUES %s";
+
+    private static final String L_MESSAGE_VALUES = "(:type%1$d, :translationKey%1$d, :translationArgs%1$d, "
+            + ":correspondFieldName%1$d, :autoClose%1$d, :stateChangeId)";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Override
     public final Entity createMessage(final String translationKey, final StateMessageType type, final boolean autoClose,
             final String correspondField, final String... translationArgs) {
@@ -72,6 +84,29 @@ public class MessageServiceImpl implements MessageService {
         return result.getTotalNumberOfEntities() > 0;
     }
 
+    @Override
+    public void saveMessages(final Entity stateChangeEntity, final String joinFieldName, final List<Entity> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        final Map<String, Object> params = Maps.newHashMap();
+        final StringBuilder values = new StringBuilder();
+        params.put("stateChangeId", stateChangeEntity.getId());
+        for (int index = 0; index < messages.size(); index++) {
+            final Entity message = messages.get(index);
+            if (index > 0) {
+                values.append(", ");
+            }
+            values.append(String.format(L_MESSAGE_VALUES, index));
+            params.put("type" + index, message.getStringField(MessageFields.TYPE));
+            params.put("translationKey" + index, message.getStringField(MessageFields.TRANSLATION_KEY));
+            params.put("translationArgs" + index, message.getStringField(MessageFields.TRANSLATION_ARGS));
+            params.put("correspondFieldName" + index, message.getStringField(MessageFields.CORRESPOND_FIELD_NAME));
+            params.put("autoClose" + index, message.getBooleanField(MessageFields.AUTO_CLOSE));
+        }
+        jdbcTemplate.update(String.format(L_INSERT_MESSAGES, joinFieldName.toLowerCase(), values), params);
+    }
+
     protected DataDefinition getDataDefinition() {
         return dataDefinitionService.get(PLUGIN_IDENTIFIER, MODEL_MESSAGE);
     }
@@ -92,15 +127,11 @@ public class MessageServiceImpl implements MessageService {
 
     @Override
     public final void addMessage(final StateChangeContext stateChangeContext, final Entity message) {
-        final List<Entity> messages = Lists.newArrayList(stateChangeContext.getAllMessages());
-        messages.add(message);
-        final String messagesFieldName = stateChangeContext.getDescriber().getMessagesFieldName();
-        stateChangeContext.setField(messagesFieldName, messages);
         final StateMessageType type = StateMessageType.parseString(message.getStringField(MessageFields.TYPE));
         if (VALIDATION_ERROR.equals(type) || FAILURE.equals(type)) {
             stateChangeContext.setStatus(StateChangeStatus.FAILURE);
         }
-        stateChangeContext.save();
+        stateChangeContext.saveMessage(message);
     }
 
     @Override
@@ -29,6 +29,7 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 
 import java.util.List;
@@ -40,13 +41,21 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.exception.StateChangeException;
 import com.qcadoo.mes.states.messages.MessageService;
+import com.qcadoo.mes.states.messages.constants.MessageFields;
+import com.qcadoo.mes.states.messages.constants.StateMessageType;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.FieldDefinition;
+import com.qcadoo.model.api.types.HasManyType;
 import com.qcadoo.model.api.validators.ErrorMessage;
 
 public class StateChangeContextTest extends StateChangeTest {
@@ -67,6 +76,8 @@ public class StateChangeContextTest extends StateChangeTest {
 
     private static final String GLOBAL_MESSAGE_1 = "global_message_1";
 
+    private static final String MESSAGES_JOIN_FIELD_NAME = "stateChange";
+
     @Before
     public final void init() {
         MockitoAnnotations.initMocks(this);
@@ -305,6 +316,129 @@ public class StateChangeContextTest extends StateChangeTest {
         verify(messageService).addValidationError(stateChangeContext, null, GLOBAL_MESSAGE_1, EMPTY_STRING_ARRAY);
     }
 
+    @Test
+    public final void shouldInsertMessagesOfPersistedStateChangeTogetherOnSave() {
+        // given
+        final StateChangeContext persistedStateChangeContext = buildPersistedStateChangeContext();
+        final Entity message1 = mockMessage(FIELD_1_MESSAGE_1);
+        final Entity message2 = mockMessage(GLOBAL_MESSAGE_1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // when
+            persistedStateChangeContext.saveMessage(message1);
+            persistedStateChangeContext.saveMessage(message2);
+
+            // then
+            verify(messageService, never()).saveMessages(Mockito.any(Entity.class), Mockito.anyString(),
+                    Mockito.anyListOf(Entity.class));
+            Assert.assertEquals(Lists.newArrayList(message1, message2), persistedStateChangeContext.getAllMessages());
+
+            persistedStateChangeContext.save();
+            persistedStateChangeContext.save();
+
+            verify(messageService).saveMessages(stateChangeEntity, MESSAGES_JOIN_FIELD_NAME,
+                    Lists.newArrayList(message1, message2));
+            verify(message1).setField(MESSAGES_JOIN_FIELD_NAME, stateChangeEntity);
+            verify(message2).setField(MESSAGES_JOIN_FIELD_NAME, stateChangeEntity);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldInsertMessagesBeforeCommitIfContextIsNotSavedAgain() {
+        // given
+        final StateChangeContext persistedStateChangeContext = buildPersistedStateChangeContext();
+        final Entity message = mockMessage(FIELD_1_MESSAGE_1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            persistedStateChangeContext.saveMessage(message);
+
+            // when
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.beforeCommit(false);
+            }
+
+            // then
+            verify(messageService).saveMessages(stateChangeEntity, MESSAGES_JOIN_FIELD_NAME, Lists.newArrayList(message));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldNotInsertMessageWithoutTranslationKey() {
+        // given
+        final StateChangeContext persistedStateChangeContext = buildPersistedStateChangeContext();
+        final Entity message = mockMessage(null);
+
+        // when
+        final boolean result = persistedStateChangeContext.saveMessage(message);
+        persistedStateChangeContext.save();
+
+        // then
+        Assert.assertFalse(result);
+        verify(messageService, never()).saveMessages(Mockito.any(Entity.class), Mockito.anyString(),
+                Mockito.anyListOf(Entity.class));
+    }
+
+    @Test
+    public final void shouldSkipSaveOfUnchangedPersistedStateChange() {
+        // given
+        final StateChangeContext persistedStateChangeContext = buildPersistedStateChangeContext();
+        persistedStateChangeContext.save();
+        reset(stateChangeDD);
+
+        // when
+        final boolean result = persistedStateChangeContext.save();
+
+        // then
+        Assert.assertTrue(result);
+        verify(stateChangeDD, never()).save(Mockito.any(Entity.class));
+    }
+
+    @Test
+    public final void shouldSaveChangedPersistedStateChange() {
+        // given
+        final StateChangeContext persistedStateChangeContext = buildPersistedStateChangeContext();
+        persistedStateChangeContext.save();
+        reset(stateChangeDD);
+        given(stateChangeDD.save(Mockito.any(Entity.class))).willAnswer(new Answer<Entity>() {
+
+            @Override
+            public Entity answer(final InvocationOnMock invocation) throws Throwable {
+                return (Entity) invocation.getArguments()[0];
+            }
+        });
+
+        // when
+        persistedStateChangeContext.setStatus(StateChangeStatus.SUCCESSFUL);
+        persistedStateChangeContext.save();
+
+        // then
+        verify(stateChangeDD, atLeastOnce()).save(stateChangeEntity);
+        verify(stateChangeEntity).setField(describer.getStatusFieldName(), StateChangeStatus.SUCCESSFUL.getStringValue());
+    }
+
+    private StateChangeContext buildPersistedStateChangeContext() {
+        final FieldDefinition messagesField = mock(FieldDefinition.class);
+        final HasManyType messagesFieldType = mock(HasManyType.class);
+        given(stateChangeDD.getField(describer.getMessagesFieldName())).willReturn(messagesField);
+        given(messagesField.getType()).willReturn(messagesFieldType);
+        given(messagesFieldType.getJoinFieldName()).willReturn(MESSAGES_JOIN_FIELD_NAME);
+        given(stateChangeEntity.getId()).willReturn(1L);
+        return new StateChangeContextImpl(stateChangeEntity, describer, messageService);
+    }
+
+    private Entity mockMessage(final String translationKey) {
+        final Entity message = mock(Entity.class);
+        given(message.getStringField(MessageFields.TYPE)).willReturn(StateMessageType.INFO.getStringValue());
+        given(message.getStringField(MessageFields.TRANSLATION_KEY)).willReturn(translationKey);
+        return message;
+    }
+
     private ErrorMessage buildErrorMessage(final String message) {
         return new ErrorMessage(message, EMPTY_STRING_ARRAY);
     }
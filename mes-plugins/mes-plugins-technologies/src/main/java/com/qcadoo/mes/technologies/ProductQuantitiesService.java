@@ -24,6 +24,7 @@
 package com.qcadoo.mes.technologies;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -188,6 +189,14 @@ public interface ProductQuantitiesService {
      */
     Entity getProduct(final Long productId);
 
+    /**
+     * Gets products with one query
+     *
+     * @param productIds
+     * @return products by their ids
+     */
+    Map<Long, Entity> getProducts(final Collection<Long> productIds);
+
     /**
      * Covers operations runs from product quantities
      *
@@ -38,6 +38,7 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -573,6 +574,19 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(productId);
     }
 
+    @Override
+    public Map<Long, Entity> getProducts(final Collection<Long> productIds) {
+        Map<Long, Entity> products = Maps.newHashMap();
+        if (productIds.isEmpty()) {
+            return products;
+        }
+        for (Entity product : dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).find()
+                .add(SearchRestrictions.in("id", productIds)).list().getEntities()) {
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
+
     @Override
     public Map<Entity, BigDecimal> convertOperationsRunsFromProductQuantities(
             final Map<Long, BigDecimal> operationRunsFromProductionQuantities) {
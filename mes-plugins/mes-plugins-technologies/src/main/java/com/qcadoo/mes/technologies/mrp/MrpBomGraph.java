@@ -0,0 +1,195 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Compiled bill of materials graph. Technology structures are added as plain rows and every technology is compiled once into a
+ * bill - quantities of component products needed to produce one unit of technology's product. Intermediate products made within
+ * the technology tree and referenced technologies are resolved during compilation.
+ */
+class MrpBomGraph {
+
+    private final MathContext mathContext;
+
+    private final Map<Long, Long> technologyProducts = Maps.newHashMap();
+
+    private final Map<Long, OperationNode> operationComponents = Maps.newHashMap();
+
+    private final Map<Long, OperationNode> roots = Maps.newHashMap();
+
+    private final Map<Long, Map<Long, BigDecimal>> bills = Maps.newHashMap();
+
+    private final Set<Long> compiledTechnologies = Sets.newHashSet();
+
+    MrpBomGraph(final MathContext mathContext) {
+        this.mathContext = mathContext;
+    }
+
+    void addTechnology(final Long technologyId, final Long productId) {
+        technologyProducts.put(technologyId, productId);
+    }
+
+    void addOperationComponent(final Long operationComponentId, final Long technologyId, final Long parentId,
+            final Long referenceTechnologyId) {
+        OperationNode node = getOperationNode(operationComponentId);
+
+        node.referenceTechnologyId = referenceTechnologyId;
+
+        if (parentId == null) {
+            roots.put(technologyId, node);
+        } else {
+            getOperationNode(parentId).children.add(node);
+        }
+    }
+
+    void addInputProduct(final Long operationComponentId, final Long productId, final BigDecimal quantity) {
+        getOperationNode(operationComponentId).inputs.merge(productId, quantity, BigDecimal::add);
+    }
+
+    void addOutputProduct(final Long operationComponentId, final Long productId, final BigDecimal quantity) {
+        getOperationNode(operationComponentId).outputs.merge(productId, quantity, BigDecimal::add);
+    }
+
+    boolean containsTechnology(final Long technologyId) {
+        return technologyProducts.containsKey(technologyId);
+    }
+
+    Set<Long> getMissingReferenceTechnologies() {
+        Set<Long> missing = Sets.newHashSet();
+
+        for (OperationNode node : operationComponents.values()) {
+            if ((node.referenceTechnologyId != null) && !containsTechnology(node.referenceTechnologyId)) {
+                missing.add(node.referenceTechnologyId);
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * Gets compiled bill of given technology
+     * 
+     * @param technologyId
+     *            technology id
+     * 
+     * @return quantities of component products per one unit of technology's product
+     */
+    Map<Long, BigDecimal> getBill(final Long technologyId) {
+        Map<Long, BigDecimal> bill = bills.get(technologyId);
+
+        if (bill != null) {
+            return bill;
+        }
+
+        if (!compiledTechnologies.add(technologyId)) {
+            throw new IllegalStateException("Technology " + technologyId + " references itself.");
+        }
+
+        bill = Maps.newHashMap();
+
+        OperationNode root = roots.get(technologyId);
+
+        if (root != null) {
+            explode(root, technologyProducts.get(technologyId), BigDecimal.ONE, bill);
+        }
+
+        bill = Collections.unmodifiableMap(bill);
+
+        compiledTechnologies.remove(technologyId);
+        bills.put(technologyId, bill);
+
+        return bill;
+    }
+
+    private void explode(final OperationNode node, final Long productId, final BigDecimal quantity,
+            final Map<Long, BigDecimal> bill) {
+        if (node.referenceTechnologyId != null) {
+            for (Map.Entry<Long, BigDecimal> component : getBill(node.referenceTechnologyId).entrySet()) {
+                bill.merge(component.getKey(), component.getValue().multiply(quantity, mathContext), BigDecimal::add);
+            }
+
+            return;
+        }
+
+        BigDecimal outQuantity = node.outputs.get(productId);
+        BigDecimal runs = quantity;
+
+        if ((outQuantity != null) && (outQuantity.signum() != 0)) {
+            runs = quantity.divide(outQuantity, mathContext);
+        }
+
+        for (Map.Entry<Long, BigDecimal> input : node.inputs.entrySet()) {
+            BigDecimal neededQuantity = input.getValue().multiply(runs, mathContext);
+            OperationNode child = findChildProducing(node, input.getKey());
+
+            if (child == null) {
+                bill.merge(input.getKey(), neededQuantity, BigDecimal::add);
+            } else {
+                explode(child, input.getKey(), neededQuantity, bill);
+            }
+        }
+    }
+
+    private OperationNode findChildProducing(final OperationNode node, final Long productId) {
+        for (OperationNode child : node.children) {
+            if (child.referenceTechnologyId == null) {
+                if (child.outputs.containsKey(productId)) {
+                    return child;
+                }
+            } else if (productId.equals(technologyProducts.get(child.referenceTechnologyId))) {
+                return child;
+            }
+        }
+
+        return null;
+    }
+
+    private OperationNode getOperationNode(final Long operationComponentId) {
+        return operationComponents.computeIfAbsent(operationComponentId, id -> new OperationNode());
+    }
+
+    private static final class OperationNode {
+
+        private final List<OperationNode> children = Lists.newArrayList();
+
+        private final Map<Long, BigDecimal> inputs = Maps.newLinkedHashMap();
+
+        private final Map<Long, BigDecimal> outputs = Maps.newHashMap();
+
+        private Long referenceTechnologyId;
+
+    }
+
+}
@@ -0,0 +1,360 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.plugin.api.PluginUtils;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+/**
+ * In-memory material requirements planning. Requirements of given orders are exploded level by level over a compiled bill of
+ * materials graph. Each product is netted once all its gross requirements are known - that is at its low level code - against
+ * supplies given by {@link MrpSupplyProvider}s. Net requirements of products having an accepted master technology are exploded
+ * to the next levels, net requirements of other products are what has to be bought.
+ */
+@Service
+public class MrpEngine {
+
+    private static final String L_TECHNOLOGY = "technology";
+
+    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
+
+    private static final String L_DATE_FROM = "dateFrom";
+
+    private static final String L_TECHNOLOGY_IDS = "technologyIds";
+
+    private static final String L_PRODUCT_IDS = "productIds";
+
+    private static final int L_MAX_LEVEL = 100;
+
+    private static final String TECHNOLOGIES_QUERY = "SELECT id, product_id FROM technologies_technology "
+            + "WHERE id IN (:" + L_TECHNOLOGY_IDS + ")";
+
+    private static final String OPERATION_COMPONENTS_QUERY = "SELECT id, technology_id, parent_id, referencetechnology_id "
+            + "FROM technologies_technologyoperationcomponent WHERE technology_id IN (:" + L_TECHNOLOGY_IDS + ")";
+
+    private static final String OPERATION_PRODUCT_COMPONENTS_QUERY = "SELECT opc.operationcomponent_id, opc.product_id, "
+            + "opc.quantity FROM technologies_%s opc JOIN technologies_technologyoperationcomponent toc "
+            + "ON toc.id = opc.operationcomponent_id WHERE toc.technology_id IN (:" + L_TECHNOLOGY_IDS + ")";
+
+    private static final String MASTER_TECHNOLOGIES_QUERY = "SELECT product_id, id FROM technologies_technology "
+            + "WHERE master = true AND active = true AND state = :state AND product_id IN (:" + L_PRODUCT_IDS + ")";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired(required = false)
+    private List<MrpSupplyProvider> supplyProviders = Lists.newArrayList();
+
+    /**
+     * Calculates time-phased net requirements of given orders. Requirements of an order are due on its planned start date.
+     * 
+     * @param orders
+     *            orders, each with technology
+     * 
+     * @return gross and net requirements of all products
+     */
+    public MrpResult calculate(final List<Entity> orders) {
+        MrpBomGraph bomGraph = new MrpBomGraph(numberService.getMathContext());
+        Map<Long, Long> masterTechnologies = Maps.newHashMap();
+        Map<Long, TreeMap<Date, BigDecimal>> grossRequirements = Maps.newHashMap();
+
+        Set<Long> technologyIds = Sets.newHashSet();
+
+        for (Entity order : orders) {
+            Entity technology = order.getBelongsToField(L_TECHNOLOGY);
+
+            if (technology == null) {
+                throw new IllegalStateException("Order doesn't contain technology.");
+            }
+
+            technologyIds.add(technology.getId());
+        }
+
+        loadTechnologies(bomGraph, technologyIds);
+
+        for (Entity order : orders) {
+            addGrossRequirements(grossRequirements, bomGraph.getBill(order.getBelongsToField(L_TECHNOLOGY).getId()),
+                    order.getDecimalField(L_PLANNED_QUANTITY), getRequirementDate(order.getDateField(L_DATE_FROM)));
+        }
+
+        Map<Long, Integer> levels = assignLevels(bomGraph, masterTechnologies, grossRequirements.keySet());
+
+        List<MrpRequirement> requirements = Lists.newArrayList();
+
+        int maxLevel = levels.isEmpty() ? 0 : Collections.max(levels.values());
+
+        for (int level = 1; level <= maxLevel; level++) {
+            List<Long> productIds = Lists.newArrayList();
+
+            for (Map.Entry<Long, Integer> productLevel : levels.entrySet()) {
+                if (productLevel.getValue() == level) {
+                    productIds.add(productLevel.getKey());
+                }
+            }
+
+            Collections.sort(productIds);
+
+            Map<Long, BigDecimal> onHandQuantities = Maps.newHashMap();
+            Map<Long, TreeMap<Date, BigDecimal>> scheduledReceipts = Maps.newHashMap();
+
+            loadSupplies(productIds, onHandQuantities, scheduledReceipts);
+
+            for (Long productId : productIds) {
+                Long masterTechnologyId = masterTechnologies.get(productId);
+
+                for (MrpRequirement requirement : net(productId, level, masterTechnologyId != null,
+                        grossRequirements.get(productId), onHandQuantities.get(productId), scheduledReceipts.get(productId))) {
+                    requirements.add(requirement);
+
+                    if ((masterTechnologyId != null) && (requirement.getNetQuantity().signum() > 0)) {
+                        addGrossRequirements(grossRequirements, bomGraph.getBill(masterTechnologyId),
+                                requirement.getNetQuantity(), requirement.getDate());
+                    }
+                }
+            }
+        }
+
+        return new MrpResult(requirements);
+    }
+
+    private Date getRequirementDate(final Date dateFrom) {
+        return DateUtils.truncate((dateFrom == null) ? new Date() : dateFrom, Calendar.DATE);
+    }
+
+    private void addGrossRequirements(final Map<Long, TreeMap<Date, BigDecimal>> grossRequirements,
+            final Map<Long, BigDecimal> bill, final BigDecimal quantity, final Date date) {
+        for (Map.Entry<Long, BigDecimal> component : bill.entrySet()) {
+            BigDecimal neededQuantity = component.getValue().multiply(quantity, numberService.getMathContext());
+
+            grossRequirements.computeIfAbsent(component.getKey(), productId -> Maps.newTreeMap()).merge(date, neededQuantity,
+                    BigDecimal::add);
+        }
+    }
+
+    private Map<Long, Integer> assignLevels(final MrpBomGraph bomGraph, final Map<Long, Long> masterTechnologies,
+            final Set<Long> productIds) {
+        Map<Long, Integer> levels = Maps.newHashMap();
+        Set<Long> checkedProducts = Sets.newHashSet();
+
+        Set<Long> currentProducts = Sets.newHashSet(productIds);
+        int level = 1;
+
+        for (Long productId : currentProducts) {
+            levels.put(productId, level);
+        }
+
+        while (!currentProducts.isEmpty()) {
+            if (level > L_MAX_LEVEL) {
+                throw new IllegalStateException("Product structure is cyclic or deeper than " + L_MAX_LEVEL + " levels.");
+            }
+
+            loadMasterTechnologies(masterTechnologies, Sets.difference(currentProducts, checkedProducts).immutableCopy());
+            checkedProducts.addAll(currentProducts);
+            loadTechnologies(bomGraph, Sets.newHashSet(masterTechnologies.values()));
+
+            Set<Long> nextProducts = Sets.newHashSet();
+
+            for (Long productId : currentProducts) {
+                Long masterTechnologyId = masterTechnologies.get(productId);
+
+                if (masterTechnologyId == null) {
+                    continue;
+                }
+
+                for (Long componentId : bomGraph.getBill(masterTechnologyId).keySet()) {
+                    Integer componentLevel = levels.get(componentId);
+
+                    if ((componentLevel == null) || (componentLevel < level + 1)) {
+                        levels.put(componentId, level + 1);
+                        nextProducts.add(componentId);
+                    }
+                }
+            }
+
+            currentProducts = nextProducts;
+            level++;
+        }
+
+        return levels;
+    }
+
+    private List<MrpRequirement> net(final Long productId, final int level, final boolean manufactured,
+            final TreeMap<Date, BigDecimal> grossRequirements, final BigDecimal onHandQuantity,
+            final TreeMap<Date, BigDecimal> scheduledReceipts) {
+        List<MrpRequirement> requirements = Lists.newArrayList();
+
+        if (grossRequirements == null) {
+            return requirements;
+        }
+
+        BigDecimal available = ((onHandQuantity == null) || (onHandQuantity.signum() < 0)) ? BigDecimal.ZERO : onHandQuantity;
+        Iterator<Map.Entry<Date, BigDecimal>> receipts = (scheduledReceipts == null) ? Collections
+                .<Map.Entry<Date, BigDecimal>> emptyIterator() : scheduledReceipts.entrySet().iterator();
+        Map.Entry<Date, BigDecimal> receipt = receipts.hasNext() ? receipts.next() : null;
+
+        for (Map.Entry<Date, BigDecimal> grossRequirement : grossRequirements.entrySet()) {
+            while ((receipt != null) && !receipt.getKey().after(grossRequirement.getKey())) {
+                available = available.add(receipt.getValue(), numberService.getMathContext());
+                receipt = receipts.hasNext() ? receipts.next() : null;
+            }
+
+            BigDecimal grossQuantity = grossRequirement.getValue();
+            BigDecimal coveredQuantity = available.min(grossQuantity);
+
+            available = available.subtract(coveredQuantity, numberService.getMathContext());
+
+            requirements.add(new MrpRequirement(productId, grossRequirement.getKey(), level, grossQuantity, grossQuantity
+                    .subtract(coveredQuantity, numberService.getMathContext()), manufactured));
+        }
+
+        return requirements;
+    }
+
+    private void loadSupplies(final Collection<Long> productIds, final Map<Long, BigDecimal> onHandQuantities,
+            final Map<Long, TreeMap<Date, BigDecimal>> scheduledReceipts) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        for (MrpSupplyProvider supplyProvider : supplyProviders) {
+            if (!isEnabled(supplyProvider)) {
+                continue;
+            }
+
+            for (MrpSupply supply : supplyProvider.getSupplies(productIds)) {
+                if ((supply.getQuantity() == null) || (supply.getQuantity().signum() == 0)) {
+                    continue;
+                }
+
+                if (supply.getDate() == null) {
+                    onHandQuantities.merge(supply.getProductId(), supply.getQuantity(), BigDecimal::add);
+                } else {
+                    scheduledReceipts.computeIfAbsent(supply.getProductId(), productId -> Maps.newTreeMap()).merge(
+                            getRequirementDate(supply.getDate()), supply.getQuantity(), BigDecimal::add);
+                }
+            }
+        }
+    }
+
+    private boolean isEnabled(final MrpSupplyProvider supplyProvider) {
+        RunIfEnabled runIfEnabled = supplyProvider.getClass().getAnnotation(RunIfEnabled.class);
+
+        if (runIfEnabled == null) {
+            return true;
+        }
+
+        for (String pluginIdentifier : runIfEnabled.value()) {
+            if (!PluginUtils.isEnabled(pluginIdentifier)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void loadMasterTechnologies(final Map<Long, Long> masterTechnologies, final Set<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_PRODUCT_IDS, productIds).addValue("state",
+                TechnologyStateStringValues.ACCEPTED);
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(MASTER_TECHNOLOGIES_QUERY, parameters)) {
+            masterTechnologies.put(toLong(row.get("product_id")), toLong(row.get("id")));
+        }
+    }
+
+    private void loadTechnologies(final MrpBomGraph bomGraph, final Set<Long> technologyIds) {
+        Set<Long> missingTechnologyIds = Sets.newHashSet();
+
+        for (Long technologyId : technologyIds) {
+            if (!bomGraph.containsTechnology(technologyId)) {
+                missingTechnologyIds.add(technologyId);
+            }
+        }
+
+        while (!missingTechnologyIds.isEmpty()) {
+            Map<String, Object> parameters = Collections.singletonMap(L_TECHNOLOGY_IDS, missingTechnologyIds);
+
+            for (Long technologyId : missingTechnologyIds) {
+                bomGraph.addTechnology(technologyId, null);
+            }
+
+            for (Map<String, Object> row : jdbcTemplate.queryForList(TECHNOLOGIES_QUERY, parameters)) {
+                bomGraph.addTechnology(toLong(row.get("id")), toLong(row.get("product_id")));
+            }
+
+            for (Map<String, Object> row : jdbcTemplate.queryForList(OPERATION_COMPONENTS_QUERY, parameters)) {
+                bomGraph.addOperationComponent(toLong(row.get("id")), toLong(row.get("technology_id")),
+                        toLong(row.get("parent_id")), toLong(row.get("referencetechnology_id")));
+            }
+
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    String.format(OPERATION_PRODUCT_COMPONENTS_QUERY, "operationproductincomponent"), parameters)) {
+                bomGraph.addInputProduct(toLong(row.get("operationcomponent_id")), toLong(row.get("product_id")),
+                        (BigDecimal) row.get("quantity"));
+            }
+
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    String.format(OPERATION_PRODUCT_COMPONENTS_QUERY, "operationproductoutcomponent"), parameters)) {
+                bomGraph.addOutputProduct(toLong(row.get("operationcomponent_id")), toLong(row.get("product_id")),
+                        (BigDecimal) row.get("quantity"));
+            }
+
+            missingTechnologyIds = bomGraph.getMissingReferenceTechnologies();
+        }
+    }
+
+    private Long toLong(final Object value) {
+        return (value == null) ? null : ((Number) value).longValue();
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Time-phased requirement of a single product, at given bill of materials level.
+ */
+public class MrpRequirement {
+
+    private final Long productId;
+
+    private final Date date;
+
+    private final int level;
+
+    private final BigDecimal grossQuantity;
+
+    private final BigDecimal netQuantity;
+
+    private final boolean manufactured;
+
+    public MrpRequirement(final Long productId, final Date date, final int level, final BigDecimal grossQuantity,
+            final BigDecimal netQuantity, final boolean manufactured) {
+        this.productId = productId;
+        this.date = date;
+        this.level = level;
+        this.grossQuantity = grossQuantity;
+        this.netQuantity = netQuantity;
+        this.manufactured = manufactured;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * @return low level code of product - the deepest level at which product appears in exploded structures, starting from 1
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public BigDecimal getGrossQuantity() {
+        return grossQuantity;
+    }
+
+    /**
+     * @return quantity not covered by stock and scheduled supplies
+     */
+    public BigDecimal getNetQuantity() {
+        return netQuantity;
+    }
+
+    /**
+     * @return true if product has an accepted master technology, so its net quantity is exploded further instead of being bought
+     */
+    public boolean isManufactured() {
+        return manufactured;
+    }
+
+}
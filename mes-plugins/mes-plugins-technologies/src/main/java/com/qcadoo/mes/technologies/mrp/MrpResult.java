@@ -0,0 +1,77 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class MrpResult {
+
+    private final List<MrpRequirement> requirements;
+
+    public MrpResult(final List<MrpRequirement> requirements) {
+        this.requirements = Collections.unmodifiableList(requirements);
+    }
+
+    /**
+     * @return all requirements, ordered by level, product and date
+     */
+    public List<MrpRequirement> getRequirements() {
+        return requirements;
+    }
+
+    /**
+     * @return requirements of bought products with positive net quantity, ordered by level, product and date
+     */
+    public List<MrpRequirement> getPurchaseRequirements() {
+        List<MrpRequirement> purchaseRequirements = Lists.newArrayList();
+
+        for (MrpRequirement requirement : requirements) {
+            if (!requirement.isManufactured() && (requirement.getNetQuantity().signum() > 0)) {
+                purchaseRequirements.add(requirement);
+            }
+        }
+
+        return purchaseRequirements;
+    }
+
+    /**
+     * @return net quantities of bought products, summed up for all dates
+     */
+    public Map<Long, BigDecimal> getPurchaseQuantities() {
+        Map<Long, BigDecimal> purchaseQuantities = Maps.newLinkedHashMap();
+
+        for (MrpRequirement requirement : getPurchaseRequirements()) {
+            purchaseQuantities.merge(requirement.getProductId(), requirement.getNetQuantity(), BigDecimal::add);
+        }
+
+        return purchaseQuantities;
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+public class MrpSupply {
+
+    private final Long productId;
+
+    private final Date date;
+
+    private final BigDecimal quantity;
+
+    public MrpSupply(final Long productId, final Date date, final BigDecimal quantity) {
+        this.productId = productId;
+        this.date = date;
+        this.quantity = quantity;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    /**
+     * @return date since when supply is available, null for stock available right away
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Source of product supplies taken into account when netting requirements in {@link MrpEngine}. Implementations annotated with
+ * {@link com.qcadoo.plugin.api.RunIfEnabled} are used only while given plugins are enabled.
+ */
+public interface MrpSupplyProvider {
+
+    /**
+     * Gets supplies of given products
+     * 
+     * @param productIds
+     *            ids of products
+     * 
+     * @return supplies, supply without date is treated as available from the beginning
+     */
+    List<MrpSupply> getSupplies(final Collection<Long> productIds);
+
+}
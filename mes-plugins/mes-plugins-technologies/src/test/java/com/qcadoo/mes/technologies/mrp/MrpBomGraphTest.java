@@ -0,0 +1,107 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class MrpBomGraphTest {
+
+    private MrpBomGraph bomGraph;
+
+    @Before
+    public void init() {
+        bomGraph = new MrpBomGraph(MathContext.DECIMAL64);
+    }
+
+    @Test
+    public final void shouldCompileBillThroughIntermediateProductsAndReferencedTechnologies() {
+        // given
+        bomGraph.addTechnology(1L, 100L);
+        bomGraph.addOperationComponent(10L, 1L, null, null);
+        bomGraph.addOutputProduct(10L, 100L, new BigDecimal("2"));
+        bomGraph.addInputProduct(10L, 200L, new BigDecimal("4"));
+        bomGraph.addInputProduct(10L, 300L, new BigDecimal("1"));
+        bomGraph.addOperationComponent(11L, 1L, 10L, null);
+        bomGraph.addOutputProduct(11L, 200L, new BigDecimal("1"));
+        bomGraph.addInputProduct(11L, 400L, new BigDecimal("3"));
+        bomGraph.addOperationComponent(12L, 1L, 10L, 2L);
+
+        bomGraph.addTechnology(2L, 300L);
+        bomGraph.addOperationComponent(20L, 2L, null, null);
+        bomGraph.addOutputProduct(20L, 300L, new BigDecimal("1"));
+        bomGraph.addInputProduct(20L, 500L, new BigDecimal("2"));
+
+        // when
+        Map<Long, BigDecimal> bill = bomGraph.getBill(1L);
+
+        // then
+        assertEquals(2, bill.size());
+        assertEquals(0, new BigDecimal("6").compareTo(bill.get(400L)));
+        assertEquals(0, BigDecimal.ONE.compareTo(bill.get(500L)));
+    }
+
+    @Test
+    public final void shouldReturnMissingReferenceTechnologies() {
+        // given
+        bomGraph.addTechnology(1L, 100L);
+        bomGraph.addOperationComponent(10L, 1L, null, null);
+        bomGraph.addOperationComponent(11L, 1L, 10L, 2L);
+
+        // when & then
+        assertEquals(ImmutableSet.of(2L), bomGraph.getMissingReferenceTechnologies());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void shouldFailForTechnologyReferencingItself() {
+        // given
+        bomGraph.addTechnology(1L, 100L);
+        bomGraph.addOperationComponent(10L, 1L, null, null);
+        bomGraph.addOutputProduct(10L, 100L, BigDecimal.ONE);
+        bomGraph.addInputProduct(10L, 100L, BigDecimal.ONE);
+        bomGraph.addOperationComponent(11L, 1L, 10L, 1L);
+
+        // when
+        bomGraph.getBill(1L);
+    }
+
+    @Test
+    public final void shouldReturnEmptyBillForTechnologyWithoutOperations() {
+        // given
+        bomGraph.addTechnology(1L, 100L);
+
+        // when & then
+        assertTrue(bomGraph.getBill(1L).isEmpty());
+    }
+
+}
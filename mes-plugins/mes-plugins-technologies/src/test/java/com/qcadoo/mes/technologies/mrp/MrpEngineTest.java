@@ -0,0 +1,239 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.mrp;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+public class MrpEngineTest {
+
+    private static final Long L_ORDER_TECHNOLOGY_ID = 1L;
+
+    private static final Long L_MASTER_TECHNOLOGY_ID = 2L;
+
+    private static final Long L_PRODUCT_ID = 100L;
+
+    private static final Long L_INTERMEDIATE_ID = 200L;
+
+    private static final Long L_MATERIAL_ID = 300L;
+
+    private static final Date L_RECEIPT_DATE = new Date(1790000000000L);
+
+    private static final Date L_ORDER_DATE = new Date(1790500000000L);
+
+    private static final Date L_LATE_RECEIPT_DATE = new Date(1791000000000L);
+
+    private MrpEngine mrpEngine;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private NumberService numberService;
+
+    private List<MrpSupply> supplies;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        mrpEngine = new MrpEngine();
+
+        supplies = Lists.newArrayList();
+
+        MrpSupplyProvider supplyProvider = productIds -> filterSupplies(productIds);
+
+        ReflectionTestUtils.setField(mrpEngine, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(mrpEngine, "numberService", numberService);
+        ReflectionTestUtils.setField(mrpEngine, "supplyProviders", Lists.newArrayList(supplyProvider));
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+
+        stubTechnologies();
+    }
+
+    @Test
+    public final void shouldNetIntermediateProductBeforeExplodingItsMasterTechnology() {
+        // given
+        supplies.add(new MrpSupply(L_INTERMEDIATE_ID, null, new BigDecimal("5")));
+        supplies.add(new MrpSupply(L_MATERIAL_ID, null, new BigDecimal("5")));
+        supplies.add(new MrpSupply(L_MATERIAL_ID, L_RECEIPT_DATE, new BigDecimal("20")));
+
+        // when
+        MrpResult result = mrpEngine.calculate(Lists.newArrayList(mockOrder(new BigDecimal("10"))));
+
+        // then
+        List<MrpRequirement> requirements = result.getRequirements();
+
+        assertEquals(2, requirements.size());
+
+        MrpRequirement intermediateRequirement = requirements.get(0);
+
+        assertEquals(L_INTERMEDIATE_ID, intermediateRequirement.getProductId());
+        assertEquals(1, intermediateRequirement.getLevel());
+        assertEquals(true, intermediateRequirement.isManufactured());
+        assertEquals(0, new BigDecimal("20").compareTo(intermediateRequirement.getGrossQuantity()));
+        assertEquals(0, new BigDecimal("15").compareTo(intermediateRequirement.getNetQuantity()));
+
+        MrpRequirement materialRequirement = requirements.get(1);
+
+        assertEquals(L_MATERIAL_ID, materialRequirement.getProductId());
+        assertEquals(2, materialRequirement.getLevel());
+        assertEquals(false, materialRequirement.isManufactured());
+        assertEquals(0, new BigDecimal("55").compareTo(materialRequirement.getGrossQuantity()));
+        assertEquals(0, new BigDecimal("30").compareTo(materialRequirement.getNetQuantity()));
+
+        assertEquals(ImmutableMap.of(L_MATERIAL_ID, materialRequirement.getNetQuantity()), result.getPurchaseQuantities());
+    }
+
+    @Test
+    public final void shouldNotCoverRequirementWithLaterReceipt() {
+        // given
+        supplies.add(new MrpSupply(L_MATERIAL_ID, null, new BigDecimal("5")));
+        supplies.add(new MrpSupply(L_MATERIAL_ID, L_LATE_RECEIPT_DATE, new BigDecimal("20")));
+
+        // when
+        MrpResult result = mrpEngine.calculate(Lists.newArrayList(mockOrder(new BigDecimal("10"))));
+
+        // then
+        assertEquals(1, result.getPurchaseQuantities().size());
+        assertEquals(0, new BigDecimal("65").compareTo(result.getPurchaseQuantities().get(L_MATERIAL_ID)));
+    }
+
+    @Test
+    public final void shouldNotExplodeFullyCoveredIntermediateProduct() {
+        // given
+        supplies.add(new MrpSupply(L_INTERMEDIATE_ID, null, new BigDecimal("20")));
+
+        // when
+        MrpResult result = mrpEngine.calculate(Lists.newArrayList(mockOrder(new BigDecimal("10"))));
+
+        // then
+        assertEquals(0, BigDecimal.ZERO.compareTo(result.getRequirements().get(0).getNetQuantity()));
+        assertEquals(0, new BigDecimal("10").compareTo(result.getPurchaseQuantities().get(L_MATERIAL_ID)));
+    }
+
+    private List<MrpSupply> filterSupplies(final Collection<Long> productIds) {
+        List<MrpSupply> productSupplies = Lists.newArrayList();
+
+        for (MrpSupply supply : supplies) {
+            if (productIds.contains(supply.getProductId())) {
+                productSupplies.add(supply);
+            }
+        }
+
+        return productSupplies;
+    }
+
+    private Entity mockOrder(final BigDecimal plannedQuantity) {
+        Entity order = mock(Entity.class);
+        Entity technology = mock(Entity.class);
+
+        given(technology.getId()).willReturn(L_ORDER_TECHNOLOGY_ID);
+        given(order.getBelongsToField("technology")).willReturn(technology);
+        given(order.getDecimalField("plannedQuantity")).willReturn(plannedQuantity);
+        given(order.getDateField("dateFrom")).willReturn(L_ORDER_DATE);
+
+        return order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubTechnologies() {
+        // technology 1 makes product from 2 intermediates and 1 material, technology 2 makes intermediate from 3 materials
+        given(jdbcTemplate.queryForList(anyString(), anyMap())).willAnswer(invocation -> {
+            String query = (String) invocation.getArguments()[0];
+            Collection<Long> technologyIds = (Collection<Long>) ((Map<String, Object>) invocation.getArguments()[1])
+                    .get("technologyIds");
+
+            List<Map<String, Object>> rows = Lists.newArrayList();
+
+            for (Long technologyId : technologyIds) {
+                boolean orderTechnology = L_ORDER_TECHNOLOGY_ID.equals(technologyId);
+                Long operationComponentId = technologyId * 10;
+
+                if (query.startsWith("SELECT id, product_id")) {
+                    rows.add(row("id", technologyId, "product_id", orderTechnology ? L_PRODUCT_ID : L_INTERMEDIATE_ID));
+                } else if (query.startsWith("SELECT id, technology_id")) {
+                    rows.add(ImmutableMap.<String, Object> of("id", operationComponentId, "technology_id", technologyId));
+                } else if (query.contains("operationproductoutcomponent")) {
+                    rows.add(productRow(operationComponentId, orderTechnology ? L_PRODUCT_ID : L_INTERMEDIATE_ID, "1"));
+                } else if (orderTechnology) {
+                    rows.add(productRow(operationComponentId, L_INTERMEDIATE_ID, "2"));
+                    rows.add(productRow(operationComponentId, L_MATERIAL_ID, "1"));
+                } else {
+                    rows.add(productRow(operationComponentId, L_MATERIAL_ID, "3"));
+                }
+            }
+
+            return rows;
+        });
+
+        given(jdbcTemplate.queryForList(anyString(), any(SqlParameterSource.class))).willAnswer(invocation -> {
+            SqlParameterSource parameters = (SqlParameterSource) invocation.getArguments()[1];
+
+            List<Map<String, Object>> rows = Lists.newArrayList();
+
+            if (((Collection<Long>) parameters.getValue("productIds")).contains(L_INTERMEDIATE_ID)) {
+                rows.add(row("product_id", L_INTERMEDIATE_ID, "id", L_MASTER_TECHNOLOGY_ID));
+            }
+
+            return rows;
+        });
+    }
+
+    private Map<String, Object> row(final String firstKey, final Object firstValue, final String secondKey,
+            final Object secondValue) {
+        return ImmutableMap.of(firstKey, firstValue, secondKey, secondValue);
+    }
+
+    private Map<String, Object> productRow(final Long operationComponentId, final Long productId, final String quantity) {
+        return ImmutableMap.<String, Object> of("operationcomponent_id", operationComponentId, "product_id", productId,
+                "quantity", new BigDecimal(quantity));
+    }
+
+}